@@ -1,5 +1,5 @@
 package com.berkant.kagan.haluk.irem.dietapp;
-import java.sql.*;
+import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -12,12 +12,25 @@ import java.util.List;
 public class AuthenticationService {
 	 // Reference to the currently logged in user
     private User currentUser;
+    /** Stores the user accounts */
+    private final UserRepository users;
     
     /**
      * Constructor for AuthenticationService class.
+     * Stores the users in the SQLite database.
      */
     public AuthenticationService() {
+        this(new SqliteStorageBackend());
+    }
+    
+    /**
+     * Constructor for AuthenticationService class with a storage backend.
+     * 
+     * @param storage The storage backend holding the user accounts
+     */
+    public AuthenticationService(StorageBackend storage) {
         this.currentUser = null;
+        this.users = storage.getUsers();
     }
     
     /**
@@ -38,30 +51,8 @@ public class AuthenticationService {
             return false;
         }
         
-        try (Connection conn = DatabaseHelper.getConnection();
-             PreparedStatement checkStmt = conn.prepareStatement("SELECT username FROM users WHERE username = ?")) {
-            
-            // Check if username already exists
-            checkStmt.setString(1, username);
-            ResultSet rs = checkStmt.executeQuery();
-            
-            if (rs.next()) {
-                return false; // Username already exists
-            }
-            
-            // Username is available, create new user
-            try (PreparedStatement insertStmt = conn.prepareStatement(
-                "INSERT INTO users (username, password, email, name, is_logged_in) VALUES (?, ?, ?, ?, 0)")) {
-                
-                insertStmt.setString(1, username);
-                insertStmt.setString(2, password); // In a real app, you should hash passwords
-                insertStmt.setString(3, email);
-                insertStmt.setString(4, name);
-                
-                int affectedRows = insertStmt.executeUpdate();
-                return affectedRows > 0;
-            }
-            
+        try {
+            return users.register(username, password, email, name);
         } catch (SQLException e) {
             System.out.println("User could not be registered: " + e.getMessage());
             return false;
@@ -76,38 +67,18 @@ public class AuthenticationService {
      * @return true if login successful, false otherwise
      */
     public boolean login(String username, String password) {
-        try (Connection conn = DatabaseHelper.getConnection();
-             PreparedStatement pstmt = conn.prepareStatement(
-                 "SELECT * FROM users WHERE username = ? AND password = ?")) {
-            
-            pstmt.setString(1, username);
-            pstmt.setString(2, password);
-            
-            ResultSet rs = pstmt.executeQuery();
-            
-            if (rs.next()) {
-                // Create user object from database
-                User user = new User(
-                    rs.getString("username"),
-                    rs.getString("password"),
-                    rs.getString("email"),
-                    rs.getString("name")
-                );
-                user.setLoggedIn(true);
-                this.currentUser = user;
-                
-                // Update login status in database
-                try (PreparedStatement updateStmt = conn.prepareStatement(
-                    "UPDATE users SET is_logged_in = 1 WHERE username = ?")) {
-                    
-                    updateStmt.setString(1, username);
-                    updateStmt.executeUpdate();
-                }
-                
-                return true;
+        try {
+            User user = users.findByCredentials(username, password);
+            if (user == null) {
+                return false;
             }
             
-            return false;
+            user.setLoggedIn(true);
+            this.currentUser = user;
+            
+            // Update login status in storage
+            users.setLoggedIn(username, true);
+            return true;
             
         } catch (SQLException e) {
             System.out.println("Login failed: " + e.getMessage());
@@ -120,13 +91,8 @@ public class AuthenticationService {
      */
     public void logout() {
         if (currentUser != null) {
-            try (Connection conn = DatabaseHelper.getConnection();
-                 PreparedStatement pstmt = conn.prepareStatement(
-                     "UPDATE users SET is_logged_in = 0 WHERE username = ?")) {
-                
-                pstmt.setString(1, currentUser.getUsername());
-                pstmt.executeUpdate();
-                
+            try {
+                users.setLoggedIn(currentUser.getUsername(), false);
             } catch (SQLException e) {
                 System.out.println("An error occurred while logging out: " + e.getMessage());
             }
@@ -136,6 +102,34 @@ public class AuthenticationService {
         }
     }
     
+    /**
+     * Deletes a registered user.
+     * @details The food logs, daily totals, meal plans and nutrition goals of the user are
+     *          deleted with it. The SQLite backend also removes the user from the shared user
+     *          id cache, so later lookups cannot resolve the username to the deleted id.
+     * 
+     * @param username The username of the user to delete
+     * @return true if the user was deleted, false otherwise
+     */
+    public boolean deleteUser(String username) {
+        if (username == null || username.trim().isEmpty()) {
+            return false;
+        }
+        
+        try {
+            boolean deleted = users.delete(username);
+            
+            if (deleted && currentUser != null && username.equals(currentUser.getUsername())) {
+                currentUser = null;
+            }
+            return deleted;
+            
+        } catch (SQLException e) {
+            System.out.println("User could not be deleted: " + e.getMessage());
+            return false;
+        }
+    }
+    
     /**
      * Enables guest mode which allows limited access without registration.
      */
@@ -169,28 +163,11 @@ public class AuthenticationService {
      * @return List of all registered users
      */
     public List<User> getAllUsers() {
-        List<User> users = new ArrayList<>();
-        
-        try (Connection conn = DatabaseHelper.getConnection();
-             Statement stmt = conn.createStatement();
-             ResultSet rs = stmt.executeQuery("SELECT * FROM users")) {
-            
-            while (rs.next()) {
-                User user = new User(
-                    rs.getString("username"),
-                    rs.getString("password"),
-                    rs.getString("email"),
-                    rs.getString("name")
-                );
-                
-                user.setLoggedIn(rs.getInt("is_logged_in") == 1);
-                users.add(user);
-            }
-            
+        try {
+            return users.findAll();
         } catch (SQLException e) {
             System.out.println("Users could not be retrieved: " + e.getMessage());
+            return new ArrayList<>();
         }
-       
-        return users;
     }
-}
\ No newline at end of file
+}
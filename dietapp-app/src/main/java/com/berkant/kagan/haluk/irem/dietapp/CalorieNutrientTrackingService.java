@@ -1,26 +1,62 @@
 package com.berkant.kagan.haluk.irem.dietapp;
 
-import java.sql.*;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.time.format.DateTimeParseException;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * This class handles calorie and nutrient tracking operations for the Diet Planner application.
  * @details The CalorieNutrientTrackingService class provides methods for tracking calories,
- *          nutrients, setting goals, and viewing nutrition reports.
+ *          nutrients, setting goals, and viewing nutrition reports. The goals of each user are
+ *          cached after their first read and replaced by setNutritionGoals once the new goals
+ *          are stored, so reports do not read unchanged goals again. Goals changed by another
+ *          instance are seen after clearGoalCache().
  * @author irem
  */
 public class CalorieNutrientTrackingService {
     /** The meal planning service for accessing food logs */
     private MealPlanningService mealPlanningService;
+    /** Stores the nutrition goals */
+    private final UserRepository users;
+    /** Stores the common foods */
+    private final FoodRepository foods;
+    /** Goals by user id, including the default goals of users without goals */
+    private final ConcurrentHashMap<Integer, NutritionGoal> goalCache = new ConcurrentHashMap<>();
+    /** Number of saved goals by user id, also locked while the goals of the user are saved or cached */
+    private final ConcurrentHashMap<Integer, AtomicLong> goalVersions = new ConcurrentHashMap<>();
+    /** Number of times the goal cache was cleared */
+    private final AtomicLong goalCacheClears = new AtomicLong();
+    /** Number of goal lookups answered from the cache */
+    private final AtomicLong goalCacheHits = new AtomicLong();
+    /** Number of goal lookups that read the database */
+    private final AtomicLong goalCacheMisses = new AtomicLong();
     
     /** 
      * Constructor for CalorieNutrientTrackingService class.
+     * Stores the goals and common foods in the SQLite database.
      * 
      * @param mealPlanningService The meal planning service for accessing food logs
      */
     public CalorieNutrientTrackingService(MealPlanningService mealPlanningService) {
+        this(mealPlanningService, new SqliteStorageBackend());
+    }
+    
+    /** 
+     * Constructor for CalorieNutrientTrackingService class with a storage backend.
+     * 
+     * @param mealPlanningService The meal planning service for accessing food logs
+     * @param storage The storage backend holding the goals and foods
+     */
+    public CalorieNutrientTrackingService(MealPlanningService mealPlanningService, StorageBackend storage) {
         this.mealPlanningService = mealPlanningService;
+        this.users = storage.getUsers();
+        this.foods = storage.getFoods();
     }
     
     /**
@@ -44,60 +80,22 @@ public class CalorieNutrientTrackingService {
             return false;
         }
         
-        try (Connection conn = DatabaseHelper.getConnection()) {
+        try {
             // Get user id
-            int userId = getUserId(conn, username);
+            int userId = users.findId(username);
             if (userId == -1) {
                 return false; // User not found
             }
             
-            // Check if user already has nutrition goals
-            boolean hasGoals = false;
-            int goalId = -1;
-            
-            try (PreparedStatement checkStmt = conn.prepareStatement(
-                    "SELECT id FROM nutrition_goals WHERE user_id = ?")) {
-                
-                checkStmt.setInt(1, userId);
-                ResultSet rs = checkStmt.executeQuery();
-                
-                if (rs.next()) {
-                    hasGoals = true;
-                    goalId = rs.getInt("id");
-                }
-            }
-            
-            // Insert or update goals
-            if (hasGoals) {
-                // Update existing goals
-                try (PreparedStatement updateStmt = conn.prepareStatement(
-                        "UPDATE nutrition_goals SET calorie_goal = ?, protein_goal = ?, carb_goal = ?, fat_goal = ? " +
-                        "WHERE id = ?")) {
-                    
-                    updateStmt.setInt(1, calorieGoal);
-                    updateStmt.setDouble(2, proteinGoal);
-                    updateStmt.setDouble(3, carbGoal);
-                    updateStmt.setDouble(4, fatGoal);
-                    updateStmt.setInt(5, goalId);
-                    
-                    int affectedRows = updateStmt.executeUpdate();
-                    return affectedRows > 0;
-                }
-            } else {
-                // Insert new goals
-                try (PreparedStatement insertStmt = conn.prepareStatement(
-                        "INSERT INTO nutrition_goals (user_id, calorie_goal, protein_goal, carb_goal, fat_goal) " +
-                        "VALUES (?, ?, ?, ?, ?)")) {
-                    
-                    insertStmt.setInt(1, userId);
-                    insertStmt.setInt(2, calorieGoal);
-                    insertStmt.setDouble(3, proteinGoal);
-                    insertStmt.setDouble(4, carbGoal);
-                    insertStmt.setDouble(5, fatGoal);
-                    
-                    int affectedRows = insertStmt.executeUpdate();
-                    return affectedRows > 0;
+            // Write-through, under the lock of the user so saves are cached in the order they are stored
+            AtomicLong version = goalVersion(userId);
+            synchronized (version) {
+                if (!users.saveNutritionGoals(userId, calorieGoal, proteinGoal, carbGoal, fatGoal)) {
+                    return false;
                 }
+                version.incrementAndGet();
+                goalCache.put(userId, new NutritionGoal(calorieGoal, proteinGoal, carbGoal, fatGoal));
+                return true;
             }
         } catch (SQLException e) {
             System.out.println("Nutrition goals could not be saved: " + e.getMessage());
@@ -105,61 +103,45 @@ public class CalorieNutrientTrackingService {
         }
     }
     
-    /**
-     * Helper method to get user ID by username
-     * 
-     * @param conn Database connection
-     * @param username Username to look up
-     * @return User ID or -1 if not found
-     * @throws SQLException If database error occurs
-     */
-    private int getUserId(Connection conn, String username) throws SQLException {
-        String sql = "SELECT id FROM users WHERE username = ?";
-        try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
-            pstmt.setString(1, username);
-            
-            ResultSet rs = pstmt.executeQuery();
-            if (rs.next()) {
-                return rs.getInt("id");
-            }
-        }
-        
-        return -1;
-    }
-    
     /**
      * Gets the nutrition goals for a user.
+     * @details The goals are read from the database on the first request for the user only.
+     *          The database is read outside the cache, and the goals are only cached if they
+     *          were not saved or cleared in the meantime.
      * 
      * @param username The username of the user
      * @return The user's nutrition goals or default goals if none are set
      */
     public NutritionGoal getNutritionGoals(String username) {
-        try (Connection conn = DatabaseHelper.getConnection()) {
+        try {
             // Get user id
-            int userId = getUserId(conn, username);
+            int userId = users.findId(username);
             if (userId == -1) {
                 return new NutritionGoal(2000, 50, 250, 70); // Default values for invalid user
             }
             
-            // Get nutrition goals
-            try (PreparedStatement pstmt = conn.prepareStatement(
-                    "SELECT * FROM nutrition_goals WHERE user_id = ?")) {
-                
-                pstmt.setInt(1, userId);
-                ResultSet rs = pstmt.executeQuery();
-                
-                if (rs.next()) {
-                    return new NutritionGoal(
-                        rs.getInt("calorie_goal"),
-                        rs.getDouble("protein_goal"),
-                        rs.getDouble("carb_goal"),
-                        rs.getDouble("fat_goal")
-                    );
-                }
+            NutritionGoal cached = goalCache.get(userId);
+            if (cached != null) {
+                goalCacheHits.incrementAndGet();
+                return cached;
             }
             
-            // Return default goals if none are set
-            return new NutritionGoal(2000, 50, 250, 70);
+            goalCacheMisses.incrementAndGet();
+            AtomicLong version = goalVersion(userId);
+            long savedGoals = version.get();
+            long clears = goalCacheClears.get();
+            NutritionGoal stored = users.findNutritionGoals(userId, NutritionGoal::new);
+            // Default goals if none are set
+            NutritionGoal goals = stored != null ? stored : new NutritionGoal(2000, 50, 250, 70);
+            
+            // Only cache the goals if no save or clear happened since they were read
+            synchronized (version) {
+                if (version.get() == savedGoals && goalCacheClears.get() == clears) {
+                    NutritionGoal current = goalCache.putIfAbsent(userId, goals);
+                    return current != null ? current : goals;
+                }
+            }
+            return goals;
             
         } catch (SQLException e) {
             System.out.println("Nutrition goals could not be retrieved: " + e.getMessage());
@@ -167,6 +149,51 @@ public class CalorieNutrientTrackingService {
         }
     }
     
+    /**
+     * Removes all cached goals, so they are read from the database again.
+     */
+    public void clearGoalCache() {
+        goalCacheClears.incrementAndGet();
+        goalCache.clear();
+    }
+    
+    /**
+     * Gets the save counter of a user, which is also the lock of the user's goals.
+     * 
+     * @param userId The ID of the user
+     * @return The save counter of the user
+     */
+    private AtomicLong goalVersion(int userId) {
+        return goalVersions.computeIfAbsent(userId, id -> new AtomicLong());
+    }
+    
+    /**
+     * Gets the number of users whose goals are cached.
+     * 
+     * @return The number of cached goals
+     */
+    public int getGoalCacheSize() {
+        return goalCache.size();
+    }
+    
+    /**
+     * Gets the number of goal lookups answered from the cache.
+     * 
+     * @return The number of hits
+     */
+    public long getGoalCacheHits() {
+        return goalCacheHits.get();
+    }
+    
+    /**
+     * Gets the number of goal lookups that read the database.
+     * 
+     * @return The number of misses
+     */
+    public long getGoalCacheMisses() {
+        return goalCacheMisses.get();
+    }
+    
     /**
      * Generates a nutrition report for a specific date.
      * 
@@ -185,51 +212,35 @@ public class CalorieNutrientTrackingService {
             );
         }
         
-        List<Food> foods = mealPlanningService.getFoodLog(username, date);
-        
-        int totalCalories = 0;
-        double totalProtein = 0;
-        double totalCarbs = 0;
-        double totalFat = 0;
-        double totalFiber = 0;
-        double totalSugar = 0;
-        double totalSodium = 0;
-        
-        // Calculate totals for the day
-        for (Food food : foods) {
-            totalCalories += food.getCalories();
-            
-            // If the food has detailed nutrients (is a FoodNutrient)
-            if (food instanceof FoodNutrient) {
-                FoodNutrient foodNutrient = (FoodNutrient) food;
-                totalProtein += foodNutrient.getProtein();
-                totalCarbs += foodNutrient.getCarbs();
-                totalFat += foodNutrient.getFat();
-                totalFiber += foodNutrient.getFiber();
-                totalSugar += foodNutrient.getSugar();
-                totalSodium += foodNutrient.getSodium();
-            }
-        }
-        
-        // Get user's nutrition goals
-        NutritionGoal goals = getNutritionGoals(username);
-        
-        // Create nutrition report
+        return createReport(mealPlanningService.getDailyTotals(username, date), getNutritionGoals(username));
+    }
+    
+    /**
+     * Creates the report of the totals of a date.
+     * 
+     * @param totals The calories and nutrients logged on the date
+     * @param goals The user's nutrition goals
+     * @return A NutritionReport object containing the nutrition summary
+     */
+    private NutritionReport createReport(DailyNutritionTotals totals, NutritionGoal goals) {
         return new NutritionReport(
-            date,
-            totalCalories,
-            totalProtein,
-            totalCarbs,
-            totalFat,
-            totalFiber,
-            totalSugar,
-            totalSodium,
+            totals.getDate(),
+            totals.getCalories(),
+            totals.getProtein(),
+            totals.getCarbs(),
+            totals.getFat(),
+            totals.getFiber(),
+            totals.getSugar(),
+            totals.getSodium(),
             goals
         );
     }
     
     /**
      * Gets a weekly nutrition report.
+     * @details The user and goals are looked up once and the daily totals of all dates are
+     *          read together: consecutive days with a single range query, other dates with a
+     *          single query listing them.
      * 
      * @param username The username of the user
      * @param dates An array of dates to include in the report
@@ -243,15 +254,88 @@ public class CalorieNutrientTrackingService {
             return reports; // Return empty list
         }
         
+        List<String> validDates = new ArrayList<>();
         for (String date : dates) {
             if (date != null && !date.trim().isEmpty()) {
-                reports.add(getNutritionReport(username, date));
+                validDates.add(date);
             }
         }
+        if (validDates.isEmpty()) {
+            return reports;
+        }
+        
+        Map<String, DailyNutritionTotals> totals = mealPlanningService.getDailyTotalsForDates(username, validDates);
+        NutritionGoal goals = getNutritionGoals(username);
+        for (String date : validDates) {
+            DailyNutritionTotals dayTotals = totals.get(date);
+            reports.add(createReport(dayTotals != null ? dayTotals
+                : DailyNutritionTotals.of(date, new ArrayList<>()), goals));
+        }
         
         return reports;
     }
     
+    /**
+     * Gets a nutrition report for every day of a month.
+     * 
+     * @param username The username of the user
+     * @param year The year
+     * @param month The month (between 1 and 12)
+     * @return A list of NutritionReport objects for each day in date order; empty if the
+     *         month is invalid
+     */
+    public List<NutritionReport> getMonthlyReport(String username, int year, int month) {
+        if (month < 1 || month > 12) {
+            return new ArrayList<>();
+        }
+        YearMonth yearMonth = YearMonth.of(year, month);
+        String[] dates = new String[yearMonth.lengthOfMonth()];
+        for (int day = 1; day <= dates.length; day++) {
+            dates[day - 1] = yearMonth.atDay(day).toString();
+        }
+        return getWeeklyReport(username, dates);
+    }
+    
+    /**
+     * Gets the rolling averages, goal adherence and calorie streaks of a date range.
+     * @details The daily totals of the range, and of the days before it that the longest
+     *          rolling window reaches back to, are read with a single range query and
+     *          analyzed in one pass, so a year of trends needs no per-day reads.
+     * 
+     * @param username The username of the user
+     * @param fromDate The first date in format YYYY-MM-DD
+     * @param toDate The last date in format YYYY-MM-DD
+     * @return The trends of each day of the range; without days if a date is invalid, the
+     *         range is reversed or the totals cannot be read
+     */
+    public NutritionTrends getTrends(String username, String fromDate, String toDate) {
+        NutritionTrends none = new NutritionTrends(new ArrayList<>(), 0, 0, 0, 0, 0);
+        if (username == null || username.trim().isEmpty() || fromDate == null || toDate == null) {
+            return none;
+        }
+        
+        LocalDate first;
+        LocalDate last;
+        try {
+            first = LocalDate.parse(fromDate);
+            last = LocalDate.parse(toDate);
+        } catch (DateTimeParseException e) {
+            return none; // Invalid dates
+        }
+        if (first.isAfter(last)) {
+            return none;
+        }
+        
+        int lookback = NutritionTrends.WINDOWS[NutritionTrends.WINDOWS.length - 1] - 1;
+        Map<String, DailyNutritionTotals> totals = mealPlanningService.getDailyTotalsRange(username,
+            first.minusDays(lookback).toString(), last.toString());
+        if (totals.isEmpty()) {
+            return none; // The totals could not be read
+        }
+        return NutritionTrends.analyze(new ArrayList<>(totals.values()), lookback,
+            getNutritionGoals(username).getCalorieGoal());
+    }
+    
     /**
      * Calculates a suggested daily calorie intake based on user information.
      * 
@@ -319,29 +403,8 @@ public class CalorieNutrientTrackingService {
         // Try to get from database first
         List<FoodNutrient> commonFoods = new ArrayList<>();
         
-        try (Connection conn = DatabaseHelper.getConnection();
-             PreparedStatement pstmt = conn.prepareStatement(
-                 "SELECT f.id, f.name, f.grams, f.calories, fn.protein, fn.carbs, fn.fat, " +
-                 "fn.fiber, fn.sugar, fn.sodium FROM foods f " +
-                 "JOIN food_nutrients fn ON f.id = fn.food_id " +
-                 "LIMIT 15")) {
-            
-            ResultSet rs = pstmt.executeQuery();
-            
-            while (rs.next()) {
-                commonFoods.add(new FoodNutrient(
-                    rs.getString("name"),
-                    rs.getDouble("grams"),
-                    rs.getInt("calories"),
-                    rs.getDouble("protein"),
-                    rs.getDouble("carbs"),
-                    rs.getDouble("fat"),
-                    rs.getDouble("fiber"),
-                    rs.getDouble("sugar"),
-                    rs.getDouble("sodium")
-                ));
-            }
-            
+        try {
+            commonFoods = foods.findWithNutrients(15);
         } catch (SQLException e) {
             System.out.println("Common foods could not be retrieved: " + e.getMessage());
         }
@@ -373,9 +436,9 @@ public class CalorieNutrientTrackingService {
         };
         
         // Save these to the database for future use
-        try (Connection conn = DatabaseHelper.getConnection()) {
+        try {
             for (FoodNutrient food : defaultFoods) {
-                DatabaseHelper.saveFoodAndGetId(food);
+                foods.save(food);
             }
         } catch (SQLException e) {
             System.out.println("Common foods could not be saved to database: " + e.getMessage());
@@ -386,17 +449,18 @@ public class CalorieNutrientTrackingService {
     
     /**
      * Inner class to represent a user's nutrition goals.
-     * @details Contains daily targets for calories and macronutrients.
+     * @details Contains daily targets for calories and macronutrients. Goals cannot be
+     *          changed once created, so the cached goals are shared by all reports.
      */
     public class NutritionGoal {
         /** The daily calorie goal */
-        private int calorieGoal;
+        private final int calorieGoal;
         /** The daily protein goal in grams */
-        private double proteinGoal;
+        private final double proteinGoal;
         /** The daily carbohydrate goal in grams */
-        private double carbGoal;
+        private final double carbGoal;
         /** The daily fat goal in grams */
-        private double fatGoal;
+        private final double fatGoal;
         
         /**
          * Constructor for NutritionGoal class.
@@ -0,0 +1,377 @@
+package com.berkant.kagan.haluk.irem.dietapp;
+
+import java.io.File;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * This class checkpoints the SQLite write-ahead log in the background.
+ * @details SQLite's automatic checkpoints never shrink the WAL file, so under sustained
+ *          logging it keeps its largest size. The scheduler runs on its own connection every
+ *          interval. When another connection committed since the last run (PRAGMA data_version
+ *          changed) the database is under load and a PASSIVE checkpoint copies what it can
+ *          without blocking anyone. When nothing was committed the database is idle and a
+ *          TRUNCATE checkpoint resets the WAL file to zero bytes.
+ * @author berkant
+ */
+public class CheckpointScheduler {
+
+    /** Checkpoint modes used by the scheduler */
+    public enum Mode {
+        /** Copies as many frames as possible without waiting for readers or writers */
+        PASSIVE,
+        /** Waits for writers, copies all frames and truncates the WAL file */
+        TRUNCATE
+    }
+
+    /** The name used for the scheduler thread */
+    private final String name;
+    /** Opens the connection the checkpoints run on */
+    private final ConnectionPool.ConnectionFactory factory;
+    /** The WAL file of the database */
+    private final File walFile;
+    /** Time between checkpoints in milliseconds */
+    private final long intervalMillis;
+
+    /** The connection the checkpoints run on; guarded by this */
+    private Connection connection;
+    /** The data version seen by the last run; guarded by this */
+    private long lastDataVersion = -1;
+    /** The scheduler thread, or null when stopped */
+    private ScheduledExecutorService executor;
+
+    private final AtomicLong passiveCheckpoints = new AtomicLong();
+    private final AtomicLong truncateCheckpoints = new AtomicLong();
+    private final AtomicLong busyCheckpoints = new AtomicLong();
+    private final AtomicLong failedCheckpoints = new AtomicLong();
+    private final AtomicLong framesCheckpointed = new AtomicLong();
+    private final AtomicLong totalDurationNanos = new AtomicLong();
+    private final AtomicLong lastDurationNanos = new AtomicLong();
+    private final AtomicLong maxWalBytes = new AtomicLong();
+
+    /**
+     * Constructor for CheckpointScheduler class.
+     *
+     * @param name The name used for the scheduler thread
+     * @param factory Opens the connection the checkpoints run on
+     * @param databasePath The path of the database file
+     * @param intervalMillis Time between checkpoints in milliseconds
+     */
+    public CheckpointScheduler(String name, ConnectionPool.ConnectionFactory factory, String databasePath,
+                               long intervalMillis) {
+        if (intervalMillis < 1) {
+            throw new IllegalArgumentException("Checkpoint interval must be positive");
+        }
+        this.name = name;
+        this.factory = factory;
+        this.walFile = new File(databasePath + "-wal");
+        this.intervalMillis = intervalMillis;
+    }
+
+    /**
+     * Starts the background checkpoints if they are not running yet.
+     */
+    public synchronized void start() {
+        if (executor != null) {
+            return;
+        }
+        executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "dietapp-checkpoint-" + name);
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.scheduleWithFixedDelay(this::runScheduled, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stops the background checkpoints and closes the checkpoint connection.
+     */
+    public void stop() {
+        ScheduledExecutorService running;
+        synchronized (this) {
+            running = executor;
+            executor = null;
+        }
+        if (running != null) {
+            running.shutdown();
+            try {
+                running.awaitTermination(intervalMillis + 5000, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        synchronized (this) {
+            closeConnection();
+            lastDataVersion = -1;
+        }
+    }
+
+    /**
+     * Checks whether the background checkpoints are running.
+     *
+     * @return true if the scheduler is started
+     */
+    public synchronized boolean isRunning() {
+        return executor != null;
+    }
+
+    /**
+     * Runs one scheduled checkpoint, choosing the mode from the write activity.
+     *
+     * @return The mode that was run, or null if there was nothing to checkpoint
+     */
+    public synchronized Mode runOnce() {
+        try {
+            long dataVersion = queryLong(openConnection(), "PRAGMA data_version");
+            boolean loaded = dataVersion != lastDataVersion;
+            lastDataVersion = dataVersion;
+
+            if (loaded) {
+                checkpoint(Mode.PASSIVE);
+                return Mode.PASSIVE;
+            }
+            if (walFile.length() > 0) {
+                checkpoint(Mode.TRUNCATE);
+                return Mode.TRUNCATE;
+            }
+            recordWalSize();
+            return null;
+        } catch (SQLException e) {
+            failedCheckpoints.incrementAndGet();
+            System.out.println("Checkpoint failed: " + e.getMessage());
+            closeConnection();
+            return null;
+        }
+    }
+
+    /**
+     * Runs a checkpoint in the given mode.
+     *
+     * @param mode The checkpoint mode
+     * @return true if the checkpoint completed, false if it was blocked by readers or writers
+     * @throws SQLException If the checkpoint cannot be run
+     */
+    public synchronized boolean checkpoint(Mode mode) throws SQLException {
+        Connection conn = openConnection();
+        recordWalSize();
+        long start = System.nanoTime();
+        boolean completed;
+        try (Statement statement = conn.createStatement();
+             ResultSet rs = statement.executeQuery("PRAGMA wal_checkpoint(" + mode.name() + ")")) {
+            // Columns: busy flag, frames in the WAL, frames checkpointed
+            completed = false;
+            if (rs.next()) {
+                completed = rs.getInt(1) == 0;
+                framesCheckpointed.addAndGet(Math.max(0, rs.getInt(3)));
+            }
+        }
+        long duration = System.nanoTime() - start;
+
+        lastDurationNanos.set(duration);
+        totalDurationNanos.addAndGet(duration);
+        (mode == Mode.PASSIVE ? passiveCheckpoints : truncateCheckpoints).incrementAndGet();
+        if (!completed) {
+            busyCheckpoints.incrementAndGet();
+        }
+        recordWalSize();
+        return completed;
+    }
+
+    /**
+     * Gets a snapshot of the checkpoint metrics.
+     *
+     * @return The current checkpoint metrics
+     */
+    public CheckpointMetrics getMetrics() {
+        return new CheckpointMetrics(passiveCheckpoints.get(), truncateCheckpoints.get(), busyCheckpoints.get(),
+            failedCheckpoints.get(), framesCheckpointed.get(), lastDurationNanos.get() / 1e6,
+            totalDurationNanos.get() / 1e6, walFile.length(), maxWalBytes.get());
+    }
+
+    /**
+     * Runs a scheduled checkpoint, keeping the scheduler alive on unexpected errors.
+     */
+    private void runScheduled() {
+        try {
+            runOnce();
+        } catch (RuntimeException e) {
+            failedCheckpoints.incrementAndGet();
+            System.out.println("Checkpoint failed: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Records the largest WAL file size.
+     */
+    private void recordWalSize() {
+        long size = walFile.length();
+        long max;
+        while (size > (max = maxWalBytes.get())) {
+            if (maxWalBytes.compareAndSet(max, size)) {
+                break;
+            }
+        }
+    }
+
+    /**
+     * Opens the checkpoint connection on first use.
+     *
+     * @return The checkpoint connection
+     * @throws SQLException If the connection cannot be opened
+     */
+    private Connection openConnection() throws SQLException {
+        if (connection == null || connection.isClosed()) {
+            connection = factory.create();
+        }
+        return connection;
+    }
+
+    /**
+     * Closes the checkpoint connection, ignoring errors.
+     */
+    private void closeConnection() {
+        if (connection != null) {
+            try {
+                connection.close();
+            } catch (SQLException e) {
+                // Nothing left to do with a broken connection
+            }
+            connection = null;
+        }
+    }
+
+    private static long queryLong(Connection conn, String sql) throws SQLException {
+        try (Statement statement = conn.createStatement(); ResultSet rs = statement.executeQuery(sql)) {
+            return rs.next() ? rs.getLong(1) : 0;
+        }
+    }
+
+    /**
+     * Immutable snapshot of the checkpoint statistics.
+     */
+    public static class CheckpointMetrics {
+        private final long passiveCheckpoints;
+        private final long truncateCheckpoints;
+        private final long busyCheckpoints;
+        private final long failedCheckpoints;
+        private final long framesCheckpointed;
+        private final double lastDurationMillis;
+        private final double totalDurationMillis;
+        private final long walBytes;
+        private final long maxWalBytes;
+
+        /**
+         * Constructor for CheckpointMetrics class.
+         *
+         * @param passiveCheckpoints Number of PASSIVE checkpoints
+         * @param truncateCheckpoints Number of TRUNCATE checkpoints
+         * @param busyCheckpoints Number of checkpoints that could not finish
+         * @param failedCheckpoints Number of checkpoints that failed with an error
+         * @param framesCheckpointed Total number of WAL frames copied into the database
+         * @param lastDurationMillis Duration of the last checkpoint in milliseconds
+         * @param totalDurationMillis Total duration of all checkpoints in milliseconds
+         * @param walBytes Current size of the WAL file in bytes
+         * @param maxWalBytes Largest WAL file size seen in bytes
+         */
+        public CheckpointMetrics(long passiveCheckpoints, long truncateCheckpoints, long busyCheckpoints,
+                                 long failedCheckpoints, long framesCheckpointed, double lastDurationMillis,
+                                 double totalDurationMillis, long walBytes, long maxWalBytes) {
+            this.passiveCheckpoints = passiveCheckpoints;
+            this.truncateCheckpoints = truncateCheckpoints;
+            this.busyCheckpoints = busyCheckpoints;
+            this.failedCheckpoints = failedCheckpoints;
+            this.framesCheckpointed = framesCheckpointed;
+            this.lastDurationMillis = lastDurationMillis;
+            this.totalDurationMillis = totalDurationMillis;
+            this.walBytes = walBytes;
+            this.maxWalBytes = maxWalBytes;
+        }
+
+        /**
+         * Gets the number of PASSIVE checkpoints.
+         * @return The number of PASSIVE checkpoints
+         */
+        public long getPassiveCheckpoints() {
+            return passiveCheckpoints;
+        }
+
+        /**
+         * Gets the number of TRUNCATE checkpoints.
+         * @return The number of TRUNCATE checkpoints
+         */
+        public long getTruncateCheckpoints() {
+            return truncateCheckpoints;
+        }
+
+        /**
+         * Gets the number of checkpoints that were blocked by readers or writers.
+         * @return The number of busy checkpoints
+         */
+        public long getBusyCheckpoints() {
+            return busyCheckpoints;
+        }
+
+        /**
+         * Gets the number of checkpoints that failed with an error.
+         * @return The number of failed checkpoints
+         */
+        public long getFailedCheckpoints() {
+            return failedCheckpoints;
+        }
+
+        /**
+         * Gets the total number of WAL frames copied into the database.
+         * @return The number of checkpointed frames
+         */
+        public long getFramesCheckpointed() {
+            return framesCheckpointed;
+        }
+
+        /**
+         * Gets the duration of the last checkpoint.
+         * @return The duration in milliseconds
+         */
+        public double getLastDurationMillis() {
+            return lastDurationMillis;
+        }
+
+        /**
+         * Gets the average duration of the checkpoints.
+         * @return The average duration in milliseconds
+         */
+        public double getAverageDurationMillis() {
+            long count = passiveCheckpoints + truncateCheckpoints;
+            return count == 0 ? 0.0 : totalDurationMillis / count;
+        }
+
+        /**
+         * Gets the current size of the WAL file.
+         * @return The size in bytes
+         */
+        public long getWalBytes() {
+            return walBytes;
+        }
+
+        /**
+         * Gets the largest WAL file size seen by the checkpoints.
+         * @return The size in bytes
+         */
+        public long getMaxWalBytes() {
+            return maxWalBytes;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("Checkpoints: passive=%d, truncate=%d, busy=%d, failed=%d, frames=%d, " +
+                "lastDuration=%.2fms, avgDuration=%.2fms, wal=%d bytes, maxWal=%d bytes",
+                passiveCheckpoints, truncateCheckpoints, busyCheckpoints, failedCheckpoints, framesCheckpointed,
+                lastDurationMillis, getAverageDurationMillis(), walBytes, maxWalBytes);
+        }
+    }
+}
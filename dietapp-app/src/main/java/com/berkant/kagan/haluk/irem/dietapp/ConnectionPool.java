@@ -0,0 +1,889 @@
+package com.berkant.kagan.haluk.irem.dietapp;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * This class implements a bounded JDBC connection pool for the Diet Planner application.
+ * @details Idle connections are kept in a lock-free deque and checked-out connections are
+ *          tracked in a concurrent map, so borrowing and returning never serialize callers on
+ *          a shared monitor. The number of connections that may be checked out at the same time
+ *          is bounded by a fair semaphore; callers wait up to a configurable timeout for a free
+ *          slot. Callers receive a PooledConnection handle whose close() returns the connection
+ *          to the pool; each physical connection keeps a StatementCache of its prepared
+ *          statements for as long as it lives. Idle connections are evicted after a
+ *          configurable idle period, validated before they are handed out, and connections
+ *          held for too long are reported together with the thread that borrowed them. The
+ *          stack trace of the borrowing code is only captured, on every borrow, when the
+ *          dietapp.pool.leak_traces system property is true.
+ * @author berkant
+ */
+public class ConnectionPool {
+    /** Default time to wait for a free connection in milliseconds */
+    public static final long DEFAULT_BORROW_TIMEOUT_MILLIS = 10000;
+    /** Default time an idle connection is kept before it is closed in milliseconds */
+    public static final long DEFAULT_IDLE_TIMEOUT_MILLIS = 300000;
+    /** System property that makes every borrow capture a stack trace for the leak reports */
+    public static final String LEAK_TRACES_PROPERTY = "dietapp.pool.leak_traces";
+    /** Default time a connection may be held before it is reported as a leak in milliseconds */
+    public static final long DEFAULT_LEAK_THRESHOLD_MILLIS = 60000;
+    /** Interval of the background eviction and leak detection task in milliseconds */
+    private static final long MAINTENANCE_INTERVAL_MILLIS = 30000;
+    /** Timeout passed to Connection.isValid when validating on borrow, in seconds */
+    private static final int VALIDATION_TIMEOUT_SECONDS = 1;
+
+    /**
+     * Factory used by the pool to open new physical connections.
+     */
+    public interface ConnectionFactory {
+        /**
+         * Opens a new physical database connection.
+         *
+         * @return The new connection
+         * @throws SQLException If the connection cannot be opened
+         */
+        Connection create() throws SQLException;
+    }
+
+    /** The name of the pool, used in messages and metrics */
+    private final String name;
+    /** The maximum number of connections that can be checked out at the same time */
+    private final int maxSize;
+    /** The factory that opens physical connections */
+    private final ConnectionFactory factory;
+    /** Time to wait for a free connection in milliseconds */
+    private final long borrowTimeoutMillis;
+    /** Time an idle connection is kept before it is closed in milliseconds */
+    private final long idleTimeoutMillis;
+    /** Time a connection may be held before it is reported as a leak in milliseconds */
+    private final long leakThresholdMillis;
+    /** Maximum number of cached prepared statements per physical connection */
+    private final int statementCacheSize;
+    /** Whether every borrow captures a stack trace for the leak reports */
+    private final boolean leakTraces;
+
+    /** Idle connections, most recently returned first */
+    private final ConcurrentLinkedDeque<PooledEntry> idle = new ConcurrentLinkedDeque<>();
+    /** Number of entries in the idle deque (the deque's own size() is not constant time) */
+    private final AtomicInteger idleCount = new AtomicInteger();
+    /** Connections that are currently checked out, keyed by the handle given to the caller */
+    private final Map<Connection, PooledEntry> borrowed = new ConcurrentHashMap<>();
+    /** Permits for checked-out connections; replaced when the pool is closed and reused */
+    private volatile Semaphore permits;
+
+    /** Background task that evicts idle connections and reports leaks */
+    private volatile ScheduledExecutorService maintenance;
+
+    /** Number of successful borrows */
+    private final AtomicLong borrowCount = new AtomicLong();
+    /** Number of borrows that timed out */
+    private final AtomicLong timeoutCount = new AtomicLong();
+    /** Total time spent waiting for a permit in nanoseconds */
+    private final AtomicLong totalWaitNanos = new AtomicLong();
+    /** Longest time spent waiting for a permit in nanoseconds */
+    private final AtomicLong maxWaitNanos = new AtomicLong();
+    /** Number of physical connections opened */
+    private final AtomicLong createdCount = new AtomicLong();
+    /** Number of physical connections closed by the pool */
+    private final AtomicLong destroyedCount = new AtomicLong();
+    /** Number of idle connections closed because they were idle for too long */
+    private final AtomicLong evictedCount = new AtomicLong();
+    /** Number of connections discarded because validation failed */
+    private final AtomicLong validationFailureCount = new AtomicLong();
+    /** Number of leaks reported */
+    private final AtomicLong leakCount = new AtomicLong();
+    /** Number of closed connections reclaimed from callers that never returned them */
+    private final AtomicLong reclaimedCount = new AtomicLong();
+    /** Number of prepared statements served from a statement cache */
+    private final AtomicLong statementCacheHits = new AtomicLong();
+    /** Number of prepared statements that had to be compiled */
+    private final AtomicLong statementCacheMisses = new AtomicLong();
+    /** Number of prepared statements evicted from a statement cache */
+    private final AtomicLong statementCacheEvictions = new AtomicLong();
+
+    /**
+     * Constructor for ConnectionPool class using the default timeouts.
+     *
+     * @param name The name of the pool
+     * @param maxSize The maximum number of connections checked out at the same time
+     * @param factory The factory that opens physical connections
+     */
+    public ConnectionPool(String name, int maxSize, ConnectionFactory factory) {
+        this(name, maxSize, factory, DEFAULT_BORROW_TIMEOUT_MILLIS,
+             DEFAULT_IDLE_TIMEOUT_MILLIS, DEFAULT_LEAK_THRESHOLD_MILLIS);
+    }
+
+    /**
+     * Constructor for ConnectionPool class.
+     *
+     * @param name The name of the pool
+     * @param maxSize The maximum number of connections checked out at the same time
+     * @param factory The factory that opens physical connections
+     * @param borrowTimeoutMillis Time to wait for a free connection in milliseconds
+     * @param idleTimeoutMillis Time an idle connection is kept in milliseconds
+     * @param leakThresholdMillis Time a connection may be held before it is reported in milliseconds
+     */
+    public ConnectionPool(String name, int maxSize, ConnectionFactory factory,
+                          long borrowTimeoutMillis, long idleTimeoutMillis, long leakThresholdMillis) {
+        this(name, maxSize, factory, borrowTimeoutMillis, idleTimeoutMillis, leakThresholdMillis,
+             StatementCache.DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Constructor for ConnectionPool class with a custom statement cache size.
+     *
+     * @param name The name of the pool
+     * @param maxSize The maximum number of connections checked out at the same time
+     * @param factory The factory that opens physical connections
+     * @param borrowTimeoutMillis Time to wait for a free connection in milliseconds
+     * @param idleTimeoutMillis Time an idle connection is kept in milliseconds
+     * @param leakThresholdMillis Time a connection may be held before it is reported in milliseconds
+     * @param statementCacheSize Maximum number of cached prepared statements per connection; 0 disables caching
+     */
+    public ConnectionPool(String name, int maxSize, ConnectionFactory factory,
+                          long borrowTimeoutMillis, long idleTimeoutMillis, long leakThresholdMillis,
+                          int statementCacheSize) {
+        if (maxSize < 1) {
+            throw new IllegalArgumentException("Pool size must be at least 1");
+        }
+        if (factory == null) {
+            throw new IllegalArgumentException("Connection factory cannot be null");
+        }
+        this.name = name != null ? name : "pool";
+        this.maxSize = maxSize;
+        this.factory = factory;
+        this.borrowTimeoutMillis = Math.max(0, borrowTimeoutMillis);
+        this.idleTimeoutMillis = Math.max(0, idleTimeoutMillis);
+        this.leakThresholdMillis = Math.max(0, leakThresholdMillis);
+        this.statementCacheSize = Math.max(0, statementCacheSize);
+        this.leakTraces = Boolean.getBoolean(LEAK_TRACES_PROPERTY);
+        this.permits = new Semaphore(maxSize, true);
+    }
+
+    /**
+     * Gets the name of the pool.
+     *
+     * @return The pool name
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Gets the maximum number of connections that can be checked out at the same time.
+     *
+     * @return The maximum pool size
+     */
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    /**
+     * Checks out a connection, waiting up to the borrow timeout if the pool is exhausted.
+     *
+     * @return A pooled handle for a validated connection; closing it returns the connection
+     * @throws SQLException If no connection becomes available in time or a new one cannot be opened
+     */
+    public Connection borrow() throws SQLException {
+        startMaintenance();
+
+        long start = System.nanoTime();
+        Semaphore semaphore = permits;
+        if (!semaphore.tryAcquire()) {
+            // Callers that closed their connection instead of returning it still hold a permit
+            reclaimAbandoned();
+            semaphore = permits;
+            try {
+                if (!semaphore.tryAcquire(borrowTimeoutMillis, TimeUnit.MILLISECONDS)) {
+                    timeoutCount.incrementAndGet();
+                    throw new SQLException("Timed out after " + borrowTimeoutMillis
+                        + " ms waiting for a connection from pool '" + name + "'");
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new SQLException("Interrupted while waiting for a connection from pool '" + name + "'", e);
+            }
+        }
+        recordWait(System.nanoTime() - start);
+
+        try {
+            PooledEntry entry = takeIdle();
+            if (entry == null) {
+                entry = newEntry(factory.create());
+                createdCount.incrementAndGet();
+            }
+            Connection handle = entry.markBorrowed(this, semaphore, leakTraces);
+            borrowed.put(handle, entry);
+            borrowCount.incrementAndGet();
+            return handle;
+        } catch (SQLException | RuntimeException e) {
+            semaphore.release();
+            throw e;
+        }
+    }
+
+    /**
+     * Checks whether a connection handle is currently borrowed from this pool.
+     *
+     * @param conn The connection handle
+     * @return true if the handle was borrowed from this pool and not yet returned
+     */
+    public boolean isBorrowed(Connection conn) {
+        return conn != null && borrowed.containsKey(conn);
+    }
+
+    /**
+     * Returns a connection to the pool.
+     * @details The connection is reset before it becomes idle again: statements left open are
+     *          closed, an unfinished transaction is rolled back and auto-commit is restored.
+     *          Closed connections are discarded. Connections that were not borrowed from this
+     *          pool are adopted as idle connections while there is room for them.
+     *
+     * @param conn The connection handle to return
+     */
+    public void release(Connection conn) {
+        if (conn == null) {
+            return;
+        }
+
+        PooledEntry entry = borrowed.remove(conn);
+        if (entry == null) {
+            adopt(conn);
+            return;
+        }
+
+        Semaphore semaphore = entry.semaphore;
+        boolean reusable = entry.handler.detach();
+        entry.markReturned();
+        try {
+            if (!reusable || semaphore != permits || idleCount.get() >= maxSize) {
+                destroy(entry);
+            } else {
+                idle.offerFirst(entry);
+                idleCount.incrementAndGet();
+            }
+        } finally {
+            semaphore.release();
+        }
+    }
+
+    /**
+     * Closes all idle connections and starts a new generation of permits.
+     * @details Connections that are checked out when this method is called stay usable by
+     *          their holders. They no longer count against the pool size and are treated like
+     *          any other connection not borrowed from this pool when they are returned.
+     */
+    public void closeAll() {
+        permits = new Semaphore(maxSize, true);
+        borrowed.clear();
+
+        PooledEntry entry;
+        while ((entry = idle.pollFirst()) != null) {
+            idleCount.decrementAndGet();
+            destroy(entry);
+        }
+    }
+
+    /**
+     * Closes all connections and stops the background maintenance task.
+     */
+    public void shutdown() {
+        ScheduledExecutorService executor = maintenance;
+        maintenance = null;
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+        closeAll();
+    }
+
+    /**
+     * Closes idle connections that have not been used for longer than the idle timeout.
+     *
+     * @return The number of connections closed
+     */
+    public int evictIdle() {
+        int evicted = 0;
+        Iterator<PooledEntry> iterator = idle.iterator();
+        while (iterator.hasNext()) {
+            PooledEntry entry = iterator.next();
+            if (isExpired(entry) && idle.removeFirstOccurrence(entry)) {
+                idleCount.decrementAndGet();
+                evictedCount.incrementAndGet();
+                destroy(entry);
+                evicted++;
+            }
+        }
+        return evicted;
+    }
+
+    /**
+     * Reports connections that have been checked out for longer than the leak threshold.
+     * @details Each leak is reported once, together with the thread that borrowed the
+     *          connection and, if LEAK_TRACES_PROPERTY was true when the pool was created, the
+     *          stack trace of the borrowing code.
+     *
+     * @return The number of newly detected leaks
+     */
+    public int detectLeaks() {
+        int leaks = 0;
+        long now = System.nanoTime();
+        for (PooledEntry entry : borrowed.values()) {
+            long heldMillis = TimeUnit.NANOSECONDS.toMillis(now - entry.borrowedAt);
+            if (heldMillis >= leakThresholdMillis && !entry.leakReported) {
+                entry.leakReported = true;
+                leakCount.incrementAndGet();
+                leaks++;
+                System.out.println("Possible connection leak in pool '" + name + "': connection held for "
+                    + heldMillis + " ms by thread '" + entry.borrowThread + "'");
+                if (entry.borrowTrace != null) {
+                    entry.borrowTrace.printStackTrace(System.out);
+                }
+            }
+        }
+        return leaks;
+    }
+
+    /**
+     * Frees the permits of checked-out connections that their holders closed without returning.
+     *
+     * @return The number of connections reclaimed
+     */
+    public int reclaimAbandoned() {
+        int reclaimed = 0;
+        for (Map.Entry<Connection, PooledEntry> borrowedEntry : borrowed.entrySet()) {
+            if (isClosed(borrowedEntry.getKey()) && borrowed.remove(borrowedEntry.getKey(), borrowedEntry.getValue())) {
+                PooledEntry entry = borrowedEntry.getValue();
+                entry.handler.detach();
+                entry.markReturned();
+                entry.semaphore.release();
+                destroyedCount.incrementAndGet();
+                reclaimedCount.incrementAndGet();
+                reclaimed++;
+            }
+        }
+        return reclaimed;
+    }
+
+    /**
+     * Gets a snapshot of the pool metrics.
+     *
+     * @return The current pool metrics
+     */
+    public PoolMetrics getMetrics() {
+        long borrows = borrowCount.get();
+        return new PoolMetrics(
+            name,
+            maxSize,
+            borrowed.size(),
+            idleCount.get(),
+            permits.getQueueLength(),
+            borrows,
+            timeoutCount.get(),
+            borrows > 0 ? totalWaitNanos.get() / borrows : 0,
+            maxWaitNanos.get(),
+            createdCount.get(),
+            destroyedCount.get(),
+            evictedCount.get(),
+            validationFailureCount.get(),
+            leakCount.get(),
+            reclaimedCount.get(),
+            statementCacheHits.get(),
+            statementCacheMisses.get(),
+            statementCacheEvictions.get()
+        );
+    }
+
+    /**
+     * Takes the most recently returned idle connection that is still usable.
+     *
+     * @return A validated idle connection or null if none is available
+     */
+    private PooledEntry takeIdle() {
+        PooledEntry entry;
+        while ((entry = idle.pollFirst()) != null) {
+            idleCount.decrementAndGet();
+            if (isExpired(entry)) {
+                evictedCount.incrementAndGet();
+                destroy(entry);
+            } else if (!isValid(entry.connection)) {
+                validationFailureCount.incrementAndGet();
+                destroy(entry);
+            } else {
+                return entry;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Adds a connection that was not borrowed from this pool to the idle connections.
+     *
+     * @param conn The connection to adopt
+     */
+    private void adopt(Connection conn) {
+        if (isClosed(conn)) {
+            return;
+        }
+
+        Connection physical = conn;
+        PooledConnection handler = PooledConnection.handlerOf(conn);
+        if (handler != null) {
+            // A handle given out before the pool was last closed
+            physical = handler.getPhysicalConnection();
+            if (!handler.detach()) {
+                destroy(newEntry(physical));
+                return;
+            }
+        }
+
+        PooledEntry entry = newEntry(physical);
+        if (idleCount.incrementAndGet() <= maxSize) {
+            idle.offerFirst(entry);
+        } else {
+            idleCount.decrementAndGet();
+            destroy(entry);
+        }
+    }
+
+    /**
+     * Creates the bookkeeping entry for a physical connection.
+     *
+     * @param conn The physical connection
+     * @return The new entry
+     */
+    private PooledEntry newEntry(Connection conn) {
+        return new PooledEntry(conn, new StatementCache(conn, statementCacheSize,
+            statementCacheHits, statementCacheMisses, statementCacheEvictions));
+    }
+
+    /**
+     * Closes the physical connection of an entry.
+     *
+     * @param entry The entry to close
+     */
+    private void destroy(PooledEntry entry) {
+        destroyedCount.incrementAndGet();
+        entry.statementCache.closeAll();
+        try {
+            if (!entry.connection.isClosed()) {
+                entry.connection.close();
+            }
+        } catch (SQLException e) {
+            System.out.println("Could not close connection: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Checks whether an idle entry has been unused for longer than the idle timeout.
+     *
+     * @param entry The entry to check
+     * @return true if the entry should be evicted
+     */
+    private boolean isExpired(PooledEntry entry) {
+        return idleTimeoutMillis > 0
+            && TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - entry.returnedAt) >= idleTimeoutMillis;
+    }
+
+    /**
+     * Records the time a caller waited for a permit.
+     *
+     * @param waitNanos The wait time in nanoseconds
+     */
+    private void recordWait(long waitNanos) {
+        totalWaitNanos.addAndGet(waitNanos);
+        long max;
+        while (waitNanos > (max = maxWaitNanos.get())) {
+            if (maxWaitNanos.compareAndSet(max, waitNanos)) {
+                break;
+            }
+        }
+    }
+
+    /**
+     * Starts the background eviction and leak detection task on first use.
+     */
+    private void startMaintenance() {
+        if (maintenance != null) {
+            return;
+        }
+        synchronized (this) {
+            if (maintenance == null) {
+                ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                    Thread thread = new Thread(runnable, "dietapp-pool-" + name);
+                    thread.setDaemon(true);
+                    return thread;
+                });
+                executor.scheduleWithFixedDelay(() -> {
+                    evictIdle();
+                    detectLeaks();
+                }, MAINTENANCE_INTERVAL_MILLIS, MAINTENANCE_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+                maintenance = executor;
+            }
+        }
+    }
+
+    /**
+     * Checks whether a connection is closed, treating errors as closed.
+     *
+     * @param conn The connection to check
+     * @return true if the connection is closed or its state cannot be read
+     */
+    private static boolean isClosed(Connection conn) {
+        try {
+            return conn.isClosed();
+        } catch (SQLException e) {
+            return true;
+        }
+    }
+
+    /**
+     * Validates a connection before it is handed out.
+     *
+     * @param conn The connection to validate
+     * @return true if the connection is usable
+     */
+    private static boolean isValid(Connection conn) {
+        try {
+            return conn.isValid(VALIDATION_TIMEOUT_SECONDS);
+        } catch (SQLException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Bookkeeping for one physical connection managed by the pool.
+     */
+    private static class PooledEntry {
+        /** The physical connection */
+        private final Connection connection;
+        /** The prepared statement cache of the physical connection */
+        private final StatementCache statementCache;
+        /** The handler of the handle given to the current borrower */
+        private volatile PooledConnection handler;
+        /** The permit generation the current borrow was taken from */
+        private volatile Semaphore semaphore;
+        /** Time of the current borrow as returned by System.nanoTime() */
+        private volatile long borrowedAt;
+        /** Time of the last return as returned by System.nanoTime() */
+        private volatile long returnedAt;
+        /** Name of the thread that borrowed the connection */
+        private volatile String borrowThread;
+        /** Stack trace of the code that borrowed the connection, null unless leak traces are on */
+        private volatile Throwable borrowTrace;
+        /** Whether the current borrow has already been reported as a leak */
+        private volatile boolean leakReported;
+
+        /**
+         * Constructor for PooledEntry class.
+         *
+         * @param connection The physical connection
+         * @param statementCache The prepared statement cache of the physical connection
+         */
+        PooledEntry(Connection connection, StatementCache statementCache) {
+            this.connection = connection;
+            this.statementCache = statementCache;
+            this.returnedAt = System.nanoTime();
+        }
+
+        /**
+         * Records that the connection has been checked out and creates the borrower's handle.
+         *
+         * @param pool The pool the connection belongs to
+         * @param semaphore The permit generation the borrow was taken from
+         * @param trace Whether to capture the stack trace of the borrowing code
+         * @return The handle for the borrower
+         */
+        Connection markBorrowed(ConnectionPool pool, Semaphore semaphore, boolean trace) {
+            Connection handle = PooledConnection.wrap(pool, connection, statementCache);
+            this.handler = PooledConnection.handlerOf(handle);
+            this.semaphore = semaphore;
+            this.borrowedAt = System.nanoTime();
+            this.borrowThread = Thread.currentThread().getName();
+            this.borrowTrace = trace ? new Throwable("Connection borrowed here") : null;
+            this.leakReported = false;
+            return handle;
+        }
+
+        /**
+         * Records that the connection has been returned.
+         */
+        void markReturned() {
+            this.returnedAt = System.nanoTime();
+            this.borrowThread = null;
+            this.borrowTrace = null;
+            this.handler = null;
+        }
+    }
+
+    /**
+     * Immutable snapshot of the pool metrics.
+     * @details Contains the current number of active and idle connections together with
+     *          cumulative counters for borrows, wait times and connection lifecycle events.
+     */
+    public static class PoolMetrics {
+        /** The name of the pool */
+        private final String poolName;
+        /** The maximum number of connections checked out at the same time */
+        private final int maxSize;
+        /** The number of connections currently checked out */
+        private final int activeConnections;
+        /** The number of idle connections */
+        private final int idleConnections;
+        /** The number of threads waiting for a connection */
+        private final int waitingThreads;
+        /** The number of successful borrows */
+        private final long totalBorrows;
+        /** The number of borrows that timed out */
+        private final long totalTimeouts;
+        /** The average time spent waiting for a connection in nanoseconds */
+        private final long averageWaitNanos;
+        /** The longest time spent waiting for a connection in nanoseconds */
+        private final long maxWaitNanos;
+        /** The number of physical connections opened */
+        private final long connectionsCreated;
+        /** The number of physical connections closed */
+        private final long connectionsDestroyed;
+        /** The number of idle connections evicted */
+        private final long connectionsEvicted;
+        /** The number of connections that failed validation */
+        private final long validationFailures;
+        /** The number of leaks reported */
+        private final long leaksDetected;
+        /** The number of abandoned connections reclaimed */
+        private final long connectionsReclaimed;
+        /** The number of prepared statements served from a statement cache */
+        private final long statementCacheHits;
+        /** The number of prepared statements that had to be compiled */
+        private final long statementCacheMisses;
+        /** The number of prepared statements evicted from a statement cache */
+        private final long statementCacheEvictions;
+
+        /**
+         * Constructor for PoolMetrics class.
+         *
+         * @param poolName The name of the pool
+         * @param maxSize The maximum pool size
+         * @param activeConnections The number of connections checked out
+         * @param idleConnections The number of idle connections
+         * @param waitingThreads The number of threads waiting for a connection
+         * @param totalBorrows The number of successful borrows
+         * @param totalTimeouts The number of borrows that timed out
+         * @param averageWaitNanos The average wait time in nanoseconds
+         * @param maxWaitNanos The longest wait time in nanoseconds
+         * @param connectionsCreated The number of connections opened
+         * @param connectionsDestroyed The number of connections closed
+         * @param connectionsEvicted The number of idle connections evicted
+         * @param validationFailures The number of validation failures
+         * @param leaksDetected The number of leaks reported
+         * @param connectionsReclaimed The number of abandoned connections reclaimed
+         * @param statementCacheHits The number of statement cache hits
+         * @param statementCacheMisses The number of statement cache misses
+         * @param statementCacheEvictions The number of statements evicted from a cache
+         */
+        public PoolMetrics(String poolName, int maxSize, int activeConnections, int idleConnections,
+                           int waitingThreads, long totalBorrows, long totalTimeouts,
+                           long averageWaitNanos, long maxWaitNanos, long connectionsCreated,
+                           long connectionsDestroyed, long connectionsEvicted, long validationFailures,
+                           long leaksDetected, long connectionsReclaimed, long statementCacheHits,
+                           long statementCacheMisses, long statementCacheEvictions) {
+            this.poolName = poolName;
+            this.maxSize = maxSize;
+            this.activeConnections = activeConnections;
+            this.idleConnections = idleConnections;
+            this.waitingThreads = waitingThreads;
+            this.totalBorrows = totalBorrows;
+            this.totalTimeouts = totalTimeouts;
+            this.averageWaitNanos = averageWaitNanos;
+            this.maxWaitNanos = maxWaitNanos;
+            this.connectionsCreated = connectionsCreated;
+            this.connectionsDestroyed = connectionsDestroyed;
+            this.connectionsEvicted = connectionsEvicted;
+            this.validationFailures = validationFailures;
+            this.leaksDetected = leaksDetected;
+            this.connectionsReclaimed = connectionsReclaimed;
+            this.statementCacheHits = statementCacheHits;
+            this.statementCacheMisses = statementCacheMisses;
+            this.statementCacheEvictions = statementCacheEvictions;
+        }
+
+        /**
+         * Gets the name of the pool.
+         * @return The pool name
+         */
+        public String getPoolName() {
+            return poolName;
+        }
+
+        /**
+         * Gets the maximum number of connections checked out at the same time.
+         * @return The maximum pool size
+         */
+        public int getMaxSize() {
+            return maxSize;
+        }
+
+        /**
+         * Gets the number of connections currently checked out.
+         * @return The number of active connections
+         */
+        public int getActiveConnections() {
+            return activeConnections;
+        }
+
+        /**
+         * Gets the number of idle connections.
+         * @return The number of idle connections
+         */
+        public int getIdleConnections() {
+            return idleConnections;
+        }
+
+        /**
+         * Gets the number of threads waiting for a connection.
+         * @return The number of waiting threads
+         */
+        public int getWaitingThreads() {
+            return waitingThreads;
+        }
+
+        /**
+         * Gets the number of successful borrows.
+         * @return The number of borrows
+         */
+        public long getTotalBorrows() {
+            return totalBorrows;
+        }
+
+        /**
+         * Gets the number of borrows that timed out.
+         * @return The number of timeouts
+         */
+        public long getTotalTimeouts() {
+            return totalTimeouts;
+        }
+
+        /**
+         * Gets the average time spent waiting for a connection.
+         * @return The average wait time in milliseconds
+         */
+        public double getAverageWaitMillis() {
+            return averageWaitNanos / 1000000.0;
+        }
+
+        /**
+         * Gets the longest time spent waiting for a connection.
+         * @return The longest wait time in milliseconds
+         */
+        public double getMaxWaitMillis() {
+            return maxWaitNanos / 1000000.0;
+        }
+
+        /**
+         * Gets the number of physical connections opened.
+         * @return The number of connections created
+         */
+        public long getConnectionsCreated() {
+            return connectionsCreated;
+        }
+
+        /**
+         * Gets the number of physical connections closed.
+         * @return The number of connections destroyed
+         */
+        public long getConnectionsDestroyed() {
+            return connectionsDestroyed;
+        }
+
+        /**
+         * Gets the number of idle connections evicted.
+         * @return The number of evicted connections
+         */
+        public long getConnectionsEvicted() {
+            return connectionsEvicted;
+        }
+
+        /**
+         * Gets the number of connections that failed validation.
+         * @return The number of validation failures
+         */
+        public long getValidationFailures() {
+            return validationFailures;
+        }
+
+        /**
+         * Gets the number of leaks reported.
+         * @return The number of leaks
+         */
+        public long getLeaksDetected() {
+            return leaksDetected;
+        }
+
+        /**
+         * Gets the number of abandoned connections reclaimed.
+         * @return The number of reclaimed connections
+         */
+        public long getConnectionsReclaimed() {
+            return connectionsReclaimed;
+        }
+
+        /**
+         * Gets the number of prepared statements served from a statement cache.
+         * @return The number of statement cache hits
+         */
+        public long getStatementCacheHits() {
+            return statementCacheHits;
+        }
+
+        /**
+         * Gets the number of prepared statements that had to be compiled.
+         * @return The number of statement cache misses
+         */
+        public long getStatementCacheMisses() {
+            return statementCacheMisses;
+        }
+
+        /**
+         * Gets the number of prepared statements evicted from a statement cache.
+         * @return The number of evicted statements
+         */
+        public long getStatementCacheEvictions() {
+            return statementCacheEvictions;
+        }
+
+        /**
+         * Gets the share of prepared statements served from a statement cache.
+         * @return The hit rate between 0 and 1
+         */
+        public double getStatementCacheHitRate() {
+            long total = statementCacheHits + statementCacheMisses;
+            return total > 0 ? (double) statementCacheHits / total : 0;
+        }
+
+        /**
+         * Returns a string representation of the metrics.
+         *
+         * @return A string containing the pool metrics
+         */
+        @Override
+        public String toString() {
+            return String.format("Pool '%s': active=%d, idle=%d, max=%d, waiting=%d, borrows=%d, "
+                + "timeouts=%d, avgWait=%.3f ms, maxWait=%.3f ms, created=%d, destroyed=%d, "
+                + "evicted=%d, validationFailures=%d, leaks=%d, reclaimed=%d, "
+                + "statementCache=%d hits/%d misses/%d evictions",
+                poolName, activeConnections, idleConnections, maxSize, waitingThreads, totalBorrows,
+                totalTimeouts, getAverageWaitMillis(), getMaxWaitMillis(), connectionsCreated,
+                connectionsDestroyed, connectionsEvicted, validationFailures, leaksDetected,
+                connectionsReclaimed, statementCacheHits, statementCacheMisses, statementCacheEvictions);
+        }
+    }
+}
@@ -0,0 +1,159 @@
+package com.berkant.kagan.haluk.irem.dietapp;
+
+import java.util.List;
+
+/**
+ * This class holds the summed calories and nutrients a user logged on a date.
+ * @details Read from the daily_nutrition_totals table maintained by NutritionRollup, or
+ *          summed from the logged foods by of(). Foods without nutrients add their calories
+ *          only.
+ * @author berkant
+ */
+public class DailyNutritionTotals {
+    /** The date in format YYYY-MM-DD */
+    private final String date;
+    /** Total calories */
+    private final int calories;
+    /** Total protein in grams */
+    private final double protein;
+    /** Total carbohydrates in grams */
+    private final double carbs;
+    /** Total fat in grams */
+    private final double fat;
+    /** Total fiber in grams */
+    private final double fiber;
+    /** Total sugar in grams */
+    private final double sugar;
+    /** Total sodium in milligrams */
+    private final double sodium;
+    /** Number of logged foods */
+    private final int entryCount;
+
+    /**
+     * Constructor for DailyNutritionTotals class.
+     *
+     * @param date The date in format YYYY-MM-DD
+     * @param calories Total calories
+     * @param protein Total protein in grams
+     * @param carbs Total carbohydrates in grams
+     * @param fat Total fat in grams
+     * @param fiber Total fiber in grams
+     * @param sugar Total sugar in grams
+     * @param sodium Total sodium in milligrams
+     * @param entryCount Number of logged foods
+     */
+    public DailyNutritionTotals(String date, int calories, double protein, double carbs, double fat,
+                                double fiber, double sugar, double sodium, int entryCount) {
+        this.date = date;
+        this.calories = calories;
+        this.protein = protein;
+        this.carbs = carbs;
+        this.fat = fat;
+        this.fiber = fiber;
+        this.sugar = sugar;
+        this.sodium = sodium;
+        this.entryCount = entryCount;
+    }
+
+    /**
+     * Sums the foods logged on a date.
+     *
+     * @param date The date in format YYYY-MM-DD
+     * @param foods The logged foods
+     * @return The totals, all 0 if no foods were logged
+     */
+    public static DailyNutritionTotals of(String date, List<Food> foods) {
+        int calories = 0;
+        double protein = 0;
+        double carbs = 0;
+        double fat = 0;
+        double fiber = 0;
+        double sugar = 0;
+        double sodium = 0;
+        for (Food food : foods) {
+            calories += food.getCalories();
+            if (food instanceof FoodNutrient) {
+                FoodNutrient nutrient = (FoodNutrient) food;
+                protein += nutrient.getProtein();
+                carbs += nutrient.getCarbs();
+                fat += nutrient.getFat();
+                fiber += nutrient.getFiber();
+                sugar += nutrient.getSugar();
+                sodium += nutrient.getSodium();
+            }
+        }
+        return new DailyNutritionTotals(date, calories, protein, carbs, fat, fiber, sugar, sodium, foods.size());
+    }
+
+    /**
+     * Gets the date.
+     * @return The date in format YYYY-MM-DD
+     */
+    public String getDate() {
+        return date;
+    }
+
+    /**
+     * Gets the total calories.
+     * @return Total calories
+     */
+    public int getCalories() {
+        return calories;
+    }
+
+    /**
+     * Gets the total protein.
+     * @return Total protein in grams
+     */
+    public double getProtein() {
+        return protein;
+    }
+
+    /**
+     * Gets the total carbohydrates.
+     * @return Total carbohydrates in grams
+     */
+    public double getCarbs() {
+        return carbs;
+    }
+
+    /**
+     * Gets the total fat.
+     * @return Total fat in grams
+     */
+    public double getFat() {
+        return fat;
+    }
+
+    /**
+     * Gets the total fiber.
+     * @return Total fiber in grams
+     */
+    public double getFiber() {
+        return fiber;
+    }
+
+    /**
+     * Gets the total sugar.
+     * @return Total sugar in grams
+     */
+    public double getSugar() {
+        return sugar;
+    }
+
+    /**
+     * Gets the total sodium.
+     * @return Total sodium in milligrams
+     */
+    public double getSodium() {
+        return sodium;
+    }
+
+    /**
+     * Gets the number of logged foods.
+     * @return The number of foods
+     */
+    public int getEntryCount() {
+        return entryCount;
+    }
+}
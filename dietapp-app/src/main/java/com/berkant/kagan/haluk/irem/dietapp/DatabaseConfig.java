@@ -0,0 +1,450 @@
+package com.berkant.kagan.haluk.irem.dietapp;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Properties;
+
+/**
+ * This class holds the database settings of the Diet Planner application.
+ * @details Settings are read in this order, later sources overriding earlier ones: the built-in
+ *          defaults, dietapp.properties on the classpath, the file named by the dietapp.config
+ *          system property (or dietapp.properties in the working directory if that property is
+ *          not set) and finally system properties, e.g. -Ddietapp.db.cache_size=4000.
+ *          Invalid values are reported and replaced by their defaults. The same PRAGMA settings
+ *          are applied to every connection the application opens. With the H2 engine only the
+ *          busy timeout applies, as H2's lock timeout; the other settings are SQLite PRAGMAs.
+ * @author berkant
+ */
+public class DatabaseConfig {
+    /** Embedded database engine, sqlite or h2 */
+    public static final String ENGINE = "dietapp.db.engine";
+    /** Database file path */
+    public static final String PATH = "dietapp.db.path";
+    /** SQLite journal mode */
+    public static final String JOURNAL_MODE = "dietapp.db.journal_mode";
+    /** SQLite synchronous level */
+    public static final String SYNCHRONOUS = "dietapp.db.synchronous";
+    /** Page cache of read-write connections, in pages or in KiB when negative */
+    public static final String CACHE_SIZE = "dietapp.db.cache_size";
+    /** Page cache of read-only connections, in pages or in KiB when negative */
+    public static final String READER_CACHE_SIZE = "dietapp.db.reader_cache_size";
+    /** Bytes of the database file to memory-map */
+    public static final String MMAP_SIZE = "dietapp.db.mmap_size";
+    /** Page size, only effective for a new database or after VACUUM */
+    public static final String PAGE_SIZE = "dietapp.db.page_size";
+    /** Where temporary tables and indexes are stored */
+    public static final String TEMP_STORE = "dietapp.db.temp_store";
+    /** Milliseconds to wait for a lock before failing with SQLITE_BUSY */
+    public static final String BUSY_TIMEOUT = "dietapp.db.busy_timeout";
+    /** WAL size in pages that triggers an automatic checkpoint */
+    public static final String WAL_AUTOCHECKPOINT = "dietapp.db.wal_autocheckpoint";
+    /** Partitioning of food logs, none or monthly */
+    public static final String FOOD_LOG_PARTITIONS = "dietapp.db.food_log_partitions";
+    /** Age in months from which a food log partition is compacted at startup */
+    public static final String COMPACT_AFTER_MONTHS = "dietapp.db.compact_after_months";
+    /** Number of database files the food logs, meal plans and goals of the users are spread over */
+    public static final String SHARDS = "dietapp.db.shards";
+    /** Milliseconds between background WAL checkpoints, 0 to rely on automatic checkpoints only */
+    public static final String CHECKPOINT_INTERVAL = "dietapp.checkpoint.interval_ms";
+    /** Size of the general connection pool */
+    public static final String POOL_SIZE = "dietapp.pool.size";
+    /** Size of the read-only connection pool */
+    public static final String READER_POOL_SIZE = "dietapp.pool.readers";
+    /** Durability mode of food logs and meal plans */
+    public static final String DURABILITY = "dietapp.durability";
+    /** Storage backend of the services, sqlite or memory */
+    public static final String STORAGE = "dietapp.storage";
+    /** Estimated bytes of food logs and meal plans cached by date, 0 to turn the cache off */
+    public static final String FOOD_LOG_CACHE_BYTES = "dietapp.cache.food_log_bytes";
+
+    /** Name of the properties file */
+    private static final String CONFIG_FILE = "dietapp.properties";
+    /** System property naming an external properties file */
+    private static final String CONFIG_FILE_PROPERTY = "dietapp.config";
+
+    private static final List<String> JOURNAL_MODES =
+        Arrays.asList("DELETE", "TRUNCATE", "PERSIST", "MEMORY", "WAL", "OFF");
+    private static final List<String> SYNCHRONOUS_LEVELS = Arrays.asList("OFF", "NORMAL", "FULL", "EXTRA");
+    private static final List<String> TEMP_STORES = Arrays.asList("DEFAULT", "FILE", "MEMORY");
+    private static final List<String> ENGINES = Arrays.asList("SQLITE", "H2");
+    private static final List<String> PARTITIONINGS = Arrays.asList("NONE", "MONTHLY");
+    private static final List<String> STORAGE_BACKENDS = Arrays.asList("SQLITE", "MEMORY");
+
+    private final SqlDialect engine;
+    private final String path;
+    private final String journalMode;
+    private final String synchronous;
+    private final int cacheSize;
+    private final int readerCacheSize;
+    private final long mmapSize;
+    private final int pageSize;
+    private final String tempStore;
+    private final int busyTimeout;
+    private final int walAutocheckpoint;
+    private final long checkpointInterval;
+    private final boolean monthlyFoodLogs;
+    private final int compactAfterMonths;
+    private final int shardCount;
+    private final int poolSize;
+    private final int readerPoolSize;
+    private final WriteBehindQueue.DurabilityMode durability;
+    private final String storage;
+    private final long foodLogCacheBytes;
+
+    /**
+     * Constructor for DatabaseConfig class.
+     *
+     * @param properties The settings; missing or invalid ones use their defaults
+     */
+    public DatabaseConfig(Properties properties) {
+        this.engine = SqlDialect.valueOf(choice(properties, ENGINE, ENGINES, "SQLITE"));
+        this.path = text(properties, PATH, "dietplanner.db");
+        this.journalMode = choice(properties, JOURNAL_MODE, JOURNAL_MODES, "WAL");
+        this.synchronous = choice(properties, SYNCHRONOUS, SYNCHRONOUS_LEVELS, "NORMAL");
+        this.cacheSize = (int) number(properties, CACHE_SIZE, 1000, Integer.MIN_VALUE, Integer.MAX_VALUE);
+        this.readerCacheSize = (int) number(properties, READER_CACHE_SIZE, 4000, Integer.MIN_VALUE, Integer.MAX_VALUE);
+        this.mmapSize = number(properties, MMAP_SIZE, 268435456L, 0, Long.MAX_VALUE);
+        this.pageSize = pageSize(properties);
+        this.tempStore = choice(properties, TEMP_STORE, TEMP_STORES, "DEFAULT");
+        this.busyTimeout = (int) number(properties, BUSY_TIMEOUT, 3000, 0, Integer.MAX_VALUE);
+        this.walAutocheckpoint = (int) number(properties, WAL_AUTOCHECKPOINT, 1000, 0, Integer.MAX_VALUE);
+        this.checkpointInterval = number(properties, CHECKPOINT_INTERVAL, 10000, 0, Long.MAX_VALUE);
+        this.monthlyFoodLogs = "MONTHLY".equals(choice(properties, FOOD_LOG_PARTITIONS, PARTITIONINGS, "NONE"));
+        this.compactAfterMonths = (int) number(properties, COMPACT_AFTER_MONTHS, 3, 1, 1200);
+        this.shardCount = (int) number(properties, SHARDS, 1, 1, 64);
+        this.poolSize = (int) number(properties, POOL_SIZE, 10, 1, 1000);
+        this.readerPoolSize = (int) number(properties, READER_POOL_SIZE, 8, 1, 1000);
+        this.durability = WriteBehindQueue.DurabilityMode.parse(properties.getProperty(DURABILITY));
+        this.storage = choice(properties, STORAGE, STORAGE_BACKENDS, "SQLITE").toLowerCase(Locale.ROOT);
+        this.foodLogCacheBytes = number(properties, FOOD_LOG_CACHE_BYTES, FoodLogCache.DEFAULT_MAX_BYTES,
+            0, Long.MAX_VALUE);
+    }
+
+    /**
+     * Loads the settings from the properties files and the system properties.
+     *
+     * @return The database settings
+     */
+    public static DatabaseConfig load() {
+        Properties properties = new Properties();
+
+        try (InputStream in = DatabaseConfig.class.getResourceAsStream("/" + CONFIG_FILE)) {
+            if (in != null) {
+                properties.load(in);
+            }
+        } catch (IOException e) {
+            System.out.println("Could not read " + CONFIG_FILE + " from the classpath: " + e.getMessage());
+        }
+
+        String fileName = System.getProperty(CONFIG_FILE_PROPERTY);
+        File file = new File(fileName != null ? fileName : CONFIG_FILE);
+        if (file.isFile()) {
+            try (InputStream in = new FileInputStream(file)) {
+                properties.load(in);
+            } catch (IOException e) {
+                System.out.println("Could not read " + file + ": " + e.getMessage());
+            }
+        } else if (fileName != null) {
+            System.out.println("Configuration file not found: " + fileName);
+        }
+
+        for (String name : System.getProperties().stringPropertyNames()) {
+            if (name.startsWith("dietapp.") && !name.equals(CONFIG_FILE_PROPERTY)) {
+                properties.setProperty(name, System.getProperty(name));
+            }
+        }
+        return new DatabaseConfig(properties);
+    }
+
+    /**
+     * Gets the JDBC URL of the database.
+     * @return The JDBC URL
+     */
+    public String getJdbcUrl() {
+        return engine.jdbcUrl(path);
+    }
+
+    /**
+     * Applies the PRAGMA settings to a newly opened connection.
+     * @details Read-only connections skip the settings that change the database file and are
+     *          switched to query_only after the others have been applied. H2 connections only
+     *          get the lock timeout; H2 has no read-only sessions, so its readers are not checked.
+     *
+     * @param conn The connection
+     * @param readOnly Whether the connection is used for queries only
+     * @throws SQLException If a setting cannot be applied
+     */
+    public void applyTo(Connection conn, boolean readOnly) throws SQLException {
+        if (engine == SqlDialect.H2) {
+            try (Statement statement = conn.createStatement()) {
+                statement.execute("SET LOCK_TIMEOUT " + busyTimeout);
+            }
+            return;
+        }
+        try (Statement statement = conn.createStatement()) {
+            statement.execute("PRAGMA busy_timeout = " + busyTimeout);
+            if (!readOnly) {
+                statement.execute("PRAGMA page_size = " + pageSize);
+                statement.execute("PRAGMA journal_mode = " + journalMode);
+                statement.execute("PRAGMA wal_autocheckpoint = " + walAutocheckpoint);
+            }
+            statement.execute("PRAGMA synchronous = " + synchronous);
+            statement.execute("PRAGMA cache_size = " + (readOnly ? readerCacheSize : cacheSize));
+            statement.execute("PRAGMA mmap_size = " + mmapSize);
+            statement.execute("PRAGMA temp_store = " + tempStore);
+            if (readOnly) {
+                statement.execute("PRAGMA query_only = true");
+            }
+        }
+    }
+
+    /**
+     * Gets the embedded database engine.
+     * @return The SQL dialect of the engine
+     */
+    public SqlDialect getEngine() {
+        return engine;
+    }
+
+    /**
+     * Gets the database file path.
+     * @return The database file path
+     */
+    public String getPath() {
+        return path;
+    }
+
+    /**
+     * Gets the journal mode.
+     * @return The journal mode
+     */
+    public String getJournalMode() {
+        return journalMode;
+    }
+
+    /**
+     * Gets the synchronous level.
+     * @return The synchronous level
+     */
+    public String getSynchronous() {
+        return synchronous;
+    }
+
+    /**
+     * Gets the page cache size of read-write connections.
+     * @return The cache size in pages, or in KiB when negative
+     */
+    public int getCacheSize() {
+        return cacheSize;
+    }
+
+    /**
+     * Gets the page cache size of read-only connections.
+     * @return The cache size in pages, or in KiB when negative
+     */
+    public int getReaderCacheSize() {
+        return readerCacheSize;
+    }
+
+    /**
+     * Gets the number of bytes to memory-map.
+     * @return The mmap size in bytes
+     */
+    public long getMmapSize() {
+        return mmapSize;
+    }
+
+    /**
+     * Gets the page size.
+     * @return The page size in bytes
+     */
+    public int getPageSize() {
+        return pageSize;
+    }
+
+    /**
+     * Gets the temp store setting.
+     * @return DEFAULT, FILE or MEMORY
+     */
+    public String getTempStore() {
+        return tempStore;
+    }
+
+    /**
+     * Gets the busy timeout.
+     * @return The busy timeout in milliseconds
+     */
+    public int getBusyTimeout() {
+        return busyTimeout;
+    }
+
+    /**
+     * Gets the automatic checkpoint threshold.
+     * @return The threshold in WAL pages, 0 if automatic checkpoints are off
+     */
+    public int getWalAutocheckpoint() {
+        return walAutocheckpoint;
+    }
+
+    /**
+     * Gets the time between background WAL checkpoints.
+     * @return The interval in milliseconds, 0 if background checkpoints are off
+     */
+    public long getCheckpointInterval() {
+        return checkpointInterval;
+    }
+
+    /**
+     * Checks whether food logs are stored in monthly partitions.
+     * @return true for monthly partitions, false for the single food_logs table
+     */
+    public boolean isMonthlyFoodLogs() {
+        return monthlyFoodLogs;
+    }
+
+    /**
+     * Gets the age from which a food log partition is compacted.
+     * @return The age in months
+     */
+    public int getCompactAfterMonths() {
+        return compactAfterMonths;
+    }
+
+    /**
+     * Gets the number of database files the user data is spread over.
+     * @return The shard count, 1 if sharding is off
+     */
+    public int getShardCount() {
+        return shardCount;
+    }
+
+    /**
+     * Gets the file path of a shard.
+     * @details Shard 0 is the main database file; shard i of dietplanner.db is
+     *          dietplanner-shard<i>.db next to it.
+     * @param shard The shard index
+     * @return The database file path of the shard
+     */
+    public String getShardPath(int shard) {
+        if (shard == 0) {
+            return path;
+        }
+        int extension = path.lastIndexOf('.');
+        int separator = Math.max(path.lastIndexOf('/'), path.lastIndexOf(File.separatorChar));
+        return extension > separator + 1
+            ? path.substring(0, extension) + "-shard" + shard + path.substring(extension)
+            : path + "-shard" + shard;
+    }
+
+    /**
+     * Gets the size of the general connection pool.
+     * @return The pool size
+     */
+    public int getPoolSize() {
+        return poolSize;
+    }
+
+    /**
+     * Gets the size of the read-only connection pool.
+     * @return The pool size
+     */
+    public int getReaderPoolSize() {
+        return readerPoolSize;
+    }
+
+    /**
+     * Gets the durability mode of food logs and meal plans.
+     * @return The durability mode
+     */
+    public WriteBehindQueue.DurabilityMode getDurability() {
+        return durability;
+    }
+
+    /**
+     * Gets the storage backend of the services.
+     * @return "sqlite" or "memory"
+     */
+    public String getStorage() {
+        return storage;
+    }
+
+    /**
+     * Gets the maximum estimated size of the food logs and meal plans cached by date.
+     * @return The size in bytes, 0 if the cache is off
+     */
+    public long getFoodLogCacheBytes() {
+        return foodLogCacheBytes;
+    }
+
+    @Override
+    public String toString() {
+        return "Database configuration: engine=" + engine.name().toLowerCase(Locale.ROOT) +
+            ", path=" + path +
+            ", journal_mode=" + journalMode +
+            ", synchronous=" + synchronous +
+            ", cache_size=" + cacheSize +
+            ", reader_cache_size=" + readerCacheSize +
+            ", mmap_size=" + mmapSize +
+            ", page_size=" + pageSize +
+            ", temp_store=" + tempStore +
+            ", busy_timeout=" + busyTimeout +
+            ", wal_autocheckpoint=" + walAutocheckpoint +
+            ", checkpoint_interval_ms=" + checkpointInterval +
+            ", food_log_partitions=" + (monthlyFoodLogs ? "monthly" : "none") +
+            ", compact_after_months=" + compactAfterMonths +
+            ", shards=" + shardCount +
+            ", pool_size=" + poolSize +
+            ", reader_pool_size=" + readerPoolSize +
+            ", durability=" + durability +
+            ", storage=" + storage +
+            ", food_log_cache_bytes=" + foodLogCacheBytes;
+    }
+
+    private static String text(Properties properties, String key, String defaultValue) {
+        String value = properties.getProperty(key);
+        return value == null || value.trim().isEmpty() ? defaultValue : value.trim();
+    }
+
+    private static String choice(Properties properties, String key, List<String> allowed, String defaultValue) {
+        String value = text(properties, key, defaultValue).toUpperCase(Locale.ROOT);
+        if (!allowed.contains(value)) {
+            System.out.println("Invalid value for " + key + ": " + value + ", using " + defaultValue);
+            return defaultValue;
+        }
+        return value;
+    }
+
+    private static long number(Properties properties, String key, long defaultValue, long min, long max) {
+        String value = properties.getProperty(key);
+        if (value == null || value.trim().isEmpty()) {
+            return defaultValue;
+        }
+        try {
+            long number = Long.parseLong(value.trim());
+            if (number >= min && number <= max) {
+                return number;
+            }
+        } catch (NumberFormatException e) {
+            // Reported below
+        }
+        System.out.println("Invalid value for " + key + ": " + value + ", using " + defaultValue);
+        return defaultValue;
+    }
+
+    private static int pageSize(Properties properties) {
+        int size = (int) number(properties, PAGE_SIZE, 4096, 512, 65536);
+        if (Integer.bitCount(size) != 1) {
+            System.out.println("Invalid value for " + PAGE_SIZE + ": " + size + ", using 4096");
+            return 4096;
+        }
+        return size;
+    }
+}
@@ -1,62 +1,93 @@
-
 package com.berkant.kagan.haluk.irem.dietapp;
 
 import java.sql.*;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * This class handles database operations for the Diet Planner application.
  * @details The DatabaseHelper class provides methods for initializing and managing the SQLite database.
+ *          SQLite allows only one writer at a time, so the services write through a single
+ *          writer connection, whose pool queues concurrent writers in arrival order, and read
+ *          through a separate pool of query-only connections. In WAL mode readers never wait
+ *          for the writer. getConnection() still hands out general read-write connections.
+ *          Database path, PRAGMA settings and pool sizes come from DatabaseConfig. In WAL mode a
+ *          CheckpointScheduler keeps the WAL file from growing between automatic checkpoints.
+ *          Setting dietapp.db.engine=h2 runs the same schema on an embedded H2 file database
+ *          instead, whose row-level locking lets writers of different rows proceed in parallel,
+ *          so its writer pool is as large as the general pool. Food logs can be stored in monthly
+ *          partitions routed by FoodLogPartitions; cold partitions are compacted at startup.
+ *          With dietapp.db.shards above 1 the food logs, meal plans and nutrition goals of each
+ *          user live in one of several database files, chosen by getShard(userId), each with
+ *          its own writer; the main database is shard 0 and keeps the users.
  * @author Claude
  */
 public class DatabaseHelper {
-    private static final String DB_URL = "jdbc:sqlite:dietplanner.db";
-    private static final int MAX_CONNECTIONS = 10;
-    private static List<Connection> connectionPool = new ArrayList<>();
+    private static final DatabaseConfig config = DatabaseConfig.load();
+    private static final int MAX_CONNECTIONS = config.getPoolSize();
+    private static final int MAX_READ_CONNECTIONS = config.getReaderPoolSize();
+    private static final ConnectionPool connectionPool =
+        new ConnectionPool("main", MAX_CONNECTIONS, DatabaseHelper::createConnection);
+    // H2 locks rows, not the database, so it gets as many writers as the general pool
+    private static final ConnectionPool writerPool = new ConnectionPool("writer",
+        config.getEngine() == SqlDialect.SQLITE ? 1 : MAX_CONNECTIONS, DatabaseHelper::createConnection);
+    private static final ConnectionPool readerPool =
+        new ConnectionPool("reader", MAX_READ_CONNECTIONS, DatabaseHelper::createReadConnection);
+    private static final CheckpointScheduler checkpointScheduler =
+        config.getEngine() == SqlDialect.SQLITE && config.getCheckpointInterval() > 0
+            && "WAL".equals(config.getJournalMode())
+            ? new CheckpointScheduler("main", DatabaseHelper::createConnection, config.getPath(),
+                config.getCheckpointInterval())
+            : null;
+    private static final FoodLogPartitions foodLogPartitions =
+        new FoodLogPartitions(config.isMonthlyFoodLogs(), config.getCompactAfterMonths());
+    private static final IdCache<String> userIdCache = new IdCache<>(IdCache.DEFAULT_CAPACITY);
+    private static final IdCache<String> foodIdCache = new IdCache<>(IdCache.DEFAULT_CAPACITY);
+    /** Number of times saving a food changed the nutrients of a known food, in any shard */
+    private static final AtomicLong nutrientChanges = new AtomicLong();
+    private static final DatabaseShard mainShard =
+        new DatabaseShard("main", writerPool, readerPool, checkpointScheduler, foodIdCache, foodLogPartitions);
+    private static final List<DatabaseShard> shards = openShards();
+    private static final ShardRouter shardRouter = new ShardRouter(shards.size());
    
     static {
         try {
-            // Load the SQLite JDBC driver
-            Class.forName("org.sqlite.JDBC");
+            // Load the JDBC driver of the configured engine
+            Class.forName(config.getEngine().getDriverClass());
         } catch (ClassNotFoundException e) {
-            System.out.println("SQLite JDBC driver not found: " + e.getMessage());
+            System.out.println("JDBC driver not found: " + e.getMessage());
         }
     }
     
     /**
      * Initializes the database connection and creates tables if they don't exist.
+     * @details With more than one shard the tables are created in every shard file as well.
      */
     public static void initializeDatabase() {
         try {
-            // Create database connection and initialize tables
-            Connection conn = getConnection();
-            if (conn != null) {
-                createTables(conn);
-                releaseConnection(conn);
-                System.out.println("Database connection successful");
+            // Create the tables of the main database and of every shard file
+            for (DatabaseShard shard : shards) {
+                shard.initialize();
             }
+            shardRouter.initialize(mainShard, shards.size());
+            System.out.println(config);
+            System.out.println("Database connection successful");
         } catch (SQLException e) {
             System.out.println("Database connection failed: " + e.getMessage());
         }
     }
     
     /**
-     * Gets a database connection from the pool or creates a new one.
+     * Gets a database connection from the pool.
+     * @details Waits for a free connection if the pool is exhausted.
      * 
-     * @return The Connection object
+     * @return The Connection object or null if no connection could be obtained
      */
-    public static synchronized Connection getConnection() {
+    public static Connection getConnection() {
         try {
-            if (connectionPool.isEmpty()) {
-                return createConnection();
-            } else {
-                Connection conn = connectionPool.remove(connectionPool.size() - 1);
-                if (conn.isClosed()) {
-                    return createConnection();
-                }
-                return conn;
-            }
+            return connectionPool.borrow();
         } catch (SQLException e) {
             System.out.println("Could not get database connection: " + e.getMessage());
             return null;
@@ -64,73 +95,256 @@ public class DatabaseHelper {
     }
     
     /**
-     * Creates a new database connection with optimized settings.
+     * Gets the writer connection.
+     * @details On SQLite there is only one writer connection; callers wait in arrival order
+     *          while another caller holds it. Do not borrow it again while holding it.
+     * 
+     * @return The Connection object or null if the writer did not become free in time
+     */
+    public static Connection getWriteConnection() {
+        try {
+            return writerPool.borrow();
+        } catch (SQLException e) {
+            System.out.println("Could not get database write connection: " + e.getMessage());
+            return null;
+        }
+    }
+    
+    /**
+     * Gets a read-only database connection from the reader pool.
+     * 
+     * @return The Connection object or null if no connection could be obtained
+     */
+    public static Connection getReadConnection() {
+        try {
+            return readerPool.borrow();
+        } catch (SQLException e) {
+            System.out.println("Could not get database read connection: " + e.getMessage());
+            return null;
+        }
+    }
+    
+    /**
+     * Gets the database settings the connections are opened with.
+     * 
+     * @return The database configuration
+     */
+    public static DatabaseConfig getConfig() {
+        return config;
+    }
+    
+    /**
+     * Creates a new database connection with the configured settings.
      * 
      * @return A new Connection object
      * @throws SQLException If connection creation fails
      */
     private static Connection createConnection() throws SQLException {
-        Connection connection = DriverManager.getConnection(
-            DB_URL + "?journal_mode=WAL&synchronous=NORMAL&cache_size=1000");
+        return openConnection(false);
+    }
+    
+    /**
+     * Creates a new query-only database connection with the reader page cache.
+     * 
+     * @return A new Connection object
+     * @throws SQLException If connection creation fails
+     */
+    private static Connection createReadConnection() throws SQLException {
+        return openConnection(true);
+    }
+    
+    /**
+     * Opens a database connection and applies the configured PRAGMA settings.
+     * 
+     * @param readOnly Whether the connection is used for queries only
+     * @return A new Connection object
+     * @throws SQLException If connection creation fails
+     */
+    private static Connection openConnection(boolean readOnly) throws SQLException {
+        Connection connection = DriverManager.getConnection(config.getJdbcUrl());
+        try {
+            config.applyTo(connection, readOnly);
+        } catch (SQLException e) {
+            connection.close();
+            throw e;
+        }
         return connection;
     }
     
     /**
-     * Releases a connection back to the connection pool.
+     * Releases a connection back to the pool it was borrowed from.
      * 
      * @param conn The Connection to release
      */
-    public static synchronized void releaseConnection(Connection conn) {
-        if (conn != null) {
-            try {
-                if (!conn.isClosed() && connectionPool.size() < MAX_CONNECTIONS) {
-                    connectionPool.add(conn);
-                } else {
-                    try {
-                        conn.close();
-                    } catch (SQLException e) {
-                        System.out.println("Could not close connection: " + e.getMessage());
-                    }
-                }
-            } catch (SQLException e) {
-                System.out.println("Error checking connection status: " + e.getMessage());
+    public static void releaseConnection(Connection conn) {
+        if (writerPool.isBorrowed(conn)) {
+            writerPool.release(conn);
+        } else if (readerPool.isBorrowed(conn)) {
+            readerPool.release(conn);
+        } else if (!releaseToShard(conn)) {
+            connectionPool.release(conn);
+        }
+    }
+    
+    /**
+     * Releases a connection borrowed from a shard file other than the main database.
+     * 
+     * @param conn The Connection to release
+     * @return true if a shard took the connection back
+     */
+    private static boolean releaseToShard(Connection conn) {
+        for (int i = 1; i < shards.size(); i++) {
+            if (shards.get(i).release(conn)) {
+                return true;
             }
         }
+        return false;
     }
     
     /**
-     * Closes all connections in the pool.
+     * Closes all connections in the pools.
      */
     public static void closeAllConnections() {
-        for (Connection conn : connectionPool) {
-            try {
-                if (!conn.isClosed()) {
-                    conn.close();
-                }
-            } catch (SQLException e) {
-                System.out.println("Could not close connection: " + e.getMessage());
-            }
+        connectionPool.closeAll();
+        writerPool.closeAll();
+        readerPool.closeAll();
+        for (int i = 1; i < shards.size(); i++) {
+            shards.get(i).close();
+        }
+    }
+    
+    /**
+     * Gets a snapshot of the connection pool metrics.
+     * 
+     * @return The current pool metrics
+     */
+    public static ConnectionPool.PoolMetrics getPoolMetrics() {
+        return connectionPool.getMetrics();
+    }
+    
+    /**
+     * Gets a snapshot of the writer pool metrics.
+     * 
+     * @return The current writer pool metrics
+     */
+    public static ConnectionPool.PoolMetrics getWriterPoolMetrics() {
+        return writerPool.getMetrics();
+    }
+    
+    /**
+     * Gets a snapshot of the reader pool metrics.
+     * 
+     * @return The current reader pool metrics
+     */
+    public static ConnectionPool.PoolMetrics getReaderPoolMetrics() {
+        return readerPool.getMetrics();
+    }
+    
+    /**
+     * Gets the background WAL checkpoint scheduler.
+     * 
+     * @return The checkpoint scheduler, or null if background checkpoints are off
+     */
+    public static CheckpointScheduler getCheckpointScheduler() {
+        return checkpointScheduler;
+    }
+    
+    /**
+     * Gets the routing of food logs to their tables.
+     * 
+     * @return The food log partitions
+     */
+    public static FoodLogPartitions getFoodLogPartitions() {
+        return foodLogPartitions;
+    }
+    
+    /**
+     * Gets the main database as a shard.
+     * 
+     * @return Shard 0, which also holds the users, the food options and the recipes
+     */
+    public static DatabaseShard getMainShard() {
+        return mainShard;
+    }
+    
+    /**
+     * Gets all shards.
+     * 
+     * @return The shards in index order; a single shard if sharding is off
+     */
+    public static List<DatabaseShard> getShards() {
+        return shards;
+    }
+    
+    /**
+     * Gets the shard that stores the food logs, meal plans and goals of a user.
+     * 
+     * @param userId The user id
+     * @return The shard chosen by consistent hashing of the user id, or the shard the user
+     *         is assigned to while it is moved
+     */
+    public static DatabaseShard getShard(int userId) {
+        return shards.get(shardRouter.shardOf(userId));
+    }
+    
+    /**
+     * Gets the routing of the users to the shards.
+     * 
+     * @return The shard router
+     */
+    public static ShardRouter getShardRouter() {
+        return shardRouter;
+    }
+    
+    /**
+     * Creates the main shard and the shards of the other configured shard files.
+     * 
+     * @return The shards in index order
+     */
+    private static List<DatabaseShard> openShards() {
+        List<DatabaseShard> list = new ArrayList<>();
+        list.add(mainShard);
+        for (int i = 1; i < config.getShardCount(); i++) {
+            list.add(DatabaseShard.open("shard" + i, config, config.getShardPath(i)));
         }
-        connectionPool.clear();
+        return Collections.unmodifiableList(list);
+    }
+    
+    /**
+     * Gets the cache of user ids shared by all services.
+     * 
+     * @return The user id cache
+     */
+    public static IdCache<String> getUserIdCache() {
+        return userIdCache;
     }
     
     /**
      * Closes the database connection.
      */
     public static void closeConnection() {
+        if (checkpointScheduler != null) {
+            checkpointScheduler.stop();
+            System.out.println(checkpointScheduler.getMetrics());
+        }
         closeAllConnections();
+        System.out.println(getPoolMetrics());
+        System.out.println(getWriterPoolMetrics());
+        System.out.println(getReaderPoolMetrics());
         System.out.println("Database connections closed");
     }
     
     /**
-     * Creates all necessary tables in the database.
+     * Creates all necessary tables in the database and applies pending schema migrations.
+     * @details The DDL is written for SQLite and translated to the dialect of the connection.
      * 
      * @param conn The database connection
      */
-    private static void createTables(Connection conn) throws SQLException {
+    static void createTables(Connection conn) throws SQLException {
+        SqlDialect dialect = SqlDialect.of(conn);
         try (Statement statement = conn.createStatement()) {
             // Users table
-            statement.execute(
+            statement.execute(dialect.translate(
                 "CREATE TABLE IF NOT EXISTS users (" +
                 "id INTEGER PRIMARY KEY AUTOINCREMENT," +
                 "username TEXT UNIQUE NOT NULL," +
@@ -139,10 +353,10 @@ public class DatabaseHelper {
                 "name TEXT NOT NULL," +
                 "is_logged_in INTEGER DEFAULT 0" +
                 ");"
-            );
+            ));
             
             // Foods table
-            statement.execute(
+            statement.execute(dialect.translate(
                 "CREATE TABLE IF NOT EXISTS foods (" +
                 "id INTEGER PRIMARY KEY AUTOINCREMENT," +
                 "name TEXT NOT NULL," +
@@ -150,10 +364,10 @@ public class DatabaseHelper {
                 "calories INTEGER NOT NULL," +
                 "meal_type TEXT" +
                 ");"
-            );
+            ));
             
             // FoodNutrient table
-            statement.execute(
+            statement.execute(dialect.translate(
                 "CREATE TABLE IF NOT EXISTS food_nutrients (" +
                 "id INTEGER PRIMARY KEY AUTOINCREMENT," +
                 "food_id INTEGER NOT NULL," +
@@ -165,10 +379,10 @@ public class DatabaseHelper {
                 "sodium REAL NOT NULL," +
                 "FOREIGN KEY(food_id) REFERENCES foods(id)" +
                 ");"
-            );
+            ));
             
             // NutritionGoals table
-            statement.execute(
+            statement.execute(dialect.translate(
                 "CREATE TABLE IF NOT EXISTS nutrition_goals (" +
                 "id INTEGER PRIMARY KEY AUTOINCREMENT," +
                 "user_id INTEGER NOT NULL," +
@@ -178,10 +392,10 @@ public class DatabaseHelper {
                 "fat_goal REAL NOT NULL," +
                 "FOREIGN KEY(user_id) REFERENCES users(id)" +
                 ");"
-            );
+            ));
             
             // MealPlans table
-            statement.execute(
+            statement.execute(dialect.translate(
                 "CREATE TABLE IF NOT EXISTS meal_plans (" +
                 "id INTEGER PRIMARY KEY AUTOINCREMENT," +
                 "user_id INTEGER NOT NULL," +
@@ -191,10 +405,10 @@ public class DatabaseHelper {
                 "FOREIGN KEY(user_id) REFERENCES users(id)," +
                 "FOREIGN KEY(food_id) REFERENCES foods(id)" +
                 ");"
-            );
+            ));
             
             // FoodLogs table
-            statement.execute(
+            statement.execute(dialect.translate(
                 "CREATE TABLE IF NOT EXISTS food_logs (" +
                 "id INTEGER PRIMARY KEY AUTOINCREMENT," +
                 "user_id INTEGER NOT NULL," +
@@ -203,10 +417,10 @@ public class DatabaseHelper {
                 "FOREIGN KEY(user_id) REFERENCES users(id)," +
                 "FOREIGN KEY(food_id) REFERENCES foods(id)" +
                 ");"
-            );
+            ));
             
             // DietProfiles table
-            statement.execute(
+            statement.execute(dialect.translate(
                 "CREATE TABLE IF NOT EXISTS diet_profiles (" +
                 "id INTEGER PRIMARY KEY AUTOINCREMENT," +
                 "user_id INTEGER NOT NULL," +
@@ -214,39 +428,39 @@ public class DatabaseHelper {
                 "weight_goal TEXT NOT NULL," +
                 "FOREIGN KEY(user_id) REFERENCES users(id)" +
                 ");"
-            );
+            ));
             
             // HealthConditions table
-            statement.execute(
+            statement.execute(dialect.translate(
                 "CREATE TABLE IF NOT EXISTS health_conditions (" +
                 "id INTEGER PRIMARY KEY AUTOINCREMENT," +
                 "profile_id INTEGER NOT NULL," +
                 "condition_name TEXT NOT NULL," +
                 "FOREIGN KEY(profile_id) REFERENCES diet_profiles(id)" +
                 ");"
-            );
+            ));
             
             // ExcludedFoods table
-            statement.execute(
+            statement.execute(dialect.translate(
                 "CREATE TABLE IF NOT EXISTS excluded_foods (" +
                 "id INTEGER PRIMARY KEY AUTOINCREMENT," +
                 "profile_id INTEGER NOT NULL," +
                 "food_name TEXT NOT NULL," +
                 "FOREIGN KEY(profile_id) REFERENCES diet_profiles(id)" +
                 ");"
-            );
+            ));
             
             // Ingredients table
-            statement.execute(
+            statement.execute(dialect.translate(
                 "CREATE TABLE IF NOT EXISTS ingredients (" +
                 "id INTEGER PRIMARY KEY AUTOINCREMENT," +
                 "name TEXT UNIQUE NOT NULL," +
                 "price REAL NOT NULL" +
                 ");"
-            );
+            ));
 
             // Recipes table
-            statement.execute(
+            statement.execute(dialect.translate(
                 "CREATE TABLE IF NOT EXISTS recipes (" +
                 "id INTEGER PRIMARY KEY AUTOINCREMENT," +
                 "meal_type TEXT NOT NULL," +
@@ -254,10 +468,10 @@ public class DatabaseHelper {
                 "name TEXT NOT NULL," +
                 "FOREIGN KEY(food_id) REFERENCES foods(id)" +
                 ");"
-            );
+            ));
 
             // Recipe Ingredients table
-            statement.execute(
+            statement.execute(dialect.translate(
                 "CREATE TABLE IF NOT EXISTS recipe_ingredients (" +
                 "id INTEGER PRIMARY KEY AUTOINCREMENT," +
                 "recipe_id INTEGER NOT NULL," +
@@ -267,13 +481,16 @@ public class DatabaseHelper {
                 "FOREIGN KEY(recipe_id) REFERENCES recipes(id)," +
                 "FOREIGN KEY(ingredient_id) REFERENCES ingredients(id)" +
                 ");"
-            );
+            ));
             
             // Insert sample data (optional)
             insertSampleData(statement);
             
             System.out.println("Database tables created successfully");
         }
+        
+        // Apply indexes and later schema changes
+        SchemaMigrator.migrate(conn);
     }
     
     /**
@@ -288,7 +505,7 @@ public class DatabaseHelper {
             statement.execute(
                 "INSERT INTO users (username, password, email, name) " +
                 "SELECT 'admin', 'admin123', 'admin@example.com', 'Admin User' " +
-                "WHERE NOT EXISTS (SELECT 1 FROM users WHERE username = 'admin');"
+                "WHERE NOT EXISTS (SELECT 1 FROM users WHERE username = 'admin')"
             );
         } catch (SQLException e) {
             // Data may already exist, we can ignore this error
@@ -302,21 +519,15 @@ public class DatabaseHelper {
      * @return The user ID or -1 if not found
      */
     public static int getUserId(String username) {
+        Integer cachedId = userIdCache.get(username);
+        if (cachedId != null) {
+            return cachedId;
+        }
+        
         Connection conn = null;
         try {
-            conn = getConnection();
-            int userId = -1;
-            
-            try (PreparedStatement pstmt = conn.prepareStatement("SELECT id FROM users WHERE username = ?")) {
-                pstmt.setString(1, username);
-                ResultSet rs = pstmt.executeQuery();
-                
-                if (rs.next()) {
-                    userId = rs.getInt("id");
-                }
-            }
-            
-            return userId;
+            conn = getReadConnection();
+            return resolveUserId(conn, username);
         } catch (SQLException e) {
             System.out.println("Could not get user ID: " + e.getMessage());
             return -1;
@@ -325,6 +536,34 @@ public class DatabaseHelper {
         }
     }
    
+    /**
+     * Resolves a username to a user ID, using the user id cache before querying.
+     * 
+     * @param conn The database connection used on a cache miss
+     * @param username The username to look up
+     * @return The user ID or -1 if not found
+     * @throws SQLException If database error occurs
+     */
+    public static int resolveUserId(Connection conn, String username) throws SQLException {
+        Integer cachedId = userIdCache.get(username);
+        if (cachedId != null) {
+            return cachedId;
+        }
+        
+        try (PreparedStatement pstmt = conn.prepareStatement("SELECT id FROM users WHERE username = ?")) {
+            pstmt.setString(1, username);
+            ResultSet rs = pstmt.executeQuery();
+            
+            if (rs.next()) {
+                int userId = rs.getInt("id");
+                userIdCache.put(username, userId);
+                return userId;
+            }
+        }
+        
+        return -1;
+    }
+   
     /**
      * Helper method to save a Food object to the database and return its ID.
      * 
@@ -334,66 +573,254 @@ public class DatabaseHelper {
     public static int saveFoodAndGetId(Food food) throws SQLException {
         Connection conn = null;
         try {
-            conn = getConnection();
+            conn = getWriteConnection();
             if (conn == null) {
                 return -1;
             }
             
-            // Check if this food already exists
-            String checkSql = "SELECT id FROM foods WHERE name = ? AND grams = ? AND calories = ?";
-            try (PreparedStatement checkStmt = conn.prepareStatement(checkSql)) {
+            return saveFoodAndGetId(conn, food);
+        } finally {
+            releaseConnection(conn);
+        }
+    }
+    
+    /**
+     * Saves a Food object to the food catalog on the given connection and returns its ID.
+     * @details Foods are unique by name, grams and calories. A food that was saved before is
+     *          resolved from the food id cache without a query; a new food is added with a
+     *          single upsert, so concurrent writers cannot create duplicates. Nutrients of a
+     *          FoodNutrient are inserted with a new food; for a known food they are only
+     *          written if they differ from the stored ones, together with the daily
+     *          nutrition totals of the days that logged the food.
+     * 
+     * @param conn The database connection
+     * @param food The Food object to save
+     * @return The food ID in the database or -1 if there was an error
+     * @throws SQLException If database error occurs
+     */
+    public static int saveFoodAndGetId(Connection conn, Food food) throws SQLException {
+        return saveFoodAndGetId(conn, food, foodIdCache);
+    }
+    
+    /**
+     * Saves a Food object to the food catalog of a shard and returns its ID.
+     * @details Works like saveFoodAndGetId(Connection, Food) with the food id cache of the
+     *          database the connection belongs to.
+     * 
+     * @param conn The database connection
+     * @param food The Food object to save
+     * @param foodIdCache The food id cache of the database
+     * @return The food ID in the database or -1 if there was an error
+     * @throws SQLException If database error occurs
+     */
+    public static int saveFoodAndGetId(Connection conn, Food food, IdCache<String> foodIdCache) throws SQLException {
+        if (food == null) {
+            return -1;
+        }
+        
+        String key = foodKey(food);
+        Integer cachedId = foodIdCache.get(key);
+        if (cachedId != null) {
+            if (!(food instanceof FoodNutrient)) {
+                return cachedId;
+            }
+            NutrientState state = findNutrientState(conn, cachedId, (FoodNutrient) food);
+            if (state == NutrientState.UNCHANGED
+                    || (state == NutrientState.CHANGED && changeFoodNutrients(conn, cachedId, (FoodNutrient) food))) {
+                return cachedId;
+            }
+            // The cached ID no longer belongs to this food
+            foodIdCache.invalidate(key);
+        }
+        
+        SqlDialect dialect = config.getEngine();
+        int foodId = -1;
+        boolean inserted = false;
+        try (PreparedStatement upsertStmt = conn.prepareStatement(dialect.returningId(
+                dialect.insertIgnoringDuplicates("INSERT INTO foods (name, grams, calories) VALUES (?, ?, ?)",
+                    "name, grams, calories")))) {
+            upsertStmt.setString(1, food.getName());
+            upsertStmt.setDouble(2, food.getGrams());
+            upsertStmt.setInt(3, food.getCalories());
+            
+            try (ResultSet rs = upsertStmt.executeQuery()) {
+                if (rs.next()) {
+                    foodId = rs.getInt(1);
+                    inserted = true;
+                }
+            }
+        } catch (SQLException e) {
+            if (!dialect.isDuplicateKey(e)) {
+                throw e;
+            }
+        }
+        
+        if (!inserted) {
+            // The food is already in the catalog
+            try (PreparedStatement checkStmt = conn.prepareStatement(
+                    "SELECT id FROM foods WHERE name = ? AND grams = ? AND calories = ?")) {
                 checkStmt.setString(1, food.getName());
                 checkStmt.setDouble(2, food.getGrams());
                 checkStmt.setInt(3, food.getCalories());
                 
-                ResultSet rs = checkStmt.executeQuery();
-                if (rs.next()) {
-                    // Food already exists, return its ID
-                    int foodId = rs.getInt("id");
-                    
-                    // If this is a FoodNutrient, update the nutrients
-                    if (food instanceof FoodNutrient) {
-                        FoodNutrient fn = (FoodNutrient) food;
-                        updateFoodNutrients(conn, foodId, fn);
+                try (ResultSet rs = checkStmt.executeQuery()) {
+                    if (rs.next()) {
+                        foodId = rs.getInt("id");
                     }
-                    
-                    return foodId;
                 }
             }
+        }
+        
+        if (foodId == -1) {
+            return -1; // Error
+        }
+        
+        // If this is a FoodNutrient, save the nutrients
+        if (food instanceof FoodNutrient) {
+            FoodNutrient fn = (FoodNutrient) food;
+            if (inserted) {
+                saveFoodNutrients(conn, foodId, fn);
+            } else if (findNutrientState(conn, foodId, fn) == NutrientState.CHANGED) {
+                changeFoodNutrients(conn, foodId, fn);
+            }
+        }
+        
+        foodIdCache.put(key, foodId);
+        return foodId;
+    }
+    
+    /**
+     * Removes a food from the food id cache.
+     * @details Callers that find a cached food id missing from the database call this
+     *          before saving the food again.
+     * 
+     * @param food The food to remove
+     */
+    public static void invalidateFood(Food food) {
+        invalidateFood(food, foodIdCache);
+    }
+    
+    /**
+     * Removes a food from the food id cache of a shard.
+     * 
+     * @param food The food to remove
+     * @param foodIdCache The food id cache of the database
+     */
+    public static void invalidateFood(Food food, IdCache<String> foodIdCache) {
+        if (food != null) {
+            foodIdCache.invalidate(foodKey(food));
+        }
+    }
+    
+    /**
+     * Gets the cache of food ids shared by all services.
+     * 
+     * @return The food id cache keyed by name, grams and calories
+     */
+    public static IdCache<String> getFoodIdCache() {
+        return foodIdCache;
+    }
+    
+    /**
+     * Gets the number of times saving a food changed the nutrients of a food in the catalog.
+     * @details Counts the changes of all shards, also those of transactions that were rolled
+     *          back afterwards.
+     * 
+     * @return The number of nutrient changes since the application started
+     */
+    public static long getNutrientChanges() {
+        return nutrientChanges.get();
+    }
+    
+    /**
+     * Builds the food id cache key of a food.
+     * 
+     * @param food The food
+     * @return The key made of name, grams and calories
+     */
+    private static String foodKey(Food food) {
+        return food.getName() + '\u0000' + food.getGrams() + '\u0000' + food.getCalories();
+    }
+
+    /**
+     * Compares the nutrients of a FoodNutrient with those stored for its food.
+     * 
+     * @param conn The database connection
+     * @param foodId The ID of the food in the database
+     * @param foodNutrient The FoodNutrient object containing the nutrients
+     * @return UNCHANGED if the stored nutrients are equal, CHANGED if they differ or are
+     *         missing, MISSING_FOOD if no food with this ID, name, grams and calories exists
+     * @throws SQLException If database error occurs
+     */
+    private static NutrientState findNutrientState(Connection conn, int foodId, FoodNutrient foodNutrient)
+            throws SQLException {
+        try (PreparedStatement pstmt = conn.prepareStatement(
+                "SELECT fn.protein, fn.carbs, fn.fat, fn.fiber, fn.sugar, fn.sodium FROM foods f " +
+                "LEFT JOIN food_nutrients fn ON f.id = fn.food_id " +
+                "WHERE f.id = ? AND f.name = ? AND f.grams = ? AND f.calories = ?")) {
+            pstmt.setInt(1, foodId);
+            pstmt.setString(2, foodNutrient.getName());
+            pstmt.setDouble(3, foodNutrient.getGrams());
+            pstmt.setInt(4, foodNutrient.getCalories());
             
-            // Insert new food
-            String insertSql = "INSERT INTO foods (name, grams, calories) VALUES (?, ?, ?)";
-            try (PreparedStatement insertStmt = conn.prepareStatement(insertSql, Statement.RETURN_GENERATED_KEYS)) {
-                insertStmt.setString(1, food.getName());
-                insertStmt.setDouble(2, food.getGrams());
-                insertStmt.setInt(3, food.getCalories());
-                
-                int rowsAffected = insertStmt.executeUpdate();
-                if (rowsAffected > 0) {
-                    // Get the generated ID
-                    ResultSet generatedKeys = insertStmt.getGeneratedKeys();
-                    if (generatedKeys.next()) {
-                        int foodId = generatedKeys.getInt(1);
-                        
-                        // If this is a FoodNutrient, save the nutrients
-                        if (food instanceof FoodNutrient) {
-                            FoodNutrient fn = (FoodNutrient) food;
-                            saveFoodNutrients(conn, foodId, fn);
-                        }
-                        
-                        return foodId;
-                    }
+            try (ResultSet rs = pstmt.executeQuery()) {
+                if (!rs.next()) {
+                    return NutrientState.MISSING_FOOD;
                 }
+                if (rs.getObject(1) == null) {
+                    return NutrientState.CHANGED; // No nutrients stored yet
+                }
+                boolean unchanged = rs.getDouble(1) == foodNutrient.getProtein()
+                    && rs.getDouble(2) == foodNutrient.getCarbs()
+                    && rs.getDouble(3) == foodNutrient.getFat()
+                    && rs.getDouble(4) == foodNutrient.getFiber()
+                    && rs.getDouble(5) == foodNutrient.getSugar()
+                    && rs.getDouble(6) == foodNutrient.getSodium();
+                return unchanged ? NutrientState.UNCHANGED : NutrientState.CHANGED;
             }
-            
-            return -1; // Error
+        }
+    }
+
+    /**
+     * Updates the nutrients of a known food and the daily totals of the days that logged it.
+     * @details Both are written in one transaction: the caller's if it has one open, else
+     *          a transaction of its own.
+     * 
+     * @param conn The database connection
+     * @param foodId The ID of the food in the database
+     * @param foodNutrient The FoodNutrient object containing the new nutrients
+     * @return true if the nutrients were updated, false if the food no longer exists
+     * @throws SQLException If the daily totals cannot be written
+     */
+    private static boolean changeFoodNutrients(Connection conn, int foodId, FoodNutrient foodNutrient)
+            throws SQLException {
+        boolean autoCommit = conn.getAutoCommit();
+        conn.setAutoCommit(false);
+        try {
+            boolean updated = updateFoodNutrients(conn, foodId, foodNutrient);
+            if (updated) {
+                NutritionRollup.refreshFood(conn, foodId);
+                nutrientChanges.incrementAndGet();
+            }
+            if (autoCommit) {
+                conn.commit();
+            }
+            return updated;
+        } catch (SQLException e) {
+            if (autoCommit) {
+                conn.rollback();
+            }
+            throw e;
         } finally {
-            releaseConnection(conn);
+            conn.setAutoCommit(autoCommit);
         }
     }
 
     /**
      * Helper method to update food nutrients in the database.
+     * @details Inserts the nutrients if the food has none yet. Nothing is written if no food
+     *          with this ID, name, grams and calories exists, so a stale cached food ID is
+     *          detected by the return value.
      * 
      * @param conn The database connection
      * @param foodId The ID of the food in the database
@@ -401,32 +828,22 @@ public class DatabaseHelper {
      * @return true if successful, false otherwise
      */
     private static boolean updateFoodNutrients(Connection conn, int foodId, FoodNutrient foodNutrient) {
-        try {
-            try (PreparedStatement checkStmt = conn.prepareStatement("SELECT id FROM food_nutrients WHERE food_id = ?")) {
-                checkStmt.setInt(1, foodId);
-                ResultSet rs = checkStmt.executeQuery();
-                
-                if (rs.next()) {
-                    // Update existing record
-                    try (PreparedStatement updateStmt = conn.prepareStatement(
-                            "UPDATE food_nutrients SET protein = ?, carbs = ?, fat = ?, " +
-                            "fiber = ?, sugar = ?, sodium = ? WHERE food_id = ?")) {
-                        
-                        updateStmt.setDouble(1, foodNutrient.getProtein());
-                        updateStmt.setDouble(2, foodNutrient.getCarbs());
-                        updateStmt.setDouble(3, foodNutrient.getFat());
-                        updateStmt.setDouble(4, foodNutrient.getFiber());
-                        updateStmt.setDouble(5, foodNutrient.getSugar());
-                        updateStmt.setDouble(6, foodNutrient.getSodium());
-                        updateStmt.setInt(7, foodId);
-                        
-                        return updateStmt.executeUpdate() > 0;
-                    }
-                } else {
-                    // Insert new record
-                    return saveFoodNutrients(conn, foodId, foodNutrient);
-                }
-            }
+        try (PreparedStatement upsertStmt = conn.prepareStatement(config.getEngine().upsert("food_nutrients",
+                "food_id, protein, carbs, fat, fiber, sugar, sodium", "food_id",
+                "SELECT id, ?, ?, ?, ?, ?, ? FROM foods WHERE id = ? AND name = ? AND grams = ? AND calories = ?"))) {
+            
+            upsertStmt.setDouble(1, foodNutrient.getProtein());
+            upsertStmt.setDouble(2, foodNutrient.getCarbs());
+            upsertStmt.setDouble(3, foodNutrient.getFat());
+            upsertStmt.setDouble(4, foodNutrient.getFiber());
+            upsertStmt.setDouble(5, foodNutrient.getSugar());
+            upsertStmt.setDouble(6, foodNutrient.getSodium());
+            upsertStmt.setInt(7, foodId);
+            upsertStmt.setString(8, foodNutrient.getName());
+            upsertStmt.setDouble(9, foodNutrient.getGrams());
+            upsertStmt.setInt(10, foodNutrient.getCalories());
+            
+            return upsertStmt.executeUpdate() > 0;
         } catch (SQLException e) {
             System.out.println("Could not update nutrient values: " + e.getMessage());
             return false;
@@ -462,4 +879,16 @@ public class DatabaseHelper {
             return false;
         }
     }
-}
\ No newline at end of file
+
+    /**
+     * How the nutrients of a FoodNutrient relate to those stored for its food.
+     */
+    private enum NutrientState {
+        /** The stored nutrients are equal */
+        UNCHANGED,
+        /** The stored nutrients differ or the food has none yet */
+        CHANGED,
+        /** No food with the ID, name, grams and calories exists */
+        MISSING_FOOD
+    }
+}
@@ -0,0 +1,317 @@
+package com.berkant.kagan.haluk.irem.dietapp;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.time.YearMonth;
+
+/**
+ * This class holds the connections and caches of one database file.
+ * @details A shard has its own writer pool, read-only pool, food id cache and food log
+ *          partitions, so writers of different shards never wait for each other. The main
+ *          database of DatabaseHelper is shard 0; open() creates the pools of the other
+ *          shard files with the settings of DatabaseConfig. The writer connection of the
+ *          transaction running on each thread is bound to the shard, so all storage backends
+ *          of a shard join the same transaction.
+ * @author berkant
+ */
+public class DatabaseShard {
+    /** The shard name used in log messages */
+    private final String name;
+    /** The pool of writer connections */
+    private final ConnectionPool writerPool;
+    /** The pool of read-only connections */
+    private final ConnectionPool readerPool;
+    /** The WAL checkpoint scheduler, null if the shard has none */
+    private final CheckpointScheduler checkpointScheduler;
+    /** The cache of food ids of this database */
+    private final IdCache<String> foodIdCache;
+    /** The routing of food logs to the tables of this database */
+    private final FoodLogPartitions foodLogPartitions;
+    /** The writer connection of the transaction running on each thread */
+    private final ThreadLocal<Connection> transaction = new ThreadLocal<>();
+
+    /**
+     * Constructor for DatabaseShard class.
+     *
+     * @param name The shard name used in log messages
+     * @param writerPool The pool of writer connections
+     * @param readerPool The pool of read-only connections
+     * @param checkpointScheduler The WAL checkpoint scheduler, or null if the shard has none
+     * @param foodIdCache The cache of food ids of this database
+     * @param foodLogPartitions The routing of food logs to the tables of this database
+     */
+    public DatabaseShard(String name, ConnectionPool writerPool, ConnectionPool readerPool,
+                         CheckpointScheduler checkpointScheduler, IdCache<String> foodIdCache,
+                         FoodLogPartitions foodLogPartitions) {
+        this.name = name;
+        this.writerPool = writerPool;
+        this.readerPool = readerPool;
+        this.checkpointScheduler = checkpointScheduler;
+        this.foodIdCache = foodIdCache;
+        this.foodLogPartitions = foodLogPartitions;
+    }
+
+    /**
+     * Creates a shard for a database file with the configured engine, PRAGMAs and pool sizes.
+     * @details No connection is opened until the shard is used.
+     *
+     * @param name The shard name used in log messages
+     * @param config The database settings
+     * @param path The database file path
+     * @return The shard
+     */
+    public static DatabaseShard open(String name, DatabaseConfig config, String path) {
+        ConnectionPool.ConnectionFactory writerFactory = () -> connect(config, path, false);
+        ConnectionPool writerPool = new ConnectionPool(name + "-writer",
+            config.getEngine() == SqlDialect.SQLITE ? 1 : config.getPoolSize(), writerFactory);
+        ConnectionPool readerPool = new ConnectionPool(name + "-reader", config.getReaderPoolSize(),
+            () -> connect(config, path, true));
+        CheckpointScheduler checkpointScheduler =
+            config.getEngine() == SqlDialect.SQLITE && config.getCheckpointInterval() > 0
+                && "WAL".equals(config.getJournalMode())
+                ? new CheckpointScheduler(name, writerFactory, path, config.getCheckpointInterval())
+                : null;
+        return new DatabaseShard(name, writerPool, readerPool, checkpointScheduler,
+            new IdCache<>(IdCache.DEFAULT_CAPACITY),
+            new FoodLogPartitions(config.isMonthlyFoodLogs(), config.getCompactAfterMonths()));
+    }
+
+    /**
+     * Creates the tables, applies pending migrations, prepares the food log partitions and
+     * starts the checkpoint scheduler.
+     *
+     * @throws SQLException If the database cannot be initialized
+     */
+    public void initialize() throws SQLException {
+        Connection conn = writerPool.borrow();
+        try {
+            DatabaseHelper.createTables(conn);
+            foodLogPartitions.initialize(conn);
+            try {
+                foodLogPartitions.compact(conn, YearMonth.now());
+            } catch (SQLException e) {
+                System.out.println("Food log compaction of " + name + " failed: " + e.getMessage());
+            }
+        } finally {
+            writerPool.release(conn);
+        }
+        if (checkpointScheduler != null) {
+            checkpointScheduler.start();
+        }
+    }
+
+    /**
+     * Gets the name of the shard.
+     *
+     * @return The shard name
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Gets a writer connection.
+     * @details On SQLite there is only one; do not borrow it again while holding it.
+     *
+     * @return The connection
+     * @throws SQLException If no connection became free in time
+     */
+    public Connection getWriteConnection() throws SQLException {
+        return writerPool.borrow();
+    }
+
+    /**
+     * Gets a read-only connection.
+     *
+     * @return The connection
+     * @throws SQLException If no connection became free in time
+     */
+    public Connection getReadConnection() throws SQLException {
+        return readerPool.borrow();
+    }
+
+    /**
+     * Releases a connection back to the pool of this shard it was borrowed from.
+     *
+     * @param conn The connection
+     * @return true if the connection belonged to this shard
+     */
+    public boolean release(Connection conn) {
+        if (writerPool.isBorrowed(conn)) {
+            writerPool.release(conn);
+            return true;
+        }
+        if (readerPool.isBorrowed(conn)) {
+            readerPool.release(conn);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Gets the writer connection of the transaction running on the current thread.
+     *
+     * @return The connection, or null if no transaction runs on this thread
+     */
+    Connection getBoundConnection() {
+        return transaction.get();
+    }
+
+    /**
+     * Starts a transaction on a writer connection and binds it to the current thread.
+     *
+     * @return The connection
+     * @throws SQLException If no connection became free in time
+     */
+    Connection begin() throws SQLException {
+        Connection conn = writerPool.borrow();
+        try {
+            conn.setAutoCommit(false);
+        } catch (SQLException e) {
+            writerPool.release(conn);
+            throw e;
+        }
+        transaction.set(conn);
+        return conn;
+    }
+
+    /**
+     * Commits the transaction of the current thread and releases its connection.
+     * @details The transaction is rolled back if the commit fails.
+     *
+     * @throws SQLException If the commit fails
+     */
+    void commit() throws SQLException {
+        Connection conn = transaction.get();
+        boolean committed = false;
+        try {
+            conn.commit();
+            committed = true;
+        } finally {
+            if (!committed) {
+                rollback(conn);
+            }
+            finish(conn);
+        }
+    }
+
+    /**
+     * Rolls back the transaction of the current thread and releases its connection.
+     */
+    void rollback() {
+        Connection conn = transaction.get();
+        rollback(conn);
+        finish(conn);
+    }
+
+    /**
+     * Rolls back a transaction and forgets the cached food log partitions.
+     * @details A failed rollback is reported; the connection is reset or discarded when it
+     *          is released.
+     *
+     * @param conn The writer connection of the transaction
+     */
+    private void rollback(Connection conn) {
+        try {
+            conn.rollback();
+        } catch (SQLException e) {
+            System.out.println("Failed to rollback transaction: " + e.getMessage());
+        }
+        // The transaction may have created a food log partition that no longer exists
+        foodLogPartitions.invalidate();
+    }
+
+    /**
+     * Unbinds a transaction from the current thread and releases its connection.
+     * @details A connection whose auto-commit cannot be restored is reported; the pool
+     *          discards it on release if it cannot reset it either.
+     *
+     * @param conn The writer connection of the transaction
+     */
+    private void finish(Connection conn) {
+        transaction.remove();
+        try {
+            conn.setAutoCommit(true);
+        } catch (SQLException e) {
+            System.out.println("Failed to restore auto-commit on " + name + ": " + e.getMessage());
+        }
+        writerPool.release(conn);
+    }
+
+    /**
+     * Gets the cache of food ids of this database.
+     *
+     * @return The food id cache
+     */
+    public IdCache<String> getFoodIdCache() {
+        return foodIdCache;
+    }
+
+    /**
+     * Gets the routing of food logs to the tables of this database.
+     *
+     * @return The food log partitions
+     */
+    public FoodLogPartitions getFoodLogPartitions() {
+        return foodLogPartitions;
+    }
+
+    /**
+     * Gets the WAL checkpoint scheduler.
+     *
+     * @return The checkpoint scheduler, or null if the shard has none
+     */
+    public CheckpointScheduler getCheckpointScheduler() {
+        return checkpointScheduler;
+    }
+
+    /**
+     * Gets a snapshot of the writer pool metrics.
+     *
+     * @return The writer pool metrics
+     */
+    public ConnectionPool.PoolMetrics getWriterPoolMetrics() {
+        return writerPool.getMetrics();
+    }
+
+    /**
+     * Gets a snapshot of the reader pool metrics.
+     *
+     * @return The reader pool metrics
+     */
+    public ConnectionPool.PoolMetrics getReaderPoolMetrics() {
+        return readerPool.getMetrics();
+    }
+
+    /**
+     * Stops the checkpoint scheduler and closes the idle connections of the pools.
+     */
+    public void close() {
+        if (checkpointScheduler != null) {
+            checkpointScheduler.stop();
+        }
+        writerPool.closeAll();
+        readerPool.closeAll();
+    }
+
+    /**
+     * Opens a connection to a database file and applies the configured settings.
+     *
+     * @param config The database settings
+     * @param path The database file path
+     * @param readOnly Whether the connection is used for queries only
+     * @return The connection
+     * @throws SQLException If the connection cannot be opened
+     */
+    private static Connection connect(DatabaseConfig config, String path, boolean readOnly) throws SQLException {
+        Connection connection = DriverManager.getConnection(config.getEngine().jdbcUrl(path));
+        try {
+            config.applyTo(connection, readOnly);
+        } catch (SQLException e) {
+            connection.close();
+            throw e;
+        }
+        return connection;
+    }
+}
@@ -18,6 +18,15 @@ public class Dietapp {
         this.authService = new AuthenticationService();
     }
 
+    /**
+     * Constructor for DietApp class with a storage backend.
+     *
+     * @param storage The storage backend holding the user accounts
+     */
+    public Dietapp(StorageBackend storage) {
+        this.authService = new AuthenticationService(storage);
+    }
+
     /**
      * Gets the authentication service.
      *
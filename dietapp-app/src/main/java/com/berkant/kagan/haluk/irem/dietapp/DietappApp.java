@@ -35,17 +35,20 @@ public class DietappApp {
      * Initializes the DietApp and Scanner objects.
      */
     public DietappApp() {
-        this.dietApp = new Dietapp();
+        // Storage of all services: sqlite (default) or memory
+        StorageBackend storage = StorageBackend.create(DatabaseHelper.getConfig().getStorage());
+        this.dietApp = new Dietapp(storage);
         this.scanner = new Scanner(System.in);
-        this.mealPlanningService = new MealPlanningService();
+        // Durability of food logs and meal plans: sync (default), group-commit or async
+        this.mealPlanningService = new MealPlanningService(storage, DatabaseHelper.getConfig().getDurability());
         this.mealPlanningMenu = new MealPlanningMenu(mealPlanningService, dietApp.getAuthService(), scanner);
         
         // Add new services
-        this.calorieNutrientService = new CalorieNutrientTrackingService(mealPlanningService);
+        this.calorieNutrientService = new CalorieNutrientTrackingService(mealPlanningService, storage);
         this.calorieNutrientMenu = new CalorieNutrientTrackingMenu(calorieNutrientService, mealPlanningService, dietApp.getAuthService(), scanner);
         
         // Add shopping list services
-        this.shoppingListService = new ShoppingListService(mealPlanningService);
+        this.shoppingListService = new ShoppingListService(mealPlanningService, storage);
         this.shoppingListMenu = new ShoppingListMenu(
             shoppingListService, mealPlanningService, dietApp.getAuthService(), scanner);
         
@@ -69,15 +72,22 @@ public class DietappApp {
     	// Initialize database connection
         DatabaseHelper.initializeDatabase();
         
+        // Move users to the new shards in the background after dietapp.db.shards was raised
+        ShardRebalancer rebalancer = new ShardRebalancer(DatabaseHelper.getShards(), DatabaseHelper.getShardRouter());
+        if (rebalancer.isNeeded()) {
+            rebalancer.start();
+        }
+        
         try {
             // Create an instance of the application
             DietappApp app = new DietappApp();
             
             // Run the application
             app.run();
-        } finally {
-            // Close database connection when application shuts down
+        } catch (RuntimeException e) {
+            // run() closes the database itself when the user exits
             DatabaseHelper.closeConnection();
+            throw e;
         }
     }
     
@@ -110,8 +120,11 @@ public class DietappApp {
         // Close the scanner
         scanner.close();
         
-        // Close database connection
-        DatabaseHelper.closeAllConnections();
+        // Write queued food logs and meal plans
+        mealPlanningService.close();
+        
+        // Stop the checkpoints and close the database connections
+        DatabaseHelper.closeConnection();
     }
 
     /**
@@ -0,0 +1,344 @@
+package com.berkant.kagan.haluk.irem.dietapp;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * This class caches the food logs and meal plans of a user for a date.
+ * @details The tracking and report menus read the same day over and over, and every read
+ *          joins the food logs or meal plans with the foods and their nutrients. The cache
+ *          keeps the most recently used results until their estimated size reaches a fixed
+ *          number of bytes. Writers call invalidate() for the user, date and meal after their
+ *          transaction has committed. A reader takes the version of its key before it queries
+ *          the database and hands it to put(), which drops the result if the key was
+ *          invalidated in between, so a result read before a commit is never cached after it.
+ *          The versions are kept per stripe of keys, so writes of other users and dates rarely
+ *          keep a result out of the cache. Foods are
+ *          copied on the way in and out, so callers may change the lists they get. All methods
+ *          are thread-safe.
+ * @author berkant
+ */
+public class FoodLogCache {
+    /** Default maximum estimated size of the cached results in bytes */
+    public static final long DEFAULT_MAX_BYTES = 4L * 1024 * 1024;
+
+    /** Estimated bytes of a cache entry without its foods: map entry, key and list */
+    private static final int ENTRY_BYTES = 160;
+    /** Estimated bytes of a food without its name */
+    private static final int FOOD_BYTES = 80;
+    /** Estimated extra bytes of a food with nutrients */
+    private static final int NUTRIENT_BYTES = 48;
+    /** Number of versions; keys share a version if their hashes are equal modulo this number */
+    private static final int VERSION_STRIPES = 64;
+
+    /** The maximum estimated size in bytes, 0 if caching is off */
+    private final long maxBytes;
+    /** Cached foods by key in least-recently-used order */
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    /** Estimated size of the cached entries in bytes, guarded by entries */
+    private long bytes;
+    /** Number of invalidations by stripe of the key, the versions handed to readers */
+    private final AtomicLongArray versions = new AtomicLongArray(VERSION_STRIPES);
+    /** Number of lookups answered from the cache */
+    private final AtomicLong hits = new AtomicLong();
+    /** Number of lookups that were not cached */
+    private final AtomicLong misses = new AtomicLong();
+    /** Number of entries removed to stay within the size */
+    private final AtomicLong evictions = new AtomicLong();
+    /** Number of entries removed by writes */
+    private final AtomicLong invalidations = new AtomicLong();
+
+    /**
+     * Constructor for FoodLogCache class.
+     *
+     * @param maxBytes The maximum estimated size of the cached results in bytes, 0 to cache nothing
+     */
+    public FoodLogCache(long maxBytes) {
+        if (maxBytes < 0) {
+            throw new IllegalArgumentException("Cache size must not be negative");
+        }
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Gets the cached foods of a user for a date.
+     *
+     * @param userId The user id
+     * @param date The date in format YYYY-MM-DD
+     * @param mealType The meal type of a meal plan, or null for the food log
+     * @return A copy of the foods, or null if they are not cached
+     */
+    public List<Food> get(int userId, String date, String mealType) {
+        if (maxBytes == 0) {
+            return null;
+        }
+        Entry entry;
+        synchronized (entries) {
+            entry = entries.get(key(userId, date, mealType));
+        }
+        if (entry == null) {
+            misses.incrementAndGet();
+            return null;
+        }
+        hits.incrementAndGet();
+        return copy(entry.foods);
+    }
+
+    /**
+     * Gets the version to pass to put() for a result that is about to be read.
+     *
+     * @param userId The user id
+     * @param date The date in format YYYY-MM-DD
+     * @param mealType The meal type of a meal plan, or null for the food log
+     * @return The current version of the key
+     */
+    public long getVersion(int userId, String date, String mealType) {
+        return versions.get(stripe(key(userId, date, mealType)));
+    }
+
+    /**
+     * Caches the foods of a user for a date.
+     * @details Nothing is cached if the key was invalidated since its version was taken, or
+     *          if the foods alone are larger than the cache.
+     *
+     * @param userId The user id
+     * @param date The date in format YYYY-MM-DD
+     * @param mealType The meal type of a meal plan, or null for the food log
+     * @param foods The foods read from the database
+     * @param readVersion The version of the key taken before the foods were read
+     */
+    public void put(int userId, String date, String mealType, List<Food> foods, long readVersion) {
+        if (maxBytes == 0 || foods == null) {
+            return;
+        }
+        String key = key(userId, date, mealType);
+        long size = ENTRY_BYTES + 2L * key.length();
+        for (Food food : foods) {
+            size += estimate(food);
+        }
+        if (size > maxBytes) {
+            return;
+        }
+        Entry entry = new Entry(copy(foods), size);
+
+        synchronized (entries) {
+            // Checked under the lock, so an invalidation cannot slip in before the entry is added
+            if (versions.get(stripe(key)) != readVersion) {
+                return;
+            }
+            Entry previous = entries.put(key, entry);
+            if (previous != null) {
+                bytes -= previous.bytes;
+            }
+            bytes += size;
+            Iterator<Entry> eldest = entries.values().iterator();
+            while (bytes > maxBytes && eldest.hasNext()) {
+                bytes -= eldest.next().bytes;
+                eldest.remove();
+                evictions.incrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * Removes the foods of a user for a date.
+     * @details Call after the transaction that changed them has committed.
+     *
+     * @param userId The user id
+     * @param date The date in format YYYY-MM-DD
+     * @param mealType The meal type of a meal plan, or null for the food log
+     */
+    public void invalidate(int userId, String date, String mealType) {
+        if (maxBytes == 0) {
+            return;
+        }
+        String key = key(userId, date, mealType);
+        synchronized (entries) {
+            versions.incrementAndGet(stripe(key));
+            Entry removed = entries.remove(key);
+            if (removed != null) {
+                bytes -= removed.bytes;
+                invalidations.incrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * Removes all cached foods.
+     */
+    public void clear() {
+        synchronized (entries) {
+            for (int i = 0; i < VERSION_STRIPES; i++) {
+                versions.incrementAndGet(i);
+            }
+            entries.clear();
+            bytes = 0;
+        }
+    }
+
+    /**
+     * Gets the number of cached results.
+     *
+     * @return The number of entries
+     */
+    public int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    /**
+     * Gets the estimated size of the cached results.
+     *
+     * @return The size in bytes
+     */
+    public long getBytes() {
+        synchronized (entries) {
+            return bytes;
+        }
+    }
+
+    /**
+     * Gets the maximum estimated size of the cached results.
+     *
+     * @return The size in bytes, 0 if caching is off
+     */
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    /**
+     * Gets the number of lookups answered from the cache.
+     *
+     * @return The number of hits
+     */
+    public long getHits() {
+        return hits.get();
+    }
+
+    /**
+     * Gets the number of lookups that were not cached.
+     *
+     * @return The number of misses
+     */
+    public long getMisses() {
+        return misses.get();
+    }
+
+    /**
+     * Gets the share of lookups answered from the cache.
+     *
+     * @return The hit rate from 0 to 1, 0 before the first lookup
+     */
+    public double getHitRate() {
+        long hitCount = hits.get();
+        long total = hitCount + misses.get();
+        return total == 0 ? 0 : (double) hitCount / total;
+    }
+
+    /**
+     * Gets the number of results evicted to stay within the size.
+     *
+     * @return The number of evictions
+     */
+    public long getEvictions() {
+        return evictions.get();
+    }
+
+    /**
+     * Gets the number of cached results removed by writes.
+     *
+     * @return The number of invalidations
+     */
+    public long getInvalidations() {
+        return invalidations.get();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("Food log cache: %d entries, %d of %d bytes, hit rate %.1f%% " +
+            "(%d hits, %d misses), %d evictions, %d invalidations", size(), getBytes(), maxBytes,
+            getHitRate() * 100, getHits(), getMisses(), getEvictions(), getInvalidations());
+    }
+
+    /**
+     * Builds the key of a cached result.
+     *
+     * @param userId The user id
+     * @param date The date
+     * @param mealType The meal type, null for the food log
+     * @return The key
+     */
+    private static String key(int userId, String date, String mealType) {
+        return userId + "\u0000" + date + "\u0000" + mealType;
+    }
+
+    /**
+     * Gets the stripe of a key in the versions.
+     *
+     * @param key The key
+     * @return The index of its version
+     */
+    private static int stripe(String key) {
+        return (key.hashCode() & Integer.MAX_VALUE) % VERSION_STRIPES;
+    }
+
+    /**
+     * Estimates the heap size of a food.
+     *
+     * @param food The food
+     * @return The estimated size in bytes, name included
+     */
+    private static long estimate(Food food) {
+        long size = FOOD_BYTES + (food.getName() == null ? 0 : 2L * food.getName().length());
+        return food instanceof FoodNutrient ? size + NUTRIENT_BYTES : size;
+    }
+
+    /**
+     * Copies foods, so callers cannot change the cached ones.
+     *
+     * @param foods The foods
+     * @return New foods with the same values, in the same order
+     */
+    private static List<Food> copy(List<Food> foods) {
+        List<Food> copies = new ArrayList<>(foods.size());
+        for (Food food : foods) {
+            if (food instanceof FoodNutrient) {
+                FoodNutrient nutrient = (FoodNutrient) food;
+                copies.add(new FoodNutrient(nutrient.getName(), nutrient.getGrams(), nutrient.getCalories(),
+                    nutrient.getProtein(), nutrient.getCarbs(), nutrient.getFat(), nutrient.getFiber(),
+                    nutrient.getSugar(), nutrient.getSodium()));
+            } else {
+                copies.add(new Food(food.getName(), food.getGrams(), food.getCalories()));
+            }
+        }
+        return copies;
+    }
+
+    /**
+     * A cached result.
+     */
+    private static class Entry {
+        /** The foods, never handed out */
+        private final List<Food> foods;
+        /** The estimated size in bytes */
+        private final long bytes;
+
+        /**
+         * Constructor for Entry class.
+         *
+         * @param foods The foods, already copied
+         * @param bytes The estimated size in bytes
+         */
+        private Entry(List<Food> foods, long bytes) {
+            this.foods = Collections.unmodifiableList(foods);
+            this.bytes = bytes;
+        }
+    }
+}
@@ -0,0 +1,425 @@
+package com.berkant.kagan.haluk.irem.dietapp;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.NavigableSet;
+import java.util.concurrent.ConcurrentSkipListSet;
+
+/**
+ * This class routes food logs to monthly partition tables.
+ * @details With monthly partitioning each month of food logs is stored in its own table,
+ *          e.g. food_logs_202505, created on the first write to the month and recorded in the
+ *          food_log_partitions table. Reads of a date go to the table of its month and reads of
+ *          a date range only to the tables of the months in the range, so the cost of a
+ *          recent-day query does not grow with the length of the history. Logs with dates that
+ *          are not YYYY-MM-DD stay in food_logs. Without partitioning every log is routed to
+ *          food_logs.
+ *
+ *          The catalog is created by schema migration 7. The partitions are created at run
+ *          time with the columns and indexes that food_logs has at the latest schema
+ *          version, see createTable() and createIndex(). A migration that changes food_logs
+ *          must therefore change these two methods as well and apply the same change to the
+ *          existing partitions with a migration step that reads them from the catalog.
+ *
+ *          Compaction rewrites a cold partition, one whose month lies the configured number of
+ *          months in the past, in (user_id, date) order. SQLite stores rows in rowid order, so
+ *          afterwards the logs of a user and day sit on adjacent pages and the pages freed by
+ *          deleted rows are released. Logs added to a month after its compaction are appended.
+ * @author berkant
+ */
+public class FoodLogPartitions {
+    /** Table of unpartitioned food logs */
+    public static final String LEGACY_TABLE = "food_logs";
+    /** Table recording the partitions and whether they were compacted */
+    public static final String CATALOG_TABLE = "food_log_partitions";
+
+    private static final DateTimeFormatter MONTH_SUFFIX = DateTimeFormatter.ofPattern("yyyyMM");
+
+    /** Whether logs are stored in monthly partitions */
+    private final boolean monthly;
+    /** Age in months from which a partition is compacted */
+    private final int compactAfterMonths;
+    /** Names of the existing partitions, which sort by month */
+    private final NavigableSet<String> partitions = new ConcurrentSkipListSet<>();
+    /** Whether the partitions have been read from the catalog */
+    private volatile boolean loaded;
+
+    /**
+     * Constructor for FoodLogPartitions class.
+     *
+     * @param monthly Whether logs are stored in monthly partitions
+     * @param compactAfterMonths Age in months from which a partition is compacted, at least 1
+     */
+    public FoodLogPartitions(boolean monthly, int compactAfterMonths) {
+        if (compactAfterMonths < 1) {
+            throw new IllegalArgumentException("Partitions can only be compacted after at least one month: " + compactAfterMonths);
+        }
+        this.monthly = monthly;
+        this.compactAfterMonths = compactAfterMonths;
+    }
+
+    /**
+     * Checks whether logs are stored in monthly partitions.
+     *
+     * @return true if logs are partitioned by month
+     */
+    public boolean isMonthly() {
+        return monthly;
+    }
+
+    /**
+     * Gets the name of the partition a date belongs to.
+     *
+     * @param date The date in format YYYY-MM-DD
+     * @return The partition name, or null if the date is not valid
+     */
+    public static String partitionOf(String date) {
+        if (date == null) {
+            return null;
+        }
+        try {
+            return LEGACY_TABLE + "_" + LocalDate.parse(date).format(MONTH_SUFFIX);
+        } catch (DateTimeParseException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Rereads the partition catalog and, with monthly partitioning, moves the logs of valid
+     * dates from food_logs to their partitions.
+     * @details Call after the schema migrations, which create the catalog.
+     *
+     * @param conn The writer connection
+     * @return The number of logs moved
+     * @throws SQLException If the logs cannot be moved; nothing is moved then
+     */
+    public int initialize(Connection conn) throws SQLException {
+        invalidate();
+        if (!monthly) {
+            return 0;
+        }
+
+        List<String> dates = new ArrayList<>();
+        try (Statement statement = conn.createStatement();
+             ResultSet rs = statement.executeQuery("SELECT DISTINCT date FROM " + LEGACY_TABLE)) {
+            while (rs.next()) {
+                dates.add(rs.getString(1));
+            }
+        }
+
+        int moved = 0;
+        boolean autoCommit = conn.getAutoCommit();
+        conn.setAutoCommit(false);
+        try {
+            for (String date : dates) {
+                String partition = partitionOf(date);
+                if (partition == null) {
+                    continue;
+                }
+                createPartition(conn, partition);
+                try (PreparedStatement copy = conn.prepareStatement(
+                         "INSERT INTO " + partition + " (user_id, date, food_id) " +
+                         "SELECT user_id, date, food_id FROM " + LEGACY_TABLE + " WHERE date = ? ORDER BY id");
+                     PreparedStatement delete = conn.prepareStatement(
+                         "DELETE FROM " + LEGACY_TABLE + " WHERE date = ?")) {
+                    copy.setString(1, date);
+                    moved += copy.executeUpdate();
+                    delete.setString(1, date);
+                    delete.executeUpdate();
+                }
+            }
+            conn.commit();
+        } catch (SQLException e) {
+            conn.rollback();
+            invalidate();
+            throw e;
+        } finally {
+            conn.setAutoCommit(autoCommit);
+        }
+        if (moved > 0) {
+            System.out.println("Moved " + moved + " food logs to monthly partitions");
+        }
+        return moved;
+    }
+
+    /**
+     * Gets the table a log of a date is written to, creating its partition if needed.
+     *
+     * @param conn The writer connection
+     * @param date The date in format YYYY-MM-DD
+     * @return The table name
+     * @throws SQLException If the partition cannot be created
+     */
+    public String writeTable(Connection conn, String date) throws SQLException {
+        String partition = monthly ? partitionOf(date) : null;
+        if (partition == null) {
+            return LEGACY_TABLE;
+        }
+        load(conn);
+        if (!partitions.contains(partition)) {
+            createPartition(conn, partition);
+        }
+        return partition;
+    }
+
+    /**
+     * Gets the table the logs of a date are read from.
+     *
+     * @param conn The database connection
+     * @param date The date in format YYYY-MM-DD
+     * @return The table name, or null if nothing was logged in the month of the date
+     * @throws SQLException If the partitions cannot be read
+     */
+    public String readTable(Connection conn, String date) throws SQLException {
+        String partition = monthly ? partitionOf(date) : null;
+        if (partition == null) {
+            return LEGACY_TABLE;
+        }
+        load(conn);
+        return partitions.contains(partition) ? partition : null;
+    }
+
+    /**
+     * Gets the tables the logs of a date range are read from.
+     *
+     * @param conn The database connection
+     * @param fromDate The first date in format YYYY-MM-DD
+     * @param toDate The last date in format YYYY-MM-DD
+     * @return The table names in month order; empty if no month of the range has logs
+     * @throws SQLException If the partitions cannot be read
+     */
+    public List<String> readTables(Connection conn, String fromDate, String toDate) throws SQLException {
+        String from = monthly ? partitionOf(fromDate) : null;
+        String to = monthly ? partitionOf(toDate) : null;
+        if (from == null || to == null) {
+            return Collections.singletonList(LEGACY_TABLE);
+        }
+        if (from.compareTo(to) > 0) {
+            return Collections.emptyList();
+        }
+        load(conn);
+        return new ArrayList<>(partitions.subSet(from, true, to, true));
+    }
+
+    /**
+     * Gets the names of the existing partitions.
+     *
+     * @param conn The database connection
+     * @return The partition names in month order
+     * @throws SQLException If the partitions cannot be read
+     */
+    public List<String> getPartitions(Connection conn) throws SQLException {
+        load(conn);
+        return new ArrayList<>(partitions);
+    }
+
+    /**
+     * Compacts the cold partitions that were not compacted yet.
+     *
+     * @param conn The writer connection
+     * @param currentMonth The current month
+     * @return The number of partitions compacted
+     * @throws SQLException If a partition cannot be compacted; it is left unchanged then
+     */
+    public int compact(Connection conn, YearMonth currentMonth) throws SQLException {
+        if (!monthly) {
+            return 0;
+        }
+        String newestCold = LEGACY_TABLE + "_" + currentMonth.minusMonths(compactAfterMonths).format(MONTH_SUFFIX);
+        List<String> cold = new ArrayList<>();
+        try (PreparedStatement pstmt = conn.prepareStatement(
+                "SELECT name FROM " + CATALOG_TABLE + " WHERE compacted = 0 AND name <= ? ORDER BY name")) {
+            pstmt.setString(1, newestCold);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    cold.add(rs.getString(1));
+                }
+            }
+        }
+
+        for (String partition : cold) {
+            compactPartition(conn, partition);
+        }
+        if (!cold.isEmpty()) {
+            System.out.println("Compacted " + cold.size() + " food log partitions");
+        }
+        return cold.size();
+    }
+
+    /**
+     * Forgets the known partitions, so they are read from the catalog again.
+     * @details Called when a transaction that may have created a partition is rolled back.
+     */
+    public void invalidate() {
+        loaded = false;
+    }
+
+    /**
+     * Reads the partitions from the catalog unless they are known.
+     *
+     * @param conn The database connection
+     * @throws SQLException If the catalog cannot be read
+     */
+    private void load(Connection conn) throws SQLException {
+        if (loaded) {
+            return;
+        }
+        synchronized (partitions) {
+            if (loaded) {
+                return;
+            }
+            partitions.clear();
+            try (Statement statement = conn.createStatement();
+                 ResultSet rs = statement.executeQuery("SELECT name FROM " + CATALOG_TABLE)) {
+                while (rs.next()) {
+                    partitions.add(rs.getString(1));
+                }
+            }
+            loaded = true;
+        }
+    }
+
+    /**
+     * Creates a partition table with the columns and covering index of food_logs.
+     *
+     * @param conn The writer connection
+     * @param partition The partition name
+     * @throws SQLException If the partition cannot be created
+     */
+    private void createPartition(Connection conn, String partition) throws SQLException {
+        SqlDialect dialect = SqlDialect.of(conn);
+        try (Statement statement = conn.createStatement()) {
+            createTable(statement, dialect, partition);
+            createIndex(statement, partition);
+        }
+        try (PreparedStatement pstmt = conn.prepareStatement(dialect.insertIgnoringDuplicates(
+                "INSERT INTO " + CATALOG_TABLE + " (name, period) VALUES (?, ?)", "name"))) {
+            pstmt.setString(1, partition);
+            pstmt.setString(2, partition.substring(LEGACY_TABLE.length() + 1));
+            pstmt.executeUpdate();
+        } catch (SQLException e) {
+            if (!dialect.isDuplicateKey(e)) {
+                throw e;
+            }
+        }
+        partitions.add(partition);
+    }
+
+    /**
+     * Rewrites a partition in (user_id, date) order and marks it as compacted.
+     *
+     * @param conn The writer connection
+     * @param partition The partition name
+     * @throws SQLException If the partition cannot be rewritten; the transaction is rolled back
+     */
+    private void compactPartition(Connection conn, String partition) throws SQLException {
+        SqlDialect dialect = SqlDialect.of(conn);
+        String compacted = partition + "_compacted";
+        boolean autoCommit = conn.getAutoCommit();
+        conn.setAutoCommit(false);
+        try (Statement statement = conn.createStatement()) {
+            statement.execute("DROP TABLE IF EXISTS " + compacted);
+            createTable(statement, dialect, compacted);
+            statement.executeUpdate(
+                "INSERT INTO " + compacted + " (user_id, date, food_id) " +
+                "SELECT user_id, date, food_id FROM " + partition + " ORDER BY user_id, date, id");
+            statement.execute("DROP TABLE " + partition);
+            statement.execute("ALTER TABLE " + compacted + " RENAME TO " + partition);
+            createIndex(statement, partition);
+            try (PreparedStatement pstmt = conn.prepareStatement(
+                    "UPDATE " + CATALOG_TABLE + " SET compacted = 1 WHERE name = ?")) {
+                pstmt.setString(1, partition);
+                pstmt.executeUpdate();
+            }
+            conn.commit();
+        } catch (SQLException e) {
+            conn.rollback();
+            throw new SQLException("Could not compact " + partition + ": " + e.getMessage(), e);
+        } finally {
+            conn.setAutoCommit(autoCommit);
+        }
+    }
+
+    /**
+     * Creates a table with the columns of food_logs.
+     * @details Keep this in step with the food_logs of the latest schema version; partitions
+     *          that already exist are only changed by migrations.
+     *
+     * @param statement The statement to execute the DDL with
+     * @param dialect The dialect of the connection
+     * @param table The table name
+     * @throws SQLException If the table cannot be created
+     */
+    private static void createTable(Statement statement, SqlDialect dialect, String table) throws SQLException {
+        statement.execute(dialect.translate(
+            "CREATE TABLE IF NOT EXISTS " + table + " (" +
+            "id INTEGER PRIMARY KEY AUTOINCREMENT," +
+            "user_id INTEGER NOT NULL," +
+            "date TEXT NOT NULL," +
+            "food_id INTEGER NOT NULL," +
+            "FOREIGN KEY(user_id) REFERENCES users(id)," +
+            "FOREIGN KEY(food_id) REFERENCES foods(id)" +
+            ")"
+        ));
+    }
+
+    /**
+     * Creates the food index of food_logs on every partition in the catalog.
+     * @details Step of schema migration 9, which creates the index of food_logs itself.
+     *          Partitions created later get it from createIndex().
+     *
+     * @param conn The writer connection
+     * @throws SQLException If the catalog cannot be read or an index cannot be created
+     */
+    public static void indexFoods(Connection conn) throws SQLException {
+        List<String> tables = new ArrayList<>();
+        try (Statement statement = conn.createStatement();
+             ResultSet rs = statement.executeQuery("SELECT name FROM " + CATALOG_TABLE)) {
+            while (rs.next()) {
+                tables.add(rs.getString(1));
+            }
+        }
+        try (Statement statement = conn.createStatement()) {
+            for (String table : tables) {
+                createFoodIndex(statement, table);
+            }
+        }
+    }
+
+    /**
+     * Creates the indexes of food_logs on a table.
+     * @details The indexes of food_logs itself are created by schema migrations 1 and 9.
+     *
+     * @param statement The statement to execute the DDL with
+     * @param table The table name
+     * @throws SQLException If an index cannot be created
+     */
+    private static void createIndex(Statement statement, String table) throws SQLException {
+        statement.execute(
+            "CREATE INDEX IF NOT EXISTS idx_" + table + "_user_date ON " + table + " (user_id, date, food_id)");
+        createFoodIndex(statement, table);
+    }
+
+    /**
+     * Creates the covering index that finds the days a food was logged on a table.
+     * @details NutritionRollup.refreshFood() looks the days up by food_id.
+     *
+     * @param statement The statement to execute the DDL with
+     * @param table The table name
+     * @throws SQLException If the index cannot be created
+     */
+    private static void createFoodIndex(Statement statement, String table) throws SQLException {
+        statement.execute(
+            "CREATE INDEX IF NOT EXISTS idx_" + table + "_food ON " + table + " (food_id, user_id, date)");
+    }
+}
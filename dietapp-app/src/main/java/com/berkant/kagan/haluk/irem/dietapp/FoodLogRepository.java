@@ -0,0 +1,118 @@
+package com.berkant.kagan.haluk.irem.dietapp;
+
+import java.sql.SQLException;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * This interface stores the foods users logged as eaten.
+ * @author berkant
+ */
+public interface FoodLogRepository {
+
+    /**
+     * Receives the foods of a streamed food log one at a time.
+     */
+    interface FoodLogVisitor {
+        /**
+         * Handles a logged food.
+         *
+         * @param date The date in format YYYY-MM-DD
+         * @param food The food
+         * @throws SQLException To stop the stream; the exception is passed on to the caller
+         */
+        void visit(String date, Food food) throws SQLException;
+    }
+
+    /**
+     * Logs foods for a user and date, saving them to the food catalog first.
+     *
+     * @param userId The user id
+     * @param date The date in format YYYY-MM-DD
+     * @param foods The foods; null entries are skipped
+     * @return Whether each food was logged, in the order of the list
+     * @throws SQLException If the foods cannot be stored
+     */
+    boolean[] add(int userId, String date, List<Food> foods) throws SQLException;
+
+    /**
+     * Gets the foods a user logged on a date.
+     *
+     * @param userId The user id
+     * @param date The date in format YYYY-MM-DD
+     * @return The logged foods
+     * @throws SQLException If the log cannot be read
+     */
+    List<Food> find(int userId, String date) throws SQLException;
+
+    /**
+     * Gets the foods a user logged in a date range.
+     *
+     * @param userId The user id
+     * @param fromDate The first date in format YYYY-MM-DD
+     * @param toDate The last date in format YYYY-MM-DD
+     * @return The logged foods by date in date order; dates without logs are left out
+     * @throws SQLException If the log cannot be read
+     */
+    Map<String, List<Food>> findRange(int userId, String fromDate, String toDate) throws SQLException;
+
+    /**
+     * Streams the foods a user logged in a date range, in date order.
+     * @details The foods are handed to the visitor as they are read instead of being collected,
+     *          so a range of any length is read in constant memory. Everything opened for the
+     *          stream is closed before the method returns, also if the visitor throws.
+     *
+     * @param userId The user id
+     * @param fromDate The first date in format YYYY-MM-DD
+     * @param toDate The last date in format YYYY-MM-DD
+     * @param visitor Receives each logged food
+     * @return The number of foods visited
+     * @throws SQLException If the log cannot be read or the visitor throws it
+     */
+    long forEach(int userId, String fromDate, String toDate, FoodLogVisitor visitor) throws SQLException;
+
+    /**
+     * Gets the nutrition totals a user logged in a date range.
+     *
+     * @param userId The user id
+     * @param fromDate The first date in format YYYY-MM-DD
+     * @param toDate The last date in format YYYY-MM-DD
+     * @return The totals by date in date order; dates without logs are left out
+     * @throws SQLException If the totals cannot be read
+     */
+    Map<String, DailyNutritionTotals> findTotals(int userId, String fromDate, String toDate) throws SQLException;
+
+    /**
+     * Gets the nutrition totals a user logged on some dates.
+     * @details All dates are read in one query, however far apart they are.
+     *
+     * @param userId The user id
+     * @param dates The dates in format YYYY-MM-DD
+     * @return The totals by date; dates without logs are left out
+     * @throws SQLException If the totals cannot be read
+     */
+    Map<String, DailyNutritionTotals> findTotals(int userId, List<String> dates) throws SQLException;
+
+    /**
+     * Sums the foods a user logged in a date range from the food logs themselves.
+     * @details Unlike findTotals() the sums are computed when called, so they follow nutrients
+     *          that were changed in the food catalog after the foods were logged.
+     *
+     * @param userId The user id
+     * @param fromDate The first date in format YYYY-MM-DD
+     * @param toDate The last date in format YYYY-MM-DD
+     * @return The totals by date in date order; dates without logs are left out
+     * @throws SQLException If the log cannot be read
+     */
+    Map<String, DailyNutritionTotals> aggregate(int userId, String fromDate, String toDate) throws SQLException;
+
+    /**
+     * Sums the calories a user logged on a date.
+     *
+     * @param userId The user id
+     * @param date The date in format YYYY-MM-DD
+     * @return The total calories
+     * @throws SQLException If the log cannot be read
+     */
+    int totalCalories(int userId, String date) throws SQLException;
+}
@@ -0,0 +1,61 @@
+package com.berkant.kagan.haluk.irem.dietapp;
+
+import java.sql.SQLException;
+import java.util.List;
+
+/**
+ * This interface stores the food catalog.
+ * @details Foods are identified by name, grams and calories; saving a food that is already
+ *          in the catalog returns its id and updates its nutrients. Foods returned by the
+ *          finders are FoodNutrient objects when nutrients are stored for them.
+ * @author berkant
+ */
+public interface FoodRepository {
+
+    /**
+     * Saves a food to the catalog, or finds it if it is already there.
+     *
+     * @param food The food, with its nutrients if it is a FoodNutrient
+     * @return The food id, or -1 if the food could not be saved
+     * @throws SQLException If the food cannot be stored
+     */
+    int save(Food food) throws SQLException;
+
+    /**
+     * Saves a food as an option for a meal type.
+     *
+     * @param food The food
+     * @param mealType The type of meal (breakfast, lunch, snack, dinner)
+     * @return The food id, or -1 if the food could not be saved
+     * @throws SQLException If the food cannot be stored
+     */
+    int saveWithMealType(Food food, String mealType) throws SQLException;
+
+    /**
+     * Gets the food options of a meal type.
+     *
+     * @param mealType The type of meal (breakfast, lunch, snack, dinner)
+     * @param limit The maximum number of foods
+     * @return The foods in the order they were saved
+     * @throws SQLException If the foods cannot be read
+     */
+    List<Food> findByMealType(String mealType, int limit) throws SQLException;
+
+    /**
+     * Gets foods that have nutrients stored.
+     *
+     * @param limit The maximum number of foods
+     * @return The foods with their nutrients
+     * @throws SQLException If the foods cannot be read
+     */
+    List<FoodNutrient> findWithNutrients(int limit) throws SQLException;
+
+    /**
+     * Gets the number of times saving a food changed the nutrients of a food in the catalog.
+     * @details Caches of logged foods compare the count before and after a write to find out
+     *          whether foods of other days changed with it.
+     *
+     * @return The number of nutrient changes since the application started
+     */
+    long getNutrientChanges();
+}
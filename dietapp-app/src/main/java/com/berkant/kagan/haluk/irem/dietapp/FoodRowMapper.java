@@ -0,0 +1,52 @@
+package com.berkant.kagan.haluk.irem.dietapp;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * This class creates foods from rows of foods left-joined with food_nutrients.
+ * @details Queries select COLUMNS, the food columns in a fixed order, after any columns of
+ *          their own, and map() reads them by index from the given position. Reading by index
+ *          skips the label lookup of every column on every row, and the explicit list leaves
+ *          out the id, meal type and food id columns that f.*, fn.* would copy into each row.
+ * @author berkant
+ */
+public class FoodRowMapper {
+    /** The columns read by map(), for foods f left-joined with food_nutrients fn */
+    public static final String COLUMNS =
+        "f.name, f.grams, f.calories, fn.protein, fn.carbs, fn.fat, fn.fiber, fn.sugar, fn.sodium";
+    /** Number of columns in COLUMNS */
+    public static final int COLUMN_COUNT = 9;
+
+    /**
+     * Private constructor to prevent instantiation.
+     */
+    private FoodRowMapper() {
+    }
+
+    /**
+     * Creates a food from the current row.
+     *
+     * @param rs The result set positioned on the row
+     * @param first The index of the first column of COLUMNS in the row, 1 if the query selects
+     *              nothing before them
+     * @return A FoodNutrient if the row has nutrients, a Food otherwise
+     * @throws SQLException If a column cannot be read
+     */
+    public static Food map(ResultSet rs, int first) throws SQLException {
+        String name = rs.getString(first);
+        double grams = rs.getDouble(first + 1);
+        int calories = rs.getInt(first + 2);
+        double protein = rs.getDouble(first + 3);
+        if (rs.wasNull()) {
+            // Basic food without nutrition data
+            return new Food(name, grams, calories);
+        }
+        return new FoodNutrient(name, grams, calories, protein,
+            rs.getDouble(first + 4),
+            rs.getDouble(first + 5),
+            rs.getDouble(first + 6),
+            rs.getDouble(first + 7),
+            rs.getDouble(first + 8));
+    }
+}
@@ -0,0 +1,162 @@
+package com.berkant.kagan.haluk.irem.dietapp;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * This class caches database ids by a natural key, such as users by username.
+ * @details Service operations resolve usernames and foods to their row ids before every
+ *          write or query. The cache keeps the most recently used mappings up to a fixed
+ *          capacity, so hot paths resolve the id without a query. Only ids of existing rows
+ *          are cached; a key that was not found is looked up again next time. Callers remove
+ *          an entry when its row is deleted. All methods are thread-safe.
+ * @param <K> The type of the natural key
+ * @author berkant
+ */
+public class IdCache<K> {
+    /** Default maximum number of cached ids */
+    public static final int DEFAULT_CAPACITY = 1024;
+
+    /** The maximum number of cached ids */
+    private final int capacity;
+    /** Key to id mappings in least-recently-used order */
+    private final LinkedHashMap<K, Integer> ids;
+    /** Number of lookups answered from the cache */
+    private final AtomicLong hits = new AtomicLong();
+    /** Number of lookups that were not cached */
+    private final AtomicLong misses = new AtomicLong();
+    /** Number of entries removed to stay within the capacity */
+    private final AtomicLong evictions = new AtomicLong();
+
+    /**
+     * Constructor for IdCache class.
+     *
+     * @param capacity The maximum number of cached ids
+     */
+    public IdCache(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Cache capacity must be at least 1");
+        }
+        this.capacity = capacity;
+        this.ids = new LinkedHashMap<K, Integer>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<K, Integer> eldest) {
+                if (size() > IdCache.this.capacity) {
+                    evictions.incrementAndGet();
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * Gets a cached id.
+     *
+     * @param key The key to look up
+     * @return The id or null if the key is not cached
+     */
+    public Integer get(K key) {
+        if (key == null) {
+            return null;
+        }
+        Integer id;
+        synchronized (ids) {
+            id = ids.get(key);
+        }
+        if (id != null) {
+            hits.incrementAndGet();
+        } else {
+            misses.incrementAndGet();
+        }
+        return id;
+    }
+
+    /**
+     * Caches an id.
+     *
+     * @param key The key
+     * @param id The row id; ids below 1 are ignored
+     */
+    public void put(K key, int id) {
+        if (key == null || id < 1) {
+            return;
+        }
+        synchronized (ids) {
+            ids.put(key, id);
+        }
+    }
+
+    /**
+     * Removes a key from the cache.
+     *
+     * @param key The key to remove
+     */
+    public void invalidate(K key) {
+        if (key == null) {
+            return;
+        }
+        synchronized (ids) {
+            ids.remove(key);
+        }
+    }
+
+    /**
+     * Removes all ids from the cache.
+     */
+    public void clear() {
+        synchronized (ids) {
+            ids.clear();
+        }
+    }
+
+    /**
+     * Gets the number of cached ids.
+     *
+     * @return The number of cached ids
+     */
+    public int size() {
+        synchronized (ids) {
+            return ids.size();
+        }
+    }
+
+    /**
+     * Gets the maximum number of cached ids.
+     *
+     * @return The capacity
+     */
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Gets the number of lookups answered from the cache.
+     *
+     * @return The number of hits
+     */
+    public long getHits() {
+        return hits.get();
+    }
+
+    /**
+     * Gets the number of lookups that were not cached.
+     *
+     * @return The number of misses
+     */
+    public long getMisses() {
+        return misses.get();
+    }
+
+    /**
+     * Gets the number of ids evicted to stay within the capacity.
+     *
+     * @return The number of evictions
+     */
+    public long getEvictions() {
+        return evictions.get();
+    }
+}
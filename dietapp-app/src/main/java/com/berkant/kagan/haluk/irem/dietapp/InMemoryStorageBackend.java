@@ -0,0 +1,559 @@
+package com.berkant.kagan.haluk.irem.dietapp;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * This class keeps the application data in memory.
+ * @details All data lives in concurrent maps owned by the backend instance, so it is safe
+ *          to use from many threads and is lost when the instance is dropped. Lists of food
+ *          logs, meal plans and recipe ingredients are locked individually while they are
+ *          changed or copied. inTransaction runs its work directly: every repository call is
+ *          applied as soon as it returns and nothing is rolled back if the work fails.
+ *          Stored objects are copied on the way in and out, so callers cannot change them.
+ * @author berkant
+ */
+public class InMemoryStorageBackend implements StorageBackend {
+
+    /** Users by username */
+    private final ConcurrentMap<String, StoredUser> users = new ConcurrentHashMap<>();
+    /** Nutrition goals by user id */
+    private final ConcurrentMap<Integer, StoredGoals> goals = new ConcurrentHashMap<>();
+    /** Food ids by name, grams and calories */
+    private final ConcurrentMap<String, Integer> foodIds = new ConcurrentHashMap<>();
+    /** Foods by id, in the order they were saved */
+    private final ConcurrentSkipListMap<Integer, Food> foods = new ConcurrentSkipListMap<>();
+    /** Food ids of the options of each meal type */
+    private final ConcurrentMap<String, List<Integer>> mealTypeOptions = new ConcurrentHashMap<>();
+    /** Logged food ids by user and date, sorted so the dates of a user are adjacent */
+    private final ConcurrentSkipListMap<String, List<Integer>> foodLogs = new ConcurrentSkipListMap<>();
+    /** Planned food ids by user, date and meal type */
+    private final ConcurrentMap<String, List<Integer>> mealPlans = new ConcurrentHashMap<>();
+    /** Ingredient prices by name */
+    private final ConcurrentMap<String, Double> ingredientPrices = new ConcurrentHashMap<>();
+    /** Recipes by id */
+    private final ConcurrentSkipListMap<Integer, StoredRecipe> recipes = new ConcurrentSkipListMap<>();
+
+    private final AtomicInteger nextUserId = new AtomicInteger();
+    private final AtomicInteger nextFoodId = new AtomicInteger();
+    private final AtomicInteger nextRecipeId = new AtomicInteger();
+    /** Number of times saving a food changed the nutrients of a known food */
+    private final AtomicLong nutrientChanges = new AtomicLong();
+
+    private final UserRepository userRepository = new Users();
+    private final FoodRepository foodRepository = new Foods();
+    private final FoodLogRepository foodLogRepository = new FoodLogs();
+    private final MealPlanRepository mealPlanRepository = new MealPlans();
+    private final RecipeRepository recipeRepository = new Recipes();
+
+    @Override
+    public String getName() {
+        return "memory";
+    }
+
+    @Override
+    public UserRepository getUsers() {
+        return userRepository;
+    }
+
+    @Override
+    public FoodRepository getFoods() {
+        return foodRepository;
+    }
+
+    @Override
+    public FoodLogRepository getFoodLogs() {
+        return foodLogRepository;
+    }
+
+    @Override
+    public MealPlanRepository getMealPlans() {
+        return mealPlanRepository;
+    }
+
+    @Override
+    public RecipeRepository getRecipes() {
+        return recipeRepository;
+    }
+
+    @Override
+    public <T> T inTransaction(TransactionWork<T> work) throws SQLException {
+        return work.run();
+    }
+
+    /**
+     * Saves a food to the catalog, or finds it if it is already there.
+     *
+     * @param food The food
+     * @return The food id, or -1 for a null food
+     */
+    private int saveFood(Food food) {
+        if (food == null) {
+            return -1;
+        }
+        String key = food.getName() + '\u0000' + food.getGrams() + '\u0000' + food.getCalories();
+        int foodId = foodIds.computeIfAbsent(key, k -> nextFoodId.incrementAndGet());
+        if (food instanceof FoodNutrient) {
+            Food previous = foods.put(foodId, copy(food));
+            if (previous != null && !sameNutrients(previous, (FoodNutrient) food)) {
+                nutrientChanges.incrementAndGet();
+            }
+        } else {
+            foods.putIfAbsent(foodId, copy(food));
+        }
+        return foodId;
+    }
+
+    /**
+     * Saves foods and appends their ids to a list.
+     *
+     * @param key The key of the list
+     * @param lists The lists by key
+     * @param newFoods The foods; null entries are skipped
+     * @return Whether each food was added
+     */
+    private boolean[] addFoods(String key, ConcurrentMap<String, List<Integer>> lists, List<Food> newFoods) {
+        boolean[] added = new boolean[newFoods.size()];
+        List<Integer> ids = new ArrayList<>();
+        for (int i = 0; i < newFoods.size(); i++) {
+            int foodId = saveFood(newFoods.get(i));
+            if (foodId != -1) {
+                ids.add(foodId);
+                added[i] = true;
+            }
+        }
+        if (!ids.isEmpty()) {
+            List<Integer> list = lists.computeIfAbsent(key, k -> new ArrayList<>());
+            synchronized (list) {
+                list.addAll(ids);
+            }
+        }
+        return added;
+    }
+
+    /**
+     * Gets copies of the foods in a list.
+     *
+     * @param list The food ids, or null
+     * @param limit The maximum number of foods
+     * @return The foods
+     */
+    private List<Food> findFoods(List<Integer> list, int limit) {
+        List<Food> result = new ArrayList<>();
+        if (list == null) {
+            return result;
+        }
+        synchronized (list) {
+            for (int foodId : list) {
+                if (result.size() >= limit) {
+                    break;
+                }
+                Food food = foods.get(foodId);
+                if (food != null) {
+                    result.add(copy(food));
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Checks whether a stored food has the nutrients of a saved one.
+     *
+     * @param stored The food in the catalog
+     * @param saved The food being saved
+     * @return true if the stored food has equal nutrients
+     */
+    private static boolean sameNutrients(Food stored, FoodNutrient saved) {
+        if (!(stored instanceof FoodNutrient)) {
+            return false;
+        }
+        FoodNutrient fn = (FoodNutrient) stored;
+        return fn.getProtein() == saved.getProtein() && fn.getCarbs() == saved.getCarbs()
+            && fn.getFat() == saved.getFat() && fn.getFiber() == saved.getFiber()
+            && fn.getSugar() == saved.getSugar() && fn.getSodium() == saved.getSodium();
+    }
+
+    private static Food copy(Food food) {
+        if (food instanceof FoodNutrient) {
+            FoodNutrient fn = (FoodNutrient) food;
+            return new FoodNutrient(fn.getName(), fn.getGrams(), fn.getCalories(), fn.getProtein(),
+                fn.getCarbs(), fn.getFat(), fn.getFiber(), fn.getSugar(), fn.getSodium());
+        }
+        return new Food(food.getName(), food.getGrams(), food.getCalories());
+    }
+
+    private static String key(Object... parts) {
+        StringBuilder key = new StringBuilder();
+        for (Object part : parts) {
+            key.append(part).append('\u0000');
+        }
+        return key.toString();
+    }
+
+    /**
+     * In-memory user repository.
+     */
+    private class Users implements UserRepository {
+
+        @Override
+        public boolean register(String username, String password, String email, String name) {
+            // An id taken by a failed registration is simply skipped
+            StoredUser user = new StoredUser(nextUserId.incrementAndGet(), password, email, name);
+            return users.putIfAbsent(username, user) == null;
+        }
+
+        @Override
+        public User findByCredentials(String username, String password) {
+            StoredUser stored = users.get(username);
+            if (stored == null || !stored.password.equals(password)) {
+                return null;
+            }
+            return stored.toUser(username);
+        }
+
+        @Override
+        public void setLoggedIn(String username, boolean loggedIn) {
+            StoredUser stored = users.get(username);
+            if (stored != null) {
+                stored.loggedIn = loggedIn;
+            }
+        }
+
+        @Override
+        public boolean delete(String username) {
+            StoredUser stored = users.remove(username);
+            if (stored == null) {
+                return false;
+            }
+            goals.remove(stored.id);
+            String prefix = key(stored.id);
+            foodLogs.keySet().removeIf(key -> key.startsWith(prefix));
+            mealPlans.keySet().removeIf(key -> key.startsWith(prefix));
+            return true;
+        }
+
+        @Override
+        public List<User> findAll() {
+            List<Map.Entry<String, StoredUser>> entries = new ArrayList<>(users.entrySet());
+            entries.sort(Comparator.comparingInt(entry -> entry.getValue().id));
+            List<User> result = new ArrayList<>();
+            for (Map.Entry<String, StoredUser> entry : entries) {
+                result.add(entry.getValue().toUser(entry.getKey()));
+            }
+            return result;
+        }
+
+        @Override
+        public int findId(String username) {
+            StoredUser stored = username == null ? null : users.get(username);
+            return stored == null ? -1 : stored.id;
+        }
+
+        @Override
+        public boolean saveNutritionGoals(int userId, int calorieGoal, double proteinGoal, double carbGoal,
+                                          double fatGoal) {
+            goals.put(userId, new StoredGoals(calorieGoal, proteinGoal, carbGoal, fatGoal));
+            return true;
+        }
+
+        @Override
+        public <T> T findNutritionGoals(int userId, GoalMapper<T> mapper) {
+            StoredGoals stored = goals.get(userId);
+            return stored == null ? null
+                : mapper.map(stored.calorieGoal, stored.proteinGoal, stored.carbGoal, stored.fatGoal);
+        }
+    }
+
+    /**
+     * In-memory food catalog.
+     */
+    private class Foods implements FoodRepository {
+
+        @Override
+        public int save(Food food) {
+            return saveFood(food);
+        }
+
+        @Override
+        public int saveWithMealType(Food food, String mealType) {
+            if (food == null || mealType == null) {
+                return -1;
+            }
+            int foodId = saveFood(food);
+            List<Integer> options = mealTypeOptions.computeIfAbsent(mealType, k -> new ArrayList<>());
+            synchronized (options) {
+                if (!options.contains(foodId)) {
+                    options.add(foodId);
+                }
+            }
+            return foodId;
+        }
+
+        @Override
+        public List<Food> findByMealType(String mealType, int limit) {
+            return findFoods(mealTypeOptions.get(mealType), limit);
+        }
+
+        @Override
+        public long getNutrientChanges() {
+            return nutrientChanges.get();
+        }
+
+        @Override
+        public List<FoodNutrient> findWithNutrients(int limit) {
+            List<FoodNutrient> result = new ArrayList<>();
+            for (Food food : foods.values()) {
+                if (result.size() >= limit) {
+                    break;
+                }
+                if (food instanceof FoodNutrient) {
+                    result.add((FoodNutrient) copy(food));
+                }
+            }
+            return result;
+        }
+    }
+
+    /**
+     * In-memory food logs.
+     */
+    private class FoodLogs implements FoodLogRepository {
+
+        @Override
+        public boolean[] add(int userId, String date, List<Food> newFoods) {
+            return addFoods(key(userId, date), foodLogs, newFoods);
+        }
+
+        @Override
+        public List<Food> find(int userId, String date) {
+            return findFoods(foodLogs.get(key(userId, date)), Integer.MAX_VALUE);
+        }
+
+        @Override
+        public Map<String, List<Food>> findRange(int userId, String fromDate, String toDate) {
+            Map<String, List<Food>> result = new LinkedHashMap<>();
+            String from = key(userId, fromDate);
+            String to = key(userId, toDate);
+            if (from.compareTo(to) > 0) {
+                return result;
+            }
+            int prefix = key(userId).length();
+            for (Map.Entry<String, List<Integer>> entry : foodLogs.subMap(from, true, to, true).entrySet()) {
+                List<Food> logged = findFoods(entry.getValue(), Integer.MAX_VALUE);
+                if (!logged.isEmpty()) {
+                    String key = entry.getKey();
+                    result.put(key.substring(prefix, key.length() - 1), logged);
+                }
+            }
+            return result;
+        }
+
+        @Override
+        public long forEach(int userId, String fromDate, String toDate, FoodLogVisitor visitor) throws SQLException {
+            String from = key(userId, fromDate);
+            String to = key(userId, toDate);
+            if (from.compareTo(to) > 0) {
+                return 0;
+            }
+            int prefix = key(userId).length();
+            long visited = 0;
+            // Only the foods of the current date are copied at a time
+            for (Map.Entry<String, List<Integer>> entry : foodLogs.subMap(from, true, to, true).entrySet()) {
+                String key = entry.getKey();
+                String date = key.substring(prefix, key.length() - 1);
+                for (Food food : findFoods(entry.getValue(), Integer.MAX_VALUE)) {
+                    visitor.visit(date, food);
+                    visited++;
+                }
+            }
+            return visited;
+        }
+
+        @Override
+        public Map<String, DailyNutritionTotals> findTotals(int userId, String fromDate, String toDate) {
+            Map<String, DailyNutritionTotals> totals = new LinkedHashMap<>();
+            for (Map.Entry<String, List<Food>> entry : findRange(userId, fromDate, toDate).entrySet()) {
+                totals.put(entry.getKey(), DailyNutritionTotals.of(entry.getKey(), entry.getValue()));
+            }
+            return totals;
+        }
+
+        @Override
+        public Map<String, DailyNutritionTotals> findTotals(int userId, List<String> dates) {
+            Map<String, DailyNutritionTotals> totals = new LinkedHashMap<>();
+            for (String date : dates) {
+                List<Food> logged = find(userId, date);
+                if (!logged.isEmpty()) {
+                    totals.put(date, DailyNutritionTotals.of(date, logged));
+                }
+            }
+            return totals;
+        }
+
+        @Override
+        public Map<String, DailyNutritionTotals> aggregate(int userId, String fromDate, String toDate) {
+            // The totals are always summed from the stored foods
+            return findTotals(userId, fromDate, toDate);
+        }
+
+        @Override
+        public int totalCalories(int userId, String date) {
+            int total = 0;
+            for (Food food : find(userId, date)) {
+                total += food.getCalories();
+            }
+            return total;
+        }
+    }
+
+    /**
+     * In-memory meal plans.
+     */
+    private class MealPlans implements MealPlanRepository {
+
+        @Override
+        public boolean[] add(int userId, String date, String mealType, List<Food> newFoods) {
+            return addFoods(key(userId, date, mealType), mealPlans, newFoods);
+        }
+
+        @Override
+        public List<Food> find(int userId, String date, String mealType) {
+            return findFoods(mealPlans.get(key(userId, date, mealType)), Integer.MAX_VALUE);
+        }
+    }
+
+    /**
+     * In-memory ingredient prices and recipes.
+     */
+    private class Recipes implements RecipeRepository {
+
+        @Override
+        public int countIngredients() {
+            return ingredientPrices.size();
+        }
+
+        @Override
+        public void saveIngredientPrices(Map<String, Double> prices) {
+            ingredientPrices.putAll(prices);
+        }
+
+        @Override
+        public int saveRecipe(String mealType, String recipeName) {
+            int recipeId = nextRecipeId.incrementAndGet();
+            recipes.put(recipeId, new StoredRecipe(mealType, recipeName));
+            return recipeId;
+        }
+
+        @Override
+        public boolean saveRecipeIngredient(int recipeId, String ingredientName, double amount, String unit) {
+            StoredRecipe recipe = recipes.get(recipeId);
+            if (recipe == null || !ingredientPrices.containsKey(ingredientName)) {
+                return false;
+            }
+            synchronized (recipe.ingredients) {
+                recipe.ingredients.add(new StoredIngredient(ingredientName, amount, unit));
+            }
+            return true;
+        }
+
+        @Override
+        public <T> List<T> findIngredients(String mealType, String recipeName, IngredientMapper<T> mapper) {
+            List<T> result = new ArrayList<>();
+            for (StoredRecipe recipe : recipes.values()) {
+                if (!recipe.mealType.equals(mealType) || !recipe.name.equals(recipeName)) {
+                    continue;
+                }
+                synchronized (recipe.ingredients) {
+                    for (StoredIngredient ingredient : recipe.ingredients) {
+                        Double price = ingredientPrices.get(ingredient.name);
+                        if (price != null) {
+                            result.add(mapper.map(ingredient.name, ingredient.amount, ingredient.unit, price));
+                        }
+                    }
+                }
+            }
+            return result;
+        }
+    }
+
+    /**
+     * A stored user; the username is the map key.
+     */
+    private static class StoredUser {
+        private final int id;
+        private final String password;
+        private final String email;
+        private final String name;
+        private volatile boolean loggedIn;
+
+        StoredUser(int id, String password, String email, String name) {
+            this.id = id;
+            this.password = password;
+            this.email = email;
+            this.name = name;
+        }
+
+        User toUser(String username) {
+            User user = new User(username, password, email, name);
+            user.setLoggedIn(loggedIn);
+            return user;
+        }
+    }
+
+    /**
+     * Stored nutrition goals.
+     */
+    private static class StoredGoals {
+        private final int calorieGoal;
+        private final double proteinGoal;
+        private final double carbGoal;
+        private final double fatGoal;
+
+        StoredGoals(int calorieGoal, double proteinGoal, double carbGoal, double fatGoal) {
+            this.calorieGoal = calorieGoal;
+            this.proteinGoal = proteinGoal;
+            this.carbGoal = carbGoal;
+            this.fatGoal = fatGoal;
+        }
+    }
+
+    /**
+     * A stored recipe with its ingredients.
+     */
+    private static class StoredRecipe {
+        private final String mealType;
+        private final String name;
+        /** Locked while read or changed */
+        private final List<StoredIngredient> ingredients = new ArrayList<>();
+
+        StoredRecipe(String mealType, String name) {
+            this.mealType = mealType;
+            this.name = name;
+        }
+    }
+
+    /**
+     * An ingredient of a stored recipe.
+     */
+    private static class StoredIngredient {
+        private final String name;
+        private final double amount;
+        private final String unit;
+
+        StoredIngredient(String name, double amount, String unit) {
+            this.name = name;
+            this.amount = amount;
+            this.unit = unit;
+        }
+    }
+}
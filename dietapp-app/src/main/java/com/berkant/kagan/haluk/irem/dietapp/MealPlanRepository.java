@@ -0,0 +1,34 @@
+package com.berkant.kagan.haluk.irem.dietapp;
+
+import java.sql.SQLException;
+import java.util.List;
+
+/**
+ * This interface stores the meals users planned.
+ * @author berkant
+ */
+public interface MealPlanRepository {
+
+    /**
+     * Adds foods to a user's meal plan, saving them to the food catalog first.
+     *
+     * @param userId The user id
+     * @param date The date in format YYYY-MM-DD
+     * @param mealType The type of meal (breakfast, lunch, snack, dinner)
+     * @param foods The foods; null entries are skipped
+     * @return Whether each food was added, in the order of the list
+     * @throws SQLException If the foods cannot be stored
+     */
+    boolean[] add(int userId, String date, String mealType, List<Food> foods) throws SQLException;
+
+    /**
+     * Gets the foods planned for a meal.
+     *
+     * @param userId The user id
+     * @param date The date in format YYYY-MM-DD
+     * @param mealType The type of meal (breakfast, lunch, snack, dinner)
+     * @return The planned foods
+     * @throws SQLException If the plan cannot be read
+     */
+    List<Food> find(int userId, String date, String mealType) throws SQLException;
+}
@@ -1,23 +1,122 @@
 package com.berkant.kagan.haluk.irem.dietapp;
 
-import java.sql.*;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
 
 /**
  * This class handles meal planning and logging operations for the Diet Planner application.
  * @details The MealPlanningService class provides methods for planning meals,
- *          logging food intake, and viewing meal history.
+ *          logging food intake, and viewing meal history. Unless the service is created in
+ *          SYNC mode, logFood and addMealPlan go through a write-behind queue; the read
+ *          methods flush it first so they always see the caller's own writes. Food logs and
+ *          meal plans of a day are served from a FoodLogCache, which the writes of the service
+ *          invalidate for their user, date and meal once they have committed; a write that
+ *          changes the nutrients of a catalog food clears the whole cache.
  * @author berkant
  */
 public class MealPlanningService {
+    /** Longest date range whose days getFoodLogRange puts into the food log cache */
+    public static final int CACHED_RANGE_DAYS = 31;
+    
+    /** Queue of pending food logs and meal plans, or null in SYNC mode */
+    private final WriteBehindQueue<PendingFoodWrite> writeQueue;
+    /** Stores the users, foods, food logs and meal plans */
+    private final StorageBackend storage;
+    /** Food logs and meal plans read by date */
+    private final FoodLogCache cache;
     
     /**
      * Constructor for MealPlanningService class.
-     * Uses database for data storage.
+     * Uses database for data storage, committing every write before returning.
      */
     public MealPlanningService() {
-        // No initialization needed, using database for storage
+        this(WriteBehindQueue.DurabilityMode.SYNC);
+    }
+    
+    /**
+     * Constructor for MealPlanningService class with a durability mode.
+     * 
+     * @param mode SYNC to commit each write on its own, GROUP_COMMIT or ASYNC to
+     *             commit writes in batches on a background thread
+     */
+    public MealPlanningService(WriteBehindQueue.DurabilityMode mode) {
+        this(new SqliteStorageBackend(), mode);
+    }
+    
+    /**
+     * Constructor for MealPlanningService class with a storage backend and a durability mode.
+     * 
+     * @param storage The storage backend
+     * @param mode SYNC to commit each write on its own, GROUP_COMMIT or ASYNC to
+     *             commit writes in batches on a background thread
+     */
+    public MealPlanningService(StorageBackend storage, WriteBehindQueue.DurabilityMode mode) {
+        this(storage, mode, new FoodLogCache(DatabaseHelper.getConfig().getFoodLogCacheBytes()));
+    }
+    
+    /**
+     * Constructor for MealPlanningService class with a storage backend, a durability mode
+     * and a cache of food logs and meal plans.
+     * @details The cache must only be used by this service, since it is invalidated by the
+     *          writes of the service alone.
+     * 
+     * @param storage The storage backend
+     * @param mode SYNC to commit each write on its own, GROUP_COMMIT or ASYNC to
+     *             commit writes in batches on a background thread
+     * @param cache The cache of food logs and meal plans
+     */
+    public MealPlanningService(StorageBackend storage, WriteBehindQueue.DurabilityMode mode, FoodLogCache cache) {
+        this.storage = storage;
+        this.cache = cache;
+        if (mode == null || mode == WriteBehindQueue.DurabilityMode.SYNC) {
+            this.writeQueue = null;
+        } else {
+            this.writeQueue = new WriteBehindQueue<>("meal-planning", this::writeQueued, mode);
+        }
+    }
+    
+    /**
+     * Gets the durability mode of the service.
+     * 
+     * @return The durability mode
+     */
+    public WriteBehindQueue.DurabilityMode getDurabilityMode() {
+        return writeQueue == null ? WriteBehindQueue.DurabilityMode.SYNC : writeQueue.getMode();
+    }
+    
+    /**
+     * Gets the cache of food logs and meal plans, e.g. for its metrics.
+     * 
+     * @return The cache
+     */
+    public FoodLogCache getFoodLogCache() {
+        return cache;
+    }
+    
+    /**
+     * Waits until all queued food logs and meal plans are written.
+     */
+    public void flush() {
+        if (writeQueue != null) {
+            writeQueue.flush();
+        }
+    }
+    
+    /**
+     * Writes the queued food logs and meal plans and stops the background writer.
+     */
+    public void close() {
+        if (writeQueue != null) {
+            writeQueue.close();
+        }
     }
     
     /**
@@ -27,7 +126,7 @@ public class MealPlanningService {
      * @param date The date in format YYYY-MM-DD
      * @param mealType The type of meal (breakfast, lunch, snack, dinner)
      * @param food The food to add to the meal plan
-     * @return true if added successfully
+     * @return true if added successfully; in ASYNC mode true if the write was queued
      */
     public boolean addMealPlan(String username, String date, String mealType, Food food) {
         if (username == null || date == null || mealType == null || food == null) {
@@ -35,298 +134,197 @@ public class MealPlanningService {
             return false;
         }
         
-        Connection conn = null;
-        try {
-            conn = DatabaseHelper.getConnection();
-            if (conn == null) {
-                return false;
-            }
-            
-            conn.setAutoCommit(false); // Start transaction
-            
-            // Get user ID
-            int userId = getUserId(conn, username);
-            if (userId == -1) {
-                System.out.println("User not found: " + username);
-                return false; // User not found
-            }
-            
-            // Save food and get its ID
-            int foodId = saveFoodAndGetId(conn, food);
-            if (foodId == -1) {
-                return false; // Food couldn't be saved
-            }
-            
-            // Add to meal plan
-            try (PreparedStatement pstmt = conn.prepareStatement(
-                "INSERT INTO meal_plans (user_id, date, meal_type, food_id) VALUES (?, ?, ?, ?)")) {
-                    
-                pstmt.setInt(1, userId);
-                pstmt.setString(2, date);
-                pstmt.setString(3, mealType);
-                pstmt.setInt(4, foodId);
-                
-                int rowsAffected = pstmt.executeUpdate();
-                
-                // Commit transaction if successful
-                if (rowsAffected > 0) {
-                    conn.commit();
-                    return true;
-                } else {
-                    conn.rollback();
-                    return false;
-                }
-            }
-            
-        } catch (SQLException e) {
-            try {
-                if (conn != null) {
-                    conn.rollback(); // Rollback transaction on error
-                }
-            } catch (SQLException ex) {
-            }
-            e.printStackTrace(); // For error details
-            return false;
-        } finally {
-            if (conn != null) {
-                try {
-                    conn.setAutoCommit(true); // Reset auto-commit
-                } catch (SQLException e) {
-                }
-                DatabaseHelper.releaseConnection(conn);
-            }
+        if (writeQueue != null) {
+            return writeQueue.submit(new PendingFoodWrite(username, date, mealType, food));
         }
+        
+        return storeFoods(username, date, mealType, Collections.singletonList(food))[0];
     }
     
     /**
      * Helper method to get user ID by username
      * 
-     * @param conn Database connection
      * @param username Username to look up
      * @return User ID or -1 if not found
      * @throws SQLException If database error occurs
      */
-    private int getUserId(Connection conn, String username) throws SQLException {
+    private int getUserId(String username) throws SQLException {
         if (username == null || username.trim().isEmpty()) {
             return -1;
         }
         
-        String sql = "SELECT id FROM users WHERE username = ?";
-        try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
-            pstmt.setString(1, username);
-            
-            ResultSet rs = pstmt.executeQuery();
-            if (rs.next()) {
-                return rs.getInt("id");
-            }
-        }
-        
-        return -1;
+        return storage.getUsers().findId(username);
     }
     
     /**
-     * Helper method to save food and get its ID
-     * Uses a transaction to ensure data consistency
+     * Helper method to store food logs or meal plan entries of a user in one transaction.
      * 
-     * @param conn Database connection
-     * @param food Food to save
-     * @return Food ID or -1 if error occurs
-     * @throws SQLException If database error occurs
+     * @param username The username of the user
+     * @param date The date in format YYYY-MM-DD
+     * @param mealType The meal type of meal plan entries, or null for food logs
+     * @param foods The foods
+     * @return Whether each food was stored; all false if the transaction failed
      */
-    private int saveFoodAndGetId(Connection conn, Food food) throws SQLException {
-        if (food == null) {
-            return -1;
-        }
-
-        // Check if this food already exists
-        String checkSql = "SELECT id FROM foods WHERE name = ? AND grams = ? AND calories = ?";
-        try (PreparedStatement checkStmt = conn.prepareStatement(checkSql)) {
-            checkStmt.setString(1, food.getName());
-            checkStmt.setDouble(2, food.getGrams());
-            checkStmt.setInt(3, food.getCalories());
-
-            ResultSet rs = checkStmt.executeQuery();
-            if (rs.next()) {
-                int foodId = rs.getInt("id");
-
-                // Eğer bu bir FoodNutrient nesnesiyse, besin değerlerini güncelle
-                if (food instanceof FoodNutrient) {
-                    FoodNutrient fn = (FoodNutrient) food;
-                    updateFoodNutrients(conn, foodId, fn);
-                }
-
-                return foodId;
-            }
+    private boolean[] storeFoods(String username, String date, String mealType, List<Food> foods) {
+        boolean[] none = new boolean[foods.size()];
+        if (foods.isEmpty()) {
+            return none;
         }
-
-        // Added new food
-        String insertSql = "INSERT INTO foods (name, grams, calories) VALUES (?, ?, ?)";
-        try (PreparedStatement insertStmt = conn.prepareStatement(insertSql)) {
-            insertStmt.setString(1, food.getName());
-            insertStmt.setDouble(2, food.getGrams());
-            insertStmt.setInt(3, food.getCalories());
-
-            int rowsAffected = insertStmt.executeUpdate();
-            if (rowsAffected > 0) {
-                
-                try (Statement stmt = conn.createStatement();
-                     ResultSet rs = stmt.executeQuery("SELECT last_insert_rowid()")) {
-                    if (rs.next()) {
-                        int foodId = rs.getInt(1);
-
-                        
-                        if (food instanceof FoodNutrient) {
-                            FoodNutrient fn = (FoodNutrient) food;
-                            saveFoodNutrients(conn, foodId, fn);
-                        }
-
-                        return foodId;
-                    }
+        
+        int[] userId = {-1};
+        long nutrientChanges = storage.getFoods().getNutrientChanges();
+        try {
+            boolean[] stored = storage.inTransaction(() -> {
+                userId[0] = getUserId(username);
+                if (userId[0] == -1) {
+                    System.out.println("User not found: " + username);
+                    return none;
                 }
-            }
+                return mealType == null
+                    ? storage.getFoodLogs().add(userId[0], date, foods)
+                    : storage.getMealPlans().add(userId[0], date, mealType, foods);
+            });
+            invalidate(userId[0], date, mealType, nutrientChanges);
+            return stored;
+        } catch (SQLException e) {
+            System.out.println("Could not save foods: " + e.getMessage());
+            return none;
         }
-
-        return -1; 
     }
-
     
     /**
-     * Helper method to update food nutrients
+     * Logs food consumed by the user.
      * 
-     * @param conn Database connection
-     * @param foodId Food ID
-     * @param fn FoodNutrient object
-     * @throws SQLException If database error occurs
+     * @param username The username of the user
+     * @param date The date in format YYYY-MM-DD
+     * @param food The food that was consumed
+     * @return true if logged successfully; in ASYNC mode true if the write was queued
      */
-    private void updateFoodNutrients(Connection conn, int foodId, FoodNutrient fn) throws SQLException {
-        try (PreparedStatement checkStmt = conn.prepareStatement("SELECT id FROM food_nutrients WHERE food_id = ?")) {
-            checkStmt.setInt(1, foodId);
-            ResultSet rs = checkStmt.executeQuery();
-            
-            if (rs.next()) {
-                // Update existing nutrients
-                try (PreparedStatement updateStmt = conn.prepareStatement(
-                    "UPDATE food_nutrients SET protein = ?, carbs = ?, fat = ?, " +
-                    "fiber = ?, sugar = ?, sodium = ? WHERE food_id = ?")) {
-                    
-                    updateStmt.setDouble(1, fn.getProtein());
-                    updateStmt.setDouble(2, fn.getCarbs());
-                    updateStmt.setDouble(3, fn.getFat());
-                    updateStmt.setDouble(4, fn.getFiber());
-                    updateStmt.setDouble(5, fn.getSugar());
-                    updateStmt.setDouble(6, fn.getSodium());
-                    updateStmt.setInt(7, foodId);
-                    
-                    updateStmt.executeUpdate();
-                }
-            } else {
-                // Insert new nutrients
-                saveFoodNutrients(conn, foodId, fn);
-            }
+    public boolean logFood(String username, String date, Food food) {
+        if (username == null || date == null || food == null) {
+            System.out.println("Cannot log food with null parameters");
+            return false;
+        }
+        
+        if (writeQueue != null) {
+            return writeQueue.submit(new PendingFoodWrite(username, date, null, food));
         }
+        
+        return storeFoods(username, date, null, Collections.singletonList(food))[0];
     }
     
     /**
-     * Helper method to save food nutrients
+     * Adds several foods to a meal plan in a single transaction.
+     * @details The user is resolved once and all meal plan rows are inserted as one JDBC
+     *          batch, so syncing a whole meal costs one commit instead of one per food.
+     *          If the transaction fails, nothing is saved and every result is false. In the
+     *          queued durability modes the queue is flushed first, so the batch is written
+     *          after the food logs and meal plans queued before it, but not through the queue.
      * 
-     * @param conn Database connection
-     * @param foodId Food ID
-     * @param fn FoodNutrient object
-     * @throws SQLException If database error occurs
+     * @param username The username of the user
+     * @param date The date in format YYYY-MM-DD
+     * @param mealType The type of meal (breakfast, lunch, snack, dinner)
+     * @param foods The foods to add to the meal plan
+     * @return Whether each food was added, in the order of the list
      */
-    private void saveFoodNutrients(Connection conn, int foodId, FoodNutrient fn) throws SQLException {
-        try (PreparedStatement pstmt = conn.prepareStatement(
-            "INSERT INTO food_nutrients (food_id, protein, carbs, fat, fiber, sugar, sodium) " +
-            "VALUES (?, ?, ?, ?, ?, ?, ?)")) {
-            
-            pstmt.setInt(1, foodId);
-            pstmt.setDouble(2, fn.getProtein());
-            pstmt.setDouble(3, fn.getCarbs());
-            pstmt.setDouble(4, fn.getFat());
-            pstmt.setDouble(5, fn.getFiber());
-            pstmt.setDouble(6, fn.getSugar());
-            pstmt.setDouble(7, fn.getSodium());
-            
-            pstmt.executeUpdate();
+    public boolean[] addMealPlans(String username, String date, String mealType, List<Food> foods) {
+        if (username == null || date == null || mealType == null || foods == null) {
+            System.out.println("Cannot add meal plans with null parameters");
+            return new boolean[foods == null ? 0 : foods.size()];
         }
+        
+        flush(); // Keep the order of the writes queued before
+        return storeFoods(username, date, mealType, foods);
     }
     
     /**
-     * Logs food consumed by the user.
+     * Logs several foods consumed by the user in a single transaction.
+     * @details The user is resolved once and all food log rows are inserted as one JDBC
+     *          batch, so syncing a whole day costs one commit instead of one per food.
+     *          If the transaction fails, nothing is saved and every result is false. In the
+     *          queued durability modes the queue is flushed first, so the batch is written
+     *          after the food logs and meal plans queued before it, but not through the queue.
      * 
      * @param username The username of the user
      * @param date The date in format YYYY-MM-DD
-     * @param food The food that was consumed
-     * @return true if logged successfully
+     * @param foods The foods that were consumed
+     * @return Whether each food was logged, in the order of the list
      */
-    public boolean logFood(String username, String date, Food food) {
-        if (username == null || date == null || food == null) {
-            System.out.println("Cannot log food with null parameters");
-            return false;
+    public boolean[] logFoods(String username, String date, List<Food> foods) {
+        if (username == null || date == null || foods == null) {
+            System.out.println("Cannot log foods with null parameters");
+            return new boolean[foods == null ? 0 : foods.size()];
         }
         
-        Connection conn = null;
-        try {
-            conn = DatabaseHelper.getConnection();
-            if (conn == null) {
-                return false;
-            }
-            
-            conn.setAutoCommit(false); // Start transaction
-            
-            // Get user ID
-            int userId = getUserId(conn, username);
-            if (userId == -1) {
-                System.out.println("User not found: " + username);
-                conn.rollback();
-                return false;
-            }
-            
-            // Save food and get its ID
-            int foodId = saveFoodAndGetId(conn, food);
-            if (foodId == -1) {
-                conn.rollback();
-                return false;
-            }
-            
-            // Add to food log
-            try (PreparedStatement logStmt = conn.prepareStatement(
-                "INSERT INTO food_logs (user_id, date, food_id) VALUES (?, ?, ?)")) {
-                
-                logStmt.setInt(1, userId);
-                logStmt.setString(2, date);
-                logStmt.setInt(3, foodId);
-                
-                int affectedRows = logStmt.executeUpdate();
-                
-                if (affectedRows > 0) {
-                    conn.commit();
-                    return true;
-                } else {
-                    conn.rollback();
-                    return false;
+        flush(); // Keep the order of the writes queued before
+        return storeFoods(username, date, null, foods);
+    }
+    
+    /**
+     * Writes a batch of queued food logs and meal plans in a single transaction.
+     * @details Writes for the same user, date and meal are grouped in the order they were
+     *          queued and each group is inserted as one JDBC batch.
+     * 
+     * @param writes The queued writes
+     * @return Whether each write was stored
+     * @throws SQLException If the transaction fails; nothing is stored then
+     */
+    private boolean[] writeQueued(List<PendingFoodWrite> writes) throws SQLException {
+        boolean[] stored = new boolean[writes.size()];
+        Map<String, List<Integer>> groups = new LinkedHashMap<>();
+        for (int i = 0; i < writes.size(); i++) {
+            PendingFoodWrite write = writes.get(i);
+            String key = write.username + '\u0000' + write.date + '\u0000' + write.mealType;
+            groups.computeIfAbsent(key, k -> new ArrayList<>()).add(i);
+        }
+        
+        Map<PendingFoodWrite, Integer> written = new LinkedHashMap<>();
+        long nutrientChanges = storage.getFoods().getNutrientChanges();
+        storage.inTransaction(() -> {
+            for (List<Integer> group : groups.values()) {
+                PendingFoodWrite first = writes.get(group.get(0));
+                int userId = getUserId(first.username);
+                if (userId == -1) {
+                    System.out.println("User not found: " + first.username);
+                    continue;
                 }
-            }
-            
-        } catch (SQLException e) {
-            try {
-                if (conn != null) {
-                    conn.rollback();
+                written.put(first, userId);
+                
+                List<Food> foods = new ArrayList<>();
+                for (int index : group) {
+                    foods.add(writes.get(index).food);
                 }
-            } catch (SQLException ex) {
-                System.out.println("Failed to rollback transaction: " + ex.getMessage());
-            }
-            System.out.println("Could not log food: " + e.getMessage());
-            e.printStackTrace();
-            return false;
-        } finally {
-            if (conn != null) {
-                try {
-                    conn.setAutoCommit(true);
-                } catch (SQLException e) {
+                boolean[] inserted = first.mealType == null
+                    ? storage.getFoodLogs().add(userId, first.date, foods)
+                    : storage.getMealPlans().add(userId, first.date, first.mealType, foods);
+                for (int i = 0; i < group.size(); i++) {
+                    stored[group.get(i)] = inserted[i];
                 }
-                DatabaseHelper.releaseConnection(conn);
             }
+            return stored;
+        });
+        
+        for (Map.Entry<PendingFoodWrite, Integer> entry : written.entrySet()) {
+            invalidate(entry.getValue(), entry.getKey().date, entry.getKey().mealType, nutrientChanges);
+        }
+        return stored;
+    }
+    
+    /**
+     * Removes the foods a committed write changed from the cache.
+     * @details If saving the foods changed the nutrients of a food in the catalog, every
+     *          cached day may show the old ones, so the whole cache is cleared.
+     * 
+     * @param userId The user id
+     * @param date The date in format YYYY-MM-DD
+     * @param mealType The meal type of meal plan entries, or null for food logs
+     * @param nutrientChanges The nutrient change count of the catalog before the write
+     */
+    private void invalidate(int userId, String date, String mealType, long nutrientChanges) {
+        if (storage.getFoods().getNutrientChanges() != nutrientChanges) {
+            cache.clear();
+        } else {
+            cache.invalidate(userId, date, mealType);
         }
     }
     
@@ -340,67 +338,30 @@ public class MealPlanningService {
      */
     public List<Food> getMealPlan(String username, String date, String mealType) {
         List<Food> mealPlan = new ArrayList<>();
+        flush();
         
         if (username == null || date == null || mealType == null) {
             return mealPlan; // Return empty list for null parameters
         }
         
-        Connection conn = null;
         try {
-            conn = DatabaseHelper.getConnection();
-            if (conn == null) {
-                return mealPlan; // Return empty list if connection fails
-            }
-            
             // Get user ID
-            int userId = getUserId(conn, username);
+            int userId = getUserId(username);
             if (userId == -1) {
                 return mealPlan; // Empty list if user not found
             }
             
-            try (PreparedStatement pstmt = conn.prepareStatement(
-                "SELECT f.*, fn.* FROM meal_plans mp " +
-                "JOIN foods f ON mp.food_id = f.id " +
-                "LEFT JOIN food_nutrients fn ON f.id = fn.food_id " +
-                "WHERE mp.user_id = ? AND mp.date = ? AND mp.meal_type = ?")) {
-                
-                pstmt.setInt(1, userId);
-                pstmt.setString(2, date);
-                pstmt.setString(3, mealType);
-                
-                ResultSet rs = pstmt.executeQuery();
-                
-                while (rs.next()) {
-                    if (rs.getObject("protein") != null) {
-                        // This food has nutrition data
-                        mealPlan.add(new FoodNutrient(
-                            rs.getString("name"),
-                            rs.getDouble("grams"),
-                            rs.getInt("calories"),
-                            rs.getDouble("protein"),
-                            rs.getDouble("carbs"),
-                            rs.getDouble("fat"),
-                            rs.getDouble("fiber"),
-                            rs.getDouble("sugar"),
-                            rs.getDouble("sodium")
-                        ));
-                    } else {
-                        // Basic food without nutrition data
-                        mealPlan.add(new Food(
-                            rs.getString("name"),
-                            rs.getDouble("grams"),
-                            rs.getInt("calories")
-                        ));
-                    }
-                }
+            List<Food> cached = cache.get(userId, date, mealType);
+            if (cached != null) {
+                return cached;
             }
-            
+            long version = cache.getVersion(userId, date, mealType);
+            mealPlan = storage.getMealPlans().find(userId, date, mealType);
+            cache.put(userId, date, mealType, mealPlan, version);
+            return mealPlan;
         } catch (SQLException e) {
-        } finally {
-            DatabaseHelper.releaseConnection(conn);
+            return mealPlan;
         }
-        
-        return mealPlan;
     }
     
     /**
@@ -412,67 +373,124 @@ public class MealPlanningService {
      */
     public List<Food> getFoodLog(String username, String date) {
         List<Food> foodLog = new ArrayList<>();
+        flush();
         
         if (username == null || date == null) {
             return foodLog; // Return empty list for null parameters
         }
         
-        Connection conn = null;
         try {
-            conn = DatabaseHelper.getConnection();
-            if (conn == null) {
-                return foodLog; // Return empty list if connection fails
-            }
-            
             // Get user ID
-            int userId = getUserId(conn, username);
+            int userId = getUserId(username);
             if (userId == -1) {
                 return foodLog; // Empty list if user not found
             }
             
-            try (PreparedStatement pstmt = conn.prepareStatement(
-                "SELECT f.*, fn.* FROM food_logs fl " +
-                "JOIN foods f ON fl.food_id = f.id " +
-                "LEFT JOIN food_nutrients fn ON f.id = fn.food_id " +
-                "WHERE fl.user_id = ? AND fl.date = ?")) {
-                
-                pstmt.setInt(1, userId);
-                pstmt.setString(2, date);
-                
-                ResultSet rs = pstmt.executeQuery();
-                
-                while (rs.next()) {
-                    if (rs.getObject("protein") != null) {
-                        // This food has nutrition data
-                        foodLog.add(new FoodNutrient(
-                            rs.getString("name"),
-                            rs.getDouble("grams"),
-                            rs.getInt("calories"),
-                            rs.getDouble("protein"),
-                            rs.getDouble("carbs"),
-                            rs.getDouble("fat"),
-                            rs.getDouble("fiber"),
-                            rs.getDouble("sugar"),
-                            rs.getDouble("sodium")
-                        ));
-                    } else {
-                        // Basic food without nutrition data
-                        foodLog.add(new Food(
-                            rs.getString("name"),
-                            rs.getDouble("grams"),
-                            rs.getInt("calories")
-                        ));
-                    }
-                }
+            List<Food> cached = cache.get(userId, date, null);
+            if (cached != null) {
+                return cached;
+            }
+            long version = cache.getVersion(userId, date, null);
+            foodLog = storage.getFoodLogs().find(userId, date);
+            cache.put(userId, date, null, foodLog, version);
+            return foodLog;
+        } catch (SQLException e) {
+            return foodLog;
+        }
+    }
+    
+    /**
+     * Gets the food logged on every date of a range with one range query.
+     * @details Reports over consecutive days call this instead of getFoodLog once per date,
+     *          which costs one user lookup and one query per day. Every date of the range is
+     *          in the result, with an empty list if nothing was logged. The dates of ranges up
+     *          to CACHED_RANGE_DAYS long are put into the food log cache, so later getFoodLog
+     *          calls for them are answered from there; longer ranges would only push out the
+     *          days that are read again.
+     * 
+     * @param username The username of the user
+     * @param fromDate The first date in format YYYY-MM-DD
+     * @param toDate The last date in format YYYY-MM-DD
+     * @return The foods logged on each date of the range in date order; empty if a date is
+     *         invalid, the range is reversed or the log cannot be read
+     */
+    public Map<String, List<Food>> getFoodLogRange(String username, String fromDate, String toDate) {
+        flush();
+        Map<String, List<Food>> range = new LinkedHashMap<>();
+        
+        if (username == null || fromDate == null || toDate == null) {
+            return range;
+        }
+        
+        LocalDate first;
+        LocalDate last;
+        try {
+            first = LocalDate.parse(fromDate);
+            last = LocalDate.parse(toDate);
+        } catch (DateTimeParseException e) {
+            return range; // Empty map for invalid dates
+        }
+        
+        try {
+            int userId = getUserId(username);
+            if (userId == -1) {
+                return range; // Empty map if user not found
             }
             
+            boolean cached = !last.isAfter(first.plusDays(CACHED_RANGE_DAYS - 1));
+            Map<String, Long> versions = new HashMap<>();
+            if (cached) {
+                for (LocalDate date = first; !date.isAfter(last); date = date.plusDays(1)) {
+                    versions.put(date.toString(), cache.getVersion(userId, date.toString(), null));
+                }
+            }
+            Map<String, List<Food>> logged = storage.getFoodLogs().findRange(userId, first.toString(), last.toString());
+            for (LocalDate date = first; !date.isAfter(last); date = date.plusDays(1)) {
+                String day = date.toString();
+                List<Food> foods = logged.getOrDefault(day, new ArrayList<>());
+                if (cached) {
+                    cache.put(userId, day, null, foods, versions.get(day));
+                }
+                range.put(day, foods);
+            }
+            return range;
         } catch (SQLException e) {
-
-        } finally {
-            DatabaseHelper.releaseConnection(conn);
+            return new LinkedHashMap<>();
         }
+    }
+    
+    /**
+     * Streams all food logged in a date range, for exports of long histories.
+     * @details Unlike getFoodLogs the foods are not collected: each one is handed to the
+     *          visitor as it is read, so millions of entries are exported in constant memory.
+     *          The database resources are closed before the method returns, also when the
+     *          visitor throws; a RuntimeException of the visitor is passed on to the caller.
+     * 
+     * @param username The username of the user
+     * @param fromDate The first date in format YYYY-MM-DD
+     * @param toDate The last date in format YYYY-MM-DD
+     * @param visitor Receives the date and food of each entry in date order
+     * @return The number of foods visited, or -1 if the log could not be read to the end
+     */
+    public long forEachFoodLog(String username, String fromDate, String toDate,
+                               FoodLogRepository.FoodLogVisitor visitor) {
+        flush();
         
-        return foodLog;
+        if (username == null || fromDate == null || toDate == null || visitor == null) {
+            return 0;
+        }
+        
+        try {
+            int userId = getUserId(username);
+            if (userId == -1) {
+                return 0; // Nothing to stream if user not found
+            }
+            
+            return storage.getFoodLogs().forEach(userId, fromDate, toDate, visitor);
+        } catch (SQLException e) {
+            System.out.println("Could not read food logs: " + e.getMessage());
+            return -1;
+        }
     }
     
     /**
@@ -483,45 +501,197 @@ public class MealPlanningService {
      * @return The total calories consumed
      */
     public int getTotalCalories(String username, String date) {
+        flush();
         if (username == null || date == null) {
             return 0; // Return 0 for null parameters
         }
         
-        Connection conn = null;
         try {
-            conn = DatabaseHelper.getConnection();
-            if (conn == null) {
-                return 0; // Return 0 if connection fails
-            }
-            
             // Get user ID
-            int userId = getUserId(conn, username);
+            int userId = getUserId(username);
             if (userId == -1) {
                 return 0; // Return 0 if user not found
             }
             
-            try (PreparedStatement pstmt = conn.prepareStatement(
-                "SELECT SUM(f.calories) as total_calories FROM food_logs fl " +
-                "JOIN foods f ON fl.food_id = f.id " +
-                "WHERE fl.user_id = ? AND fl.date = ?")) {
-                
-                pstmt.setInt(1, userId);
-                pstmt.setString(2, date);
-                
-                ResultSet rs = pstmt.executeQuery();
-                
-                if (rs.next()) {
-                    return rs.getInt("total_calories");
-                }
+            return storage.getFoodLogs().totalCalories(userId, date);
+        } catch (SQLException e) {
+            return 0;
+        }
+    }
+    
+    /**
+     * Gets the summed calories and nutrients logged on a date.
+     * @details Read from the daily totals that are kept up to date with each logged food,
+     *          without reading the foods themselves.
+     * 
+     * @param username The username of the user
+     * @param date The date in format YYYY-MM-DD
+     * @return The totals; all 0 if nothing was logged, the user is not found or the totals
+     *         cannot be read
+     */
+    public DailyNutritionTotals getDailyTotals(String username, String date) {
+        flush();
+        DailyNutritionTotals empty = DailyNutritionTotals.of(date, new ArrayList<>());
+        if (username == null || date == null) {
+            return empty;
+        }
+        
+        try {
+            int userId = getUserId(username);
+            if (userId == -1) {
+                return empty; // Empty totals if user not found
             }
             
+            return storage.getFoodLogs().findTotals(userId, date, date).getOrDefault(date, empty);
         } catch (SQLException e) {
-
-        } finally {
-            DatabaseHelper.releaseConnection(conn);
+            return empty;
+        }
+    }
+    
+    /**
+     * Sums the calories and nutrients logged on a date from the food log itself.
+     * @details The sums are computed by the database in one grouped query, without creating
+     *          the logged foods. Unlike getDailyTotals they follow nutrients changed in the
+     *          food catalog after logging, at the cost of reading every entry of the day.
+     * 
+     * @param username The username of the user
+     * @param date The date in format YYYY-MM-DD
+     * @return The totals; all 0 if nothing was logged, the user is not found or the log
+     *         cannot be read
+     */
+    public DailyNutritionTotals sumFoodLog(String username, String date) {
+        flush();
+        DailyNutritionTotals empty = DailyNutritionTotals.of(date, new ArrayList<>());
+        if (username == null || date == null) {
+            return empty;
         }
         
-        return 0;
+        try {
+            int userId = getUserId(username);
+            if (userId == -1) {
+                return empty; // Empty totals if user not found
+            }
+            
+            return storage.getFoodLogs().aggregate(userId, date, date).getOrDefault(date, empty);
+        } catch (SQLException e) {
+            return empty;
+        }
+    }
+    
+    /**
+     * Gets the summed calories and nutrients logged on each day of a date range.
+     * 
+     * @param username The username of the user
+     * @param fromDate The first date in format YYYY-MM-DD
+     * @param toDate The last date in format YYYY-MM-DD
+     * @return The totals of each date of the range in date order, all 0 for dates without
+     *         logs; empty if a date is invalid, the range is reversed or the totals cannot be read
+     */
+    public Map<String, DailyNutritionTotals> getDailyTotalsRange(String username, String fromDate, String toDate) {
+        flush();
+        Map<String, DailyNutritionTotals> range = new LinkedHashMap<>();
+        
+        if (username == null || fromDate == null || toDate == null) {
+            return range;
+        }
+        
+        LocalDate first;
+        LocalDate last;
+        try {
+            first = LocalDate.parse(fromDate);
+            last = LocalDate.parse(toDate);
+        } catch (DateTimeParseException e) {
+            return range; // Empty map for invalid dates
+        }
+        
+        try {
+            int userId = getUserId(username);
+            if (userId == -1) {
+                return range; // Empty map if user not found
+            }
+            
+            Map<String, DailyNutritionTotals> logged =
+                storage.getFoodLogs().findTotals(userId, first.toString(), last.toString());
+            for (LocalDate date = first; !date.isAfter(last); date = date.plusDays(1)) {
+                String day = date.toString();
+                DailyNutritionTotals totals = logged.get(day);
+                range.put(day, totals != null ? totals : DailyNutritionTotals.of(day, new ArrayList<>()));
+            }
+            return range;
+        } catch (SQLException e) {
+            return new LinkedHashMap<>();
+        }
+    }
+    
+    /**
+     * Gets the summed calories and nutrients logged on some dates, resolving the user once.
+     * @details Dates that make up a run of consecutive days are read with one range query,
+     *          any other dates with one query listing them, so sparse dates cost no more
+     *          queries than a week.
+     * 
+     * @param username The username of the user
+     * @param dates The dates in format YYYY-MM-DD; null dates are skipped
+     * @return The totals of each date in the order given, all 0 for dates without logs or
+     *         an unknown user; empty if the totals cannot be read
+     */
+    public Map<String, DailyNutritionTotals> getDailyTotalsForDates(String username, List<String> dates) {
+        flush();
+        Map<String, DailyNutritionTotals> totals = new LinkedHashMap<>();
+        
+        if (username == null || dates == null) {
+            return totals;
+        }
+        
+        TreeSet<String> distinct = new TreeSet<>();
+        for (String date : dates) {
+            if (date != null) {
+                distinct.add(date);
+            }
+        }
+        if (distinct.isEmpty()) {
+            return totals;
+        }
+        
+        try {
+            int userId = getUserId(username);
+            Map<String, DailyNutritionTotals> logged = new HashMap<>();
+            if (userId != -1) {
+                logged = isRunOfDays(distinct)
+                    ? storage.getFoodLogs().findTotals(userId, distinct.first(), distinct.last())
+                    : storage.getFoodLogs().findTotals(userId, new ArrayList<>(distinct));
+            }
+            for (String date : dates) {
+                if (date != null && !totals.containsKey(date)) {
+                    DailyNutritionTotals dayTotals = logged.get(date);
+                    totals.put(date, dayTotals != null ? dayTotals : DailyNutritionTotals.of(date, new ArrayList<>()));
+                }
+            }
+            return totals;
+        } catch (SQLException e) {
+            return new LinkedHashMap<>();
+        }
+    }
+    
+    /**
+     * Checks whether sorted dates are consecutive days.
+     * 
+     * @param dates The distinct dates in ascending order
+     * @return true if every date is valid and the day after the one before it
+     */
+    private static boolean isRunOfDays(TreeSet<String> dates) {
+        try {
+            LocalDate first = LocalDate.parse(dates.first());
+            LocalDate last = LocalDate.parse(dates.last());
+            if (last.toEpochDay() - first.toEpochDay() != dates.size() - 1) {
+                return false;
+            }
+            for (String date : dates) {
+                LocalDate.parse(date);
+            }
+            return true;
+        } catch (DateTimeParseException e) {
+            return false;
+        }
     }
     
     /**
@@ -600,35 +770,7 @@ public class MealPlanningService {
             };
             
             // Save default options to database for future use
-            Connection conn = null;
-            try {
-                conn = DatabaseHelper.getConnection();
-                if (conn != null) {
-                    conn.setAutoCommit(false);
-                    
-                    for (Food food : defaultOptions) {
-                        saveFoodWithMealType(conn, food, "breakfast");
-                    }
-                    
-                    conn.commit();
-                }
-            } catch (SQLException e) {
-                System.out.println("Could not save default breakfast options: " + e.getMessage());
-                if (conn != null) {
-                    try {
-                        conn.rollback();
-                    } catch (SQLException ex) {
-                    }
-                }
-            } finally {
-                if (conn != null) {
-                    try {
-                        conn.setAutoCommit(true);
-                    } catch (SQLException e) {
-                    }
-                    DatabaseHelper.releaseConnection(conn);
-                }
-            }
+            saveDefaultOptions(defaultOptions, "breakfast");
             
             return defaultOptions;
         }
@@ -658,35 +800,7 @@ public class MealPlanningService {
             };
             
             // Save default options to database for future use
-            Connection conn = null;
-            try {
-                conn = DatabaseHelper.getConnection();
-                if (conn != null) {
-                    conn.setAutoCommit(false);
-                    
-                    for (Food food : defaultOptions) {
-                        saveFoodWithMealType(conn, food, "lunch");
-                    }
-                    
-                    conn.commit();
-                }
-            } catch (SQLException e) {
-                System.out.println("Could not save default lunch options: " + e.getMessage());
-                if (conn != null) {
-                    try {
-                        conn.rollback();
-                    } catch (SQLException ex) {
-                    }
-                }
-            } finally {
-                if (conn != null) {
-                    try {
-                        conn.setAutoCommit(true);
-                    } catch (SQLException e) {
-                    }
-                    DatabaseHelper.releaseConnection(conn);
-                }
-            }
+            saveDefaultOptions(defaultOptions, "lunch");
             
             return defaultOptions;
         }
@@ -717,37 +831,7 @@ public class MealPlanningService {
             };
             
             // Save default options to database for future use
-            Connection conn = null;
-            try {
-                conn = DatabaseHelper.getConnection();
-                if (conn != null) {
-                    conn.setAutoCommit(false);
-                    
-                    for (Food food : defaultOptions) {
-                        saveFoodWithMealType(conn, food, "snack");
-                    }
-                    
-                    conn.commit();
-                }
-            } catch (SQLException e) {
-                System.out.println("Could not save default snack options: " + e.getMessage());
-                if (conn != null) {
-                    try {
-                        conn.rollback();
-                    } catch (SQLException ex) {
-
-                    }
-                }
-            } finally {
-                if (conn != null) {
-                    try {
-                        conn.setAutoCommit(true);
-                    } catch (SQLException e) {
-
-                    }
-                    DatabaseHelper.releaseConnection(conn);
-                }
-            }
+            saveDefaultOptions(defaultOptions, "snack");
             
             return defaultOptions;
         }
@@ -778,37 +862,7 @@ public class MealPlanningService {
             };
             
             // Save default options to database for future use
-            Connection conn = null;
-            try {
-                conn = DatabaseHelper.getConnection();
-                if (conn != null) {
-                    conn.setAutoCommit(false);
-                    
-                    for (Food food : defaultOptions) {
-                        saveFoodWithMealType(conn, food, "dinner");
-                    }
-                    
-                    conn.commit();
-                }
-            } catch (SQLException e) {
-                System.out.println("Could not save default dinner options: " + e.getMessage());
-                if (conn != null) {
-                    try {
-                        conn.rollback();
-                    } catch (SQLException ex) {
-
-                    }
-                }
-            } finally {
-                if (conn != null) {
-                	try {
-                        conn.setAutoCommit(true);
-                    } catch (SQLException e) {
-
-                    }
-                    DatabaseHelper.releaseConnection(conn);
-                }
-            }
+            saveDefaultOptions(defaultOptions, "dinner");
             
             return defaultOptions;
         }
@@ -823,101 +877,55 @@ public class MealPlanningService {
      * @return List of food options for the meal type
      */
     private List<Food> getFoodOptionsByType(String mealType) {
-        List<Food> options = new ArrayList<>();
-        
         if (mealType == null) {
-            return options;
+            return new ArrayList<>();
         }
         
-        Connection conn = null;
         try {
-            conn = DatabaseHelper.getConnection();
-            if (conn == null) {
-                return options;
-            }
-            
-            try (PreparedStatement pstmt = conn.prepareStatement(
-                 "SELECT f.*, fn.* FROM foods f " +
-                 "LEFT JOIN food_nutrients fn ON f.id = fn.food_id " +
-                 "WHERE f.meal_type = ? " +
-                 "LIMIT 8")) {
-                
-                pstmt.setString(1, mealType);
-                ResultSet rs = pstmt.executeQuery();
-                
-                while (rs.next()) {
-                    if (rs.getObject("protein") != null) {
-                        // This food has nutrition data
-                        options.add(new FoodNutrient(
-                            rs.getString("name"),
-                            rs.getDouble("grams"),
-                            rs.getInt("calories"),
-                            rs.getDouble("protein"),
-                            rs.getDouble("carbs"),
-                            rs.getDouble("fat"),
-                            rs.getDouble("fiber"),
-                            rs.getDouble("sugar"),
-                            rs.getDouble("sodium")
-                        ));
-                    } else {
-                        // Basic food without nutrition data
-                        options.add(new Food(
-                            rs.getString("name"),
-                            rs.getDouble("grams"),
-                            rs.getInt("calories")
-                        ));
-                    }
-                }
-            }
-            
+            return storage.getFoods().findByMealType(mealType, 8);
         } catch (SQLException e) {
             System.out.println("Could not get food options: " + e.getMessage());
-        } finally {
-            DatabaseHelper.releaseConnection(conn);
+            return new ArrayList<>();
         }
-        
-        return options;
     }
     
     /**
-     * Saves a food with a meal type to the database.
+     * Saves the default food options of a meal type in one transaction.
      * 
-     * @param conn The database connection
-     * @param food The food to save
+     * @param options The default options
      * @param mealType The type of meal
-     * @return The ID of the saved food
-     * @throws SQLException If an error occurs
      */
-    private int saveFoodWithMealType(Connection conn, Food food, String mealType) throws SQLException {
-        if (food == null || mealType == null) {
-            return -1;
-        }
-        
-        try (PreparedStatement pstmt = conn.prepareStatement(
-             "INSERT INTO foods (name, grams, calories, meal_type) VALUES (?, ?, ?, ?)",
-             Statement.RETURN_GENERATED_KEYS)) {
-            
-            pstmt.setString(1, food.getName());
-            pstmt.setDouble(2, food.getGrams());
-            pstmt.setInt(3, food.getCalories());
-            pstmt.setString(4, mealType);
-            
-            pstmt.executeUpdate();
-            
-            ResultSet rs = pstmt.getGeneratedKeys();
-            if (rs.next()) {
-                int foodId = rs.getInt(1);
-                
-                // If this is a FoodNutrient, save the nutrients
-                if (food instanceof FoodNutrient) {
-                    FoodNutrient fn = (FoodNutrient) food;
-                    saveFoodNutrients(conn, foodId, fn);
+    private void saveDefaultOptions(Food[] options, String mealType) {
+        try {
+            storage.inTransaction(() -> {
+                for (Food food : options) {
+                    storage.getFoods().saveWithMealType(food, mealType);
                 }
-                
-                return foodId;
-            }
+                return null;
+            });
+        } catch (SQLException e) {
+            System.out.println("Could not save default " + mealType + " options: " + e.getMessage());
         }
+    }
+    
+    /**
+     * A food log or meal plan waiting in the write-behind queue.
+     */
+    private static class PendingFoodWrite {
+        /** The username of the user */
+        private final String username;
+        /** The date in format YYYY-MM-DD */
+        private final String date;
+        /** The meal type of a meal plan, or null for a food log */
+        private final String mealType;
+        /** The food */
+        private final Food food;
         
-        return -1;
+        PendingFoodWrite(String username, String date, String mealType, Food food) {
+            this.username = username;
+            this.date = date;
+            this.mealType = mealType;
+            this.food = food;
+        }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,276 @@
+package com.berkant.kagan.haluk.irem.dietapp;
+
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * This class maintains the daily nutrition totals of the food logs.
+ * @details daily_nutrition_totals holds one row per user and date with the summed calories
+ *          and nutrients of the foods logged that day, so a daily report is a single primary
+ *          key read instead of a join over the food logs, foods and nutrients. Schema
+ *          migration 6 creates the table and fills it from the existing logs. Logging foods
+ *          adds their calories and nutrients to the row of the user and date with one upsert
+ *          per food in the same transaction, so a log costs the same however many foods the
+ *          day already has. refresh() recomputes the row of one day and rebuild() all rows.
+ *          When saving a food changes its nutrients, refreshFood() recomputes the days that
+ *          logged it in the same transaction. Writes that bypass the application, such as
+ *          deleting food logs or catalog foods with SQL, are not seen; run main() after them.
+ * @author berkant
+ */
+public class NutritionRollup {
+    /** Table of the daily totals */
+    public static final String TABLE = "daily_nutrition_totals";
+    /** Columns of the table in the order they are selected */
+    static final String COLUMNS =
+        "user_id, date, calories, protein, carbs, fat, fiber, sugar, sodium, entry_count";
+
+    /**
+     * Private constructor to prevent instantiation.
+     */
+    private NutritionRollup() {
+    }
+
+    /**
+     * Rebuilds the totals of the shards of DatabaseHelper, then closes the connections.
+     * @details Run it after food logs were changed outside the application, or to pick up
+     *          changed nutrients of catalog foods.
+     *
+     * @param args Not used
+     */
+    public static void main(String[] args) {
+        DatabaseHelper.initializeDatabase();
+        try {
+            for (DatabaseShard shard : DatabaseHelper.getShards()) {
+                Connection conn = shard.getWriteConnection();
+                try {
+                    int rows = rebuildInTransaction(conn);
+                    System.out.println("Rebuilt " + rows + " daily totals of " + shard.getName());
+                } finally {
+                    shard.release(conn);
+                }
+            }
+        } catch (SQLException e) {
+            System.out.println("Rebuilding daily totals failed: " + e.getMessage());
+        } finally {
+            DatabaseHelper.closeConnection();
+        }
+    }
+
+    /**
+     * Adds logged foods to the totals of a user for a date.
+     * @details Call in the transaction that logged the foods. The calories and nutrients are
+     *          those of the foods in the catalog, which a FoodNutrient may just have updated
+     *          and a plain Food may have from an earlier save.
+     *
+     * @param conn The writer connection
+     * @param userId The user id
+     * @param date The date in format YYYY-MM-DD
+     * @param foods The foods of the log
+     * @param inserted Whether each food was logged; foods that were not are skipped
+     * @throws SQLException If the totals cannot be written
+     */
+    public static void add(Connection conn, int userId, String date, List<Food> foods, boolean[] inserted)
+            throws SQLException {
+        SqlDialect dialect = SqlDialect.of(conn);
+        try (PreparedStatement pstmt = conn.prepareStatement(dialect.translate(dialect.upsertAdding(TABLE, COLUMNS,
+                "user_id, date",
+                "SELECT CAST(? AS INTEGER), CAST(? AS TEXT), f.calories, " +
+                "COALESCE(fn.protein, 0), COALESCE(fn.carbs, 0), COALESCE(fn.fat, 0), " +
+                "COALESCE(fn.fiber, 0), COALESCE(fn.sugar, 0), COALESCE(fn.sodium, 0), 1 FROM foods f " +
+                "LEFT JOIN food_nutrients fn ON f.id = fn.food_id " +
+                "WHERE f.name = ? AND f.grams = ? AND f.calories = ?")))) {
+            boolean batched = false;
+            for (int i = 0; i < foods.size(); i++) {
+                if (!inserted[i]) {
+                    continue;
+                }
+                Food food = foods.get(i);
+                pstmt.setInt(1, userId);
+                pstmt.setString(2, date);
+                pstmt.setString(3, food.getName());
+                pstmt.setDouble(4, food.getGrams());
+                pstmt.setInt(5, food.getCalories());
+                pstmt.addBatch();
+                batched = true;
+            }
+            if (batched) {
+                pstmt.executeBatch();
+            }
+        }
+    }
+
+    /**
+     * Recomputes the totals of a user for a date from a food log table.
+     * @details Call in the transaction that changed the food log. The row is removed if no
+     *          logged food of the date is left in the catalog. Unlike add() this sums every
+     *          food of the day.
+     *
+     * @param conn The writer connection
+     * @param table The food log table the date is stored in
+     * @param userId The user id
+     * @param date The date in format YYYY-MM-DD
+     * @throws SQLException If the totals cannot be written
+     */
+    public static void refresh(Connection conn, String table, int userId, String date) throws SQLException {
+        try (PreparedStatement delete = conn.prepareStatement(
+                 "DELETE FROM " + TABLE + " WHERE user_id = ? AND date = ?");
+             PreparedStatement insert = conn.prepareStatement(
+                 "INSERT INTO " + TABLE + " (" + COLUMNS + ") " + totalsSelect(table) +
+                 " WHERE fl.user_id = ? AND fl.date = ? GROUP BY fl.user_id, fl.date")) {
+            delete.setInt(1, userId);
+            delete.setString(2, date);
+            delete.executeUpdate();
+            insert.setInt(1, userId);
+            insert.setString(2, date);
+            insert.executeUpdate();
+        }
+    }
+
+    /**
+     * Recomputes the totals of every user and date that logged a food.
+     * @details Call in the transaction that changed the nutrients of the food. The days are
+     *          found with a lookup of the (food_id, user_id, date) index of each food log
+     *          table, and each day is recomputed, so only actual changes of the nutrients
+     *          should call this.
+     *
+     * @param conn The writer connection
+     * @param foodId The ID of the food in the catalog
+     * @return The number of days recomputed
+     * @throws SQLException If the totals cannot be written
+     */
+    public static int refreshFood(Connection conn, int foodId) throws SQLException {
+        int days = 0;
+        for (String table : tables(conn)) {
+            List<Integer> userIds = new ArrayList<>();
+            List<String> dates = new ArrayList<>();
+            try (PreparedStatement pstmt = conn.prepareStatement(
+                    "SELECT DISTINCT user_id, date FROM " + table + " WHERE food_id = ?")) {
+                pstmt.setInt(1, foodId);
+                try (ResultSet rs = pstmt.executeQuery()) {
+                    while (rs.next()) {
+                        userIds.add(rs.getInt(1));
+                        dates.add(rs.getString(2));
+                    }
+                }
+            }
+            for (int i = 0; i < userIds.size(); i++) {
+                refresh(conn, table, userIds.get(i), dates.get(i));
+            }
+            days += userIds.size();
+        }
+        return days;
+    }
+
+    /**
+     * Recomputes all totals from the food logs.
+     * @details Call in a transaction, so readers never see the table half filled. The logs
+     *          are read from food_logs and from every partition in the partition catalog.
+     *
+     * @param conn The writer connection
+     * @return The number of totals written
+     * @throws SQLException If the totals cannot be written
+     */
+    public static int rebuild(Connection conn) throws SQLException {
+        int rows = 0;
+        try (Statement statement = conn.createStatement()) {
+            statement.executeUpdate("DELETE FROM " + TABLE);
+            // A date is stored in exactly one table, so the groups of the tables never overlap
+            for (String table : tables(conn)) {
+                rows += statement.executeUpdate("INSERT INTO " + TABLE + " (" + COLUMNS + ") " +
+                    totalsSelect(table) + " GROUP BY fl.user_id, fl.date");
+            }
+        }
+        return rows;
+    }
+
+    /**
+     * Runs rebuild() in a transaction of its own.
+     *
+     * @param conn The writer connection, in auto-commit mode or not
+     * @return The number of totals written
+     * @throws SQLException If the totals cannot be written; the transaction is rolled back
+     */
+    private static int rebuildInTransaction(Connection conn) throws SQLException {
+        boolean autoCommit = conn.getAutoCommit();
+        conn.setAutoCommit(false);
+        try {
+            int rows = rebuild(conn);
+            conn.commit();
+            return rows;
+        } catch (SQLException e) {
+            conn.rollback();
+            throw e;
+        } finally {
+            conn.setAutoCommit(autoCommit);
+        }
+    }
+
+    /**
+     * Builds the select of the totals of a food log table, to be followed by WHERE and GROUP BY.
+     * @details The columns are those of COLUMNS, in the same order.
+     *
+     * @param table The food log table
+     * @return The select
+     */
+    static String totalsSelect(String table) {
+        return "SELECT fl.user_id, fl.date, SUM(f.calories), " +
+            "COALESCE(SUM(fn.protein), 0), COALESCE(SUM(fn.carbs), 0), COALESCE(SUM(fn.fat), 0), " +
+            "COALESCE(SUM(fn.fiber), 0), COALESCE(SUM(fn.sugar), 0), COALESCE(SUM(fn.sodium), 0), " +
+            "COUNT(*) FROM " + table + " fl " +
+            "JOIN foods f ON fl.food_id = f.id " +
+            "LEFT JOIN food_nutrients fn ON f.id = fn.food_id";
+    }
+
+    /**
+     * Gets the food log tables: food_logs, which keeps the dates that have no partition,
+     * and the partitions recorded in the partition catalog.
+     * @details The catalog is read directly rather than through FoodLogPartitions, so the
+     *          tables are found while migrating, before the partitions are set up. A database
+     *          without a catalog has no partitions yet.
+     *
+     * @param conn The database connection
+     * @return The table names, food_logs first
+     * @throws SQLException If the catalog cannot be read
+     */
+    private static List<String> tables(Connection conn) throws SQLException {
+        List<String> tables = new ArrayList<>();
+        tables.add(FoodLogPartitions.LEGACY_TABLE);
+        if (tableExists(conn, FoodLogPartitions.CATALOG_TABLE)) {
+            try (Statement statement = conn.createStatement();
+                 ResultSet rs = statement.executeQuery(
+                     "SELECT name FROM " + FoodLogPartitions.CATALOG_TABLE + " ORDER BY name")) {
+                while (rs.next()) {
+                    tables.add(rs.getString(1));
+                }
+            }
+        }
+        return tables;
+    }
+
+    /**
+     * Checks whether a table exists.
+     *
+     * @param conn The database connection
+     * @param table The table name in lower case
+     * @return true if the table exists
+     * @throws SQLException If the database metadata cannot be read
+     */
+    private static boolean tableExists(Connection conn, String table) throws SQLException {
+        DatabaseMetaData metaData = conn.getMetaData();
+        // H2 stores unquoted names in upper case
+        for (String name : new String[] { table, table.toUpperCase() }) {
+            try (ResultSet rs = metaData.getTables(null, null, name, new String[] { "TABLE" })) {
+                if (rs.next()) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,353 @@
+package com.berkant.kagan.haluk.irem.dietapp;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * This class holds the rolling averages, goal adherence and streaks of a user's daily totals.
+ * @details analyze() passes over the days once and keeps running sums for each window in
+ *          WINDOWS, adding the day that enters a window and subtracting the day that leaves
+ *          it, so a year of trends costs one read of the daily totals and a linear pass.
+ *          Averages, macro shares and adherence of a window only count the days with logged
+ *          food; a day without logs neither lowers an average nor breaks a goal. A logged
+ *          day is within the calorie goal if it is off by at most GOAL_TOLERANCE, a deficit
+ *          if it is below that and a surplus if it is above. Streaks are runs of logged
+ *          deficit or surplus days; any other day ends them.
+ * @author berkant
+ */
+public class NutritionTrends {
+    /** Lengths of the rolling windows in days */
+    public static final int[] WINDOWS = { 7, 30, 90 };
+    /** Share of the calorie goal a day may be off by and still meet it */
+    public static final double GOAL_TOLERANCE = 0.10;
+
+    /** Energy in calories per gram of protein and of carbohydrates */
+    private static final int CALORIES_PER_GRAM_PROTEIN_CARBS = 4;
+    /** Energy in calories per gram of fat */
+    private static final int CALORIES_PER_GRAM_FAT = 9;
+
+    /** The days of the requested range in date order */
+    private final List<DayTrend> days;
+    /** Share of the logged days of the range within the goal, from 0 to 1 */
+    private final double adherence;
+    /** Longest run of deficit days in the range */
+    private final int longestDeficitStreak;
+    /** Longest run of surplus days in the range */
+    private final int longestSurplusStreak;
+    /** Run of deficit days ending on the last day */
+    private final int currentDeficitStreak;
+    /** Run of surplus days ending on the last day */
+    private final int currentSurplusStreak;
+
+    /**
+     * Constructor for NutritionTrends class.
+     *
+     * @param days The days of the requested range in date order
+     * @param adherence Share of the logged days within the goal, from 0 to 1
+     * @param longestDeficitStreak Longest run of deficit days
+     * @param longestSurplusStreak Longest run of surplus days
+     * @param currentDeficitStreak Run of deficit days ending on the last day
+     * @param currentSurplusStreak Run of surplus days ending on the last day
+     */
+    public NutritionTrends(List<DayTrend> days, double adherence, int longestDeficitStreak,
+                           int longestSurplusStreak, int currentDeficitStreak, int currentSurplusStreak) {
+        this.days = Collections.unmodifiableList(new ArrayList<>(days));
+        this.adherence = adherence;
+        this.longestDeficitStreak = longestDeficitStreak;
+        this.longestSurplusStreak = longestSurplusStreak;
+        this.currentDeficitStreak = currentDeficitStreak;
+        this.currentSurplusStreak = currentSurplusStreak;
+    }
+
+    /**
+     * Computes the trends of consecutive days.
+     *
+     * @param totals The totals of consecutive days in date order, starting up to the longest
+     *               window minus one day before the first reported day so its windows are full
+     * @param reportedFrom Index in totals of the first day to report
+     * @param calorieGoal The daily calorie goal
+     * @return The trends of the days from reportedFrom on
+     */
+    public static NutritionTrends analyze(List<DailyNutritionTotals> totals, int reportedFrom, int calorieGoal) {
+        int windowCount = WINDOWS.length;
+        // Running sums per window: logged days, days within the goal, calories, protein, carbs, fat
+        int[] logged = new int[windowCount];
+        int[] withinGoal = new int[windowCount];
+        double[] calories = new double[windowCount];
+        double[] protein = new double[windowCount];
+        double[] carbs = new double[windowCount];
+        double[] fat = new double[windowCount];
+
+        List<DayTrend> days = new ArrayList<>();
+        int reportedLogged = 0;
+        int reportedWithinGoal = 0;
+        int deficitStreak = 0;
+        int surplusStreak = 0;
+        int longestDeficit = 0;
+        int longestSurplus = 0;
+
+        for (int i = 0; i < totals.size(); i++) {
+            DailyNutritionTotals day = totals.get(i);
+            int balance = balance(day, calorieGoal);
+            for (int w = 0; w < windowCount; w++) {
+                add(day, balance, 1, w, logged, withinGoal, calories, protein, carbs, fat);
+                int leaving = i - WINDOWS[w];
+                if (leaving >= 0) {
+                    DailyNutritionTotals old = totals.get(leaving);
+                    add(old, balance(old, calorieGoal), -1, w, logged, withinGoal, calories, protein, carbs, fat);
+                }
+            }
+            if (i < reportedFrom) {
+                continue;
+            }
+
+            double[] averageCalories = new double[windowCount];
+            double[] proteinShare = new double[windowCount];
+            double[] carbShare = new double[windowCount];
+            double[] fatShare = new double[windowCount];
+            double[] adherence = new double[windowCount];
+            for (int w = 0; w < windowCount; w++) {
+                if (logged[w] > 0) {
+                    averageCalories[w] = calories[w] / logged[w];
+                    adherence[w] = (double) withinGoal[w] / logged[w];
+                }
+                double macroCalories = (protein[w] + carbs[w]) * CALORIES_PER_GRAM_PROTEIN_CARBS
+                    + fat[w] * CALORIES_PER_GRAM_FAT;
+                if (macroCalories > 0) {
+                    proteinShare[w] = protein[w] * CALORIES_PER_GRAM_PROTEIN_CARBS / macroCalories;
+                    carbShare[w] = carbs[w] * CALORIES_PER_GRAM_PROTEIN_CARBS / macroCalories;
+                    fatShare[w] = fat[w] * CALORIES_PER_GRAM_FAT / macroCalories;
+                }
+            }
+            days.add(new DayTrend(day, balance, averageCalories, proteinShare, carbShare, fatShare, adherence));
+
+            if (day.getEntryCount() > 0) {
+                reportedLogged++;
+                if (balance == 0) {
+                    reportedWithinGoal++;
+                }
+            }
+            deficitStreak = balance < 0 ? deficitStreak + 1 : 0;
+            surplusStreak = balance > 0 ? surplusStreak + 1 : 0;
+            longestDeficit = Math.max(longestDeficit, deficitStreak);
+            longestSurplus = Math.max(longestSurplus, surplusStreak);
+        }
+
+        return new NutritionTrends(days, reportedLogged > 0 ? (double) reportedWithinGoal / reportedLogged : 0,
+            longestDeficit, longestSurplus, deficitStreak, surplusStreak);
+    }
+
+    /**
+     * Compares the calories of a day with the goal.
+     *
+     * @return -1 for a deficit, 1 for a surplus, 0 within the goal or without logged food
+     */
+    private static int balance(DailyNutritionTotals day, int calorieGoal) {
+        if (day.getEntryCount() == 0) {
+            return 0;
+        }
+        if (day.getCalories() < calorieGoal * (1 - GOAL_TOLERANCE)) {
+            return -1;
+        }
+        if (day.getCalories() > calorieGoal * (1 + GOAL_TOLERANCE)) {
+            return 1;
+        }
+        return 0;
+    }
+
+    /**
+     * Adds a day to, or with sign -1 removes it from, the running sums of a window.
+     */
+    private static void add(DailyNutritionTotals day, int balance, int sign, int w, int[] logged, int[] withinGoal,
+                            double[] calories, double[] protein, double[] carbs, double[] fat) {
+        if (day.getEntryCount() == 0) {
+            return;
+        }
+        logged[w] += sign;
+        if (balance == 0) {
+            withinGoal[w] += sign;
+        }
+        calories[w] += sign * day.getCalories();
+        protein[w] += sign * day.getProtein();
+        carbs[w] += sign * day.getCarbs();
+        fat[w] += sign * day.getFat();
+    }
+
+    /**
+     * Gets the index of a window in WINDOWS.
+     *
+     * @param window The window length in days
+     * @return The index
+     * @throws IllegalArgumentException If the window is not one of WINDOWS
+     */
+    private static int indexOf(int window) {
+        for (int w = 0; w < WINDOWS.length; w++) {
+            if (WINDOWS[w] == window) {
+                return w;
+            }
+        }
+        throw new IllegalArgumentException("No rolling window of " + window + " days");
+    }
+
+    /**
+     * Gets the days of the requested range.
+     * @return The days in date order
+     */
+    public List<DayTrend> getDays() {
+        return days;
+    }
+
+    /**
+     * Gets the share of the logged days of the range that met the calorie goal.
+     * @return The adherence from 0 to 1, 0 if nothing was logged
+     */
+    public double getAdherence() {
+        return adherence;
+    }
+
+    /**
+     * Gets the longest run of deficit days in the range.
+     * @return The number of days
+     */
+    public int getLongestDeficitStreak() {
+        return longestDeficitStreak;
+    }
+
+    /**
+     * Gets the longest run of surplus days in the range.
+     * @return The number of days
+     */
+    public int getLongestSurplusStreak() {
+        return longestSurplusStreak;
+    }
+
+    /**
+     * Gets the run of deficit days ending on the last day of the range.
+     * @return The number of days, 0 if the last day was no deficit
+     */
+    public int getCurrentDeficitStreak() {
+        return currentDeficitStreak;
+    }
+
+    /**
+     * Gets the run of surplus days ending on the last day of the range.
+     * @return The number of days, 0 if the last day was no surplus
+     */
+    public int getCurrentSurplusStreak() {
+        return currentSurplusStreak;
+    }
+
+    /**
+     * The totals of a day with the rolling values of the windows ending on it.
+     */
+    public static class DayTrend {
+        /** The totals of the day */
+        private final DailyNutritionTotals totals;
+        /** -1 for a deficit, 1 for a surplus, 0 otherwise */
+        private final int balance;
+        /** Average calories of the logged days per window */
+        private final double[] averageCalories;
+        /** Share of protein in the macronutrient calories per window */
+        private final double[] proteinShare;
+        /** Share of carbohydrates in the macronutrient calories per window */
+        private final double[] carbShare;
+        /** Share of fat in the macronutrient calories per window */
+        private final double[] fatShare;
+        /** Share of the logged days within the goal per window */
+        private final double[] adherence;
+
+        private DayTrend(DailyNutritionTotals totals, int balance, double[] averageCalories, double[] proteinShare,
+                         double[] carbShare, double[] fatShare, double[] adherence) {
+            this.totals = totals;
+            this.balance = balance;
+            this.averageCalories = averageCalories;
+            this.proteinShare = proteinShare;
+            this.carbShare = carbShare;
+            this.fatShare = fatShare;
+            this.adherence = adherence;
+        }
+
+        /**
+         * Gets the date.
+         * @return The date in format YYYY-MM-DD
+         */
+        public String getDate() {
+            return totals.getDate();
+        }
+
+        /**
+         * Gets the totals logged on the day.
+         * @return The totals
+         */
+        public DailyNutritionTotals getTotals() {
+            return totals;
+        }
+
+        /**
+         * Checks whether the day was logged below the calorie goal.
+         * @return true for a deficit
+         */
+        public boolean isDeficit() {
+            return balance < 0;
+        }
+
+        /**
+         * Checks whether the day was logged above the calorie goal.
+         * @return true for a surplus
+         */
+        public boolean isSurplus() {
+            return balance > 0;
+        }
+
+        /**
+         * Gets the average calories of the logged days of a window ending on the day.
+         *
+         * @param window The window length, one of WINDOWS
+         * @return The average, 0 if nothing was logged in the window
+         */
+        public double getAverageCalories(int window) {
+            return averageCalories[indexOf(window)];
+        }
+
+        /**
+         * Gets the share of protein in the macronutrient calories of a window ending on the day.
+         *
+         * @param window The window length, one of WINDOWS
+         * @return The share from 0 to 1
+         */
+        public double getProteinShare(int window) {
+            return proteinShare[indexOf(window)];
+        }
+
+        /**
+         * Gets the share of carbohydrates in the macronutrient calories of a window ending on the day.
+         *
+         * @param window The window length, one of WINDOWS
+         * @return The share from 0 to 1
+         */
+        public double getCarbShare(int window) {
+            return carbShare[indexOf(window)];
+        }
+
+        /**
+         * Gets the share of fat in the macronutrient calories of a window ending on the day.
+         *
+         * @param window The window length, one of WINDOWS
+         * @return The share from 0 to 1
+         */
+        public double getFatShare(int window) {
+            return fatShare[indexOf(window)];
+        }
+
+        /**
+         * Gets the share of the logged days of a window ending on the day that met the goal.
+         *
+         * @param window The window length, one of WINDOWS
+         * @return The adherence from 0 to 1, 0 if nothing was logged in the window
+         */
+        public double getAdherence(int window) {
+            return adherence[indexOf(window)];
+        }
+    }
+}
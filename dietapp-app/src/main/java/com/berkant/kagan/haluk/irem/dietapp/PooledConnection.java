@@ -0,0 +1,232 @@
+package com.berkant.kagan.haluk.irem.dietapp;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * This class represents a connection handed out by a ConnectionPool.
+ * @details Callers receive a dynamic proxy implementing Connection. Calling close() on the
+ *          proxy returns the physical connection to the pool instead of closing it, so code
+ *          that uses try-with-resources on DatabaseHelper.getConnection() is pooled. Every
+ *          borrow gets its own handle; once the handle has been returned, it reports itself as
+ *          closed and rejects further use, so a stale handle can never touch a connection that
+ *          has been handed to another caller. Statements prepared through the handle come from
+ *          the physical connection's StatementCache.
+ * @author berkant
+ */
+public class PooledConnection implements InvocationHandler {
+    /** The pool the connection belongs to */
+    private final ConnectionPool pool;
+    /** The physical connection */
+    private final Connection connection;
+    /** The prepared statement cache of the physical connection */
+    private final StatementCache statementCache;
+    /** Open statements created through this handle, closed when the handle is returned */
+    private final Queue<Statement> statements = new ConcurrentLinkedQueue<>();
+    /** Whether this handle has been returned to the pool */
+    private volatile boolean returned;
+
+    /**
+     * Constructor for PooledConnection class.
+     *
+     * @param pool The pool the connection belongs to
+     * @param connection The physical connection
+     * @param statementCache The prepared statement cache of the physical connection
+     */
+    private PooledConnection(ConnectionPool pool, Connection connection, StatementCache statementCache) {
+        this.pool = pool;
+        this.connection = connection;
+        this.statementCache = statementCache;
+    }
+
+    /**
+     * Creates a pooled handle for a physical connection.
+     *
+     * @param pool The pool the connection belongs to
+     * @param connection The physical connection
+     * @param statementCache The prepared statement cache of the physical connection
+     * @return A Connection proxy whose close() returns the connection to the pool
+     */
+    static Connection wrap(ConnectionPool pool, Connection connection, StatementCache statementCache) {
+        return (Connection) Proxy.newProxyInstance(
+            PooledConnection.class.getClassLoader(),
+            new Class<?>[] { Connection.class },
+            new PooledConnection(pool, connection, statementCache));
+    }
+
+    /**
+     * Gets the handler behind a pooled connection proxy.
+     *
+     * @param conn The connection to inspect
+     * @return The handler or null if the connection is not a pooled handle
+     */
+    static PooledConnection handlerOf(Connection conn) {
+        if (conn != null && Proxy.isProxyClass(conn.getClass())) {
+            InvocationHandler handler = Proxy.getInvocationHandler(conn);
+            if (handler instanceof PooledConnection) {
+                return (PooledConnection) handler;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Gets the physical connection behind this handle.
+     *
+     * @return The physical connection
+     */
+    Connection getPhysicalConnection() {
+        return connection;
+    }
+
+    /**
+     * Marks this handle as returned and resets the physical connection for the next borrower.
+     * @details Closes the statements the borrower left open, rolls back an unfinished
+     *          transaction, restores auto-commit and clears warnings.
+     *
+     * @return true if the physical connection can be reused, false if it should be discarded
+     */
+    boolean detach() {
+        returned = true;
+
+        Statement statement;
+        while ((statement = statements.poll()) != null) {
+            try {
+                statement.close();
+            } catch (SQLException e) {
+                // The statement is discarded either way
+            }
+        }
+
+        try {
+            if (connection.isClosed()) {
+                return false;
+            }
+            if (!connection.getAutoCommit()) {
+                connection.rollback();
+                connection.setAutoCommit(true);
+            }
+            connection.clearWarnings();
+            return true;
+        } catch (SQLException e) {
+            System.out.println("Could not reset pooled connection: " + e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Handles a call on the Connection proxy.
+     *
+     * @param proxy The proxy the method was called on
+     * @param method The called method
+     * @param args The method arguments
+     * @return The method result
+     * @throws Throwable The exception thrown by the physical connection
+     */
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+        switch (method.getName()) {
+            case "close":
+                if (!returned) {
+                    pool.release((Connection) proxy);
+                }
+                return null;
+            case "isClosed":
+                return returned || connection.isClosed();
+            case "isValid":
+                if (returned) {
+                    return false;
+                }
+                break;
+            case "equals":
+                return proxy == args[0];
+            case "hashCode":
+                return System.identityHashCode(proxy);
+            case "toString":
+                return "PooledConnection[" + pool.getName() + ", " + connection + "]";
+            default:
+                break;
+        }
+
+        if (returned) {
+            throw new SQLException("Connection has already been returned to the pool");
+        }
+
+        if (isCacheablePrepare(method, args)) {
+            int autoGeneratedKeys = args.length == 2 ? (Integer) args[1] : Statement.NO_GENERATED_KEYS;
+            PreparedStatement statement = statementCache.prepare((Connection) proxy, (String) args[0], autoGeneratedKeys);
+            track(statement);
+            return statement;
+        }
+
+        try {
+            Object result = method.invoke(connection, args);
+            if (result instanceof Statement) {
+                track((Statement) result);
+            }
+            return result;
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * Remembers a statement created through this handle, so detach() can close it.
+     * @details The statements the borrower closed already are dropped first, so a handle
+     *          that runs many statements only holds those that are still open.
+     *
+     * @param statement The new statement
+     */
+    private void track(Statement statement) {
+        statements.removeIf(PooledConnection::isClosed);
+        statements.add(statement);
+    }
+
+    /**
+     * Gets the number of statements created through this handle that were open when the
+     * last one was created.
+     *
+     * @return The number of tracked statements
+     */
+    int getTrackedStatements() {
+        return statements.size();
+    }
+
+    /**
+     * Checks whether a statement is closed.
+     *
+     * @param statement The statement
+     * @return true if the statement is closed or its state cannot be read
+     */
+    private static boolean isClosed(Statement statement) {
+        try {
+            return statement.isClosed();
+        } catch (SQLException e) {
+            return true; // detach() would fail to close it as well
+        }
+    }
+
+    /**
+     * Checks whether a call is prepareStatement(String) or prepareStatement(String, int).
+     *
+     * @param method The called method
+     * @param args The method arguments
+     * @return true if the statement can be served from the statement cache
+     */
+    private boolean isCacheablePrepare(Method method, Object[] args) {
+        if (statementCache == null || !"prepareStatement".equals(method.getName())) {
+            return false;
+        }
+        Class<?>[] types = method.getParameterTypes();
+        return (types.length == 1 && types[0] == String.class)
+            || (types.length == 2 && types[0] == String.class && types[1] == int.class);
+    }
+}
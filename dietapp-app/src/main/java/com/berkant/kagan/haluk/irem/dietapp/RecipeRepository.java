@@ -0,0 +1,82 @@
+package com.berkant.kagan.haluk.irem.dietapp;
+
+import java.sql.SQLException;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * This interface stores ingredient prices and the recipes of the meal options.
+ * @author berkant
+ */
+public interface RecipeRepository {
+
+    /**
+     * Maps a recipe ingredient to the caller's ingredient type.
+     *
+     * @param <T> The ingredient type
+     */
+    interface IngredientMapper<T> {
+        /**
+         * Creates an ingredient object from the stored values.
+         *
+         * @param name The ingredient name
+         * @param amount The amount used by the recipe
+         * @param unit The unit of the amount
+         * @param price The price per standard unit
+         * @return The ingredient object
+         */
+        T map(String name, double amount, String unit, double price);
+    }
+
+    /**
+     * Counts the ingredients with a price.
+     *
+     * @return The number of ingredients
+     * @throws SQLException If the ingredients cannot be read
+     */
+    int countIngredients() throws SQLException;
+
+    /**
+     * Adds ingredients with their prices in one transaction.
+     *
+     * @param prices The price per standard unit by ingredient name
+     * @throws SQLException If the ingredients cannot be stored; none are stored then
+     */
+    void saveIngredientPrices(Map<String, Double> prices) throws SQLException;
+
+    /**
+     * Adds a recipe.
+     *
+     * @param mealType The type of meal
+     * @param recipeName The name of the recipe, the same as the food it makes
+     * @return The recipe id, or -1 if the recipe could not be added
+     * @throws SQLException If the recipe cannot be stored
+     */
+    int saveRecipe(String mealType, String recipeName) throws SQLException;
+
+    /**
+     * Adds an ingredient to a recipe.
+     *
+     * @param recipeId The recipe id
+     * @param ingredientName The name of an ingredient with a price
+     * @param amount The amount of the ingredient
+     * @param unit The unit of the amount
+     * @return true if added, false if the ingredient has no price
+     * @throws SQLException If the ingredient cannot be stored
+     */
+    boolean saveRecipeIngredient(int recipeId, String ingredientName, double amount, String unit)
+        throws SQLException;
+
+    /**
+     * Gets the ingredients of a recipe.
+     *
+     * @param <T> The ingredient type
+     * @param mealType The type of meal, in lower case
+     * @param recipeName The name of the recipe
+     * @param mapper Creates the ingredient objects
+     * @return The ingredients, or an empty list if there is no such recipe
+     * @throws SQLException If the recipe cannot be read
+     */
+    <T> List<T> findIngredients(String mealType, String recipeName, IngredientMapper<T> mapper)
+        throws SQLException;
+}
@@ -0,0 +1,321 @@
+package com.berkant.kagan.haluk.irem.dietapp;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * This class applies versioned schema migrations to the Diet Planner database.
+ * @details The applied version is recorded in the schema_version table. Each migration has
+ *          a version number, a list of SQL statements and optionally a step written in Java
+ *          that runs after them, for changes the SQL cannot express such as filling a table
+ *          from the food log partitions. migrate() runs the migrations newer
+ *          than the recorded version in ascending order, each in its own transaction, so a
+ *          failed step leaves the database at the last completed version. Migrations are only
+ *          ever appended: a released migration must not be edited, add a new version instead.
+ *          The statements are written for SQLite and translated to the dialect of the connection.
+ * @author berkant
+ */
+public class SchemaMigrator {
+
+    /** The migrations in the order they are applied */
+    private static final List<Migration> MIGRATIONS;
+
+    static {
+        List<Migration> migrations = new ArrayList<>();
+
+        migrations.add(new Migration(1, "Index food logs and meal plans by user and date",
+            // Covering indexes: getFoodLog and getTotalCalories only need food_id after the lookup
+            "CREATE INDEX IF NOT EXISTS idx_food_logs_user_date ON food_logs (user_id, date, food_id)",
+            "CREATE INDEX IF NOT EXISTS idx_meal_plans_user_date_type ON meal_plans (user_id, date, meal_type, food_id)"
+        ));
+
+        migrations.add(new Migration(2, "One nutrient row per food",
+            // Keep the most recent row of foods that were saved more than once
+            "DELETE FROM food_nutrients WHERE id NOT IN (SELECT MAX(id) FROM food_nutrients GROUP BY food_id)",
+            "CREATE UNIQUE INDEX IF NOT EXISTS idx_food_nutrients_food ON food_nutrients (food_id)"
+        ));
+
+        migrations.add(new Migration(3, "Index recipes by meal type and name",
+            "CREATE INDEX IF NOT EXISTS idx_recipes_type_name ON recipes (meal_type, name)",
+            "CREATE INDEX IF NOT EXISTS idx_recipe_ingredients_recipe ON recipe_ingredients (recipe_id, ingredient_id)"
+        ));
+
+        migrations.add(new Migration(4, "Index food lookups",
+            "CREATE INDEX IF NOT EXISTS idx_foods_lookup ON foods (name, grams, calories)",
+            "CREATE INDEX IF NOT EXISTS idx_foods_meal_type ON foods (meal_type)"
+        ));
+
+        migrations.add(new Migration(5, "One catalog row per food",
+            // Point references to duplicate foods at the oldest row with the same name, grams and calories
+            "CREATE TEMP TABLE food_duplicates AS " +
+            "SELECT id, MIN(id) OVER (PARTITION BY name, grams, calories) AS keep_id FROM foods",
+            "DELETE FROM food_duplicates WHERE id = keep_id",
+            "UPDATE food_logs SET food_id = (SELECT keep_id FROM food_duplicates d WHERE d.id = food_logs.food_id) " +
+            "WHERE food_id IN (SELECT id FROM food_duplicates)",
+            "UPDATE meal_plans SET food_id = (SELECT keep_id FROM food_duplicates d WHERE d.id = meal_plans.food_id) " +
+            "WHERE food_id IN (SELECT id FROM food_duplicates)",
+            "UPDATE recipes SET food_id = (SELECT keep_id FROM food_duplicates d WHERE d.id = recipes.food_id) " +
+            "WHERE food_id IN (SELECT id FROM food_duplicates)",
+            // Keep the most recent nutrient row of each group of duplicates
+            "DELETE FROM food_nutrients WHERE id NOT IN (" +
+            "SELECT MAX(fn.id) FROM food_nutrients fn LEFT JOIN food_duplicates d ON d.id = fn.food_id " +
+            "GROUP BY COALESCE(d.keep_id, fn.food_id))",
+            "UPDATE food_nutrients SET food_id = (SELECT keep_id FROM food_duplicates d WHERE d.id = food_nutrients.food_id) " +
+            "WHERE food_id IN (SELECT id FROM food_duplicates)",
+            "DELETE FROM foods WHERE id IN (SELECT id FROM food_duplicates)",
+            "DROP TABLE food_duplicates",
+            "DROP INDEX IF EXISTS idx_foods_lookup",
+            "CREATE UNIQUE INDEX IF NOT EXISTS idx_foods_identity ON foods (name, grams, calories)"
+        ));
+
+        migrations.add(new Migration(6, "Daily nutrition totals per user and date",
+            // The monthly food log partitions are only known at run time, so they are summed in Java
+            NutritionRollup::rebuild,
+            "CREATE TABLE IF NOT EXISTS daily_nutrition_totals (" +
+            "user_id INTEGER NOT NULL," +
+            "date TEXT NOT NULL," +
+            "calories INTEGER NOT NULL," +
+            "protein REAL NOT NULL," +
+            "carbs REAL NOT NULL," +
+            "fat REAL NOT NULL," +
+            "fiber REAL NOT NULL," +
+            "sugar REAL NOT NULL," +
+            "sodium REAL NOT NULL," +
+            "entry_count INTEGER NOT NULL," +
+            "PRIMARY KEY (user_id, date)" +
+            ")"
+        ));
+
+        migrations.add(new Migration(7, "Catalog of monthly food log partitions",
+            // The partition tables themselves are created on the first write to their month
+            "CREATE TABLE IF NOT EXISTS food_log_partitions (" +
+            "name TEXT PRIMARY KEY," +
+            "period TEXT NOT NULL," +
+            "compacted INTEGER NOT NULL DEFAULT 0" +
+            ")"
+        ));
+
+        migrations.add(new Migration(8, "Shard directory",
+            // Every shard gets the tables, but ShardRouter only reads and writes them in shard 0
+            "CREATE TABLE IF NOT EXISTS shard_layout (" +
+            "id INTEGER PRIMARY KEY," +
+            "shard_count INTEGER NOT NULL" +
+            ")",
+            "CREATE TABLE IF NOT EXISTS user_shards (" +
+            "user_id INTEGER PRIMARY KEY," +
+            "shard INTEGER NOT NULL" +
+            ")"
+        ));
+
+        migrations.add(new Migration(9, "Index food logs by food",
+            // NutritionRollup.refreshFood finds the days of a food; the partitions are read from the catalog
+            FoodLogPartitions::indexFoods,
+            "CREATE INDEX IF NOT EXISTS idx_food_logs_food ON food_logs (food_id, user_id, date)"
+        ));
+
+        MIGRATIONS = Collections.unmodifiableList(migrations);
+    }
+
+    /**
+     * Private constructor to prevent instantiation.
+     */
+    private SchemaMigrator() {
+    }
+
+    /**
+     * Applies all pending migrations.
+     *
+     * @param conn The database connection
+     * @return The number of migrations applied
+     * @throws SQLException If a migration fails
+     */
+    public static synchronized int migrate(Connection conn) throws SQLException {
+        createVersionTable(conn);
+
+        int currentVersion = getCurrentVersion(conn);
+        int applied = 0;
+        for (Migration migration : MIGRATIONS) {
+            if (migration.getVersion() > currentVersion) {
+                apply(conn, migration);
+                applied++;
+            }
+        }
+        return applied;
+    }
+
+    /**
+     * Gets the schema version recorded in the database.
+     *
+     * @param conn The database connection
+     * @return The current schema version or 0 if no migration has been applied
+     * @throws SQLException If the version cannot be read
+     */
+    public static int getCurrentVersion(Connection conn) throws SQLException {
+        createVersionTable(conn);
+        try (Statement statement = conn.createStatement();
+             ResultSet rs = statement.executeQuery("SELECT MAX(version) FROM schema_version")) {
+            return rs.next() ? rs.getInt(1) : 0;
+        }
+    }
+
+    /**
+     * Gets the version of the newest known migration.
+     *
+     * @return The latest schema version
+     */
+    public static int getLatestVersion() {
+        return MIGRATIONS.get(MIGRATIONS.size() - 1).getVersion();
+    }
+
+    /**
+     * Gets the known migrations.
+     *
+     * @return The migrations in the order they are applied
+     */
+    public static List<Migration> getMigrations() {
+        return MIGRATIONS;
+    }
+
+    /**
+     * Creates the schema_version table if it doesn't exist.
+     *
+     * @param conn The database connection
+     * @throws SQLException If the table cannot be created
+     */
+    private static void createVersionTable(Connection conn) throws SQLException {
+        try (Statement statement = conn.createStatement()) {
+            statement.execute(SqlDialect.of(conn).translate(
+                "CREATE TABLE IF NOT EXISTS schema_version (" +
+                "version INTEGER PRIMARY KEY," +
+                "description TEXT NOT NULL," +
+                "applied_at TEXT NOT NULL DEFAULT CURRENT_TIMESTAMP" +
+                ");"
+            ));
+        }
+    }
+
+    /**
+     * Applies one migration and records its version in a single transaction.
+     *
+     * @param conn The database connection
+     * @param migration The migration to apply
+     * @throws SQLException If the migration fails; the transaction is rolled back
+     */
+    private static void apply(Connection conn, Migration migration) throws SQLException {
+        SqlDialect dialect = SqlDialect.of(conn);
+        boolean autoCommit = conn.getAutoCommit();
+        conn.setAutoCommit(false);
+        try (Statement statement = conn.createStatement()) {
+            for (String sql : migration.getStatements()) {
+                statement.execute(dialect.translate(sql));
+            }
+            if (migration.getStep() != null) {
+                migration.getStep().apply(conn);
+            }
+            try (PreparedStatement pstmt = conn.prepareStatement(
+                    "INSERT INTO schema_version (version, description) VALUES (?, ?)")) {
+                pstmt.setInt(1, migration.getVersion());
+                pstmt.setString(2, migration.getDescription());
+                pstmt.executeUpdate();
+            }
+            conn.commit();
+            System.out.println("Applied schema migration " + migration.getVersion() + ": " + migration.getDescription());
+        } catch (SQLException e) {
+            conn.rollback();
+            throw new SQLException("Schema migration " + migration.getVersion() + " failed: " + e.getMessage(), e);
+        } finally {
+            conn.setAutoCommit(autoCommit);
+        }
+    }
+
+    /**
+     * This class represents one schema migration step.
+     */
+    public static class Migration {
+        /** The schema version this migration brings the database to */
+        private final int version;
+        /** A short description of the change */
+        private final String description;
+        /** The SQL statements of the migration */
+        private final String[] statements;
+        /** The step run after the statements, or null */
+        private final Step step;
+
+        /**
+         * Constructor for Migration class.
+         *
+         * @param version The schema version this migration brings the database to
+         * @param description A short description of the change
+         * @param statements The SQL statements of the migration
+         */
+        public Migration(int version, String description, String... statements) {
+            this(version, description, null, statements);
+        }
+
+        /**
+         * Constructor for a Migration with a step written in Java.
+         *
+         * @param version The schema version this migration brings the database to
+         * @param description A short description of the change
+         * @param step The step run after the statements, in the same transaction, or null
+         * @param statements The SQL statements of the migration
+         */
+        public Migration(int version, String description, Step step, String... statements) {
+            this.version = version;
+            this.description = description;
+            this.step = step;
+            this.statements = statements;
+        }
+
+        /**
+         * Gets the schema version of the migration.
+         * @return The version
+         */
+        public int getVersion() {
+            return version;
+        }
+
+        /**
+         * Gets the description of the migration.
+         * @return The description
+         */
+        public String getDescription() {
+            return description;
+        }
+
+        /**
+         * Gets the SQL statements of the migration.
+         * @return A copy of the statements
+         */
+        public String[] getStatements() {
+            return statements.clone();
+        }
+
+        /**
+         * Gets the step run after the statements.
+         * @return The step, or null if the migration is SQL only
+         */
+        public Step getStep() {
+            return step;
+        }
+    }
+
+    /**
+     * A part of a migration written in Java.
+     */
+    public interface Step {
+        /**
+         * Applies the step in the transaction of its migration.
+         *
+         * @param conn The database connection
+         * @throws SQLException If the step fails; the migration is rolled back
+         */
+        void apply(Connection conn) throws SQLException;
+    }
+}
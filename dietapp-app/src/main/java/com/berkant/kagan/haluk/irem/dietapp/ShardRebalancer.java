@@ -0,0 +1,472 @@
+package com.berkant.kagan.haluk.irem.dietapp;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
+
+/**
+ * This class moves users between shards while the application keeps serving them.
+ * @details rebalance() records the configured shard count as the new layout of ShardRouter
+ *          and then moves every user whose data is not in its shard of the layout. A move
+ *          copies the food logs and meal plans of the user in chunks of rows while the user
+ *          keeps reading and writing the source shard, which stays complete until the move
+ *          ends. It then takes the move lock of the user, copies the rows written in the
+ *          meantime and the nutrition goals, and assigns the user to the target shard in one
+ *          directory transaction; from then on all reads and writes go to the target, and the
+ *          rows are deleted from the source. Foods are saved to the catalog of the target as
+ *          the rows are copied. The user row itself stays in the directory; the target shard
+ *          gets a placeholder row. Leftovers of a failed move are deleted when the move is
+ *          retried, so rebalance() can simply be run again.
+ *          The rebalancer must run in the process that serves the users, because the routing
+ *          and the move locks are kept in memory.
+ * @author berkant
+ */
+public class ShardRebalancer {
+    /** Default number of rows copied per table and transaction */
+    public static final int DEFAULT_CHUNK_SIZE = 500;
+    /** Number of users between two progress reports */
+    private static final int PROGRESS_INTERVAL = 100;
+
+    private final List<SqliteStorageBackend> shards = new ArrayList<>();
+    private final ShardRouter router;
+    private final int chunkSize;
+
+    private final AtomicLong usersToMove = new AtomicLong();
+    private final AtomicLong usersMoved = new AtomicLong();
+    private final AtomicLong usersFailed = new AtomicLong();
+    private final AtomicLong rowsCopied = new AtomicLong();
+    private final AtomicLong chunksCopied = new AtomicLong();
+    private final AtomicLong maxPauseNanos = new AtomicLong();
+    private volatile long startNanos;
+    private volatile long endNanos;
+
+    /**
+     * Constructor for ShardRebalancer class with the default chunk size.
+     *
+     * @param shards The shards in index order; the first one is the directory
+     * @param router The routing of the users to the shards
+     */
+    public ShardRebalancer(List<DatabaseShard> shards, ShardRouter router) {
+        this(shards, router, DEFAULT_CHUNK_SIZE);
+    }
+
+    /**
+     * Constructor for ShardRebalancer class.
+     *
+     * @param shards The shards in index order; the first one is the directory
+     * @param router The routing of the users to the shards
+     * @param chunkSize The number of rows copied per table and transaction, at least 1
+     */
+    public ShardRebalancer(List<DatabaseShard> shards, ShardRouter router, int chunkSize) {
+        if (chunkSize < 1) {
+            throw new IllegalArgumentException("Chunk size must be at least 1");
+        }
+        for (DatabaseShard shard : shards) {
+            this.shards.add(new SqliteStorageBackend(shard));
+        }
+        this.router = router;
+        this.chunkSize = chunkSize;
+    }
+
+    /**
+     * Moves the users of the shards of DatabaseHelper, then closes the connections.
+     * @details Run it while the application is stopped, or call rebalance() from the
+     *          application to move users online.
+     *
+     * @param args The chunk size, optional
+     */
+    public static void main(String[] args) {
+        DatabaseHelper.initializeDatabase();
+        try {
+            int chunkSize = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_CHUNK_SIZE;
+            ShardRebalancer rebalancer =
+                new ShardRebalancer(DatabaseHelper.getShards(), DatabaseHelper.getShardRouter(), chunkSize);
+            System.out.println(rebalancer.rebalance());
+        } catch (SQLException e) {
+            System.out.println("Rebalancing failed: " + e.getMessage());
+        } finally {
+            DatabaseHelper.closeConnection();
+        }
+    }
+
+    /**
+     * Checks whether users have to be moved to their shards.
+     *
+     * @return true if the layout has fewer shards than are open or users are misplaced
+     */
+    public boolean isNeeded() {
+        return router.getShardCount() < shards.size() || !router.getMisplacedUsers().isEmpty();
+    }
+
+    /**
+     * Starts rebalance() on a daemon thread.
+     *
+     * @return The thread
+     */
+    public Thread start() {
+        Thread thread = new Thread(() -> {
+            try {
+                System.out.println(rebalance());
+            } catch (SQLException e) {
+                System.out.println("Rebalancing failed: " + e.getMessage());
+            }
+        }, "shard-rebalancer");
+        thread.setDaemon(true);
+        thread.start();
+        return thread;
+    }
+
+    /**
+     * Spreads the users over all open shards.
+     * @details Users that cannot be moved are reported and counted, and stay in their
+     *          current shard.
+     *
+     * @return The metrics of the run
+     * @throws SQLException If the new layout cannot be recorded
+     */
+    public RebalanceMetrics rebalance() throws SQLException {
+        router.expand(shards.get(0).getShard(), shards.size());
+        List<Integer> userIds = router.getMisplacedUsers();
+
+        usersToMove.set(userIds.size());
+        usersMoved.set(0);
+        usersFailed.set(0);
+        rowsCopied.set(0);
+        chunksCopied.set(0);
+        maxPauseNanos.set(0);
+        startNanos = System.nanoTime();
+        endNanos = 0;
+        try {
+            for (int i = 0; i < userIds.size(); i++) {
+                int userId = userIds.get(i);
+                try {
+                    moveUser(userId, router.homeOf(userId));
+                } catch (SQLException e) {
+                    usersFailed.incrementAndGet();
+                    System.out.println("Could not move user " + userId + ": " + e.getMessage());
+                }
+                if ((i + 1) % PROGRESS_INTERVAL == 0) {
+                    System.out.println(getMetrics());
+                }
+            }
+        } finally {
+            endNanos = System.nanoTime();
+        }
+        return getMetrics();
+    }
+
+    /**
+     * Moves the data of a user to another shard.
+     *
+     * @param userId The user id
+     * @param target The index of the target shard
+     * @return true if the user was moved, false if it already is in the target shard
+     * @throws SQLException If the data cannot be copied or the user cannot be assigned; the
+     *                      user then stays in its current shard
+     */
+    public boolean moveUser(int userId, int target) throws SQLException {
+        int source = router.shardOf(userId);
+        if (source == target) {
+            return false;
+        }
+        SqliteStorageBackend from = shards.get(source);
+        SqliteStorageBackend to = shards.get(target);
+
+        // The target is not used for the user yet, so rows there are left from a failed move
+        delete(to, userId, false);
+        if (target != 0) {
+            to.getUsers().addPlaceholder(userId);
+        }
+
+        Map<String, Integer> copied = new HashMap<>();
+        while (copyChunk(from, to, userId, copied) > 0) {
+            // Keep copying while the user writes to the source
+        }
+
+        Lock lock = router.lockForMove(userId);
+        long pauseStart = System.nanoTime();
+        try {
+            while (copyChunk(from, to, userId, copied) > 0) {
+                // Copy the rows written since the last chunk
+            }
+            double[] goals = from.getUsers().findNutritionGoals(userId,
+                (calorieGoal, proteinGoal, carbGoal, fatGoal) -> new double[] {calorieGoal, proteinGoal, carbGoal, fatGoal});
+            if (goals != null) {
+                to.getUsers().saveNutritionGoals(userId, (int) goals[0], goals[1], goals[2], goals[3]);
+            }
+            router.assign(shards.get(0).getShard(), userId, target);
+        } finally {
+            lock.unlock();
+            maxPauseNanos.accumulateAndGet(System.nanoTime() - pauseStart, Math::max);
+        }
+
+        delete(from, userId, source != 0);
+        usersMoved.incrementAndGet();
+        return true;
+    }
+
+    /**
+     * Gets a snapshot of the metrics of the current or last run.
+     *
+     * @return The metrics
+     */
+    public RebalanceMetrics getMetrics() {
+        long end = endNanos != 0 ? endNanos : System.nanoTime();
+        double elapsedMillis = startNanos == 0 ? 0 : (end - startNanos) / 1e6;
+        return new RebalanceMetrics(usersToMove.get(), usersMoved.get(), usersFailed.get(), rowsCopied.get(),
+            chunksCopied.get(), elapsedMillis, maxPauseNanos.get() / 1e6);
+    }
+
+    /**
+     * Copies the next chunk of food logs and meal plans of a user.
+     *
+     * @param from The source shard
+     * @param to The target shard
+     * @param userId The user id
+     * @param copied The id of the last copied row by source table, updated by the copy
+     * @return The number of rows copied
+     * @throws SQLException If the rows cannot be read or stored
+     */
+    private int copyChunk(SqliteStorageBackend from, SqliteStorageBackend to, int userId,
+                          Map<String, Integer> copied) throws SQLException {
+        List<String> tables = from.read(conn -> {
+            List<String> names = new ArrayList<>(from.getShard().getFoodLogPartitions().getPartitions(conn));
+            names.add(FoodLogPartitions.LEGACY_TABLE);
+            return names;
+        });
+        int rows = 0;
+        for (String table : tables) {
+            rows += copyRows(from, to, userId, table, false, copied);
+        }
+        return rows + copyRows(from, to, userId, "meal_plans", true, copied);
+    }
+
+    /**
+     * Copies up to one chunk of rows of a user from a table, in one target transaction.
+     *
+     * @param from The source shard
+     * @param to The target shard
+     * @param userId The user id
+     * @param table The source table
+     * @param mealPlans Whether the table holds meal plans rather than food logs
+     * @param copied The id of the last copied row by source table, updated by the copy
+     * @return The number of rows copied
+     * @throws SQLException If the rows cannot be read or stored
+     */
+    private int copyRows(SqliteStorageBackend from, SqliteStorageBackend to, int userId, String table,
+                         boolean mealPlans, Map<String, Integer> copied) throws SQLException {
+        int after = copied.getOrDefault(table, 0);
+        List<CopiedRow> rows = from.read(conn -> {
+            List<CopiedRow> chunk = new ArrayList<>();
+            try (PreparedStatement pstmt = conn.prepareStatement(
+                "SELECT t.id AS row_id, t.date AS row_date, " + (mealPlans ? "t.meal_type" : "NULL") +
+                " AS row_meal_type, " + FoodRowMapper.COLUMNS + " FROM " + table + " t " +
+                "JOIN foods f ON t.food_id = f.id " +
+                "LEFT JOIN food_nutrients fn ON f.id = fn.food_id " +
+                "WHERE t.user_id = ? AND t.id > ? ORDER BY t.id LIMIT ?")) {
+
+                pstmt.setInt(1, userId);
+                pstmt.setInt(2, after);
+                pstmt.setInt(3, chunkSize);
+
+                ResultSet rs = pstmt.executeQuery();
+                while (rs.next()) {
+                    chunk.add(new CopiedRow(rs.getInt(1), rs.getString(2), rs.getString(3),
+                        FoodRowMapper.map(rs, 4)));
+                }
+            }
+            return chunk;
+        });
+        if (rows.isEmpty()) {
+            return 0;
+        }
+
+        to.inTransaction(() -> {
+            // Rows of the same day and meal are stored as one batch
+            int start = 0;
+            while (start < rows.size()) {
+                CopiedRow first = rows.get(start);
+                List<Food> foods = new ArrayList<>();
+                int end = start;
+                while (end < rows.size() && rows.get(end).sameGroup(first)) {
+                    foods.add(rows.get(end++).food);
+                }
+                if (mealPlans) {
+                    to.getMealPlans().add(userId, first.date, first.mealType, foods);
+                } else {
+                    to.getFoodLogs().add(userId, first.date, foods);
+                }
+                start = end;
+            }
+            return null;
+        });
+        copied.put(table, rows.get(rows.size() - 1).id);
+        rowsCopied.addAndGet(rows.size());
+        chunksCopied.incrementAndGet();
+        return rows.size();
+    }
+
+    /**
+     * Deletes the food logs, daily totals, meal plans and nutrition goals of a user from a shard.
+     *
+     * @param shard The shard
+     * @param userId The user id
+     * @param placeholder Whether to delete the placeholder row of the user as well
+     * @throws SQLException If the rows cannot be deleted
+     */
+    private static void delete(SqliteStorageBackend shard, int userId, boolean placeholder) throws SQLException {
+        shard.write(conn -> {
+            shard.deleteUserData(conn, userId);
+            if (placeholder) {
+                try (PreparedStatement pstmt = conn.prepareStatement("DELETE FROM users WHERE id = ?")) {
+                    pstmt.setInt(1, userId);
+                    pstmt.executeUpdate();
+                }
+            }
+            return null;
+        });
+    }
+
+    /**
+     * A food log or meal plan row read from the source shard.
+     */
+    private static class CopiedRow {
+        private final int id;
+        private final String date;
+        private final String mealType;
+        private final Food food;
+
+        CopiedRow(int id, String date, String mealType, Food food) {
+            this.id = id;
+            this.date = date;
+            this.mealType = mealType;
+            this.food = food;
+        }
+
+        boolean sameGroup(CopiedRow other) {
+            return date.equals(other.date) && Objects.equals(mealType, other.mealType);
+        }
+    }
+
+    /**
+     * Snapshot of the progress and throughput of a rebalancing run.
+     */
+    public static class RebalanceMetrics {
+        private final long usersToMove;
+        private final long usersMoved;
+        private final long usersFailed;
+        private final long rowsCopied;
+        private final long chunksCopied;
+        private final double elapsedMillis;
+        private final double maxPauseMillis;
+
+        /**
+         * Constructor for RebalanceMetrics class.
+         *
+         * @param usersToMove Number of users that had to be moved
+         * @param usersMoved Number of users moved
+         * @param usersFailed Number of users that could not be moved
+         * @param rowsCopied Number of food log and meal plan rows copied
+         * @param chunksCopied Number of chunks copied
+         * @param elapsedMillis Duration of the run in milliseconds
+         * @param maxPauseMillis Longest time the writes of a user waited for its move, in milliseconds
+         */
+        public RebalanceMetrics(long usersToMove, long usersMoved, long usersFailed, long rowsCopied,
+                                long chunksCopied, double elapsedMillis, double maxPauseMillis) {
+            this.usersToMove = usersToMove;
+            this.usersMoved = usersMoved;
+            this.usersFailed = usersFailed;
+            this.rowsCopied = rowsCopied;
+            this.chunksCopied = chunksCopied;
+            this.elapsedMillis = elapsedMillis;
+            this.maxPauseMillis = maxPauseMillis;
+        }
+
+        /**
+         * Gets the number of users that had to be moved.
+         * @return The number of users to move
+         */
+        public long getUsersToMove() {
+            return usersToMove;
+        }
+
+        /**
+         * Gets the number of users moved.
+         * @return The number of users moved
+         */
+        public long getUsersMoved() {
+            return usersMoved;
+        }
+
+        /**
+         * Gets the number of users that could not be moved.
+         * @return The number of failed users
+         */
+        public long getUsersFailed() {
+            return usersFailed;
+        }
+
+        /**
+         * Gets the number of food log and meal plan rows copied.
+         * @return The number of rows copied
+         */
+        public long getRowsCopied() {
+            return rowsCopied;
+        }
+
+        /**
+         * Gets the number of chunks copied.
+         * @return The number of chunks
+         */
+        public long getChunksCopied() {
+            return chunksCopied;
+        }
+
+        /**
+         * Gets the duration of the run.
+         * @return The duration in milliseconds
+         */
+        public double getElapsedMillis() {
+            return elapsedMillis;
+        }
+
+        /**
+         * Gets the share of the users that were handled.
+         * @return The progress from 0 to 1; 1 if no user had to be moved
+         */
+        public double getProgress() {
+            return usersToMove == 0 ? 1 : (double) (usersMoved + usersFailed) / usersToMove;
+        }
+
+        /**
+         * Gets the copy throughput.
+         * @return The rows copied per second
+         */
+        public double getRowsPerSecond() {
+            return elapsedMillis > 0 ? rowsCopied / elapsedMillis * 1000 : 0;
+        }
+
+        /**
+         * Gets the longest time the writes of a user waited for its move.
+         * @return The longest pause in milliseconds
+         */
+        public double getMaxPauseMillis() {
+            return maxPauseMillis;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("Shard rebalancing: %.0f%% done, %d/%d users moved, %d failed, " +
+                "%d rows in %d chunks, %.0f rows/s, %.1f ms, longest pause %.2f ms",
+                getProgress() * 100, usersMoved, usersToMove, usersFailed, rowsCopied, chunksCopied,
+                getRowsPerSecond(), elapsedMillis, maxPauseMillis);
+        }
+    }
+}
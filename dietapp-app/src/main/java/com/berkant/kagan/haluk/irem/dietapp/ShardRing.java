@@ -0,0 +1,91 @@
+package com.berkant.kagan.haluk.irem.dietapp;
+
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * This class maps user ids to shards with consistent hashing.
+ * @details Every shard is placed on a hash ring at a number of virtual points; a user belongs
+ *          to the shard of the first point at or after the hash of its id. Adding a shard only
+ *          moves the users whose ids now hash next to one of its points, about 1/N of them,
+ *          instead of reshuffling every user as id % N would. The mapping only depends on the
+ *          shard count, so it is the same after every restart.
+ * @author berkant
+ */
+public class ShardRing {
+    /** Points of each shard on the ring; more points spread users more evenly */
+    public static final int DEFAULT_VIRTUAL_NODES = 64;
+
+    /** Shard index by point on the ring */
+    private final TreeMap<Integer, Integer> ring = new TreeMap<>();
+    /** Number of shards */
+    private final int shardCount;
+
+    /**
+     * Constructor for ShardRing class with the default number of virtual nodes.
+     *
+     * @param shardCount The number of shards, at least 1
+     */
+    public ShardRing(int shardCount) {
+        this(shardCount, DEFAULT_VIRTUAL_NODES);
+    }
+
+    /**
+     * Constructor for ShardRing class.
+     *
+     * @param shardCount The number of shards, at least 1
+     * @param virtualNodes The number of points of each shard, at least 1
+     */
+    public ShardRing(int shardCount, int virtualNodes) {
+        if (shardCount < 1 || virtualNodes < 1) {
+            throw new IllegalArgumentException("A shard ring needs at least one shard and one point per shard");
+        }
+        this.shardCount = shardCount;
+        for (int shard = 0; shard < shardCount; shard++) {
+            for (int node = 0; node < virtualNodes; node++) {
+                // On a collision the first shard keeps the point
+                ring.putIfAbsent(hash(((long) shard << 32) | node), shard);
+            }
+        }
+    }
+
+    /**
+     * Gets the number of shards.
+     *
+     * @return The shard count
+     */
+    public int getShardCount() {
+        return shardCount;
+    }
+
+    /**
+     * Gets the shard a user belongs to.
+     *
+     * @param userId The user id
+     * @return The shard index, from 0 to the shard count - 1
+     */
+    public int shardOf(int userId) {
+        if (shardCount == 1) {
+            return 0;
+        }
+        Map.Entry<Integer, Integer> point = ring.ceilingEntry(hash(0xFFFFFFFFL << 32 | (userId & 0xFFFFFFFFL)));
+        return (point != null ? point : ring.firstEntry()).getValue();
+    }
+
+    /**
+     * Hashes a key to a point on the ring.
+     * @details The 64-bit finalizer of MurmurHash3, which spreads consecutive ids over the
+     *          whole ring.
+     *
+     * @param key The key
+     * @return The point
+     */
+    private static int hash(long key) {
+        key ^= key >>> 33;
+        key *= 0xff51afd7ed558ccdL;
+        key ^= key >>> 33;
+        key *= 0xc4ceb9fe1a85ec53L;
+        key ^= key >>> 33;
+        return (int) key;
+    }
+}
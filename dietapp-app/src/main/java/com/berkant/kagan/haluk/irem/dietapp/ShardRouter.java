@@ -0,0 +1,311 @@
+package com.berkant.kagan.haluk.irem.dietapp;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * This class decides which shard holds the data of each user.
+ * @details A user belongs to the shard ShardRing picks for the recorded layout, the shard
+ *          count the data was placed with, unless the user is assigned to another shard.
+ *          The layout and the assignments are stored in the directory, shard 0, so raising
+ *          dietapp.db.shards does not move anyone: expand() records the new layout and
+ *          assigns every user whose shard would change to the shard its data is still in,
+ *          and ShardRebalancer then moves the users one by one, dropping each assignment
+ *          when the data has arrived.
+ *          Writers hold the move lock of a user, shared, from choosing the shard until their
+ *          transaction ends; a move takes it exclusively to copy the last rows and change the
+ *          assignment, so no write lands in the shard a user has just left.
+ * @author berkant
+ */
+public class ShardRouter {
+    /** Table holding the shard count the data is placed with */
+    public static final String LAYOUT_TABLE = "shard_layout";
+    /** Table holding the users that are not in the shard of the layout */
+    public static final String ASSIGNMENT_TABLE = "user_shards";
+    /** Longest wait for the move lock of a user, in milliseconds */
+    public static final long LOCK_TIMEOUT_MILLIS = 10000;
+    /** Number of move locks; users share a lock if their ids are equal modulo this number */
+    private static final int LOCK_STRIPES = 64;
+
+    /** Ring of the recorded layout */
+    private volatile ShardRing ring;
+    /** Shards of the assigned users by user id */
+    private final ConcurrentMap<Integer, Integer> assignments = new ConcurrentHashMap<>();
+    private final ReentrantReadWriteLock[] locks = new ReentrantReadWriteLock[LOCK_STRIPES];
+
+    /**
+     * Constructor for ShardRouter class.
+     * @details Until initialize() is called users are placed by a ring of the given count.
+     *
+     * @param shardCount The number of shards, at least 1
+     */
+    public ShardRouter(int shardCount) {
+        this.ring = new ShardRing(shardCount);
+        for (int i = 0; i < LOCK_STRIPES; i++) {
+            locks[i] = new ReentrantReadWriteLock();
+        }
+    }
+
+    /**
+     * Loads the layout and the assignments from the directory.
+     * @details A directory without a layout records the given shard count. A layout with
+     *          fewer shards is kept until expand() is called. The tables come from schema
+     *          migration 8, so the directory must be initialized first.
+     *
+     * @param directory Shard 0, initialized
+     * @param shardCount The number of shards that are open
+     * @throws SQLException If the routing cannot be loaded, or if users are placed in shards
+     *                      that are not open
+     */
+    public void initialize(DatabaseShard directory, int shardCount) throws SQLException {
+        Connection conn = directory.begin();
+        int layout;
+        Map<Integer, Integer> stored = new ConcurrentHashMap<>();
+        try {
+            layout = loadLayout(conn);
+            if (layout == -1) {
+                layout = shardCount;
+                try (PreparedStatement pstmt = conn.prepareStatement(
+                        "INSERT INTO " + LAYOUT_TABLE + " (id, shard_count) VALUES (1, ?)")) {
+                    pstmt.setInt(1, layout);
+                    pstmt.executeUpdate();
+                }
+            }
+            try (Statement stmt = conn.createStatement();
+                 ResultSet rs = stmt.executeQuery("SELECT user_id, shard FROM " + ASSIGNMENT_TABLE)) {
+                while (rs.next()) {
+                    stored.put(rs.getInt("user_id"), rs.getInt("shard"));
+                }
+            }
+        } catch (SQLException | RuntimeException e) {
+            directory.rollback();
+            throw e;
+        }
+        directory.commit();
+
+        int highest = layout - 1;
+        for (int shard : stored.values()) {
+            highest = Math.max(highest, shard);
+        }
+        if (highest >= shardCount) {
+            throw new SQLException("Users are stored in " + (highest + 1) + " shards but only " +
+                shardCount + " are configured");
+        }
+        assignments.clear();
+        assignments.putAll(stored);
+        ring = new ShardRing(layout);
+    }
+
+    /**
+     * Gets the shard count the data is placed with.
+     *
+     * @return The shard count of the layout
+     */
+    public int getShardCount() {
+        return ring.getShardCount();
+    }
+
+    /**
+     * Gets the shard that holds the data of a user.
+     *
+     * @param userId The user id
+     * @return The shard index
+     */
+    public int shardOf(int userId) {
+        Integer assigned = assignments.get(userId);
+        return assigned != null ? assigned : ring.shardOf(userId);
+    }
+
+    /**
+     * Gets the shard a user belongs to by the layout alone.
+     *
+     * @param userId The user id
+     * @return The shard index
+     */
+    public int homeOf(int userId) {
+        return ring.shardOf(userId);
+    }
+
+    /**
+     * Gets the users that are not in the shard of the layout.
+     *
+     * @return The shard by user id
+     */
+    public Map<Integer, Integer> getAssignments() {
+        return new ConcurrentHashMap<>(assignments);
+    }
+
+    /**
+     * Changes the layout to more shards without moving any data.
+     * @details Every user whose shard changes with the new layout is assigned to the shard
+     *          the data is in now, in the same directory transaction that records the layout.
+     *          Users registered later are placed by the new layout right away.
+     *
+     * @param directory Shard 0
+     * @param shardCount The new shard count
+     * @return The number of users that have to be moved
+     * @throws SQLException If the layout cannot be stored, or if it would have fewer shards
+     */
+    public int expand(DatabaseShard directory, int shardCount) throws SQLException {
+        ShardRing current = ring;
+        if (shardCount < current.getShardCount()) {
+            throw new SQLException("Shards cannot be removed: the data is placed in " +
+                current.getShardCount() + " shards");
+        }
+        ShardRing expanded = new ShardRing(shardCount);
+
+        Connection conn = directory.begin();
+        Map<Integer, Integer> pinned = new ConcurrentHashMap<>();
+        try {
+            // On SQLite registrations wait for the directory writer, so no user is missed
+            try (Statement stmt = conn.createStatement();
+                 ResultSet rs = stmt.executeQuery("SELECT id FROM users ORDER BY id")) {
+                while (rs.next()) {
+                    int userId = rs.getInt("id");
+                    if (!assignments.containsKey(userId) && current.shardOf(userId) != expanded.shardOf(userId)) {
+                        pinned.put(userId, current.shardOf(userId));
+                    }
+                }
+            }
+            try (PreparedStatement pstmt = conn.prepareStatement(
+                    "INSERT INTO " + ASSIGNMENT_TABLE + " (user_id, shard) VALUES (?, ?)")) {
+                for (Map.Entry<Integer, Integer> entry : pinned.entrySet()) {
+                    pstmt.setInt(1, entry.getKey());
+                    pstmt.setInt(2, entry.getValue());
+                    pstmt.addBatch();
+                }
+                if (!pinned.isEmpty()) {
+                    pstmt.executeBatch();
+                }
+            }
+            try (PreparedStatement pstmt = conn.prepareStatement(
+                    "UPDATE " + LAYOUT_TABLE + " SET shard_count = ? WHERE id = 1")) {
+                pstmt.setInt(1, shardCount);
+                pstmt.executeUpdate();
+            }
+        } catch (SQLException | RuntimeException e) {
+            directory.rollback();
+            throw e;
+        }
+        directory.commit();
+
+        // Assign first, so a user is never routed by the new ring before its data moved
+        assignments.putAll(pinned);
+        ring = expanded;
+        int moving = 0;
+        for (Map.Entry<Integer, Integer> entry : assignments.entrySet()) {
+            if (entry.getValue() != expanded.shardOf(entry.getKey())) {
+                moving++;
+            }
+        }
+        return moving;
+    }
+
+    /**
+     * Gets the users whose data is not in the shard of the layout.
+     *
+     * @return The user ids in ascending order
+     */
+    public List<Integer> getMisplacedUsers() {
+        List<Integer> userIds = new ArrayList<>();
+        for (Map.Entry<Integer, Integer> entry : assignments.entrySet()) {
+            if (entry.getValue() != ring.shardOf(entry.getKey())) {
+                userIds.add(entry.getKey());
+            }
+        }
+        userIds.sort(null);
+        return userIds;
+    }
+
+    /**
+     * Records the shard that holds the data of a user.
+     * @details Call with the move lock of the user held.
+     *
+     * @param directory Shard 0
+     * @param userId The user id
+     * @param shard The shard the data is in now
+     * @throws SQLException If the assignment cannot be stored
+     */
+    void assign(DatabaseShard directory, int userId, int shard) throws SQLException {
+        boolean home = shard == ring.shardOf(userId);
+        Connection conn = directory.begin();
+        try {
+            try (PreparedStatement pstmt = conn.prepareStatement(
+                    "DELETE FROM " + ASSIGNMENT_TABLE + " WHERE user_id = ?")) {
+                pstmt.setInt(1, userId);
+                pstmt.executeUpdate();
+            }
+            if (!home) {
+                try (PreparedStatement pstmt = conn.prepareStatement(
+                        "INSERT INTO " + ASSIGNMENT_TABLE + " (user_id, shard) VALUES (?, ?)")) {
+                    pstmt.setInt(1, userId);
+                    pstmt.setInt(2, shard);
+                    pstmt.executeUpdate();
+                }
+            }
+        } catch (SQLException | RuntimeException e) {
+            directory.rollback();
+            throw e;
+        }
+        directory.commit();
+
+        if (home) {
+            assignments.remove(userId);
+        } else {
+            assignments.put(userId, shard);
+        }
+    }
+
+    /**
+     * Takes the move lock of a user for writing its data.
+     * @details Many writers can hold the lock of a user at once; it is reentrant.
+     *
+     * @param userId The user id
+     * @return The lock to release when the transaction ends
+     * @throws SQLException If the user is being moved for longer than LOCK_TIMEOUT_MILLIS
+     */
+    Lock lockForWrite(int userId) throws SQLException {
+        return lock(locks[Math.floorMod(userId, LOCK_STRIPES)].readLock(), userId);
+    }
+
+    /**
+     * Takes the move lock of a user exclusively.
+     *
+     * @param userId The user id
+     * @return The lock to release when the move is done
+     * @throws SQLException If writers hold the lock for longer than LOCK_TIMEOUT_MILLIS
+     */
+    Lock lockForMove(int userId) throws SQLException {
+        return lock(locks[Math.floorMod(userId, LOCK_STRIPES)].writeLock(), userId);
+    }
+
+    private static Lock lock(Lock lock, int userId) throws SQLException {
+        try {
+            if (!lock.tryLock(LOCK_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS)) {
+                throw new SQLException("Timed out waiting for the move lock of user " + userId);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for the move lock of user " + userId);
+        }
+        return lock;
+    }
+
+    private static int loadLayout(Connection conn) throws SQLException {
+        try (Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT shard_count FROM " + LAYOUT_TABLE + " WHERE id = 1")) {
+            return rs.next() ? rs.getInt("shard_count") : -1;
+        }
+    }
+}
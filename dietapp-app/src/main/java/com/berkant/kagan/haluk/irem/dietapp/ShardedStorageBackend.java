@@ -0,0 +1,362 @@
+package com.berkant.kagan.haluk.irem.dietapp;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.Lock;
+
+/**
+ * This class spreads the data of the users over several database files.
+ * @details Shard 0 is the directory: it keeps the users, the food options and the recipes.
+ *          The food logs, meal plans and nutrition goals of a user are stored in the shard
+ *          ShardRouter picks for the user id, so users of different shards write in parallel,
+ *          each shard on its own writer. Every shard has its own food catalog, which its food
+ *          logs and meal plans reference. A user gets a placeholder row in its shard before
+ *          the first write there, so the foreign keys of the shard hold. Every write holds the
+ *          move lock of its user until its transaction ends, so ShardRebalancer can move the
+ *          user to another shard while the application runs.
+ *          inTransaction only starts a transaction on a shard when the work first writes to
+ *          it, so a unit that stays on one shard does not hold the writers of the others.
+ *          A unit that writes to several shards commits them one after another: it is not
+ *          atomic across shards, and it can time out waiting for a writer held by a unit
+ *          that takes the same shards in a different order.
+ * @author berkant
+ */
+public class ShardedStorageBackend implements StorageBackend {
+
+    private final List<SqliteStorageBackend> shards = new ArrayList<>();
+    private final ShardRouter router;
+    /** The unit of work running on each thread, null outside inTransaction */
+    private final ThreadLocal<Unit> transaction = new ThreadLocal<>();
+    /** Ids of the users whose placeholder row is known to exist in their shard */
+    private final Set<Integer> placeholders = ConcurrentHashMap.newKeySet();
+
+    private final UserRepository users = new Users();
+    private final FoodLogRepository foodLogs = new FoodLogs();
+    private final MealPlanRepository mealPlans = new MealPlans();
+
+    /**
+     * Constructor for ShardedStorageBackend class that uses the shards of DatabaseHelper.
+     */
+    public ShardedStorageBackend() {
+        this(DatabaseHelper.getShards(), DatabaseHelper.getShardRouter());
+    }
+
+    /**
+     * Constructor for ShardedStorageBackend class that places the users by the shard count.
+     *
+     * @param shards The shards in index order; the first one is the directory
+     */
+    public ShardedStorageBackend(List<DatabaseShard> shards) {
+        this(shards, new ShardRouter(shards.size()));
+    }
+
+    /**
+     * Constructor for ShardedStorageBackend class.
+     *
+     * @param shards The shards in index order; the first one is the directory
+     * @param router The routing of the users to the shards
+     */
+    public ShardedStorageBackend(List<DatabaseShard> shards, ShardRouter router) {
+        for (DatabaseShard shard : shards) {
+            this.shards.add(new SqliteStorageBackend(shard));
+        }
+        this.router = router;
+    }
+
+    @Override
+    public String getName() {
+        return "sharded";
+    }
+
+    @Override
+    public UserRepository getUsers() {
+        return users;
+    }
+
+    @Override
+    public FoodRepository getFoods() {
+        return shards.get(0).getFoods();
+    }
+
+    @Override
+    public FoodLogRepository getFoodLogs() {
+        return foodLogs;
+    }
+
+    @Override
+    public MealPlanRepository getMealPlans() {
+        return mealPlans;
+    }
+
+    @Override
+    public RecipeRepository getRecipes() {
+        return shards.get(0).getRecipes();
+    }
+
+    @Override
+    public <T> T inTransaction(TransactionWork<T> work) throws SQLException {
+        if (transaction.get() != null) {
+            return work.run();
+        }
+
+        Unit unit = new Unit();
+        transaction.set(unit);
+        try {
+            T result;
+            try {
+                result = work.run();
+            } catch (SQLException | RuntimeException e) {
+                for (DatabaseShard shard : unit.written) {
+                    shard.rollback();
+                }
+                // Placeholders added by the work are gone again
+                placeholders.clear();
+                throw e;
+            }
+
+            SQLException failure = null;
+            for (DatabaseShard shard : unit.written) {
+                if (failure != null) {
+                    shard.rollback();
+                    continue;
+                }
+                try {
+                    shard.commit();
+                } catch (SQLException e) {
+                    failure = e;
+                }
+            }
+            if (failure != null) {
+                placeholders.clear();
+                throw failure;
+            }
+            return result;
+        } finally {
+            transaction.remove();
+            for (Lock lock : unit.locks) {
+                lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Runs a write for a user in the current unit of work or in a new one.
+     *
+     * @param <T> The result type
+     * @param userId The user id
+     * @param work The write, given the backend of the user's shard
+     * @return The result of the write
+     * @throws SQLException If the write fails
+     */
+    private <T> T write(int userId, RoutedWork<T> work) throws SQLException {
+        return inTransaction(() -> work.run(writer(userId)));
+    }
+
+    /**
+     * Gets the shard of a user for reading.
+     *
+     * @param userId The user id
+     * @return The backend of the shard
+     */
+    private SqliteStorageBackend reader(int userId) {
+        return shards.get(router.shardOf(userId));
+    }
+
+    /**
+     * Gets the shard of a user for writing in the current unit of work.
+     * @details The move lock of the user is held until the unit ends, so the user stays in
+     *          the shard. The shard joins the unit, and the placeholder row of the user is
+     *          added first if the shard is not the directory.
+     *
+     * @param userId The user id
+     * @return The backend of the shard
+     * @throws SQLException If the user is being moved, the shard cannot join the unit of
+     *                      work or the placeholder cannot be stored
+     */
+    private SqliteStorageBackend writer(int userId) throws SQLException {
+        Unit unit = transaction.get();
+        unit.locks.add(router.lockForWrite(userId));
+        int index = router.shardOf(userId);
+        SqliteStorageBackend backend = shards.get(index);
+        if (!unit.written.contains(backend.getShard())) {
+            backend.getShard().begin();
+            unit.written.add(backend.getShard());
+        }
+        if (index != 0 && !placeholders.contains(userId)) {
+            backend.getUsers().addPlaceholder(userId);
+            placeholders.add(userId);
+        }
+        return backend;
+    }
+
+    /**
+     * Gets the directory for writing.
+     * @details Inside inTransaction the directory joins the unit of work.
+     *
+     * @return The backend of shard 0
+     * @throws SQLException If the directory cannot join the unit of work
+     */
+    private SqliteStorageBackend directory() throws SQLException {
+        SqliteStorageBackend backend = shards.get(0);
+        Unit unit = transaction.get();
+        if (unit != null && !unit.written.contains(backend.getShard())) {
+            backend.getShard().begin();
+            unit.written.add(backend.getShard());
+        }
+        return backend;
+    }
+
+    /**
+     * Work run on the shard of a user.
+     *
+     * @param <T> The result type
+     */
+    private interface RoutedWork<T> {
+        /**
+         * Runs the work.
+         *
+         * @param shard The backend of the shard
+         * @return The result
+         * @throws SQLException If the work fails
+         */
+        T run(SqliteStorageBackend shard) throws SQLException;
+    }
+
+    /**
+     * A unit of work started by inTransaction.
+     */
+    private static class Unit {
+        /** Shards written by the unit, in the order they joined */
+        private final Set<DatabaseShard> written = new LinkedHashSet<>();
+        /** Move locks of the users written by the unit */
+        private final List<Lock> locks = new ArrayList<>();
+    }
+
+    /**
+     * Users in the directory, nutrition goals in the shard of each user.
+     */
+    private class Users implements UserRepository {
+
+        @Override
+        public boolean register(String username, String password, String email, String name) throws SQLException {
+            return directory().getUsers().register(username, password, email, name);
+        }
+
+        @Override
+        public User findByCredentials(String username, String password) throws SQLException {
+            return shards.get(0).getUsers().findByCredentials(username, password);
+        }
+
+        @Override
+        public void setLoggedIn(String username, boolean loggedIn) throws SQLException {
+            directory().getUsers().setLoggedIn(username, loggedIn);
+        }
+
+        @Override
+        public boolean delete(String username) throws SQLException {
+            int userId = findId(username);
+            if (userId == -1) {
+                return false;
+            }
+            return inTransaction(() -> {
+                if (router.shardOf(userId) != 0) {
+                    write(userId, shard -> {
+                        shard.getUsers().deletePlaceholder(userId);
+                        return null;
+                    });
+                    placeholders.remove(userId);
+                }
+                return directory().getUsers().delete(username);
+            });
+        }
+
+        @Override
+        public List<User> findAll() throws SQLException {
+            return shards.get(0).getUsers().findAll();
+        }
+
+        @Override
+        public int findId(String username) throws SQLException {
+            return shards.get(0).getUsers().findId(username);
+        }
+
+        @Override
+        public boolean saveNutritionGoals(int userId, int calorieGoal, double proteinGoal, double carbGoal,
+                                          double fatGoal) throws SQLException {
+            return write(userId, shard -> shard.getUsers().saveNutritionGoals(userId, calorieGoal, proteinGoal,
+                carbGoal, fatGoal));
+        }
+
+        @Override
+        public <T> T findNutritionGoals(int userId, GoalMapper<T> mapper) throws SQLException {
+            return reader(userId).getUsers().findNutritionGoals(userId, mapper);
+        }
+    }
+
+    /**
+     * Food logs in the shard of each user.
+     */
+    private class FoodLogs implements FoodLogRepository {
+
+        @Override
+        public boolean[] add(int userId, String date, List<Food> foods) throws SQLException {
+            return write(userId, shard -> shard.getFoodLogs().add(userId, date, foods));
+        }
+
+        @Override
+        public List<Food> find(int userId, String date) throws SQLException {
+            return reader(userId).getFoodLogs().find(userId, date);
+        }
+
+        @Override
+        public Map<String, List<Food>> findRange(int userId, String fromDate, String toDate) throws SQLException {
+            return reader(userId).getFoodLogs().findRange(userId, fromDate, toDate);
+        }
+
+        @Override
+        public long forEach(int userId, String fromDate, String toDate, FoodLogVisitor visitor) throws SQLException {
+            return reader(userId).getFoodLogs().forEach(userId, fromDate, toDate, visitor);
+        }
+
+        @Override
+        public Map<String, DailyNutritionTotals> findTotals(int userId, String fromDate, String toDate) throws SQLException {
+            return reader(userId).getFoodLogs().findTotals(userId, fromDate, toDate);
+        }
+
+        @Override
+        public Map<String, DailyNutritionTotals> findTotals(int userId, List<String> dates) throws SQLException {
+            return reader(userId).getFoodLogs().findTotals(userId, dates);
+        }
+
+        @Override
+        public Map<String, DailyNutritionTotals> aggregate(int userId, String fromDate, String toDate) throws SQLException {
+            return reader(userId).getFoodLogs().aggregate(userId, fromDate, toDate);
+        }
+
+        @Override
+        public int totalCalories(int userId, String date) throws SQLException {
+            return reader(userId).getFoodLogs().totalCalories(userId, date);
+        }
+    }
+
+    /**
+     * Meal plans in the shard of each user.
+     */
+    private class MealPlans implements MealPlanRepository {
+
+        @Override
+        public boolean[] add(int userId, String date, String mealType, List<Food> foods) throws SQLException {
+            return write(userId, shard -> shard.getMealPlans().add(userId, date, mealType, foods));
+        }
+
+        @Override
+        public List<Food> find(int userId, String date, String mealType) throws SQLException {
+            return reader(userId).getMealPlans().find(userId, date, mealType);
+        }
+    }
+}
@@ -15,16 +15,37 @@ import java.util.Map;
 public class ShoppingListService {
     /** Service for accessing meal planning data and food options */
     private MealPlanningService mealPlanningService;
+    /** Stores the ingredient prices and recipes */
+    private final RecipeRepository recipeRepository;
     
     /**
      * Constructor for ShoppingListService class.
+     * Reads the recipes from the SQLite database through getConnection().
      * 
      * @param mealPlanningService The meal planning service
      */
     public ShoppingListService(MealPlanningService mealPlanningService) {
         this.mealPlanningService = mealPlanningService;
-        
-        // Create tables and sample data in the database if they exist
+        this.recipeRepository = new SqliteRecipeRepository(this::getConnection);
+        initializeIngredients();
+    }
+    
+    /**
+     * Constructor for ShoppingListService class with a storage backend.
+     * 
+     * @param mealPlanningService The meal planning service
+     * @param storage The storage backend holding the ingredient prices and recipes
+     */
+    public ShoppingListService(MealPlanningService mealPlanningService, StorageBackend storage) {
+        this.mealPlanningService = mealPlanningService;
+        this.recipeRepository = storage.getRecipes();
+        initializeIngredients();
+    }
+    
+    /**
+     * Creates the sample ingredient data if it does not exist yet.
+     */
+    private void initializeIngredients() {
         try {
             initializeIngredientsAndRecipes();
         } catch (SQLException e) {
@@ -48,48 +69,15 @@ public class ShoppingListService {
      * @throws SQLException If a database error occurs
      */
     private void initializeIngredientsAndRecipes() throws SQLException {
-        Connection conn = null;
         try {
-            conn = getConnection(); // Protected metodu kullan
-            if (conn == null) {
-                System.out.println("Failed to obtain database connection for ingredients initialization");
-                return;
-            }
-            
-            // Check if ingredients already exist
-            try (Statement stmt = conn.createStatement();
-                 ResultSet rs = stmt.executeQuery("SELECT COUNT(*) FROM ingredients")) {
-                
-                rs.next();
-                int count = rs.getInt(1);
-                
-                // If no ingredients exist, initialize the data
-                if (count == 0) {
-                    conn.setAutoCommit(false);
-                    initializeIngredientPrices(conn);
-                    conn.commit();
-                }
+            // If no ingredients exist, initialize the data
+            if (recipeRepository.countIngredients() == 0) {
+                recipeRepository.saveIngredientPrices(defaultIngredientPrices());
             }
         } catch (SQLException e) {
             // Table might not exist yet, this is handled in DatabaseHelper
             System.out.println("Error during ingredient database check: " + e.getMessage());
-            if (conn != null) { 
-                try {
-                    conn.rollback();
-                } catch (SQLException ex) {
-                    System.out.println("Failed to rollback: " + ex.getMessage());
-                }
-            }
             throw e; // Re-throw for caller to handle
-        } finally {
-            if (conn != null) {
-                try {
-                    conn.setAutoCommit(true);
-                } catch (SQLException e) {
-                    System.out.println("Failed to reset auto-commit: " + e.getMessage());
-                }
-                DatabaseHelper.releaseConnection(conn);
-            }
         }
     }
     
@@ -100,27 +88,24 @@ public class ShoppingListService {
      * @throws SQLException If a database error occurs during insertion
      */
     private void initializeIngredientPrices(Connection conn) throws SQLException {
-        // Prepare statement for ingredient insertion
-        try (PreparedStatement pstmt = conn.prepareStatement(
-                "INSERT INTO ingredients (name, price) VALUES (?, ?)")) {
-            
-            // Define ingredient prices
-            Map<String, Double> ingredientPrices = new HashMap<>();
-            
-            // Vegetables
-            ingredientPrices.put("Tomato", 1.20);
-            ingredientPrices.put("Cucumber", 0.90);
-            // ...other foods...
-            
-            // Insert each ingredient into the database
-            for (Map.Entry<String, Double> entry : ingredientPrices.entrySet()) {
-                pstmt.setString(1, entry.getKey());
-                pstmt.setDouble(2, entry.getValue());
-                pstmt.executeUpdate();
-            }
-            
-            System.out.println("Ingredient prices saved to database.");
-        }
+        SqliteRecipeRepository.insertIngredientPrices(conn, defaultIngredientPrices());
+    }
+    
+    /**
+     * Gets the default ingredient prices.
+     * 
+     * @return The price per standard unit by ingredient name
+     */
+    private static Map<String, Double> defaultIngredientPrices() {
+        // Define ingredient prices
+        Map<String, Double> ingredientPrices = new HashMap<>();
+        
+        // Vegetables
+        ingredientPrices.put("Tomato", 1.20);
+        ingredientPrices.put("Cucumber", 0.90);
+        // ...other foods...
+        
+        return ingredientPrices;
     }
     
 
@@ -226,39 +211,10 @@ public class ShoppingListService {
             return ingredients;
         }
         
-        Connection conn = null;
         try {
-            conn = getConnection(); // Protected metodu kullan
-            if (conn == null) {
-                return ingredients;
-            }
-            
-            try (PreparedStatement pstmt = conn.prepareStatement(
-                 "SELECT i.name, ri.amount, ri.unit, i.price " +
-                 "FROM recipe_ingredients ri " +
-                 "JOIN ingredients i ON ri.ingredient_id = i.id " +
-                 "JOIN recipes r ON ri.recipe_id = r.id " +
-                 "WHERE r.meal_type = ? AND r.name = ?")) {
-                
-                pstmt.setString(1, mealType.toLowerCase());
-                pstmt.setString(2, foodName);
-                
-                ResultSet rs = pstmt.executeQuery();
-                
-                while (rs.next()) {
-                    String name = rs.getString("name");
-                    double amount = rs.getDouble("amount");
-                    String unit = rs.getString("unit");
-                    double price = rs.getDouble("price");
-                    
-                    ingredients.add(new Ingredient(name, amount, unit, price));
-                }
-            }
-            
+            return recipeRepository.findIngredients(mealType.toLowerCase(), foodName, Ingredient::new);
         } catch (SQLException e) {
             System.out.println("Could not get ingredient list: " + e.getMessage());
-        } finally {
-            DatabaseHelper.releaseConnection(conn);
         }
         
         return ingredients;
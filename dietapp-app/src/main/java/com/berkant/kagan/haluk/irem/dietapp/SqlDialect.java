@@ -0,0 +1,262 @@
+package com.berkant.kagan.haluk.irem.dietapp;
+
+import java.io.File;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * This enum describes the SQL differences between the embedded database engines.
+ * @details The schema, the migrations and the queries are written for SQLite. SQLITE runs them
+ *          unchanged. H2 runs in file mode on its MVStore, which locks rows instead of the whole
+ *          database, so concurrent writers only wait for each other when they touch the same
+ *          rows. Its dialect translates the SQLite column types of the DDL and replaces the
+ *          SQLite upsert and RETURNING clauses with MERGE and data change delta tables.
+ * @author berkant
+ */
+public enum SqlDialect {
+    /** SQLite through sqlite-jdbc */
+    SQLITE("org.sqlite.JDBC") {
+        @Override
+        public String jdbcUrl(String path) {
+            return "jdbc:sqlite:" + path;
+        }
+
+        @Override
+        public String translate(String sql) {
+            return sql;
+        }
+
+        @Override
+        public String returningId(String insertSql) {
+            return insertSql + " RETURNING id";
+        }
+
+        @Override
+        public String insertIgnoringDuplicates(String insertSql, String keyColumns) {
+            return insertSql + " ON CONFLICT(" + keyColumns + ") DO NOTHING";
+        }
+
+        @Override
+        public String upsert(String table, String columns, String keyColumn, String selectSql) {
+            StringBuilder sql = new StringBuilder("INSERT INTO ").append(table)
+                .append(" (").append(columns).append(") ").append(selectSql)
+                .append(" ON CONFLICT(").append(keyColumn).append(") DO UPDATE SET ");
+            String separator = "";
+            for (String column : columns.split(",")) {
+                column = column.trim();
+                if (!column.equals(keyColumn)) {
+                    sql.append(separator).append(column).append(" = excluded.").append(column);
+                    separator = ", ";
+                }
+            }
+            return sql.toString();
+        }
+
+        @Override
+        public String upsertAdding(String table, String columns, String keyColumns, String selectSql) {
+            StringBuilder sql = new StringBuilder("INSERT INTO ").append(table)
+                .append(" (").append(columns).append(") ").append(selectSql)
+                .append(" ON CONFLICT(").append(keyColumns).append(") DO UPDATE SET ");
+            String separator = "";
+            for (String column : valueColumns(columns, keyColumns)) {
+                sql.append(separator).append(column).append(" = ").append(column)
+                    .append(" + excluded.").append(column);
+                separator = ", ";
+            }
+            return sql.toString();
+        }
+
+        @Override
+        public boolean isDuplicateKey(SQLException e) {
+            // SQLITE_CONSTRAINT, also raised for NOT NULL and foreign key violations
+            return e.getErrorCode() == 19 && e.getMessage() != null && e.getMessage().contains("UNIQUE");
+        }
+    },
+
+    /** H2 in embedded file mode */
+    H2("org.h2.Driver") {
+        @Override
+        public String jdbcUrl(String path) {
+            // H2 only accepts relative paths that start with ./ and appends .mv.db to the name
+            return "jdbc:h2:file:" + (new File(path).isAbsolute() || path.startsWith(".") ? path : "./" + path);
+        }
+
+        @Override
+        public String translate(String sql) {
+            String translated = sql.trim();
+            if (translated.endsWith(";")) {
+                translated = translated.substring(0, translated.length() - 1);
+            }
+            return translated
+                .replace("INTEGER PRIMARY KEY AUTOINCREMENT", "INTEGER GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY")
+                .replace("CREATE TEMP TABLE", "CREATE LOCAL TEMPORARY TABLE")
+                // TEXT is a CLOB in H2 and cannot be indexed, REAL is single precision
+                .replaceAll("\\bTEXT\\b", "VARCHAR")
+                .replaceAll("\\bREAL\\b", "DOUBLE PRECISION");
+        }
+
+        @Override
+        public String returningId(String insertSql) {
+            return "SELECT id FROM FINAL TABLE (" + insertSql + ")";
+        }
+
+        @Override
+        public String insertIgnoringDuplicates(String insertSql, String keyColumns) {
+            // H2 has no conflict clause outside its compatibility modes; callers check isDuplicateKey
+            return insertSql;
+        }
+
+        @Override
+        public String upsert(String table, String columns, String keyColumn, String selectSql) {
+            return "MERGE INTO " + table + " (" + columns + ") KEY(" + keyColumn + ") " + selectSql;
+        }
+
+        @Override
+        public String upsertAdding(String table, String columns, String keyColumns, String selectSql) {
+            StringBuilder sql = new StringBuilder("MERGE INTO ").append(table)
+                .append(" USING (").append(selectSql).append(") AS excluded (").append(columns).append(") ON (");
+            String separator = "";
+            for (String key : keyColumns.split(",")) {
+                sql.append(separator).append(table).append('.').append(key.trim())
+                    .append(" = excluded.").append(key.trim());
+                separator = " AND ";
+            }
+            sql.append(") WHEN MATCHED THEN UPDATE SET ");
+            separator = "";
+            for (String column : valueColumns(columns, keyColumns)) {
+                sql.append(separator).append(column).append(" = ").append(table).append('.').append(column)
+                    .append(" + excluded.").append(column);
+                separator = ", ";
+            }
+            sql.append(" WHEN NOT MATCHED THEN INSERT (").append(columns).append(") VALUES (");
+            separator = "";
+            for (String column : columns.split(",")) {
+                sql.append(separator).append("excluded.").append(column.trim());
+                separator = ", ";
+            }
+            return sql.append(')').toString();
+        }
+
+        @Override
+        public boolean isDuplicateKey(SQLException e) {
+            return "23505".equals(e.getSQLState());
+        }
+    };
+
+    /** The JDBC driver class of the engine */
+    private final String driverClass;
+
+    SqlDialect(String driverClass) {
+        this.driverClass = driverClass;
+    }
+
+    /**
+     * Gets the JDBC driver class of the engine.
+     * @return The driver class name
+     */
+    public String getDriverClass() {
+        return driverClass;
+    }
+
+    /**
+     * Finds the dialect of an open connection.
+     *
+     * @param conn The database connection
+     * @return H2 for H2 connections, SQLITE otherwise
+     * @throws SQLException If the database metadata cannot be read
+     */
+    public static SqlDialect of(Connection conn) throws SQLException {
+        return "H2".equals(conn.getMetaData().getDatabaseProductName()) ? H2 : SQLITE;
+    }
+
+    /**
+     * Builds the JDBC URL of a database file.
+     *
+     * @param path The database file path
+     * @return The JDBC URL
+     */
+    public abstract String jdbcUrl(String path);
+
+    /**
+     * Translates a statement written for SQLite, mainly DDL, to this dialect.
+     *
+     * @param sql The SQLite statement
+     * @return The statement for this engine
+     */
+    public abstract String translate(String sql);
+
+    /**
+     * Turns an INSERT into a query returning the id of the inserted row.
+     *
+     * @param insertSql The INSERT statement
+     * @return A query whose result set holds the new id, empty if nothing was inserted
+     */
+    public abstract String returningId(String insertSql);
+
+    /**
+     * Makes an INSERT skip rows that violate a unique key.
+     * @details Engines without such a clause return the INSERT unchanged; the caller then
+     *          treats an exception matching isDuplicateKey() as a skipped row.
+     *
+     * @param insertSql The INSERT statement
+     * @param keyColumns The comma separated columns of the unique key
+     * @return The INSERT statement for this engine
+     */
+    public abstract String insertIgnoringDuplicates(String insertSql, String keyColumns);
+
+    /**
+     * Builds an insert-or-update of the rows of a query.
+     *
+     * @param table The target table
+     * @param columns The comma separated target columns, in the order of the query
+     * @param keyColumn The unique column identifying an existing row
+     * @param selectSql The query producing the rows; SQLite needs it to have a WHERE clause
+     * @return The upsert statement
+     */
+    public abstract String upsert(String table, String columns, String keyColumn, String selectSql);
+
+    /**
+     * Builds an insert of the rows of a query that adds their values to an existing row with
+     * the same key instead of replacing it.
+     * @details H2 reads the rows of the query as a derived table and cannot infer the type of
+     *          a parameter there, so parameters among the selected columns must be CAST.
+     *
+     * @param table The target table
+     * @param columns The comma separated target columns, in the order of the query
+     * @param keyColumns The comma separated columns of the unique key; the other columns are added up
+     * @param selectSql The query producing the rows; SQLite needs it to have a WHERE clause
+     * @return The upsert statement
+     */
+    public abstract String upsertAdding(String table, String columns, String keyColumns, String selectSql);
+
+    /**
+     * Checks whether an exception reports a unique key violation.
+     *
+     * @param e The exception
+     * @return true if a unique key or index was violated
+     */
+    public abstract boolean isDuplicateKey(SQLException e);
+
+    /**
+     * Gets the columns of a list that are not key columns.
+     *
+     * @param columns The comma separated columns
+     * @param keyColumns The comma separated key columns
+     * @return The other columns, trimmed, in their order
+     */
+    private static List<String> valueColumns(String columns, String keyColumns) {
+        List<String> keys = new ArrayList<>();
+        for (String key : keyColumns.split(",")) {
+            keys.add(key.trim());
+        }
+        List<String> values = new ArrayList<>();
+        for (String column : columns.split(",")) {
+            if (!keys.contains(column.trim())) {
+                values.add(column.trim());
+            }
+        }
+        return values;
+    }
+}
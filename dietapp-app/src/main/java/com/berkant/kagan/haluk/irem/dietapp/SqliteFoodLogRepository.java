@@ -0,0 +1,246 @@
+package com.berkant.kagan.haluk.irem.dietapp;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * This class stores the food logs in the SQLite database.
+ * @details The table of each read and write is chosen by the FoodLogPartitions of
+ *          the shard, so with monthly partitioning only the partitions of the
+ *          requested dates are touched. forEach keeps its read-only connection and read
+ *          transaction until the stream ends; on SQLite in WAL mode checkpoints cannot reset
+ *          the log past it meanwhile. add() adds the logged foods to the daily nutrition
+ *          totals of the date in its transaction, and findTotals() and totalCalories() read
+ *          them by primary key. aggregate() sums the logs with one grouped query per
+ *          partition instead of reading the foods.
+ * @author berkant
+ */
+public class SqliteFoodLogRepository implements FoodLogRepository {
+    /** Rows the driver is asked to fetch at a time while streaming */
+    public static final int STREAM_FETCH_SIZE = 500;
+    /** Most dates findTotals() binds in one query */
+    public static final int MAX_DATES_PER_QUERY = 500;
+
+    /** The backend whose database is used */
+    private final SqliteStorageBackend storage;
+
+    /**
+     * Constructor for SqliteFoodLogRepository class.
+     *
+     * @param storage The backend whose database is used
+     */
+    public SqliteFoodLogRepository(SqliteStorageBackend storage) {
+        this.storage = storage;
+    }
+
+    @Override
+    public boolean[] add(int userId, String date, List<Food> foods) throws SQLException {
+        if (foods.isEmpty()) {
+            return new boolean[0];
+        }
+        return storage.write(conn -> {
+            String table = storage.getShard().getFoodLogPartitions().writeTable(conn, date);
+            boolean[] inserted = SqliteFoodRepository.insertFoodReferences(conn,
+                storage.getShard().getFoodIdCache(),
+                "INSERT INTO " + table + " (user_id, date, food_id) SELECT ?, ?, id",
+                foods, userId, date);
+            NutritionRollup.add(conn, userId, date, foods, inserted);
+            return inserted;
+        });
+    }
+
+    @Override
+    public List<Food> find(int userId, String date) throws SQLException {
+        return storage.read(conn -> {
+            List<Food> foodLog = new ArrayList<>();
+            String table = storage.getShard().getFoodLogPartitions().readTable(conn, date);
+            if (table == null) {
+                return foodLog; // Nothing logged in this month
+            }
+            try (PreparedStatement pstmt = conn.prepareStatement(
+                "SELECT " + FoodRowMapper.COLUMNS + " FROM " + table + " fl " +
+                "JOIN foods f ON fl.food_id = f.id " +
+                "LEFT JOIN food_nutrients fn ON f.id = fn.food_id " +
+                "WHERE fl.user_id = ? AND fl.date = ?")) {
+                
+                pstmt.setInt(1, userId);
+                pstmt.setString(2, date);
+                
+                ResultSet rs = pstmt.executeQuery();
+                while (rs.next()) {
+                    foodLog.add(FoodRowMapper.map(rs, 1));
+                }
+            }
+            return foodLog;
+        });
+    }
+
+    @Override
+    public Map<String, List<Food>> findRange(int userId, String fromDate, String toDate) throws SQLException {
+        return storage.read(conn -> {
+            Map<String, List<Food>> foodLogs = new LinkedHashMap<>();
+            // The partitions come in month order, so the dates stay in order
+            for (String table : storage.getShard().getFoodLogPartitions().readTables(conn, fromDate, toDate)) {
+                try (PreparedStatement pstmt = conn.prepareStatement(
+                    "SELECT fl.date, " + FoodRowMapper.COLUMNS + " FROM " + table + " fl " +
+                    "JOIN foods f ON fl.food_id = f.id " +
+                    "LEFT JOIN food_nutrients fn ON f.id = fn.food_id " +
+                    "WHERE fl.user_id = ? AND fl.date BETWEEN ? AND ? " +
+                    "ORDER BY fl.date, fl.id")) {
+                    
+                    pstmt.setInt(1, userId);
+                    pstmt.setString(2, fromDate);
+                    pstmt.setString(3, toDate);
+                    
+                    ResultSet rs = pstmt.executeQuery();
+                    while (rs.next()) {
+                        foodLogs.computeIfAbsent(rs.getString(1), d -> new ArrayList<>())
+                            .add(FoodRowMapper.map(rs, 2));
+                    }
+                }
+            }
+            return foodLogs;
+        });
+    }
+
+    @Override
+    public long forEach(int userId, String fromDate, String toDate, FoodLogVisitor visitor) throws SQLException {
+        return storage.read(conn -> {
+            long visited = 0;
+            for (String table : storage.getShard().getFoodLogPartitions().readTables(conn, fromDate, toDate)) {
+                try (PreparedStatement pstmt = conn.prepareStatement(
+                    "SELECT fl.date, " + FoodRowMapper.COLUMNS + " FROM " + table + " fl " +
+                    "JOIN foods f ON fl.food_id = f.id " +
+                    "LEFT JOIN food_nutrients fn ON f.id = fn.food_id " +
+                    "WHERE fl.user_id = ? AND fl.date BETWEEN ? AND ? " +
+                    "ORDER BY fl.date, fl.id")) {
+                    
+                    pstmt.setInt(1, userId);
+                    pstmt.setString(2, fromDate);
+                    pstmt.setString(3, toDate);
+                    pstmt.setFetchSize(STREAM_FETCH_SIZE);
+                    
+                    try (ResultSet rs = pstmt.executeQuery()) {
+                        while (rs.next()) {
+                            visitor.visit(rs.getString(1), FoodRowMapper.map(rs, 2));
+                            visited++;
+                        }
+                    }
+                }
+            }
+            return visited;
+        });
+    }
+
+    @Override
+    public Map<String, DailyNutritionTotals> findTotals(int userId, String fromDate, String toDate) throws SQLException {
+        return storage.read(conn -> {
+            Map<String, DailyNutritionTotals> totals = new LinkedHashMap<>();
+            try (PreparedStatement pstmt = conn.prepareStatement(
+                "SELECT date, calories, protein, carbs, fat, fiber, sugar, sodium, entry_count " +
+                "FROM " + NutritionRollup.TABLE + " " +
+                "WHERE user_id = ? AND date BETWEEN ? AND ? " +
+                "ORDER BY date")) {
+                
+                pstmt.setInt(1, userId);
+                pstmt.setString(2, fromDate);
+                pstmt.setString(3, toDate);
+                
+                readTotals(pstmt.executeQuery(), totals);
+            }
+            return totals;
+        });
+    }
+
+    @Override
+    public Map<String, DailyNutritionTotals> findTotals(int userId, List<String> dates) throws SQLException {
+        return storage.read(conn -> {
+            Map<String, DailyNutritionTotals> totals = new LinkedHashMap<>();
+            // Chunked to stay below the bound parameter limit of the engines
+            for (int from = 0; from < dates.size(); from += MAX_DATES_PER_QUERY) {
+                List<String> chunk = dates.subList(from, Math.min(from + MAX_DATES_PER_QUERY, dates.size()));
+                StringBuilder sql = new StringBuilder(
+                    "SELECT date, calories, protein, carbs, fat, fiber, sugar, sodium, entry_count " +
+                    "FROM " + NutritionRollup.TABLE + " " +
+                    "WHERE user_id = ? AND date IN (");
+                for (int i = 0; i < chunk.size(); i++) {
+                    sql.append(i == 0 ? "?" : ", ?");
+                }
+                sql.append(")");
+                try (PreparedStatement pstmt = conn.prepareStatement(sql.toString())) {
+                    pstmt.setInt(1, userId);
+                    for (int i = 0; i < chunk.size(); i++) {
+                        pstmt.setString(i + 2, chunk.get(i));
+                    }
+                    
+                    readTotals(pstmt.executeQuery(), totals);
+                }
+            }
+            return totals;
+        });
+    }
+
+    @Override
+    public Map<String, DailyNutritionTotals> aggregate(int userId, String fromDate, String toDate) throws SQLException {
+        return storage.read(conn -> {
+            Map<String, DailyNutritionTotals> totals = new LinkedHashMap<>();
+            for (String table : storage.getShard().getFoodLogPartitions().readTables(conn, fromDate, toDate)) {
+                try (PreparedStatement pstmt = conn.prepareStatement(
+                    NutritionRollup.totalsSelect(table) + " " +
+                    "WHERE fl.user_id = ? AND fl.date BETWEEN ? AND ? " +
+                    "GROUP BY fl.user_id, fl.date " +
+                    "ORDER BY fl.date")) {
+                    
+                    pstmt.setInt(1, userId);
+                    pstmt.setString(2, fromDate);
+                    pstmt.setString(3, toDate);
+                    
+                    ResultSet rs = pstmt.executeQuery();
+                    while (rs.next()) {
+                        String date = rs.getString(2);
+                        totals.put(date, new DailyNutritionTotals(date, rs.getInt(3), rs.getDouble(4),
+                            rs.getDouble(5), rs.getDouble(6), rs.getDouble(7), rs.getDouble(8),
+                            rs.getDouble(9), rs.getInt(10)));
+                    }
+                }
+            }
+            return totals;
+        });
+    }
+
+    @Override
+    public int totalCalories(int userId, String date) throws SQLException {
+        return storage.read(conn -> {
+            try (PreparedStatement pstmt = conn.prepareStatement(
+                "SELECT calories FROM " + NutritionRollup.TABLE + " WHERE user_id = ? AND date = ?")) {
+                
+                pstmt.setInt(1, userId);
+                pstmt.setString(2, date);
+                
+                ResultSet rs = pstmt.executeQuery();
+                return rs.next() ? rs.getInt(1) : 0;
+            }
+        });
+    }
+
+    /**
+     * Reads rows of date and totals columns into a map by date.
+     *
+     * @param rs The rows
+     * @param totals The map to add the totals to
+     * @throws SQLException If a row cannot be read
+     */
+    private static void readTotals(ResultSet rs, Map<String, DailyNutritionTotals> totals) throws SQLException {
+        while (rs.next()) {
+            String date = rs.getString(1);
+            totals.put(date, new DailyNutritionTotals(date, rs.getInt(2), rs.getDouble(3),
+                rs.getDouble(4), rs.getDouble(5), rs.getDouble(6), rs.getDouble(7),
+                rs.getDouble(8), rs.getInt(9)));
+        }
+    }
+}
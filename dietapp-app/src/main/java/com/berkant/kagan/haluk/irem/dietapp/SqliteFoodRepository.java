@@ -0,0 +1,226 @@
+package com.berkant.kagan.haluk.irem.dietapp;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * This class stores the food catalog in the SQLite database.
+ * @details Foods are saved with DatabaseHelper.saveFoodAndGetId, which resolves foods that
+ *          were saved before from the food id cache of the shard.
+ * @author berkant
+ */
+public class SqliteFoodRepository implements FoodRepository {
+    /** The backend whose database is used */
+    private final SqliteStorageBackend storage;
+
+    /**
+     * Constructor for SqliteFoodRepository class.
+     *
+     * @param storage The backend whose database is used
+     */
+    public SqliteFoodRepository(SqliteStorageBackend storage) {
+        this.storage = storage;
+    }
+
+    @Override
+    public int save(Food food) throws SQLException {
+        return storage.write(conn -> DatabaseHelper.saveFoodAndGetId(conn, food, storage.getShard().getFoodIdCache()));
+    }
+
+    @Override
+    public long getNutrientChanges() {
+        return DatabaseHelper.getNutrientChanges();
+    }
+
+    @Override
+    public int saveWithMealType(Food food, String mealType) throws SQLException {
+        if (food == null || mealType == null) {
+            return -1;
+        }
+        
+        return storage.write(conn -> {
+            try (PreparedStatement pstmt = conn.prepareStatement(
+                 "INSERT INTO foods (name, grams, calories, meal_type) VALUES (?, ?, ?, ?)",
+                 Statement.RETURN_GENERATED_KEYS)) {
+                
+                pstmt.setString(1, food.getName());
+                pstmt.setDouble(2, food.getGrams());
+                pstmt.setInt(3, food.getCalories());
+                pstmt.setString(4, mealType);
+                
+                pstmt.executeUpdate();
+                
+                ResultSet rs = pstmt.getGeneratedKeys();
+                if (rs.next()) {
+                    int foodId = rs.getInt(1);
+                    
+                    // If this is a FoodNutrient, save the nutrients
+                    if (food instanceof FoodNutrient) {
+                        saveFoodNutrients(conn, foodId, (FoodNutrient) food);
+                    }
+                    
+                    return foodId;
+                }
+            }
+            return -1;
+        });
+    }
+
+    @Override
+    public List<Food> findByMealType(String mealType, int limit) throws SQLException {
+        return storage.read(conn -> {
+            List<Food> options = new ArrayList<>();
+            try (PreparedStatement pstmt = conn.prepareStatement(
+                 "SELECT " + FoodRowMapper.COLUMNS + " FROM foods f " +
+                 "LEFT JOIN food_nutrients fn ON f.id = fn.food_id " +
+                 "WHERE f.meal_type = ? " +
+                 "LIMIT ?")) {
+                
+                pstmt.setString(1, mealType);
+                pstmt.setInt(2, limit);
+                ResultSet rs = pstmt.executeQuery();
+                
+                while (rs.next()) {
+                    options.add(FoodRowMapper.map(rs, 1));
+                }
+            }
+            return options;
+        });
+    }
+
+    @Override
+    public List<FoodNutrient> findWithNutrients(int limit) throws SQLException {
+        return storage.read(conn -> {
+            List<FoodNutrient> foods = new ArrayList<>();
+            try (PreparedStatement pstmt = conn.prepareStatement(
+                 "SELECT " + FoodRowMapper.COLUMNS + " FROM foods f " +
+                 "JOIN food_nutrients fn ON f.id = fn.food_id " +
+                 "LIMIT ?")) {
+                
+                pstmt.setInt(1, limit);
+                ResultSet rs = pstmt.executeQuery();
+                
+                while (rs.next()) {
+                    // The inner join only returns foods with nutrients
+                    foods.add((FoodNutrient) FoodRowMapper.map(rs, 1));
+                }
+            }
+            return foods;
+        });
+    }
+
+    /**
+     * Inserts rows that reference foods as one JDBC batch.
+     * @details Every food is saved to the catalog first, then all rows are sent in a single
+     *          batch. A row is only inserted if the food ID still belongs to the food, which
+     *          catches cached IDs of foods that were deleted or whose insert was rolled back.
+     *          Those rows are retried one by one after saving the food again.
+     * 
+     * @param conn Database connection
+     * @param foodIdCache The food id cache of the database
+     * @param insertSql INSERT ... SELECT statement selecting the food ID as "id" from foods,
+     *                  without the FROM clause
+     * @param foods Foods the rows reference; null entries are skipped
+     * @param values Values of the other parameters in order, the same for every row
+     * @return Whether the row of each food was inserted
+     * @throws SQLException If database error occurs
+     */
+    static boolean[] insertFoodReferences(Connection conn, IdCache<String> foodIdCache, String insertSql,
+                                          List<Food> foods, Object... values) throws SQLException {
+        boolean[] inserted = new boolean[foods.size()];
+        int[] foodIds = new int[foods.size()];
+        for (int i = 0; i < foods.size(); i++) {
+            Food food = foods.get(i);
+            foodIds[i] = food == null ? -1 : DatabaseHelper.saveFoodAndGetId(conn, food, foodIdCache);
+        }
+        
+        String sql = insertSql + " FROM foods WHERE id = ? AND name = ? AND grams = ? AND calories = ?";
+        List<Integer> batched = new ArrayList<>();
+        try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            for (int i = 0; i < foods.size(); i++) {
+                if (foodIds[i] == -1) {
+                    continue; // Food couldn't be saved
+                }
+                bindFoodReference(pstmt, foods.get(i), foodIds[i], values);
+                pstmt.addBatch();
+                batched.add(i);
+            }
+            
+            if (!batched.isEmpty()) {
+                int[] counts = pstmt.executeBatch();
+                for (int b = 0; b < counts.length; b++) {
+                    inserted[batched.get(b)] = counts[b] > 0;
+                }
+            }
+        }
+        
+        // Retry the rows whose food ID was stale
+        for (int index : batched) {
+            if (!inserted[index]) {
+                Food food = foods.get(index);
+                DatabaseHelper.invalidateFood(food, foodIdCache);
+                int foodId = DatabaseHelper.saveFoodAndGetId(conn, food, foodIdCache);
+                if (foodId != -1) {
+                    try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+                        bindFoodReference(pstmt, food, foodId, values);
+                        inserted[index] = pstmt.executeUpdate() > 0;
+                    }
+                }
+                if (!inserted[index]) {
+                    DatabaseHelper.invalidateFood(food, foodIdCache);
+                }
+            }
+        }
+        return inserted;
+    }
+
+    /**
+     * Sets the parameters of a row that references a food.
+     * 
+     * @param pstmt The INSERT ... SELECT statement
+     * @param food The food
+     * @param foodId The food ID
+     * @param values Values of the parameters before the food
+     * @throws SQLException If a parameter cannot be set
+     */
+    private static void bindFoodReference(PreparedStatement pstmt, Food food, int foodId, Object... values)
+            throws SQLException {
+        for (int v = 0; v < values.length; v++) {
+            pstmt.setObject(v + 1, values[v]);
+        }
+        pstmt.setInt(values.length + 1, foodId);
+        pstmt.setString(values.length + 2, food.getName());
+        pstmt.setDouble(values.length + 3, food.getGrams());
+        pstmt.setInt(values.length + 4, food.getCalories());
+    }
+
+    /**
+     * Helper method to save food nutrients
+     * 
+     * @param conn Database connection
+     * @param foodId Food ID
+     * @param fn FoodNutrient object
+     * @throws SQLException If database error occurs
+     */
+    private void saveFoodNutrients(Connection conn, int foodId, FoodNutrient fn) throws SQLException {
+        try (PreparedStatement pstmt = conn.prepareStatement(
+            "INSERT INTO food_nutrients (food_id, protein, carbs, fat, fiber, sugar, sodium) " +
+            "VALUES (?, ?, ?, ?, ?, ?, ?)")) {
+            
+            pstmt.setInt(1, foodId);
+            pstmt.setDouble(2, fn.getProtein());
+            pstmt.setDouble(3, fn.getCarbs());
+            pstmt.setDouble(4, fn.getFat());
+            pstmt.setDouble(5, fn.getFiber());
+            pstmt.setDouble(6, fn.getSugar());
+            pstmt.setDouble(7, fn.getSodium());
+            
+            pstmt.executeUpdate();
+        }
+    }
+}
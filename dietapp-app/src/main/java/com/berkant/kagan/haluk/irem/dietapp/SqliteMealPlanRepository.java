@@ -0,0 +1,60 @@
+package com.berkant.kagan.haluk.irem.dietapp;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * This class stores the meal plans in the SQLite database.
+ * @author berkant
+ */
+public class SqliteMealPlanRepository implements MealPlanRepository {
+    /** The backend whose database is used */
+    private final SqliteStorageBackend storage;
+
+    /**
+     * Constructor for SqliteMealPlanRepository class.
+     *
+     * @param storage The backend whose database is used
+     */
+    public SqliteMealPlanRepository(SqliteStorageBackend storage) {
+        this.storage = storage;
+    }
+
+    @Override
+    public boolean[] add(int userId, String date, String mealType, List<Food> foods) throws SQLException {
+        if (foods.isEmpty()) {
+            return new boolean[0];
+        }
+        return storage.write(conn -> SqliteFoodRepository.insertFoodReferences(conn,
+            storage.getShard().getFoodIdCache(),
+            "INSERT INTO meal_plans (user_id, date, meal_type, food_id) " +
+            "SELECT ?, ?, ?, id",
+            foods, userId, date, mealType));
+    }
+
+    @Override
+    public List<Food> find(int userId, String date, String mealType) throws SQLException {
+        return storage.read(conn -> {
+            List<Food> mealPlan = new ArrayList<>();
+            try (PreparedStatement pstmt = conn.prepareStatement(
+                "SELECT " + FoodRowMapper.COLUMNS + " FROM meal_plans mp " +
+                "JOIN foods f ON mp.food_id = f.id " +
+                "LEFT JOIN food_nutrients fn ON f.id = fn.food_id " +
+                "WHERE mp.user_id = ? AND mp.date = ? AND mp.meal_type = ?")) {
+                
+                pstmt.setInt(1, userId);
+                pstmt.setString(2, date);
+                pstmt.setString(3, mealType);
+                
+                ResultSet rs = pstmt.executeQuery();
+                while (rs.next()) {
+                    mealPlan.add(FoodRowMapper.map(rs, 1));
+                }
+            }
+            return mealPlan;
+        });
+    }
+}
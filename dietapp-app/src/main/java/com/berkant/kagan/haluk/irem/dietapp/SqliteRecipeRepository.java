@@ -0,0 +1,166 @@
+package com.berkant.kagan.haluk.irem.dietapp;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * This class stores ingredient prices and recipes in the SQLite database.
+ * @details Connections come from a supplier, by default the general pool of DatabaseHelper,
+ *          and are handed back with DatabaseHelper.releaseConnection.
+ * @author berkant
+ */
+public class SqliteRecipeRepository implements RecipeRepository {
+    /** Supplies the database connections */
+    private final Supplier<Connection> connections;
+
+    /**
+     * Constructor for SqliteRecipeRepository class.
+     *
+     * @param connections Supplies the database connections; may supply null if the
+     *                    database is unavailable
+     */
+    public SqliteRecipeRepository(Supplier<Connection> connections) {
+        this.connections = connections;
+    }
+
+    @Override
+    public int countIngredients() throws SQLException {
+        Connection conn = connect();
+        try (Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT COUNT(*) FROM ingredients")) {
+            return rs.next() ? rs.getInt(1) : 0;
+        } finally {
+            DatabaseHelper.releaseConnection(conn);
+        }
+    }
+
+    @Override
+    public void saveIngredientPrices(Map<String, Double> prices) throws SQLException {
+        Connection conn = connect();
+        try {
+            conn.setAutoCommit(false);
+            insertIngredientPrices(conn, prices);
+            conn.commit();
+        } catch (SQLException e) {
+            try {
+                conn.rollback();
+            } catch (SQLException ex) {
+                System.out.println("Failed to rollback: " + ex.getMessage());
+            }
+            throw e;
+        } finally {
+            try {
+                conn.setAutoCommit(true);
+            } catch (SQLException e) {
+                System.out.println("Failed to reset auto-commit: " + e.getMessage());
+            }
+            DatabaseHelper.releaseConnection(conn);
+        }
+    }
+
+    @Override
+    public int saveRecipe(String mealType, String recipeName) throws SQLException {
+        Connection conn = connect();
+        try (PreparedStatement pstmt = conn.prepareStatement(DatabaseHelper.getConfig().getEngine().returningId(
+                "INSERT INTO recipes (meal_type, name) VALUES (?, ?)"))) {
+            pstmt.setString(1, mealType);
+            pstmt.setString(2, recipeName);
+            
+            try (ResultSet rs = pstmt.executeQuery()) {
+                return rs.next() ? rs.getInt(1) : -1;
+            }
+        } finally {
+            DatabaseHelper.releaseConnection(conn);
+        }
+    }
+
+    @Override
+    public boolean saveRecipeIngredient(int recipeId, String ingredientName, double amount, String unit)
+            throws SQLException {
+        Connection conn = connect();
+        try (PreparedStatement pstmt = conn.prepareStatement(
+                "INSERT INTO recipe_ingredients (recipe_id, ingredient_id, amount, unit) " +
+                "SELECT ?, id, ?, ? FROM ingredients WHERE name = ?")) {
+            pstmt.setInt(1, recipeId);
+            pstmt.setDouble(2, amount);
+            pstmt.setString(3, unit);
+            pstmt.setString(4, ingredientName);
+            
+            return pstmt.executeUpdate() > 0;
+        } finally {
+            DatabaseHelper.releaseConnection(conn);
+        }
+    }
+
+    @Override
+    public <T> List<T> findIngredients(String mealType, String recipeName, IngredientMapper<T> mapper)
+            throws SQLException {
+        List<T> ingredients = new ArrayList<>();
+        Connection conn = connect();
+        try (PreparedStatement pstmt = conn.prepareStatement(
+             "SELECT i.name, ri.amount, ri.unit, i.price " +
+             "FROM recipe_ingredients ri " +
+             "JOIN ingredients i ON ri.ingredient_id = i.id " +
+             "JOIN recipes r ON ri.recipe_id = r.id " +
+             "WHERE r.meal_type = ? AND r.name = ?")) {
+            
+            pstmt.setString(1, mealType);
+            pstmt.setString(2, recipeName);
+            
+            ResultSet rs = pstmt.executeQuery();
+            while (rs.next()) {
+                ingredients.add(mapper.map(
+                    rs.getString("name"),
+                    rs.getDouble("amount"),
+                    rs.getString("unit"),
+                    rs.getDouble("price")
+                ));
+            }
+        } finally {
+            DatabaseHelper.releaseConnection(conn);
+        }
+        return ingredients;
+    }
+
+    /**
+     * Inserts ingredient prices on the given connection.
+     * 
+     * @param conn The database connection
+     * @param prices The price per standard unit by ingredient name
+     * @throws SQLException If a database error occurs during insertion
+     */
+    static void insertIngredientPrices(Connection conn, Map<String, Double> prices) throws SQLException {
+        try (PreparedStatement pstmt = conn.prepareStatement(
+                "INSERT INTO ingredients (name, price) VALUES (?, ?)")) {
+            
+            for (Map.Entry<String, Double> entry : prices.entrySet()) {
+                pstmt.setString(1, entry.getKey());
+                pstmt.setDouble(2, entry.getValue());
+                pstmt.executeUpdate();
+            }
+            
+            System.out.println("Ingredient prices saved to database.");
+        }
+    }
+
+    /**
+     * Gets a connection from the supplier.
+     * 
+     * @return The connection
+     * @throws SQLException If the supplier has no connection
+     */
+    private Connection connect() throws SQLException {
+        Connection conn = connections.get();
+        if (conn == null) {
+            throw new SQLException("No database connection");
+        }
+        return conn;
+    }
+}
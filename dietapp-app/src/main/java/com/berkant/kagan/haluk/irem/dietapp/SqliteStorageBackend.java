@@ -0,0 +1,177 @@
+package com.berkant.kagan.haluk.irem.dietapp;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * This class stores the application data in the SQLite database of DatabaseHelper.
+ * @details Writes run on the single writer connection and queries on the read-only pool.
+ *          inTransaction binds the writer connection to the current thread, so every
+ *          repository call inside the work, reads included, runs on it and is committed or
+ *          rolled back together. The repositories hold no state of their own, so any number
+ *          of instances can be used side by side. The same SQL also runs on the H2 engine of
+ *          DatabaseHelper, selected with dietapp.db.engine. A backend works on one
+ *          DatabaseShard, the main database unless another shard is given; the transaction
+ *          is bound to the shard, so all backends of a shard share it.
+ * @author berkant
+ */
+public class SqliteStorageBackend implements StorageBackend {
+
+    /**
+     * Work run on a database connection.
+     *
+     * @param <T> The result type
+     */
+    interface SqlWork<T> {
+        /**
+         * Runs the work.
+         *
+         * @param conn The database connection
+         * @return The result
+         * @throws SQLException If a database error occurs
+         */
+        T run(Connection conn) throws SQLException;
+    }
+
+    private final DatabaseShard shard;
+    private final SqliteUserRepository users = new SqliteUserRepository(this);
+    private final FoodRepository foods = new SqliteFoodRepository(this);
+    private final FoodLogRepository foodLogs = new SqliteFoodLogRepository(this);
+    private final MealPlanRepository mealPlans = new SqliteMealPlanRepository(this);
+    private final RecipeRepository recipes = new SqliteRecipeRepository(DatabaseHelper::getConnection);
+
+    /**
+     * Constructor for SqliteStorageBackend class that stores the data in the main database.
+     */
+    public SqliteStorageBackend() {
+        this(DatabaseHelper.getMainShard());
+    }
+
+    /**
+     * Constructor for SqliteStorageBackend class.
+     * @details Recipes always stay in the main database.
+     *
+     * @param shard The database the data is stored in
+     */
+    public SqliteStorageBackend(DatabaseShard shard) {
+        this.shard = shard;
+    }
+
+    @Override
+    public String getName() {
+        return "sqlite";
+    }
+
+    @Override
+    public SqliteUserRepository getUsers() {
+        return users;
+    }
+
+    @Override
+    public FoodRepository getFoods() {
+        return foods;
+    }
+
+    @Override
+    public FoodLogRepository getFoodLogs() {
+        return foodLogs;
+    }
+
+    @Override
+    public MealPlanRepository getMealPlans() {
+        return mealPlans;
+    }
+
+    @Override
+    public RecipeRepository getRecipes() {
+        return recipes;
+    }
+
+    /**
+     * Gets the database the data is stored in.
+     *
+     * @return The shard
+     */
+    public DatabaseShard getShard() {
+        return shard;
+    }
+
+    /**
+     * Deletes the food logs, daily totals, meal plans and nutrition goals of a user.
+     * @details The user row itself is kept. The food logs are deleted from food_logs and
+     *          from every monthly partition.
+     *
+     * @param conn The connection of the current write
+     * @param userId The user id
+     * @throws SQLException If the rows cannot be deleted
+     */
+    void deleteUserData(Connection conn, int userId) throws SQLException {
+        List<String> tables = new ArrayList<>(shard.getFoodLogPartitions().getPartitions(conn));
+        tables.add(FoodLogPartitions.LEGACY_TABLE);
+        tables.add(NutritionRollup.TABLE);
+        tables.add("meal_plans");
+        tables.add("nutrition_goals");
+        for (String table : tables) {
+            try (PreparedStatement pstmt = conn.prepareStatement("DELETE FROM " + table + " WHERE user_id = ?")) {
+                pstmt.setInt(1, userId);
+                pstmt.executeUpdate();
+            }
+        }
+    }
+
+    @Override
+    public <T> T inTransaction(TransactionWork<T> work) throws SQLException {
+        return write(conn -> work.run());
+    }
+
+    /**
+     * Runs work that writes, in the current transaction or in a new one.
+     *
+     * @param <T> The result type
+     * @param work The work
+     * @return The result of the work
+     * @throws SQLException If the work fails; a new transaction is rolled back then
+     */
+    <T> T write(SqlWork<T> work) throws SQLException {
+        Connection bound = shard.getBoundConnection();
+        if (bound != null) {
+            return work.run(bound);
+        }
+        
+        Connection conn = shard.begin();
+        T result;
+        try {
+            result = work.run(conn);
+        } catch (SQLException | RuntimeException e) {
+            shard.rollback();
+            throw e;
+        }
+        shard.commit();
+        return result;
+    }
+
+    /**
+     * Runs work that only reads, in the current transaction or on a read-only connection.
+     *
+     * @param <T> The result type
+     * @param work The work
+     * @return The result of the work
+     * @throws SQLException If the work fails
+     */
+    <T> T read(SqlWork<T> work) throws SQLException {
+        Connection bound = shard.getBoundConnection();
+        if (bound != null) {
+            return work.run(bound);
+        }
+        
+        Connection conn = shard.getReadConnection();
+        try {
+            return work.run(conn);
+        } finally {
+            shard.release(conn);
+        }
+    }
+}
@@ -0,0 +1,277 @@
+package com.berkant.kagan.haluk.irem.dietapp;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * This class stores the users and their nutrition goals in the SQLite database.
+ * @details User ids are resolved through the user id cache of DatabaseHelper, which is
+ *          filled on registration and login and cleared when a user is deleted.
+ * @author berkant
+ */
+public class SqliteUserRepository implements UserRepository {
+    /** The backend whose database is used */
+    private final SqliteStorageBackend storage;
+
+    /**
+     * Constructor for SqliteUserRepository class.
+     *
+     * @param storage The backend whose database is used
+     */
+    public SqliteUserRepository(SqliteStorageBackend storage) {
+        this.storage = storage;
+    }
+
+    @Override
+    public boolean register(String username, String password, String email, String name) throws SQLException {
+        return storage.write(conn -> {
+            try (PreparedStatement checkStmt = conn.prepareStatement("SELECT username FROM users WHERE username = ?")) {
+                checkStmt.setString(1, username);
+                ResultSet rs = checkStmt.executeQuery();
+                
+                if (rs.next()) {
+                    return false; // Username already exists
+                }
+            }
+            
+            try (PreparedStatement insertStmt = conn.prepareStatement(DatabaseHelper.getConfig().getEngine().returningId(
+                "INSERT INTO users (username, password, email, name, is_logged_in) VALUES (?, ?, ?, ?, 0)"))) {
+                
+                insertStmt.setString(1, username);
+                insertStmt.setString(2, password); // In a real app, you should hash passwords
+                insertStmt.setString(3, email);
+                insertStmt.setString(4, name);
+                
+                try (ResultSet keys = insertStmt.executeQuery()) {
+                    if (!keys.next()) {
+                        return false;
+                    }
+                    // Cache the new user's id for the services that resolve it next
+                    DatabaseHelper.getUserIdCache().put(username, keys.getInt(1));
+                    return true;
+                }
+            }
+        });
+    }
+
+    @Override
+    public User findByCredentials(String username, String password) throws SQLException {
+        return storage.read(conn -> {
+            try (PreparedStatement pstmt = conn.prepareStatement(
+                     "SELECT * FROM users WHERE username = ? AND password = ?")) {
+                
+                pstmt.setString(1, username);
+                pstmt.setString(2, password);
+                
+                ResultSet rs = pstmt.executeQuery();
+                if (!rs.next()) {
+                    return null;
+                }
+                
+                User user = new User(
+                    rs.getString("username"),
+                    rs.getString("password"),
+                    rs.getString("email"),
+                    rs.getString("name")
+                );
+                user.setLoggedIn(rs.getInt("is_logged_in") == 1);
+                DatabaseHelper.getUserIdCache().put(username, rs.getInt("id"));
+                return user;
+            }
+        });
+    }
+
+    @Override
+    public void setLoggedIn(String username, boolean loggedIn) throws SQLException {
+        storage.write(conn -> {
+            try (PreparedStatement pstmt = conn.prepareStatement(
+                     "UPDATE users SET is_logged_in = ? WHERE username = ?")) {
+                
+                pstmt.setInt(1, loggedIn ? 1 : 0);
+                pstmt.setString(2, username);
+                return pstmt.executeUpdate();
+            }
+        });
+    }
+
+    @Override
+    public boolean delete(String username) throws SQLException {
+        try {
+            return storage.write(conn -> {
+                int userId;
+                try (PreparedStatement pstmt = conn.prepareStatement("SELECT id FROM users WHERE username = ?")) {
+                    pstmt.setString(1, username);
+                    try (ResultSet rs = pstmt.executeQuery()) {
+                        if (!rs.next()) {
+                            return false;
+                        }
+                        userId = rs.getInt("id");
+                    }
+                }
+                storage.deleteUserData(conn, userId);
+                try (PreparedStatement pstmt = conn.prepareStatement("DELETE FROM users WHERE id = ?")) {
+                    pstmt.setInt(1, userId);
+                    return pstmt.executeUpdate() > 0;
+                }
+            });
+        } finally {
+            DatabaseHelper.getUserIdCache().invalidate(username);
+        }
+    }
+
+    @Override
+    public List<User> findAll() throws SQLException {
+        return storage.read(conn -> {
+            List<User> users = new ArrayList<>();
+            try (Statement stmt = conn.createStatement();
+                 ResultSet rs = stmt.executeQuery("SELECT * FROM users ORDER BY id")) {
+                
+                while (rs.next()) {
+                    User user = new User(
+                        rs.getString("username"),
+                        rs.getString("password"),
+                        rs.getString("email"),
+                        rs.getString("name")
+                    );
+                    
+                    user.setLoggedIn(rs.getInt("is_logged_in") == 1);
+                    users.add(user);
+                }
+            }
+            return users;
+        });
+    }
+
+    @Override
+    public int findId(String username) throws SQLException {
+        if (username == null || username.trim().isEmpty()) {
+            return -1;
+        }
+        Integer cachedId = DatabaseHelper.getUserIdCache().get(username);
+        if (cachedId != null) {
+            return cachedId;
+        }
+        return storage.read(conn -> DatabaseHelper.resolveUserId(conn, username));
+    }
+
+    /**
+     * Adds a placeholder row for a user of the main database to this shard.
+     * @details The food logs, meal plans and goals of the shard reference their user, and H2
+     *          enforces those foreign keys. Nothing happens if the row exists.
+     * 
+     * @param userId The user id in the main database
+     * @throws SQLException If the row cannot be stored
+     */
+    void addPlaceholder(int userId) throws SQLException {
+        storage.write(conn -> {
+            try (PreparedStatement checkStmt = conn.prepareStatement("SELECT id FROM users WHERE id = ?")) {
+                checkStmt.setInt(1, userId);
+                if (checkStmt.executeQuery().next()) {
+                    return false;
+                }
+            }
+            try (PreparedStatement insertStmt = conn.prepareStatement(
+                    "INSERT INTO users (id, username, password, email, name) VALUES (?, ?, '', '', '')")) {
+                insertStmt.setInt(1, userId);
+                insertStmt.setString(2, "#" + userId);
+                return insertStmt.executeUpdate() > 0;
+            } catch (SQLException e) {
+                if (SqlDialect.of(conn).isDuplicateKey(e)) {
+                    return false; // Added by another thread
+                }
+                throw e;
+            }
+        });
+    }
+
+    /**
+     * Deletes the placeholder row of a user from this shard together with the user's data.
+     *
+     * @param userId The user id in the main database
+     * @throws SQLException If the rows cannot be deleted
+     */
+    void deletePlaceholder(int userId) throws SQLException {
+        storage.write(conn -> {
+            storage.deleteUserData(conn, userId);
+            try (PreparedStatement pstmt = conn.prepareStatement("DELETE FROM users WHERE id = ?")) {
+                pstmt.setInt(1, userId);
+                return pstmt.executeUpdate();
+            }
+        });
+    }
+
+    @Override
+    public boolean saveNutritionGoals(int userId, int calorieGoal, double proteinGoal, double carbGoal,
+                                      double fatGoal) throws SQLException {
+        return storage.write(conn -> {
+            // Check if user already has nutrition goals
+            int goalId = -1;
+            try (PreparedStatement checkStmt = conn.prepareStatement(
+                    "SELECT id FROM nutrition_goals WHERE user_id = ?")) {
+                
+                checkStmt.setInt(1, userId);
+                ResultSet rs = checkStmt.executeQuery();
+                
+                if (rs.next()) {
+                    goalId = rs.getInt("id");
+                }
+            }
+            
+            if (goalId != -1) {
+                // Update existing goals
+                try (PreparedStatement updateStmt = conn.prepareStatement(
+                        "UPDATE nutrition_goals SET calorie_goal = ?, protein_goal = ?, carb_goal = ?, fat_goal = ? " +
+                        "WHERE id = ?")) {
+                    
+                    updateStmt.setInt(1, calorieGoal);
+                    updateStmt.setDouble(2, proteinGoal);
+                    updateStmt.setDouble(3, carbGoal);
+                    updateStmt.setDouble(4, fatGoal);
+                    updateStmt.setInt(5, goalId);
+                    
+                    return updateStmt.executeUpdate() > 0;
+                }
+            }
+            
+            // Insert new goals
+            try (PreparedStatement insertStmt = conn.prepareStatement(
+                    "INSERT INTO nutrition_goals (user_id, calorie_goal, protein_goal, carb_goal, fat_goal) " +
+                    "VALUES (?, ?, ?, ?, ?)")) {
+                
+                insertStmt.setInt(1, userId);
+                insertStmt.setInt(2, calorieGoal);
+                insertStmt.setDouble(3, proteinGoal);
+                insertStmt.setDouble(4, carbGoal);
+                insertStmt.setDouble(5, fatGoal);
+                
+                return insertStmt.executeUpdate() > 0;
+            }
+        });
+    }
+
+    @Override
+    public <T> T findNutritionGoals(int userId, GoalMapper<T> mapper) throws SQLException {
+        return storage.read(conn -> {
+            try (PreparedStatement pstmt = conn.prepareStatement(
+                    "SELECT * FROM nutrition_goals WHERE user_id = ?")) {
+                
+                pstmt.setInt(1, userId);
+                ResultSet rs = pstmt.executeQuery();
+                
+                if (rs.next()) {
+                    return mapper.map(
+                        rs.getInt("calorie_goal"),
+                        rs.getDouble("protein_goal"),
+                        rs.getDouble("carb_goal"),
+                        rs.getDouble("fat_goal")
+                    );
+                }
+            }
+            return null;
+        });
+    }
+}
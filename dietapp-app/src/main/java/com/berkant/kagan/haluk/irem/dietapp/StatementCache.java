@@ -0,0 +1,311 @@
+package com.berkant.kagan.haluk.irem.dietapp;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * This class caches prepared statements for one physical database connection.
+ * @details Statements are keyed by their SQL text and generated-keys flag and kept in
+ *          least-recently-used order up to a fixed capacity. Callers receive a proxy whose
+ *          close() clears the parameters and closes open result sets instead of finalizing the
+ *          statement, so the next caller that prepares the same SQL on the same connection
+ *          skips SQLite's statement compilation. A statement that is still in use is never
+ *          handed out twice; a nested prepare of the same SQL gets a fresh statement instead.
+ *          A cache belongs to a single physical connection, which is only used by one borrower
+ *          at a time, so it needs no locking of its own.
+ * @author berkant
+ */
+public class StatementCache {
+    /** Default maximum number of cached statements per connection */
+    public static final int DEFAULT_CAPACITY = 64;
+
+    /** The physical connection the statements belong to */
+    private final Connection connection;
+    /** The maximum number of cached statements */
+    private final int capacity;
+    /** Cached statements in least-recently-used order */
+    private final LinkedHashMap<String, CachedStatement> statements = new LinkedHashMap<>(16, 0.75f, true);
+    /** Counter of cache hits, shared by all caches of a pool */
+    private final AtomicLong hits;
+    /** Counter of cache misses, shared by all caches of a pool */
+    private final AtomicLong misses;
+    /** Counter of evicted statements, shared by all caches of a pool */
+    private final AtomicLong evictions;
+
+    /**
+     * Constructor for StatementCache class.
+     *
+     * @param connection The physical connection the statements belong to
+     * @param capacity The maximum number of cached statements; 0 disables caching
+     * @param hits Counter of cache hits
+     * @param misses Counter of cache misses
+     * @param evictions Counter of evicted statements
+     */
+    public StatementCache(Connection connection, int capacity, AtomicLong hits, AtomicLong misses,
+                          AtomicLong evictions) {
+        this.connection = connection;
+        this.capacity = Math.max(0, capacity);
+        this.hits = hits;
+        this.misses = misses;
+        this.evictions = evictions;
+    }
+
+    /**
+     * Gets a prepared statement for the given SQL, reusing a cached one when possible.
+     *
+     * @param owner The pooled connection handle the statement is prepared through
+     * @param sql The SQL text
+     * @param autoGeneratedKeys Statement.RETURN_GENERATED_KEYS or Statement.NO_GENERATED_KEYS
+     * @return A prepared statement whose close() returns it to the cache
+     * @throws SQLException If the statement cannot be prepared
+     */
+    public PreparedStatement prepare(Connection owner, String sql, int autoGeneratedKeys) throws SQLException {
+        if (capacity == 0 || sql == null) {
+            misses.incrementAndGet();
+            return connection.prepareStatement(sql, autoGeneratedKeys);
+        }
+
+        String key = autoGeneratedKeys == Statement.RETURN_GENERATED_KEYS ? "K:" + sql : "N:" + sql;
+        CachedStatement cached = statements.get(key);
+        if (cached != null && !cached.inUse && !cached.isPhysicallyClosed()) {
+            hits.incrementAndGet();
+            return cached.checkOut(owner);
+        }
+
+        misses.incrementAndGet();
+        PreparedStatement statement = connection.prepareStatement(sql, autoGeneratedKeys);
+        if (cached != null && cached.inUse) {
+            // The cached statement is busy (nested use of the same SQL); do not cache this one
+            return statement;
+        }
+
+        if (cached != null) {
+            statements.remove(key);
+        }
+        try {
+            cached = new CachedStatement(statement);
+        } catch (SQLException e) {
+            statement.close();
+            throw e;
+        }
+        statements.put(key, cached);
+        evictIfFull();
+        return cached.checkOut(owner);
+    }
+
+    /**
+     * Gets the number of statements currently cached.
+     *
+     * @return The number of cached statements
+     */
+    public int size() {
+        return statements.size();
+    }
+
+    /**
+     * Finalizes all cached statements.
+     */
+    public void closeAll() {
+        for (CachedStatement cached : statements.values()) {
+            cached.closePhysically();
+        }
+        statements.clear();
+    }
+
+    /**
+     * Removes least recently used statements that are not in use until the cache fits its capacity.
+     */
+    private void evictIfFull() {
+        Iterator<CachedStatement> iterator = statements.values().iterator();
+        while (statements.size() > capacity && iterator.hasNext()) {
+            CachedStatement cached = iterator.next();
+            if (!cached.inUse) {
+                iterator.remove();
+                cached.closePhysically();
+                evictions.incrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * A cached physical statement together with the proxy handed to its current user.
+     */
+    private static class CachedStatement {
+        /** The physical prepared statement */
+        private final PreparedStatement statement;
+        /** Fetch size the statement was prepared with */
+        private final int fetchSize;
+        /** Row limit the statement was prepared with */
+        private final int maxRows;
+        /** Query timeout the statement was prepared with, in seconds */
+        private final int queryTimeout;
+        /** Fetch direction the statement was prepared with */
+        private final int fetchDirection;
+        /** Whether the statement is checked out */
+        private boolean inUse;
+
+        /**
+         * Constructor for CachedStatement class.
+         * @details Saves the settings a caller may change, so checkIn() can restore them.
+         *
+         * @param statement The physical prepared statement
+         * @throws SQLException If the settings cannot be read
+         */
+        CachedStatement(PreparedStatement statement) throws SQLException {
+            this.statement = statement;
+            this.fetchSize = statement.getFetchSize();
+            this.maxRows = statement.getMaxRows();
+            this.queryTimeout = statement.getQueryTimeout();
+            this.fetchDirection = statement.getFetchDirection();
+        }
+
+        /**
+         * Checks the statement out and creates a proxy for the caller.
+         *
+         * @param owner The pooled connection handle the statement is prepared through
+         * @return The proxy handed to the caller
+         */
+        PreparedStatement checkOut(Connection owner) {
+            inUse = true;
+            return (PreparedStatement) Proxy.newProxyInstance(
+                StatementCache.class.getClassLoader(),
+                new Class<?>[] { PreparedStatement.class },
+                new StatementHandle(this, owner));
+        }
+
+        /**
+         * Resets the statement and makes it available to the next caller.
+         * @details Clears the parameters, the batch and the warnings, and restores the fetch
+         *          size, row limit, query timeout and fetch direction saved at creation.
+         *
+         * @param openResults Result sets returned through the proxy
+         */
+        void checkIn(List<ResultSet> openResults) {
+            try {
+                for (ResultSet rs : openResults) {
+                    rs.close();
+                }
+                statement.clearParameters();
+                statement.clearBatch();
+                statement.clearWarnings();
+                statement.setFetchSize(fetchSize);
+                statement.setMaxRows(maxRows);
+                statement.setQueryTimeout(queryTimeout);
+                statement.setFetchDirection(fetchDirection);
+            } catch (SQLException e) {
+                // A statement that cannot be reset is dropped from the cache
+                closePhysically();
+            }
+            inUse = false;
+        }
+
+        /**
+         * Checks whether the physical statement has been finalized.
+         *
+         * @return true if the statement is closed or its state cannot be read
+         */
+        boolean isPhysicallyClosed() {
+            try {
+                return statement.isClosed();
+            } catch (SQLException e) {
+                return true;
+            }
+        }
+
+        /**
+         * Finalizes the physical statement.
+         */
+        void closePhysically() {
+            try {
+                statement.close();
+            } catch (SQLException e) {
+                // The statement is discarded either way
+            }
+        }
+    }
+
+    /**
+     * Invocation handler of the statement proxy handed to one caller.
+     */
+    private static class StatementHandle implements InvocationHandler {
+        /** The cached statement */
+        private final CachedStatement cached;
+        /** The pooled connection handle reported by getConnection() */
+        private final Connection owner;
+        /** Result sets returned to the caller, closed when the statement is returned */
+        private final List<ResultSet> openResults = new ArrayList<>();
+        /** Whether the caller has closed this proxy */
+        private boolean closed;
+
+        /**
+         * Constructor for StatementHandle class.
+         *
+         * @param cached The cached statement
+         * @param owner The pooled connection handle
+         */
+        StatementHandle(CachedStatement cached, Connection owner) {
+            this.cached = cached;
+            this.owner = owner;
+        }
+
+        /**
+         * Handles a call on the statement proxy.
+         *
+         * @param proxy The proxy the method was called on
+         * @param method The called method
+         * @param args The method arguments
+         * @return The method result
+         * @throws Throwable The exception thrown by the physical statement
+         */
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "close":
+                    if (!closed) {
+                        closed = true;
+                        cached.checkIn(openResults);
+                        openResults.clear();
+                    }
+                    return null;
+                case "isClosed":
+                    return closed || cached.isPhysicallyClosed();
+                case "getConnection":
+                    return owner;
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "toString":
+                    return "CachedStatement[" + cached.statement + "]";
+                default:
+                    break;
+            }
+
+            if (closed) {
+                throw new SQLException("Statement is closed");
+            }
+
+            try {
+                Object result = method.invoke(cached.statement, args);
+                if (result instanceof ResultSet) {
+                    openResults.add((ResultSet) result);
+                }
+                return result;
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package com.berkant.kagan.haluk.irem.dietapp;
+
+import java.sql.SQLException;
+
+/**
+ * This interface gives the services access to one storage engine through its repositories.
+ * @details The default backend stores everything in the SQLite database of DatabaseHelper.
+ *          The in-memory backend keeps the data in concurrent maps for load tests and
+ *          ephemeral deployments. With dietapp.db.shards above 1 the SQLite data of the users
+ *          is spread over several database files by the sharded backend. Services that share
+ *          data must be created with the same backend instance.
+ * @author berkant
+ */
+public interface StorageBackend {
+
+    /**
+     * Work run by inTransaction.
+     *
+     * @param <T> The result type
+     */
+    interface TransactionWork<T> {
+        /**
+         * Runs the work.
+         *
+         * @return The result
+         * @throws SQLException If the work fails
+         */
+        T run() throws SQLException;
+    }
+
+    /**
+     * Creates a backend by name.
+     *
+     * @param name "sqlite" or "memory"
+     * @return The backend; SQLite for unknown names, sharded if several shards are configured
+     */
+    static StorageBackend create(String name) {
+        if ("memory".equalsIgnoreCase(name)) {
+            return new InMemoryStorageBackend();
+        }
+        if (DatabaseHelper.getShards().size() > 1) {
+            return new ShardedStorageBackend();
+        }
+        return new SqliteStorageBackend();
+    }
+
+    /**
+     * Gets the name of the backend.
+     * @return The backend name
+     */
+    String getName();
+
+    /**
+     * Gets the user repository.
+     * @return The user repository
+     */
+    UserRepository getUsers();
+
+    /**
+     * Gets the food catalog repository.
+     * @return The food repository
+     */
+    FoodRepository getFoods();
+
+    /**
+     * Gets the food log repository.
+     * @return The food log repository
+     */
+    FoodLogRepository getFoodLogs();
+
+    /**
+     * Gets the meal plan repository.
+     * @return The meal plan repository
+     */
+    MealPlanRepository getMealPlans();
+
+    /**
+     * Gets the recipe repository.
+     * @return The recipe repository
+     */
+    RecipeRepository getRecipes();
+
+    /**
+     * Runs repository calls of the current thread as one unit.
+     * @details Calls nested in a running unit join it.
+     *
+     * @param <T> The result type
+     * @param work The repository calls
+     * @return The result of the work
+     * @throws SQLException If the work fails
+     */
+    <T> T inTransaction(TransactionWork<T> work) throws SQLException;
+}
@@ -0,0 +1,113 @@
+package com.berkant.kagan.haluk.irem.dietapp;
+
+import java.sql.SQLException;
+import java.util.List;
+
+/**
+ * This interface stores the user accounts and their nutrition goals.
+ * @details Implementations are used by AuthenticationService, CalorieNutrientTrackingService
+ *          and MealPlanningService and must be safe to call from several threads.
+ * @author berkant
+ */
+public interface UserRepository {
+
+    /**
+     * Maps stored nutrition goals to the caller's goal type.
+     *
+     * @param <T> The goal type
+     */
+    interface GoalMapper<T> {
+        /**
+         * Creates a goal object from the stored values.
+         *
+         * @param calorieGoal The daily calorie goal
+         * @param proteinGoal The daily protein goal in grams
+         * @param carbGoal The daily carbohydrate goal in grams
+         * @param fatGoal The daily fat goal in grams
+         * @return The goal object
+         */
+        T map(int calorieGoal, double proteinGoal, double carbGoal, double fatGoal);
+    }
+
+    /**
+     * Adds a new user that is not logged in.
+     *
+     * @param username The username
+     * @param password The password
+     * @param email The email address
+     * @param name The full name
+     * @return true if the user was added, false if the username is taken
+     * @throws SQLException If the user cannot be stored
+     */
+    boolean register(String username, String password, String email, String name) throws SQLException;
+
+    /**
+     * Finds a user by username and password.
+     *
+     * @param username The username
+     * @param password The password
+     * @return The user, or null if the credentials do not match
+     * @throws SQLException If the users cannot be read
+     */
+    User findByCredentials(String username, String password) throws SQLException;
+
+    /**
+     * Stores the login status of a user.
+     *
+     * @param username The username
+     * @param loggedIn Whether the user is logged in
+     * @throws SQLException If the status cannot be stored
+     */
+    void setLoggedIn(String username, boolean loggedIn) throws SQLException;
+
+    /**
+     * Deletes a user together with its food logs, meal plans and nutrition goals.
+     *
+     * @param username The username
+     * @return true if the user existed and was deleted
+     * @throws SQLException If the user cannot be deleted
+     */
+    boolean delete(String username) throws SQLException;
+
+    /**
+     * Gets all users in the order they registered.
+     *
+     * @return The users with their login status
+     * @throws SQLException If the users cannot be read
+     */
+    List<User> findAll() throws SQLException;
+
+    /**
+     * Resolves a username to the user's id.
+     *
+     * @param username The username
+     * @return The user id, or -1 if there is no such user
+     * @throws SQLException If the users cannot be read
+     */
+    int findId(String username) throws SQLException;
+
+    /**
+     * Inserts or replaces the nutrition goals of a user.
+     *
+     * @param userId The user id
+     * @param calorieGoal The daily calorie goal
+     * @param proteinGoal The daily protein goal in grams
+     * @param carbGoal The daily carbohydrate goal in grams
+     * @param fatGoal The daily fat goal in grams
+     * @return true if the goals were stored
+     * @throws SQLException If the goals cannot be stored
+     */
+    boolean saveNutritionGoals(int userId, int calorieGoal, double proteinGoal, double carbGoal, double fatGoal)
+        throws SQLException;
+
+    /**
+     * Gets the nutrition goals of a user.
+     *
+     * @param <T> The goal type
+     * @param userId The user id
+     * @param mapper Creates the goal object
+     * @return The goals, or null if the user has none
+     * @throws SQLException If the goals cannot be read
+     */
+    <T> T findNutritionGoals(int userId, GoalMapper<T> mapper) throws SQLException;
+}
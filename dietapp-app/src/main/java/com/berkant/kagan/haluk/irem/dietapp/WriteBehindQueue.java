@@ -0,0 +1,358 @@
+package com.berkant.kagan.haluk.irem.dietapp;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * This class queues database writes and commits them in batches on a background thread.
+ * @details Writes are put into a bounded queue; a single writer thread takes up to
+ *          maxBatchSize of them, waiting at most maxDelayMillis for more to arrive, and hands
+ *          them to the BatchWriter, which commits them in one transaction. When the queue is
+ *          full, submit() blocks until the writer catches up. In GROUP_COMMIT mode the caller
+ *          waits until its batch is committed; in ASYNC mode submit() returns as soon as the
+ *          write is queued and flush() or close() must be called to be sure it is stored.
+ * @author berkant
+ */
+public class WriteBehindQueue<T> {
+    /** Default maximum number of queued writes */
+    public static final int DEFAULT_CAPACITY = 10000;
+    /** Default maximum number of writes committed in one transaction */
+    public static final int DEFAULT_MAX_BATCH_SIZE = 500;
+    /** Default time the writer waits for more writes before committing a batch */
+    public static final long DEFAULT_MAX_DELAY_MILLIS = 5;
+
+    /** How long the writer thread waits for a write before checking whether it was closed */
+    private static final long IDLE_POLL_MILLIS = 100;
+
+    /** The name used for the writer thread */
+    private final String name;
+    /** Commits a batch of writes */
+    private final BatchWriter<T> writer;
+    /** Whether callers wait for their write to be committed */
+    private final DurabilityMode mode;
+    /** Maximum number of writes committed in one transaction */
+    private final int maxBatchSize;
+    /** Time the writer waits for more writes in nanoseconds */
+    private final long maxDelayNanos;
+    /** The queued writes */
+    private final BlockingQueue<PendingWrite<T>> queue;
+    /** Keeps the order of the queue and of the submitted counter the same */
+    private final ReentrantLock enqueueLock = new ReentrantLock();
+    /** The writer thread */
+    private final Thread writerThread;
+
+    /** Number of writes accepted into the queue */
+    private final AtomicLong submitted = new AtomicLong();
+    /** Number of writes the writer has finished, successfully or not; guarded by this */
+    private long completed;
+    /** Number of writes that could not be stored */
+    private final AtomicLong failed = new AtomicLong();
+    /** Number of batches committed */
+    private final AtomicLong batches = new AtomicLong();
+    /** Whether the queue no longer accepts writes */
+    private volatile boolean closed;
+
+    /**
+     * Constructor for WriteBehindQueue class with the default limits.
+     *
+     * @param name The name used for the writer thread
+     * @param writer Commits a batch of writes
+     * @param mode GROUP_COMMIT or ASYNC
+     */
+    public WriteBehindQueue(String name, BatchWriter<T> writer, DurabilityMode mode) {
+        this(name, writer, mode, DEFAULT_CAPACITY, DEFAULT_MAX_BATCH_SIZE, DEFAULT_MAX_DELAY_MILLIS);
+    }
+
+    /**
+     * Constructor for WriteBehindQueue class.
+     *
+     * @param name The name used for the writer thread
+     * @param writer Commits a batch of writes
+     * @param mode GROUP_COMMIT or ASYNC
+     * @param capacity Maximum number of queued writes before submit() blocks
+     * @param maxBatchSize Maximum number of writes committed in one transaction
+     * @param maxDelayMillis Time the writer waits for more writes before committing a batch
+     */
+    public WriteBehindQueue(String name, BatchWriter<T> writer, DurabilityMode mode,
+                            int capacity, int maxBatchSize, long maxDelayMillis) {
+        if (mode == null || mode == DurabilityMode.SYNC) {
+            throw new IllegalArgumentException("Write-behind queue needs GROUP_COMMIT or ASYNC mode");
+        }
+        if (capacity < 1 || maxBatchSize < 1 || maxDelayMillis < 0) {
+            throw new IllegalArgumentException("Invalid write-behind queue limits");
+        }
+        this.name = name;
+        this.writer = writer;
+        this.mode = mode;
+        this.maxBatchSize = maxBatchSize;
+        this.maxDelayNanos = TimeUnit.MILLISECONDS.toNanos(maxDelayMillis);
+        this.queue = new ArrayBlockingQueue<>(capacity);
+
+        this.writerThread = new Thread(this::runWriter, "dietapp-writer-" + name);
+        this.writerThread.setDaemon(true);
+        this.writerThread.start();
+    }
+
+    /**
+     * Queues a write.
+     * @details Blocks while the queue is full. In GROUP_COMMIT mode it also waits until the
+     *          batch containing the write has been committed.
+     *
+     * @param item The write to queue
+     * @return In GROUP_COMMIT mode whether the write was stored, in ASYNC mode whether it was queued
+     */
+    public boolean submit(T item) {
+        if (item == null) {
+            return false;
+        }
+        PendingWrite<T> write = new PendingWrite<>(item, mode == DurabilityMode.GROUP_COMMIT);
+
+        enqueueLock.lock();
+        try {
+            if (closed) {
+                System.out.println("Write-behind queue " + name + " is closed");
+                return false;
+            }
+            queue.put(write);
+            submitted.incrementAndGet();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        } finally {
+            enqueueLock.unlock();
+        }
+
+        if (write.result == null) {
+            return true;
+        }
+        try {
+            return write.result.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        } catch (ExecutionException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Waits until every write queued before this call has been written.
+     */
+    public void flush() {
+        long target = submitted.get();
+        synchronized (this) {
+            while (completed < target && writerThread.isAlive()) {
+                try {
+                    wait(IDLE_POLL_MILLIS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Stops accepting writes, writes the queued ones and stops the writer thread.
+     */
+    public void close() {
+        enqueueLock.lock();
+        try {
+            closed = true;
+        } finally {
+            enqueueLock.unlock();
+        }
+        flush();
+        try {
+            writerThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Gets the durability mode of the queue.
+     * @return The durability mode
+     */
+    public DurabilityMode getMode() {
+        return mode;
+    }
+
+    /**
+     * Gets the number of writes waiting in the queue.
+     * @return The number of queued writes
+     */
+    public int getPending() {
+        return queue.size();
+    }
+
+    /**
+     * Gets the number of committed batches.
+     * @return The number of batches
+     */
+    public long getBatches() {
+        return batches.get();
+    }
+
+    /**
+     * Gets the number of writes that could not be stored.
+     * @return The number of failed writes
+     */
+    public long getFailed() {
+        return failed.get();
+    }
+
+    /**
+     * Takes batches from the queue and writes them until the queue is closed and empty.
+     */
+    private void runWriter() {
+        List<PendingWrite<T>> batch = new ArrayList<>(maxBatchSize);
+        while (true) {
+            PendingWrite<T> first;
+            try {
+                first = queue.poll(IDLE_POLL_MILLIS, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                first = null;
+            }
+            if (first == null) {
+                if (closed && queue.isEmpty()) {
+                    return;
+                }
+                continue;
+            }
+
+            batch.add(first);
+            collectBatch(batch);
+            writeBatch(batch);
+            batch.clear();
+        }
+    }
+
+    /**
+     * Adds queued writes to a batch until it is full or the time window has passed.
+     *
+     * @param batch The batch holding at least one write
+     */
+    private void collectBatch(List<PendingWrite<T>> batch) {
+        long deadline = System.nanoTime() + maxDelayNanos;
+        while (batch.size() < maxBatchSize) {
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0 || closed) {
+                queue.drainTo(batch, maxBatchSize - batch.size());
+                return;
+            }
+            try {
+                PendingWrite<T> next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+                if (next == null) {
+                    return;
+                }
+                batch.add(next);
+            } catch (InterruptedException e) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Writes one batch and completes its writes.
+     *
+     * @param batch The writes to commit together
+     */
+    private void writeBatch(List<PendingWrite<T>> batch) {
+        List<T> items = new ArrayList<>(batch.size());
+        for (PendingWrite<T> write : batch) {
+            items.add(write.item);
+        }
+
+        boolean[] results;
+        try {
+            results = writer.write(items);
+            batches.incrementAndGet();
+        } catch (SQLException | RuntimeException e) {
+            System.out.println("Could not write batch of " + items.size() + " writes: " + e.getMessage());
+            results = new boolean[items.size()];
+        }
+
+        for (int i = 0; i < batch.size(); i++) {
+            boolean stored = results != null && i < results.length && results[i];
+            if (!stored) {
+                failed.incrementAndGet();
+            }
+            if (batch.get(i).result != null) {
+                batch.get(i).result.complete(stored);
+            }
+        }
+
+        synchronized (this) {
+            completed += batch.size();
+            notifyAll();
+        }
+    }
+
+    /**
+     * Durability modes of the meal planning writes.
+     */
+    public enum DurabilityMode {
+        /** Every write is committed before the call returns, one transaction per write */
+        SYNC,
+        /** Every write is committed before the call returns, sharing transactions with concurrent writes */
+        GROUP_COMMIT,
+        /** Writes are committed in the background after the call returns */
+        ASYNC;
+
+        /**
+         * Parses a durability mode name such as "group-commit", ignoring case.
+         *
+         * @param value The name of the mode
+         * @return The mode, or SYNC if the name is empty or unknown
+         */
+        public static DurabilityMode parse(String value) {
+            if (value == null || value.trim().isEmpty()) {
+                return SYNC;
+            }
+            try {
+                return valueOf(value.trim().toUpperCase().replace('-', '_'));
+            } catch (IllegalArgumentException e) {
+                System.out.println("Unknown durability mode: " + value + ", using SYNC");
+                return SYNC;
+            }
+        }
+    }
+
+    /**
+     * Commits a batch of writes.
+     */
+    public interface BatchWriter<T> {
+        /**
+         * Stores the writes, normally in a single transaction.
+         *
+         * @param items The writes in the order they were queued
+         * @return Whether each write was stored
+         * @throws SQLException If the batch could not be stored
+         */
+        boolean[] write(List<T> items) throws SQLException;
+    }
+
+    /**
+     * A queued write and the result its caller waits for.
+     */
+    private static class PendingWrite<T> {
+        /** The write */
+        private final T item;
+        /** Completed with whether the write was stored, or null if nobody waits */
+        private final CompletableFuture<Boolean> result;
+
+        PendingWrite(T item, boolean awaited) {
+            this.item = item;
+            this.result = awaited ? new CompletableFuture<>() : null;
+        }
+    }
+}
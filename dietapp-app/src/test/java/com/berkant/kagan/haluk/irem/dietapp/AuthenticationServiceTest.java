@@ -479,9 +479,7 @@ public class AuthenticationServiceTest {
     
    
     private void resetConnectionPool() throws Exception {
-        java.lang.reflect.Field connectionPoolField = DatabaseHelper.class.getDeclaredField("connectionPool");
-        connectionPoolField.setAccessible(true);
-        connectionPoolField.set(null, new ArrayList<>());
+        DatabaseHelper.closeAllConnections();
     }
     
     
@@ -696,14 +694,84 @@ public class AuthenticationServiceTest {
         assertTrue("Method should return an empty list on database error", result.isEmpty());
     }
     
+    /**
+     * Test that registering and logging in populate the shared user id cache
+     */
+    @Test
+    public void testRegisterAndLoginCacheUserId() {
+        authService.register(testUsername, TEST_PASSWORD, TEST_EMAIL, TEST_NAME);
+        Integer registeredId = DatabaseHelper.getUserIdCache().get(testUsername);
+        assertNotNull("Registered user id should be cached", registeredId);
+        
+        DatabaseHelper.getUserIdCache().invalidate(testUsername);
+        assertTrue("Login should succeed", authService.login(testUsername, TEST_PASSWORD));
+        assertEquals("Login should cache the same user id", registeredId,
+            DatabaseHelper.getUserIdCache().get(testUsername));
+        assertEquals("Lookups should resolve the cached id", registeredId.intValue(),
+            DatabaseHelper.getUserId(testUsername));
+    }
     
+    /**
+     * Test that deleting a user removes it from the database and the user id cache
+     */
+    @Test
+    public void testDeleteUser() {
+        authService.register(testUsername, TEST_PASSWORD, TEST_EMAIL, TEST_NAME);
+        authService.login(testUsername, TEST_PASSWORD);
+        
+        assertTrue("Existing user should be deleted", authService.deleteUser(testUsername));
+        assertNull("Deleted user should not be cached", DatabaseHelper.getUserIdCache().get(testUsername));
+        assertEquals("Deleted user should not be found", -1, DatabaseHelper.getUserId(testUsername));
+        assertNull("Deleting the current user should log it out", authService.getCurrentUser());
+        
+        assertFalse("Deleting a missing user should fail", authService.deleteUser(testUsername));
+        assertFalse("Deleting without a username should fail", authService.deleteUser(null));
+    }
     
+    /**
+     * Test that deleting a user deletes its food logs, daily totals, meal plans and goals
+     */
+    @Test
+    public void testDeleteUserDeletesItsData() throws SQLException {
+        SqliteStorageBackend storage = new SqliteStorageBackend();
+        AuthenticationService service = new AuthenticationService(storage);
+        MealPlanningService mealService = new MealPlanningService(storage, WriteBehindQueue.DurabilityMode.SYNC);
+        service.register(testUsername, TEST_PASSWORD, TEST_EMAIL, TEST_NAME);
+        int userId = DatabaseHelper.getUserId(testUsername);
+        try {
+            assertTrue("Food should be logged", mealService.logFood(testUsername, "2025-05-01", new Food("Apple", 100, 52)));
+            assertTrue("Meal should be planned",
+                mealService.addMealPlan(testUsername, "2025-05-01", "breakfast", new Food("Oats", 50, 190)));
+            assertTrue("Goals should be saved", storage.getUsers().saveNutritionGoals(userId, 2100, 90, 250, 70));
+        } finally {
+            mealService.close();
+        }
+        assertEquals("Daily totals should exist before the delete", 1, countRows(NutritionRollup.TABLE, userId));
+        
+        assertTrue("User should be deleted", service.deleteUser(testUsername));
+        
+        for (String table : new String[] { "food_logs", NutritionRollup.TABLE, "meal_plans", "nutrition_goals" }) {
+            assertEquals("Rows of " + table + " should be deleted", 0, countRows(table, userId));
+        }
+        try (PreparedStatement pstmt = connection.prepareStatement("SELECT COUNT(*) FROM users WHERE id = ?")) {
+            pstmt.setInt(1, userId);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                assertTrue("Users should be counted", rs.next());
+                assertEquals("User row should be deleted", 0, rs.getInt(1));
+            }
+        }
+    }
     
-    
-    
-    
-  
-    
-    
-    
-}
\ No newline at end of file
+    /**
+     * Counts the rows of a user in a table.
+     */
+    private int countRows(String table, int userId) throws SQLException {
+        try (PreparedStatement pstmt = connection.prepareStatement("SELECT COUNT(*) FROM " + table + " WHERE user_id = ?")) {
+            pstmt.setInt(1, userId);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                assertTrue("Rows should be counted", rs.next());
+                return rs.getInt(1);
+            }
+        }
+    }
+}
@@ -54,6 +54,123 @@ public class CalorieNutrientTrackingServiceTest {
         assertEquals(fatGoal, calorieNutrientService.getLastFatGoal(), 0.001);
     }
     
+    /**
+     * Tests that goals are read once per user and replaced when they are set
+     */
+    @Test
+    public void testNutritionGoalCache() {
+        StorageBackend storage = StorageBackend.create("memory");
+        assertTrue("User should be registered",
+            new AuthenticationService(storage).register("alice", "secret", "alice@example.com", "Alice"));
+        MealPlanningService mealService = new MealPlanningService(storage, WriteBehindQueue.DurabilityMode.SYNC);
+        CalorieNutrientTrackingService service = new CalorieNutrientTrackingService(mealService, storage);
+        
+        CalorieNutrientTrackingService.NutritionGoal defaults = service.getNutritionGoals("alice");
+        assertEquals("Default goals should be returned", 2000, defaults.getCalorieGoal());
+        assertSame("Cached goals should be shared", defaults, service.getNutritionGoals("alice"));
+        assertEquals("First lookup should read the goals", 1, service.getGoalCacheMisses());
+        assertEquals("Second lookup should be a hit", 1, service.getGoalCacheHits());
+        
+        assertTrue("Goals should be set", service.setNutritionGoals("alice", 1800, 90, 200, 60));
+        assertEquals("Set goals should be returned", 1800, service.getNutritionGoals("alice").getCalorieGoal());
+        assertEquals("Set goals should be written through", 1, service.getGoalCacheMisses());
+        service.getWeeklyReport("alice", new String[] { "2025-05-01", "2025-05-02" });
+        assertEquals("Reports should not read the goals again", 1, service.getGoalCacheMisses());
+        
+        service.getNutritionGoals("nobody");
+        assertEquals("Unknown users should not be cached", 1, service.getGoalCacheSize());
+        service.clearGoalCache();
+        assertEquals("Cleared goals should be read again", 90.0,
+            service.getNutritionGoals("alice").getProteinGoal(), 0.001);
+        assertEquals("Cleared goals should be a miss", 2, service.getGoalCacheMisses());
+        mealService.close();
+    }
+    
+    /**
+     * Tests that a failed save keeps the cached goals
+     */
+    @Test
+    public void testFailedGoalSaveKeepsCachedGoals() {
+        final UserRepository[] stored = new UserRepository[1];
+        StorageBackend storage = new InMemoryStorageBackend() {
+            @Override
+            public UserRepository getUsers() {
+                if (stored[0] == null) {
+                    stored[0] = new FailingGoalRepository(super.getUsers());
+                }
+                return stored[0];
+            }
+        };
+        assertTrue("User should be registered",
+            new AuthenticationService(storage).register("bob", "secret", "bob@example.com", "Bob"));
+        MealPlanningService mealService = new MealPlanningService(storage, WriteBehindQueue.DurabilityMode.SYNC);
+        CalorieNutrientTrackingService service = new CalorieNutrientTrackingService(mealService, storage);
+        
+        assertTrue("Goals should be set", service.setNutritionGoals("bob", 1800, 90, 200, 60));
+        CalorieNutrientTrackingService.NutritionGoal cached = service.getNutritionGoals("bob");
+        
+        assertFalse("Failing save should fail", service.setNutritionGoals("bob", 1500, 80, 150, 50));
+        assertSame("Failed save should keep the cached goals", cached, service.getNutritionGoals("bob"));
+        assertEquals("Failed save should not read the goals", 0, service.getGoalCacheMisses());
+        mealService.close();
+    }
+    
+    /**
+     * User repository that fails to save goals with 1500 calories
+     */
+    private static class FailingGoalRepository implements UserRepository {
+        /** The repository doing the work */
+        private final UserRepository target;
+        
+        FailingGoalRepository(UserRepository target) {
+            this.target = target;
+        }
+        
+        @Override
+        public boolean register(String username, String password, String email, String name) throws SQLException {
+            return target.register(username, password, email, name);
+        }
+        
+        @Override
+        public User findByCredentials(String username, String password) throws SQLException {
+            return target.findByCredentials(username, password);
+        }
+        
+        @Override
+        public void setLoggedIn(String username, boolean loggedIn) throws SQLException {
+            target.setLoggedIn(username, loggedIn);
+        }
+        
+        @Override
+        public boolean delete(String username) throws SQLException {
+            return target.delete(username);
+        }
+        
+        @Override
+        public List<User> findAll() throws SQLException {
+            return target.findAll();
+        }
+        
+        @Override
+        public int findId(String username) throws SQLException {
+            return target.findId(username);
+        }
+        
+        @Override
+        public boolean saveNutritionGoals(int userId, int calorieGoal, double proteinGoal, double carbGoal,
+                double fatGoal) throws SQLException {
+            if (calorieGoal == 1500) {
+                throw new SQLException("Simulated save failure");
+            }
+            return target.saveNutritionGoals(userId, calorieGoal, proteinGoal, carbGoal, fatGoal);
+        }
+        
+        @Override
+        public <T> T findNutritionGoals(int userId, GoalMapper<T> mapper) throws SQLException {
+            return target.findNutritionGoals(userId, mapper);
+        }
+    }
+    
     @Test
     public void testSetNutritionGoalsWithInvalidInput() {
         // Test with null username
@@ -1078,6 +1195,12 @@ public class CalorieNutrientTrackingServiceTest {
                     }
                     return foods;
                 }
+
+                @Override
+                public DailyNutritionTotals getDailyTotals(String username, String date) {
+                    // Reports read the daily totals, which sum the logged foods
+                    return DailyNutritionTotals.of(date, getFoodLog(username, date));
+                }
             };
             
             // Create a CalorieNutrientTrackingService with our custom meal service
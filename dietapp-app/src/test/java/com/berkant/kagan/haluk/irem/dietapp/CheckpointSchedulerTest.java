@@ -0,0 +1,135 @@
+package com.berkant.kagan.haluk.irem.dietapp;
+
+import static org.junit.Assert.*;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+ * Test class for CheckpointScheduler
+ */
+public class CheckpointSchedulerTest {
+
+    private File dbFile;
+    private Connection writer;
+    private CheckpointScheduler scheduler;
+
+    @Before
+    public void setUp() throws Exception {
+        Class.forName("org.sqlite.JDBC");
+        dbFile = File.createTempFile("dietapp-checkpoint", ".db");
+        writer = openConnection();
+        try (Statement stmt = writer.createStatement()) {
+            stmt.execute("PRAGMA journal_mode = WAL");
+            // Leave all checkpoints to the scheduler
+            stmt.execute("PRAGMA wal_autocheckpoint = 0");
+            stmt.execute("CREATE TABLE logs (id INTEGER PRIMARY KEY, note TEXT)");
+        }
+        scheduler = new CheckpointScheduler("test", this::openCheckpointConnection, dbFile.getAbsolutePath(), 60000);
+    }
+
+    @After
+    public void tearDown() throws SQLException {
+        scheduler.stop();
+        writer.close();
+        new File(dbFile.getAbsolutePath() + "-wal").delete();
+        new File(dbFile.getAbsolutePath() + "-shm").delete();
+        dbFile.delete();
+    }
+
+    private Connection openConnection() throws SQLException {
+        return DriverManager.getConnection("jdbc:sqlite:" + dbFile.getAbsolutePath());
+    }
+
+    private Connection openCheckpointConnection() throws SQLException {
+        Connection conn = openConnection();
+        try (Statement stmt = conn.createStatement()) {
+            // Do not wait long for the reader blocking the truncate
+            stmt.execute("PRAGMA busy_timeout = 100");
+        }
+        return conn;
+    }
+
+    /**
+     * Test that a passive checkpoint runs under load and the WAL is truncated when idle
+     */
+    @Test
+    public void testPassiveUnderLoadAndTruncateWhenIdle() throws SQLException {
+        File walFile = new File(dbFile.getAbsolutePath() + "-wal");
+        insertRows(200);
+        assertTrue("Writes should grow the WAL", walFile.length() > 0);
+
+        assertEquals("First run should see new writes", CheckpointScheduler.Mode.PASSIVE, scheduler.runOnce());
+        insertRows(10);
+        assertEquals("Run after more writes should stay passive", CheckpointScheduler.Mode.PASSIVE, scheduler.runOnce());
+        assertTrue("Passive checkpoint should keep the WAL file", walFile.length() > 0);
+
+        assertEquals("Run without writes should truncate", CheckpointScheduler.Mode.TRUNCATE, scheduler.runOnce());
+        assertEquals("Truncate should empty the WAL file", 0, walFile.length());
+        assertNull("Empty WAL should need no checkpoint", scheduler.runOnce());
+
+        CheckpointScheduler.CheckpointMetrics metrics = scheduler.getMetrics();
+        assertEquals("Passive checkpoints should be counted", 2, metrics.getPassiveCheckpoints());
+        assertEquals("Truncate checkpoints should be counted", 1, metrics.getTruncateCheckpoints());
+        assertTrue("Checkpointed frames should be counted", metrics.getFramesCheckpointed() > 0);
+        assertTrue("Largest WAL size should be recorded", metrics.getMaxWalBytes() > 0);
+        assertEquals("Current WAL size should be reported", 0, metrics.getWalBytes());
+    }
+
+    /**
+     * Test that a reader holding a snapshot makes a truncate checkpoint report busy
+     */
+    @Test
+    public void testOpenReaderBlocksTruncate() throws SQLException {
+        insertRows(50);
+        try (Connection reader = openConnection()) {
+            reader.setAutoCommit(false);
+            try (Statement stmt = reader.createStatement(); ResultSet rs = stmt.executeQuery("SELECT COUNT(*) FROM logs")) {
+                assertTrue("Reader should see the rows", rs.next());
+                insertRows(10);
+
+                assertFalse("Truncate should not finish while a reader uses the WAL",
+                    scheduler.checkpoint(CheckpointScheduler.Mode.TRUNCATE));
+            }
+            reader.rollback();
+        }
+        assertEquals("Busy checkpoint should be counted", 1, scheduler.getMetrics().getBusyCheckpoints());
+        assertTrue("Truncate should finish once the reader is gone", scheduler.checkpoint(CheckpointScheduler.Mode.TRUNCATE));
+    }
+
+    /**
+     * Test starting and stopping the background thread
+     */
+    @Test
+    public void testStartAndStop() {
+        assertFalse("Scheduler should not run before start", scheduler.isRunning());
+        scheduler.start();
+        scheduler.start();
+        assertTrue("Scheduler should run after start", scheduler.isRunning());
+        scheduler.stop();
+        assertFalse("Scheduler should not run after stop", scheduler.isRunning());
+
+        try {
+            new CheckpointScheduler("test", this::openConnection, dbFile.getAbsolutePath(), 0);
+            fail("Zero interval should be rejected");
+        } catch (IllegalArgumentException e) {
+            assertTrue("Message should mention the interval", e.getMessage().contains("interval"));
+        }
+    }
+
+    private void insertRows(int count) throws SQLException {
+        try (Statement stmt = writer.createStatement()) {
+            for (int i = 0; i < count; i++) {
+                stmt.executeUpdate("INSERT INTO logs (note) VALUES ('entry " + i + "')");
+            }
+        }
+    }
+}
@@ -0,0 +1,384 @@
+package com.berkant.kagan.haluk.irem.dietapp;
+
+import static org.junit.Assert.*;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Test class for ConnectionPool
+ */
+public class ConnectionPoolTest {
+
+    private ConnectionPool pool;
+
+    /**
+     * Opens an in-memory SQLite connection for the pool under test.
+     */
+    private static Connection openConnection() throws SQLException {
+        return DriverManager.getConnection("jdbc:sqlite::memory:");
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        Class.forName("org.sqlite.JDBC");
+        pool = new ConnectionPool("test", 2, ConnectionPoolTest::openConnection, 200, 60000, 60000);
+    }
+
+    @After
+    public void tearDown() {
+        pool.shutdown();
+    }
+
+    /**
+     * Test that a released connection is reused by the next borrow
+     */
+    @Test
+    public void testReleasedConnectionIsReused() throws SQLException {
+        Connection first = pool.borrow();
+        Connection physical = first.unwrap(Connection.class);
+        pool.release(first);
+
+        Connection second = pool.borrow();
+        assertSame("Idle connection should be reused", physical, second.unwrap(Connection.class));
+        pool.release(second);
+
+        assertEquals("Only one physical connection should be opened", 1, pool.getMetrics().getConnectionsCreated());
+    }
+
+    /**
+     * Test that a pool only reports its own borrowed handles as borrowed
+     */
+    @Test
+    public void testIsBorrowed() throws SQLException {
+        ConnectionPool other = new ConnectionPool("other", 1, ConnectionPoolTest::openConnection);
+        try {
+            Connection conn = pool.borrow();
+            assertTrue("Borrowed handle should be reported", pool.isBorrowed(conn));
+            assertFalse("Other pool should not claim the handle", other.isBorrowed(conn));
+            pool.release(conn);
+            assertFalse("Returned handle should no longer be borrowed", pool.isBorrowed(conn));
+            assertFalse("Null should not be borrowed", pool.isBorrowed(null));
+        } finally {
+            other.shutdown();
+        }
+    }
+
+    /**
+     * Test that borrowing from an exhausted pool times out
+     */
+    @Test
+    public void testBorrowTimesOutWhenExhausted() throws SQLException {
+        Connection first = pool.borrow();
+        Connection second = pool.borrow();
+
+        try {
+            pool.borrow();
+            fail("Borrow should time out when the pool is exhausted");
+        } catch (SQLException e) {
+            assertTrue("Message should mention the timeout", e.getMessage().contains("Timed out"));
+        }
+
+        assertEquals("Timeout should be counted", 1, pool.getMetrics().getTotalTimeouts());
+        assertEquals("Two connections should be active", 2, pool.getMetrics().getActiveConnections());
+
+        pool.release(first);
+        pool.release(second);
+    }
+
+    /**
+     * Test that a waiting caller gets a connection once another caller returns one
+     */
+    @Test
+    public void testWaitingBorrowSucceedsAfterRelease() throws Exception {
+        ConnectionPool waitingPool = new ConnectionPool("waiting", 1, ConnectionPoolTest::openConnection,
+            5000, 60000, 60000);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Connection held = waitingPool.borrow();
+            CountDownLatch started = new CountDownLatch(1);
+
+            Future<Connection> waiter = executor.submit(() -> {
+                started.countDown();
+                return waitingPool.borrow();
+            });
+
+            started.await();
+            Thread.sleep(50);
+            waitingPool.release(held);
+
+            Connection received = waiter.get(5, TimeUnit.SECONDS);
+            assertNotNull("Waiting caller should receive a connection", received);
+            waitingPool.release(received);
+            assertTrue("Wait time should be recorded", waitingPool.getMetrics().getMaxWaitMillis() > 0);
+        } finally {
+            executor.shutdownNow();
+            waitingPool.shutdown();
+        }
+    }
+
+    /**
+     * Test that idle connections closed behind the pool's back are not handed out
+     */
+    @Test
+    public void testClosedIdleConnectionFailsValidation() throws SQLException {
+        Connection first = pool.borrow();
+        Connection physical = first.unwrap(Connection.class);
+        pool.release(first);
+        physical.close();
+
+        Connection second = pool.borrow();
+        assertNotSame("Closed connection should not be reused", physical, second.unwrap(Connection.class));
+        assertFalse("Borrowed connection should be open", second.isClosed());
+        assertEquals("Validation failure should be counted", 1, pool.getMetrics().getValidationFailures());
+        pool.release(second);
+    }
+
+    /**
+     * Test that idle connections are evicted after the idle timeout
+     */
+    @Test
+    public void testIdleConnectionsAreEvicted() throws Exception {
+        ConnectionPool evictingPool = new ConnectionPool("evicting", 2, ConnectionPoolTest::openConnection,
+            200, 1, 60000);
+        try {
+            Connection conn = evictingPool.borrow();
+            Connection physical = conn.unwrap(Connection.class);
+            evictingPool.release(conn);
+            Thread.sleep(10);
+
+            assertEquals("Expired idle connection should be evicted", 1, evictingPool.evictIdle());
+            assertTrue("Evicted connection should be closed", physical.isClosed());
+            assertEquals("No idle connections should remain", 0, evictingPool.getMetrics().getIdleConnections());
+        } finally {
+            evictingPool.shutdown();
+        }
+    }
+
+    /**
+     * Test that connections held past the leak threshold are reported once
+     */
+    @Test
+    public void testLeakIsReportedOnce() throws Exception {
+        ConnectionPool leakingPool = new ConnectionPool("leaking", 2, ConnectionPoolTest::openConnection,
+            200, 60000, 1);
+        try {
+            Connection conn = leakingPool.borrow();
+            Thread.sleep(10);
+
+            assertEquals("Held connection should be reported", 1, leakingPool.detectLeaks());
+            assertEquals("Leak should only be reported once", 0, leakingPool.detectLeaks());
+            assertEquals("Leak should be counted", 1, leakingPool.getMetrics().getLeaksDetected());
+            leakingPool.release(conn);
+        } finally {
+            leakingPool.shutdown();
+        }
+    }
+
+    /**
+     * Test that the borrowing stack is only captured when leak traces are turned on
+     */
+    @Test
+    public void testLeakTracesAreOptional() throws Exception {
+        String report = reportLeak();
+        assertTrue("Report should name the borrowing thread: " + report,
+            report.contains("thread '" + Thread.currentThread().getName() + "'"));
+        assertFalse("Stack should not be captured by default", report.contains("Connection borrowed here"));
+
+        System.setProperty(ConnectionPool.LEAK_TRACES_PROPERTY, "true");
+        try {
+            report = reportLeak();
+        } finally {
+            System.clearProperty(ConnectionPool.LEAK_TRACES_PROPERTY);
+        }
+        assertTrue("Stack should be captured when leak traces are on", report.contains("Connection borrowed here"));
+        assertTrue("Stack should show the borrowing test", report.contains("reportLeak"));
+    }
+
+    /**
+     * Borrows a connection from a new pool and captures the leak report.
+     *
+     * @return The printed report
+     */
+    private static String reportLeak() throws Exception {
+        ConnectionPool leakingPool = new ConnectionPool("tracing", 1, ConnectionPoolTest::openConnection,
+            200, 60000, 1);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        PrintStream original = System.out;
+        try {
+            Connection conn = leakingPool.borrow();
+            Thread.sleep(10);
+            System.setOut(new PrintStream(out, true));
+            assertEquals("Held connection should be reported", 1, leakingPool.detectLeaks());
+            System.setOut(original);
+            leakingPool.release(conn);
+        } finally {
+            System.setOut(original);
+            leakingPool.shutdown();
+        }
+        return out.toString();
+    }
+
+    /**
+     * Test that connections whose physical connection was closed by the holder free their slot
+     */
+    @Test
+    public void testClosedBorrowedConnectionsAreReclaimed() throws SQLException {
+        pool.borrow().unwrap(Connection.class).close();
+        pool.borrow().unwrap(Connection.class).close();
+
+        Connection conn = pool.borrow();
+        assertNotNull("Pool should recover slots of closed connections", conn);
+        assertEquals("Both closed connections should be reclaimed", 2, pool.getMetrics().getConnectionsReclaimed());
+        pool.release(conn);
+    }
+
+    /**
+     * Test that closeAll empties the pool and frees all slots
+     */
+    @Test
+    public void testCloseAllFreesSlots() throws SQLException {
+        Connection idleConn = pool.borrow();
+        Connection idlePhysical = idleConn.unwrap(Connection.class);
+        Connection heldConn = pool.borrow();
+        pool.release(idleConn);
+
+        pool.closeAll();
+
+        assertTrue("Idle connection should be closed", idlePhysical.isClosed());
+        assertFalse("Held connection should stay usable", heldConn.isClosed());
+        assertEquals("No connections should be active", 0, pool.getMetrics().getActiveConnections());
+
+        Connection first = pool.borrow();
+        Connection second = pool.borrow();
+        assertNotNull("Pool should hand out connections after closeAll", second);
+        pool.release(first);
+        pool.release(second);
+        heldConn.close();
+    }
+
+    /**
+     * Test that closing a pooled connection returns it to the pool instead of closing it
+     */
+    @Test
+    public void testCloseReturnsConnectionToPool() throws SQLException {
+        Connection physical;
+        try (Connection conn = pool.borrow()) {
+            physical = conn.unwrap(Connection.class);
+        }
+
+        assertFalse("Physical connection should stay open", physical.isClosed());
+        assertEquals("Connection should be idle after close", 1, pool.getMetrics().getIdleConnections());
+        assertEquals("No connection should be active after close", 0, pool.getMetrics().getActiveConnections());
+    }
+
+    /**
+     * Test that a returned handle reports itself closed and rejects further use
+     */
+    @Test
+    public void testReturnedHandleRejectsUse() throws SQLException {
+        Connection conn = pool.borrow();
+        conn.close();
+
+        assertTrue("Returned handle should report closed", conn.isClosed());
+        assertFalse("Returned handle should not be valid", conn.isValid(1));
+        try {
+            conn.createStatement();
+            fail("Returned handle should reject new statements");
+        } catch (SQLException e) {
+            assertTrue("Message should mention the pool", e.getMessage().contains("returned to the pool"));
+        }
+
+        // Closing twice must not return the connection twice
+        conn.close();
+        assertEquals("Connection should only be idle once", 1, pool.getMetrics().getIdleConnections());
+    }
+
+    /**
+     * Test that a handle only keeps the statements that are still open
+     */
+    @Test
+    public void testClosedStatementsAreNotTracked() throws SQLException {
+        try (Connection conn = pool.borrow()) {
+            PooledConnection handler = PooledConnection.handlerOf(conn);
+            assertNotNull("Borrowed connection should be a pooled handle", handler);
+            for (int i = 0; i < 100; i++) {
+                try (Statement stmt = conn.createStatement()) {
+                    stmt.execute("SELECT " + i);
+                }
+            }
+            Statement open = conn.createStatement();
+
+            assertEquals("Only the open statement should be tracked", 1, handler.getTrackedStatements());
+            assertFalse("Open statement should stay open", open.isClosed());
+        }
+    }
+
+    /**
+     * Test that returning a connection rolls back open transactions and restores auto-commit
+     */
+    @Test
+    public void testReturnResetsConnectionState() throws SQLException {
+        try (Connection conn = pool.borrow(); Statement stmt = conn.createStatement()) {
+            stmt.execute("CREATE TABLE items (id INTEGER)");
+        }
+
+        Statement leftOpen;
+        try (Connection conn = pool.borrow()) {
+            conn.setAutoCommit(false);
+            leftOpen = conn.createStatement();
+            leftOpen.executeUpdate("INSERT INTO items (id) VALUES (1)");
+        }
+
+        assertTrue("Statements left open should be closed on return", leftOpen.isClosed());
+
+        try (Connection conn = pool.borrow();
+             Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT COUNT(*) FROM items")) {
+            assertTrue("Auto-commit should be restored", conn.getAutoCommit());
+            assertTrue("Count query should return a row", rs.next());
+            assertEquals("Uncommitted insert should be rolled back", 0, rs.getInt(1));
+        }
+    }
+
+    /**
+     * Test the pool metrics snapshot
+     */
+    @Test
+    public void testMetrics() throws SQLException {
+        Connection conn = pool.borrow();
+        ConnectionPool.PoolMetrics active = pool.getMetrics();
+        assertEquals("One connection should be active", 1, active.getActiveConnections());
+        assertEquals("No connection should be idle", 0, active.getIdleConnections());
+
+        pool.release(conn);
+        ConnectionPool.PoolMetrics idle = pool.getMetrics();
+        assertEquals("No connection should be active", 0, idle.getActiveConnections());
+        assertEquals("One connection should be idle", 1, idle.getIdleConnections());
+        assertEquals("One borrow should be counted", 1, idle.getTotalBorrows());
+        assertEquals("Max size should be reported", 2, idle.getMaxSize());
+        assertTrue("String form should contain the pool name", idle.toString().contains("test"));
+    }
+
+    /**
+     * Test constructor argument validation
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidPoolSize() {
+        new ConnectionPool("invalid", 0, ConnectionPoolTest::openConnection);
+    }
+}
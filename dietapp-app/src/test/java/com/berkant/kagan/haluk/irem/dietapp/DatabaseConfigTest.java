@@ -0,0 +1,172 @@
+package com.berkant.kagan.haluk.irem.dietapp;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Properties;
+
+/**
+ * Test class for DatabaseConfig
+ */
+public class DatabaseConfigTest {
+
+    /**
+     * Test that missing settings use the defaults of the previous hard-coded URL
+     */
+    @Test
+    public void testDefaults() {
+        DatabaseConfig config = new DatabaseConfig(new Properties());
+
+        assertEquals("Default URL should point at dietplanner.db", "jdbc:sqlite:dietplanner.db", config.getJdbcUrl());
+        assertEquals("Default journal mode should be WAL", "WAL", config.getJournalMode());
+        assertEquals("Default synchronous should be NORMAL", "NORMAL", config.getSynchronous());
+        assertEquals("Default cache size should be 1000", 1000, config.getCacheSize());
+        assertEquals("Default pool size should be 10", 10, config.getPoolSize());
+        assertEquals("Default mmap window should be 256 MiB", 268435456L, config.getMmapSize());
+        assertEquals("Background checkpoints should run every 10 seconds", 10000, config.getCheckpointInterval());
+        assertEquals("Default durability should be SYNC", WriteBehindQueue.DurabilityMode.SYNC, config.getDurability());
+        assertEquals("Default storage should be SQLite", "sqlite", config.getStorage());
+        assertEquals("Default engine should be SQLite", SqlDialect.SQLITE, config.getEngine());
+        assertFalse("Food logs should not be partitioned by default", config.isMonthlyFoodLogs());
+        assertEquals("Partitions should be compacted after 3 months", 3, config.getCompactAfterMonths());
+        assertEquals("Sharding should be off by default", 1, config.getShardCount());
+        assertEquals("Shard 0 should be the main file", "dietplanner.db", config.getShardPath(0));
+        assertEquals("Other shards should get their own file", "dietplanner-shard2.db", config.getShardPath(2));
+        assertEquals("Food logs should be cached up to 4 MiB", FoodLogCache.DEFAULT_MAX_BYTES,
+            config.getFoodLogCacheBytes());
+    }
+
+    /**
+     * Test that valid settings are used and invalid ones fall back to the defaults
+     */
+    @Test
+    public void testValuesAreValidated() {
+        Properties properties = new Properties();
+        properties.setProperty(DatabaseConfig.PATH, "/tmp/diet.db");
+        properties.setProperty(DatabaseConfig.SYNCHRONOUS, "full");
+        properties.setProperty(DatabaseConfig.CACHE_SIZE, "-8000");
+        properties.setProperty(DatabaseConfig.MMAP_SIZE, "268435456");
+        properties.setProperty(DatabaseConfig.DURABILITY, "group-commit");
+        properties.setProperty(DatabaseConfig.JOURNAL_MODE, "WAL; DROP TABLE users");
+        properties.setProperty(DatabaseConfig.PAGE_SIZE, "3000");
+        properties.setProperty(DatabaseConfig.POOL_SIZE, "0");
+        properties.setProperty(DatabaseConfig.BUSY_TIMEOUT, "soon");
+        properties.setProperty(DatabaseConfig.STORAGE, "Memory");
+        properties.setProperty(DatabaseConfig.FOOD_LOG_PARTITIONS, "monthly");
+        properties.setProperty(DatabaseConfig.COMPACT_AFTER_MONTHS, "0");
+        properties.setProperty(DatabaseConfig.SHARDS, "65");
+        properties.setProperty(DatabaseConfig.FOOD_LOG_CACHE_BYTES, "-1");
+
+        DatabaseConfig config = new DatabaseConfig(properties);
+
+        assertEquals("Path should be used", "jdbc:sqlite:/tmp/diet.db", config.getJdbcUrl());
+        assertEquals("Synchronous should be normalized", "FULL", config.getSynchronous());
+        assertEquals("Negative cache size should be allowed", -8000, config.getCacheSize());
+        assertEquals("Mmap size should be used", 268435456L, config.getMmapSize());
+        assertEquals("Durability should be parsed", WriteBehindQueue.DurabilityMode.GROUP_COMMIT, config.getDurability());
+        assertEquals("Unknown journal mode should fall back", "WAL", config.getJournalMode());
+        assertEquals("Page size must be a power of two", 4096, config.getPageSize());
+        assertEquals("Pool size must be positive", 10, config.getPoolSize());
+        assertEquals("Busy timeout must be a number", 3000, config.getBusyTimeout());
+        assertEquals("Storage should be normalized", "memory", config.getStorage());
+        assertTrue("Monthly partitions should be parsed", config.isMonthlyFoodLogs());
+        assertEquals("Current month must not be compacted", 3, config.getCompactAfterMonths());
+        assertEquals("Shard count must be at most 64", 1, config.getShardCount());
+        assertEquals("Shard path should keep the directory", "/tmp/diet-shard1.db", config.getShardPath(1));
+        assertEquals("Cache size must not be negative", FoodLogCache.DEFAULT_MAX_BYTES,
+            config.getFoodLogCacheBytes());
+    }
+
+    /**
+     * Test that the H2 engine gets its own URL and only the lock timeout
+     */
+    @Test
+    public void testH2Engine() throws Exception {
+        Properties properties = new Properties();
+        properties.setProperty(DatabaseConfig.ENGINE, "h2");
+        properties.setProperty(DatabaseConfig.BUSY_TIMEOUT, "4321");
+        properties.setProperty(DatabaseConfig.PATH, "/tmp/diet");
+        DatabaseConfig config = new DatabaseConfig(properties);
+
+        assertEquals("Engine should be parsed", SqlDialect.H2, config.getEngine());
+        assertEquals("H2 URL should be used", "jdbc:h2:file:/tmp/diet", config.getJdbcUrl());
+        assertTrue("Engine should be reported", config.toString().contains("engine=h2"));
+        assertEquals("Path without extension should get a suffix", "/tmp/diet-shard3", config.getShardPath(3));
+
+        Class.forName(SqlDialect.H2.getDriverClass());
+        try (Connection conn = DriverManager.getConnection("jdbc:h2:mem:config")) {
+            // H2 rejects PRAGMA statements, so this only passes if they are skipped
+            config.applyTo(conn, false);
+            config.applyTo(conn, true);
+            assertFalse("Connection should stay open", conn.isClosed());
+        }
+    }
+
+    /**
+     * Test that the settings are applied to a connection
+     */
+    @Test
+    public void testApplyToConnection() throws Exception {
+        Properties properties = new Properties();
+        properties.setProperty(DatabaseConfig.CACHE_SIZE, "1500");
+        properties.setProperty(DatabaseConfig.READER_CACHE_SIZE, "2500");
+        properties.setProperty(DatabaseConfig.BUSY_TIMEOUT, "4321");
+        properties.setProperty(DatabaseConfig.TEMP_STORE, "memory");
+        DatabaseConfig config = new DatabaseConfig(properties);
+
+        Class.forName("org.sqlite.JDBC");
+        try (Connection writer = DriverManager.getConnection("jdbc:sqlite::memory:");
+             Connection reader = DriverManager.getConnection("jdbc:sqlite::memory:")) {
+            config.applyTo(writer, false);
+            config.applyTo(reader, true);
+
+            assertEquals("Writer cache size should be applied", 1500, pragma(writer, "cache_size"));
+            assertEquals("Reader cache size should be applied", 2500, pragma(reader, "cache_size"));
+            assertEquals("Busy timeout should be applied", 4321, pragma(writer, "busy_timeout"));
+            assertEquals("Temp store should be applied", 2, pragma(writer, "temp_store"));
+            assertEquals("Reader should be query only", 1, pragma(reader, "query_only"));
+            assertEquals("Writer should not be query only", 0, pragma(writer, "query_only"));
+        }
+    }
+
+    /**
+     * Test that system properties override the configuration file
+     */
+    @Test
+    public void testLoadAppliesFileAndSystemProperties() throws IOException {
+        File file = File.createTempFile("dietapp", ".properties");
+        try (FileWriter writer = new FileWriter(file)) {
+            writer.write("dietapp.db.cache_size=2000\n");
+            writer.write("dietapp.db.mmap_size=1048576\n");
+        }
+        System.setProperty("dietapp.config", file.getAbsolutePath());
+        System.setProperty(DatabaseConfig.CACHE_SIZE, "3000");
+        try {
+            DatabaseConfig config = DatabaseConfig.load();
+
+            assertEquals("System property should override the file", 3000, config.getCacheSize());
+            assertEquals("File setting should be used", 1048576L, config.getMmapSize());
+            assertTrue("Settings should be reported", config.toString().contains("mmap_size=1048576"));
+        } finally {
+            System.clearProperty("dietapp.config");
+            System.clearProperty(DatabaseConfig.CACHE_SIZE);
+            file.delete();
+        }
+    }
+
+    private static int pragma(Connection conn, String name) throws SQLException {
+        try (Statement stmt = conn.createStatement(); ResultSet rs = stmt.executeQuery("PRAGMA " + name)) {
+            assertTrue("PRAGMA " + name + " should return a value", rs.next());
+            return rs.getInt(1);
+        }
+    }
+}
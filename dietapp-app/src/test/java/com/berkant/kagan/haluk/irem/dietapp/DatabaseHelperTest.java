@@ -14,6 +14,10 @@ import java.sql.SQLException;
 import java.sql.Statement;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Test class for DatabaseHelper
@@ -55,13 +59,10 @@ public class DatabaseHelperTest {
     }
     
     /**
-     * Reset the connection pool using reflection to start tests with a clean state
+     * Reset the connection pool to start tests with a clean state
      */
     private void resetConnectionPool() throws Exception {
-        Field connectionPoolField = DatabaseHelper.class.getDeclaredField("connectionPool");
-        connectionPoolField.setAccessible(true);
-        List<Connection> emptyPool = new ArrayList<>();
-        connectionPoolField.set(null, emptyPool);
+        DatabaseHelper.closeAllConnections();
     }
     
     /**
@@ -121,13 +122,9 @@ public class DatabaseHelperTest {
             // Release it
             DatabaseHelper.releaseConnection(conn);
             
-            // Get the connection pool using reflection to check its size
-            Field connectionPoolField = DatabaseHelper.class.getDeclaredField("connectionPool");
-            connectionPoolField.setAccessible(true);
-            @SuppressWarnings("unchecked")
-            List<Connection> connectionPool = (List<Connection>) connectionPoolField.get(null);
+            // Check the idle connection count of the pool
             
-            assertFalse("Connection pool should not be empty after releasing a connection", connectionPool.isEmpty());
+            assertFalse("Connection pool should not be empty after releasing a connection", DatabaseHelper.getPoolMetrics().getIdleConnections() == 0);
         } catch (Exception e) {
             fail("Test should not throw exception: " + e.getMessage());
         }
@@ -151,13 +148,9 @@ public class DatabaseHelperTest {
             // Close all connections
             DatabaseHelper.closeAllConnections();
             
-            // Get the connection pool using reflection to check its size
-            Field connectionPoolField = DatabaseHelper.class.getDeclaredField("connectionPool");
-            connectionPoolField.setAccessible(true);
-            @SuppressWarnings("unchecked")
-            List<Connection> connectionPool = (List<Connection>) connectionPoolField.get(null);
+            // Check the idle connection count of the pool
             
-            assertTrue("Connection pool should be empty after closing all connections", connectionPool.isEmpty());
+            assertTrue("Connection pool should be empty after closing all connections", DatabaseHelper.getPoolMetrics().getIdleConnections() == 0);
         } catch (Exception e) {
             fail("Test should not throw exception: " + e.getMessage());
         }
@@ -176,13 +169,9 @@ public class DatabaseHelperTest {
             // Call closeConnection
             DatabaseHelper.closeConnection();
             
-            // Get the connection pool using reflection
-            Field connectionPoolField = DatabaseHelper.class.getDeclaredField("connectionPool");
-            connectionPoolField.setAccessible(true);
-            @SuppressWarnings("unchecked")
-            List<Connection> connectionPool = (List<Connection>) connectionPoolField.get(null);
+            // Check the idle connection count of the pool
             
-            assertTrue("Connection pool should be empty after closeConnection", connectionPool.isEmpty());
+            assertTrue("Connection pool should be empty after closeConnection", DatabaseHelper.getPoolMetrics().getIdleConnections() == 0);
         } catch (Exception e) {
             fail("Test should not throw exception: " + e.getMessage());
         }
@@ -1024,20 +1013,15 @@ public class DatabaseHelperTest {
             Connection conn = DatabaseHelper.getConnection();
             assertNotNull("Connection should not be null", conn);
             
-            // Get access to the connectionPool through reflection
-            Field connectionPoolField = DatabaseHelper.class.getDeclaredField("connectionPool");
-            connectionPoolField.setAccessible(true);
-            @SuppressWarnings("unchecked")
-            List<Connection> connectionPool = (List<Connection>) connectionPoolField.get(null);
             
             // Remember the initial pool size
-            int initialSize = connectionPool.size();
+            int initialSize = DatabaseHelper.getPoolMetrics().getIdleConnections();
             
             // Release the connection
             DatabaseHelper.releaseConnection(conn);
             
             // Verify connection was added to pool
-            assertEquals("Pool size should increase by 1", initialSize + 1, connectionPool.size());
+            assertEquals("Pool size should increase by 1", initialSize + 1, DatabaseHelper.getPoolMetrics().getIdleConnections());
         } catch (Exception e) {
             fail("Test should not throw exception: " + e.getMessage());
         }
@@ -1050,17 +1034,13 @@ public class DatabaseHelperTest {
     public void testReleaseConnectionNull() {
         try {
             // Get initial pool size
-            Field connectionPoolField = DatabaseHelper.class.getDeclaredField("connectionPool");
-            connectionPoolField.setAccessible(true);
-            @SuppressWarnings("unchecked")
-            List<Connection> connectionPool = (List<Connection>) connectionPoolField.get(null);
-            int initialSize = connectionPool.size();
+            int initialSize = DatabaseHelper.getPoolMetrics().getIdleConnections();
             
             // Release a null connection
             DatabaseHelper.releaseConnection(null);
             
             // Verify pool size didn't change
-            assertEquals("Pool size should not change", initialSize, connectionPool.size());
+            assertEquals("Pool size should not change", initialSize, DatabaseHelper.getPoolMetrics().getIdleConnections());
         } catch (Exception e) {
             fail("Test should not throw exception: " + e.getMessage());
         }
@@ -1142,17 +1122,13 @@ public class DatabaseHelperTest {
             DatabaseHelper.releaseConnection(conn2);
             
             // Verify pool has connections
-            Field connectionPoolField = DatabaseHelper.class.getDeclaredField("connectionPool");
-            connectionPoolField.setAccessible(true);
-            @SuppressWarnings("unchecked")
-            List<Connection> connectionPool = (List<Connection>) connectionPoolField.get(null);
-            assertTrue("Pool should have connections before test", !connectionPool.isEmpty());
+            assertTrue("Pool should have connections before test", DatabaseHelper.getPoolMetrics().getIdleConnections() > 0);
             
             // Close all connections
             DatabaseHelper.closeAllConnections();
             
             // Verify pool is empty
-            assertTrue("Pool should be empty after closeAllConnections", connectionPool.isEmpty());
+            assertTrue("Pool should be empty after closeAllConnections", DatabaseHelper.getPoolMetrics().getIdleConnections() == 0);
         } catch (Exception e) {
             fail("Test should not throw exception: " + e.getMessage());
         }
@@ -1194,21 +1170,16 @@ public class DatabaseHelperTest {
                     // Simulate the isClosed check
                     boolean isClosed = conn.isClosed();
                     
-                    // Get access to the connectionPool and MAX_CONNECTIONS
-                    Field connectionPoolField = DatabaseHelper.class.getDeclaredField("connectionPool");
-                    connectionPoolField.setAccessible(true);
-                    @SuppressWarnings("unchecked")
-                    List<Connection> connectionPool = (List<Connection>) connectionPoolField.get(null);
-                    
                     Field maxConnectionsField = DatabaseHelper.class.getDeclaredField("MAX_CONNECTIONS");
                     maxConnectionsField.setAccessible(true);
                     int MAX_CONNECTIONS = maxConnectionsField.getInt(null);
                     
                     // Path 1.1: !isClosed && pool size < MAX_CONNECTIONS
-                    if (!isClosed && connectionPool.size() < MAX_CONNECTIONS) {
-                        int sizeBefore = connectionPool.size();
-                        connectionPool.add(conn);
-                        assertEquals("Pool size should increase by 1", sizeBefore + 1, connectionPool.size());
+                    if (!isClosed && DatabaseHelper.getPoolMetrics().getIdleConnections() < MAX_CONNECTIONS) {
+                        int sizeBefore = DatabaseHelper.getPoolMetrics().getIdleConnections();
+                        DatabaseHelper.releaseConnection(conn);
+                        assertEquals("Pool size should increase by 1", sizeBefore + 1, DatabaseHelper.getPoolMetrics().getIdleConnections());
+                        conn = null;
                     }
                     // Path 1.2: isClosed || pool size >= MAX_CONNECTIONS
                     else {
@@ -1232,21 +1203,17 @@ public class DatabaseHelperTest {
     @Test
     public void testCloseAllConnectionsPaths() {
         try {
-            // Get access to the connectionPool
-            Field connectionPoolField = DatabaseHelper.class.getDeclaredField("connectionPool");
-            connectionPoolField.setAccessible(true);
-            @SuppressWarnings("unchecked")
-            List<Connection> connectionPool = (List<Connection>) connectionPoolField.get(null);
-            
             // Add a few connections to the pool
             Connection conn1 = DatabaseHelper.getConnection();
             Connection conn2 = DatabaseHelper.getConnection();
+            
+            // Make a copy of the connections for our simulation
+            List<Connection> testPool = new ArrayList<>();
+            testPool.add(conn1);
+            testPool.add(conn2);
             DatabaseHelper.releaseConnection(conn1);
             DatabaseHelper.releaseConnection(conn2);
             
-            // Make a copy of the pool for our simulation
-            List<Connection> testPool = new ArrayList<>(connectionPool);
-            
             // Simulate the closeAllConnections method logic
             for (Connection conn : testPool) {
                 try {
@@ -1375,16 +1342,178 @@ public class DatabaseHelperTest {
         // return -1; // Error
         System.out.println("Return error value would be: -1");
     }
-   
-    
-    
-    
-    
     
+    /**
+     * Test that saving the same food twice returns the same catalog row
+     */
+    @Test
+    public void testSaveFoodAndGetIdReusesCatalogRow() throws SQLException {
+        Food food = new Food("Test Catalog Food " + System.currentTimeMillis(), 120.0, 210);
+        
+        int firstId = DatabaseHelper.saveFoodAndGetId(food);
+        long hitsBefore = DatabaseHelper.getFoodIdCache().getHits();
+        int secondId = DatabaseHelper.saveFoodAndGetId(
+            new Food(food.getName(), food.getGrams(), food.getCalories()));
+        
+        assertTrue("Food ID should be positive", firstId > 0);
+        assertEquals("Same food should resolve to the same ID", firstId, secondId);
+        assertEquals("Second save should be served from the cache",
+            hitsBefore + 1, DatabaseHelper.getFoodIdCache().getHits());
+        assertEquals("Food should be stored once", 1, countFoods(food));
+    }
     
+    /**
+     * Test that a food found in the database but not in the cache is not inserted again
+     */
+    @Test
+    public void testSaveFoodAndGetIdFindsExistingFood() throws SQLException {
+        Food food = new Food("Test Existing Food " + System.currentTimeMillis(), 80.0, 95);
+        int existingId = saveFoodDirectly(food);
+        
+        assertEquals("Existing food should be found", existingId, DatabaseHelper.saveFoodAndGetId(food));
+        assertEquals("Food should not be inserted again", 1, countFoods(food));
+    }
     
+    /**
+     * Test that a cached ID of a deleted food is not returned
+     */
+    @Test
+    public void testSaveFoodAndGetIdAfterFoodWasDeleted() throws SQLException {
+        FoodNutrient food = new FoodNutrient("Test Deleted Food " + System.currentTimeMillis(),
+            100.0, 150, 10.0, 20.0, 5.0, 2.0, 8.0, 100.0);
+        int oldId = DatabaseHelper.saveFoodAndGetId(food);
+        
+        try (PreparedStatement pstmt = connection.prepareStatement("DELETE FROM foods WHERE id = ?")) {
+            pstmt.setInt(1, oldId);
+            pstmt.executeUpdate();
+        }
+        
+        int newId = DatabaseHelper.saveFoodAndGetId(food);
+        assertTrue("Food should be saved again", newId > 0);
+        assertNotEquals("Deleted food ID should not be reused from the cache", oldId, newId);
+        assertEquals("Nutrients should be saved for the new row", 20.0, getNutrientValue(newId, "carbs"), 0.001);
+    }
     
+    /**
+     * Test that saving a known food with new nutrients updates them
+     */
+    @Test
+    public void testSaveFoodAndGetIdUpdatesNutrients() throws SQLException {
+        String name = "Test Nutrient Update " + System.currentTimeMillis();
+        int foodId = DatabaseHelper.saveFoodAndGetId(
+            new FoodNutrient(name, 100.0, 150, 10.0, 20.0, 5.0, 2.0, 8.0, 100.0));
+        int updatedId = DatabaseHelper.saveFoodAndGetId(
+            new FoodNutrient(name, 100.0, 150, 12.0, 20.0, 5.0, 2.0, 8.0, 100.0));
+        
+        assertEquals("Food ID should not change", foodId, updatedId);
+        assertEquals("Protein should be updated", 12.0, getNutrientValue(foodId, "protein"), 0.001);
+    }
+
+    /**
+     * Test that saving a known food with the same nutrients writes nothing
+     */
+    @Test
+    public void testSaveFoodAndGetIdSkipsUnchangedNutrients() throws SQLException {
+        FoodNutrient food = new FoodNutrient("Test Unchanged Nutrients " + System.currentTimeMillis(),
+            100.0, 150, 10.0, 20.0, 5.0, 2.0, 8.0, 100.0);
+        int foodId = DatabaseHelper.saveFoodAndGetId(connection, food);
+        long changesBefore = totalChanges();
+
+        assertEquals("Cached food should be found", foodId, DatabaseHelper.saveFoodAndGetId(connection, food));
+        DatabaseHelper.getFoodIdCache().clear();
+        assertEquals("Stored food should be found", foodId, DatabaseHelper.saveFoodAndGetId(connection, food));
+        assertEquals("Unchanged nutrients should not be written", changesBefore, totalChanges());
+    }
+
+    /**
+     * Count the rows changed on the test connection so far
+     */
+    private long totalChanges() throws SQLException {
+        try (Statement stmt = connection.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT total_changes()")) {
+            rs.next();
+            return rs.getLong(1);
+        }
+    }
+
+    /**
+     * Count the foods with the name, grams and calories of a food
+     */
+    private int countFoods(Food food) throws SQLException {
+        try (PreparedStatement pstmt = connection.prepareStatement(
+                "SELECT COUNT(*) FROM foods WHERE name = ? AND grams = ? AND calories = ?")) {
+            pstmt.setString(1, food.getName());
+            pstmt.setDouble(2, food.getGrams());
+            pstmt.setInt(3, food.getCalories());
+            try (ResultSet rs = pstmt.executeQuery()) {
+                return rs.next() ? rs.getInt(1) : 0;
+            }
+        }
+    }
     
+    /**
+     * Test that read connections reject writes
+     */
+    @Test
+    public void testReadConnectionIsQueryOnly() throws SQLException {
+        Connection conn = DatabaseHelper.getReadConnection();
+        assertNotNull("Read connection should not be null", conn);
+        try (Statement stmt = conn.createStatement()) {
+            try (ResultSet rs = stmt.executeQuery("SELECT COUNT(*) FROM users")) {
+                assertTrue("Read connection should run queries", rs.next());
+            }
+            try {
+                stmt.executeUpdate("DELETE FROM users WHERE username = 'test_readonly'");
+                fail("Read connection should reject writes");
+            } catch (SQLException e) {
+                assertTrue("Error should come from query_only: " + e.getMessage(),
+                    e.getMessage().contains("readonly"));
+            }
+        } finally {
+            DatabaseHelper.releaseConnection(conn);
+        }
+    }
     
+    /**
+     * Test that writers wait for the single writer connection
+     */
+    @Test
+    public void testWriteConnectionIsExclusive() throws Exception {
+        Connection writer = DatabaseHelper.getWriteConnection();
+        assertNotNull("Write connection should not be null", writer);
+        
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<Connection> waiting = executor.submit(DatabaseHelper::getWriteConnection);
+            Thread.sleep(200);
+            assertFalse("Second writer should wait", waiting.isDone());
+            assertEquals("Second writer should be queued", 1,
+                DatabaseHelper.getWriterPoolMetrics().getWaitingThreads());
+            
+            DatabaseHelper.releaseConnection(writer);
+            Connection next = waiting.get(5, TimeUnit.SECONDS);
+            assertNotNull("Second writer should get the connection", next);
+            DatabaseHelper.releaseConnection(next);
+        } finally {
+            executor.shutdown();
+        }
+        assertEquals("Writer pool should hold a single connection", 1,
+            DatabaseHelper.getWriterPoolMetrics().getMaxSize());
+    }
     
-}
\ No newline at end of file
+    /**
+     * Test that connections are returned to the pool they were borrowed from
+     */
+    @Test
+    public void testReleaseConnectionReturnsToOwningPool() {
+        Connection reader = DatabaseHelper.getReadConnection();
+        int readerIdle = DatabaseHelper.getReaderPoolMetrics().getIdleConnections();
+        int mainIdle = DatabaseHelper.getPoolMetrics().getIdleConnections();
+        
+        DatabaseHelper.releaseConnection(reader);
+        
+        assertEquals("Reader should return to the reader pool", readerIdle + 1,
+            DatabaseHelper.getReaderPoolMetrics().getIdleConnections());
+        assertEquals("Main pool should not change", mainIdle, DatabaseHelper.getPoolMetrics().getIdleConnections());
+    }
+}
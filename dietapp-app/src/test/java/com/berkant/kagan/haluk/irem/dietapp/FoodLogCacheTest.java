@@ -0,0 +1,168 @@
+package com.berkant.kagan.haluk.irem.dietapp;
+
+import static org.junit.Assert.*;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Test class for FoodLogCache
+ */
+public class FoodLogCacheTest {
+
+    private FoodLogCache cache;
+
+    @Before
+    public void setUp() {
+        cache = new FoodLogCache(FoodLogCache.DEFAULT_MAX_BYTES);
+    }
+
+    /**
+     * Test that cached foods are returned as copies and counted as hits
+     */
+    @Test
+    public void testPutAndGet() {
+        assertNull("Uncached date should miss", cache.get(1, "2025-05-01", null));
+        cache.put(1, "2025-05-01", null, Arrays.asList(new Food("Apple", 100, 52),
+            new FoodNutrient("Salmon", 100, 206, 22.0, 0.0, 13.0, 0.0, 0.0, 59.0)), cache.getVersion(1, "2025-05-01", null));
+
+        List<Food> foods = cache.get(1, "2025-05-01", null);
+        assertEquals("Cached foods should be returned", 2, foods.size());
+        assertEquals("Nutrients should be kept", 22.0, ((FoodNutrient) foods.get(1)).getProtein(), 0.001);
+        foods.get(0).setCalories(1);
+        foods.clear();
+        assertEquals("Changing a result should not change the cache", 52,
+            cache.get(1, "2025-05-01", null).get(0).getCalories());
+        assertNull("Meal plans should be cached apart from food logs", cache.get(1, "2025-05-01", "lunch"));
+        assertEquals("Two hits should be counted", 2, cache.getHits());
+        assertEquals("Two misses should be counted", 2, cache.getMisses());
+        assertEquals("Hit rate should be reported", 0.5, cache.getHitRate(), 0.001);
+        assertTrue("Size should be estimated", cache.getBytes() > 0);
+    }
+
+    /**
+     * Test that invalidation removes only the written user, date and meal
+     */
+    @Test
+    public void testInvalidate() {
+        List<Food> apple = Collections.singletonList(new Food("Apple", 100, 52));
+        cache.put(1, "2025-05-01", null, apple, cache.getVersion(1, "2025-05-01", null));
+        cache.put(1, "2025-05-01", "lunch", apple, cache.getVersion(1, "2025-05-01", "lunch"));
+        cache.put(2, "2025-05-01", null, apple, cache.getVersion(2, "2025-05-01", null));
+
+        cache.invalidate(1, "2025-05-01", null);
+
+        assertNull("Written food log should be removed", cache.get(1, "2025-05-01", null));
+        assertNotNull("Meal plan of the day should stay cached", cache.get(1, "2025-05-01", "lunch"));
+        assertNotNull("Other users should stay cached", cache.get(2, "2025-05-01", null));
+        assertEquals("Invalidation should be counted", 1, cache.getInvalidations());
+
+        cache.clear();
+        assertEquals("Cleared cache should be empty", 0, cache.size());
+        assertEquals("Cleared cache should use no memory", 0, cache.getBytes());
+    }
+
+    /**
+     * Test that a result read before a write is not cached after it
+     */
+    @Test
+    public void testStaleResultIsNotCached() {
+        List<Food> apple = Collections.singletonList(new Food("Apple", 100, 52));
+        long version = cache.getVersion(1, "2025-05-01", null);
+        cache.invalidate(1, "2025-05-01", null);
+        cache.put(1, "2025-05-01", null, apple, version);
+        assertNull("Result read before the write should be dropped", cache.get(1, "2025-05-01", null));
+
+        version = cache.getVersion(1, "2025-05-01", null);
+        cache.clear();
+        cache.put(1, "2025-05-01", null, apple, version);
+        assertNull("Result read before a clear should be dropped", cache.get(1, "2025-05-01", null));
+    }
+
+    /**
+     * Test that writes of other users and dates do not keep a result out of the cache
+     */
+    @Test
+    public void testOtherWritesDoNotBlockPut() {
+        long version = cache.getVersion(1, "2025-05-01", null);
+        cache.invalidate(2, "2025-05-01", null);
+        cache.invalidate(1, "2025-05-02", null);
+        cache.put(1, "2025-05-01", null, Collections.singletonList(new Food("Apple", 100, 52)), version);
+
+        assertNotNull("Result should be cached despite writes to other keys", cache.get(1, "2025-05-01", null));
+    }
+
+    /**
+     * Test that the least recently used results are evicted to stay within the size
+     */
+    @Test
+    public void testLeastRecentlyUsedIsEvicted() {
+        List<Food> apple = Collections.singletonList(new Food("Apple", 100, 52));
+        FoodLogCache small = new FoodLogCache(700);
+        small.put(1, "2025-05-01", null, apple, small.getVersion(1, "2025-05-01", null));
+        small.put(1, "2025-05-02", null, apple, small.getVersion(1, "2025-05-02", null));
+        small.get(1, "2025-05-01", null);
+        small.put(1, "2025-05-03", null, apple, small.getVersion(1, "2025-05-03", null));
+
+        assertTrue("Cache should stay within its size", small.getBytes() <= small.getMaxBytes());
+        assertNull("Least recently used date should be evicted", small.get(1, "2025-05-02", null));
+        assertNotNull("Recently used date should stay cached", small.get(1, "2025-05-01", null));
+        assertEquals("Eviction should be counted", 1, small.getEvictions());
+
+        small.put(1, "2025-05-04", null, Collections.nCopies(100, new Food("Apple", 100, 52)), small.getVersion(1, "2025-05-04", null));
+        assertNull("Result larger than the cache should not be cached", small.get(1, "2025-05-04", null));
+        assertEquals("Large result should not evict anything", 1, small.getEvictions());
+    }
+
+    /**
+     * Test that a cache of size 0 caches nothing
+     */
+    @Test
+    public void testDisabled() {
+        FoodLogCache disabled = new FoodLogCache(0);
+        disabled.put(1, "2025-05-01", null, Collections.singletonList(new Food("Apple", 100, 52)), 0);
+
+        assertNull("Nothing should be cached", disabled.get(1, "2025-05-01", null));
+        assertEquals("Disabled cache should not count lookups", 0, disabled.getMisses());
+    }
+
+    /**
+     * Test that the writes of the service invalidate the results it reads
+     */
+    @Test
+    public void testServiceWritesInvalidate() {
+        StorageBackend storage = StorageBackend.create("memory");
+        assertTrue("User should be registered",
+            new AuthenticationService(storage).register("alice", "secret", "alice@example.com", "Alice"));
+        MealPlanningService service = new MealPlanningService(storage, WriteBehindQueue.DurabilityMode.GROUP_COMMIT, cache);
+        try {
+            assertTrue("Food should be logged", service.logFood("alice", "2025-05-01", new Food("Apple", 100, 52)));
+            assertEquals("Food log should be read", 1, service.getFoodLog("alice", "2025-05-01").size());
+            assertEquals("Food log should be read again", 1, service.getFoodLog("alice", "2025-05-01").size());
+            assertEquals("Second read should hit the cache", 1, cache.getHits());
+
+            assertTrue("Food should be logged", service.logFood("alice", "2025-05-01", new Food("Bread", 50, 130)));
+            assertEquals("Logged food should be seen", 2, service.getFoodLog("alice", "2025-05-01").size());
+
+            assertTrue("Meal plan should be read", service.getMealPlan("alice", "2025-05-01", "lunch").isEmpty());
+            assertTrue("Meal plan should be added",
+                service.addMealPlan("alice", "2025-05-01", "lunch", new Food("Rice", 150, 195)));
+            assertEquals("Planned food should be seen", 1, service.getMealPlan("alice", "2025-05-01", "lunch").size());
+            assertEquals("Writes should invalidate their results", 2, cache.getInvalidations());
+        } finally {
+            service.close();
+        }
+    }
+
+    /**
+     * Test constructor argument validation
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidSize() {
+        new FoodLogCache(-1);
+    }
+}
@@ -0,0 +1,174 @@
+package com.berkant.kagan.haluk.irem.dietapp;
+
+import static org.junit.Assert.*;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Test class for FoodLogPartitions
+ */
+public class FoodLogPartitionsTest {
+
+    private Connection conn;
+    private FoodLogPartitions partitions;
+
+    @Before
+    public void setUp() throws Exception {
+        Class.forName("org.sqlite.JDBC");
+        conn = DriverManager.getConnection("jdbc:sqlite::memory:");
+        try (Statement stmt = conn.createStatement()) {
+            stmt.execute("CREATE TABLE food_logs (id INTEGER PRIMARY KEY AUTOINCREMENT, user_id INTEGER NOT NULL, " +
+                "date TEXT NOT NULL, food_id INTEGER NOT NULL)");
+            stmt.execute("CREATE TABLE food_log_partitions (name TEXT PRIMARY KEY, period TEXT NOT NULL, " +
+                "compacted INTEGER NOT NULL DEFAULT 0)");
+        }
+        partitions = new FoodLogPartitions(true, 3);
+    }
+
+    @After
+    public void tearDown() throws SQLException {
+        conn.close();
+    }
+
+    /**
+     * Test the partition names of dates
+     */
+    @Test
+    public void testPartitionOf() {
+        assertEquals("Date should map to its month", "food_logs_202505", FoodLogPartitions.partitionOf("2025-05-31"));
+        assertNull("Invalid date should have no partition", FoodLogPartitions.partitionOf("2025-02-30"));
+        assertNull("Other formats should have no partition", FoodLogPartitions.partitionOf("05/31/2025"));
+        assertNull("Null should have no partition", FoodLogPartitions.partitionOf(null));
+
+        try {
+            new FoodLogPartitions(true, 0);
+            fail("The current month must not be compacted");
+        } catch (IllegalArgumentException e) {
+            assertTrue("Message should mention the month", e.getMessage().contains("month"));
+        }
+    }
+
+    /**
+     * Test that switching partitioning on moves the existing logs
+     */
+    @Test
+    public void testInitializeMovesLegacyLogs() throws SQLException {
+        execute("INSERT INTO food_logs (user_id, date, food_id) VALUES " +
+            "(1, '2025-01-15', 1), (1, '2025-02-01', 2), (2, '2025-01-15', 3), (1, 'someday', 4)");
+
+        assertEquals("Logs of valid dates should be moved", 3, partitions.initialize(conn));
+        assertEquals("Partitions should be created per month",
+            Arrays.asList("food_logs_202501", "food_logs_202502"), partitions.getPartitions(conn));
+        assertEquals("January logs should be moved", 2, count("food_logs_202501"));
+        assertEquals("Invalid dates should stay in food_logs", 1, count("food_logs"));
+        assertEquals("Nothing is left to move", 0, partitions.initialize(conn));
+    }
+
+    /**
+     * Test that reads and writes are routed to the partitions of their dates
+     */
+    @Test
+    public void testRouting() throws SQLException {
+        partitions.initialize(conn);
+
+        assertNull("Month without logs should not be read", partitions.readTable(conn, "2025-03-10"));
+        assertEquals("Write should create the partition", "food_logs_202503", partitions.writeTable(conn, "2025-03-10"));
+        assertEquals("Read should use the partition", "food_logs_202503", partitions.readTable(conn, "2025-03-31"));
+        partitions.writeTable(conn, "2025-05-01");
+        partitions.writeTable(conn, "2024-12-24");
+
+        assertEquals("Range should only read its months", Arrays.asList("food_logs_202503", "food_logs_202505"),
+            partitions.readTables(conn, "2025-01-01", "2025-05-31"));
+        assertEquals("Reversed range should read nothing", Collections.emptyList(),
+            partitions.readTables(conn, "2025-05-31", "2025-01-01"));
+        assertEquals("Invalid date should use food_logs", "food_logs", partitions.writeTable(conn, "someday"));
+
+        FoodLogPartitions unpartitioned = new FoodLogPartitions(false, 3);
+        assertEquals("Without partitioning writes should use food_logs", "food_logs", unpartitioned.writeTable(conn, "2025-03-10"));
+        assertEquals("Without partitioning ranges should use food_logs", Collections.singletonList("food_logs"),
+            unpartitioned.readTables(conn, "2025-01-01", "2025-05-31"));
+    }
+
+    /**
+     * Test that a partition created in a rolled back transaction is forgotten
+     */
+    @Test
+    public void testInvalidateAfterRollback() throws SQLException {
+        partitions.initialize(conn);
+        conn.setAutoCommit(false);
+        partitions.writeTable(conn, "2025-03-10");
+        conn.rollback();
+        conn.setAutoCommit(true);
+
+        partitions.invalidate();
+        assertNull("Rolled back partition should not be read", partitions.readTable(conn, "2025-03-10"));
+        assertEquals("Partition should be created again", "food_logs_202503", partitions.writeTable(conn, "2025-03-10"));
+        assertEquals("Partition should be usable", 0, count("food_logs_202503"));
+    }
+
+    /**
+     * Test that cold partitions are rewritten in user and date order once
+     */
+    @Test
+    public void testCompactColdPartitions() throws SQLException {
+        partitions.initialize(conn);
+        String cold = partitions.writeTable(conn, "2025-01-01");
+        String warm = partitions.writeTable(conn, "2025-03-01");
+        execute("INSERT INTO " + cold + " (user_id, date, food_id) VALUES " +
+            "(2, '2025-01-02', 1), (1, '2025-01-02', 2), (2, '2025-01-01', 3), (1, '2025-01-02', 4)");
+        execute("INSERT INTO " + warm + " (user_id, date, food_id) VALUES (2, '2025-03-02', 5), (1, '2025-03-01', 6)");
+
+        assertEquals("Only the cold partition should be compacted", 1, partitions.compact(conn, YearMonth.of(2025, 5)));
+        assertEquals("Rows should be ordered by user and date", Arrays.asList(2, 4, 3, 1), foodIds(cold));
+        assertEquals("Warm partition should be unchanged", Arrays.asList(5, 6), foodIds(warm));
+        assertEquals("Compacted partition should not be compacted again", 0, partitions.compact(conn, YearMonth.of(2025, 5)));
+        assertEquals("Warm partition should be compacted when it gets cold", 1, partitions.compact(conn, YearMonth.of(2025, 6)));
+
+        try (Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery(
+                 "SELECT COUNT(*) FROM sqlite_master WHERE type = 'index' AND tbl_name = '" + cold + "'")) {
+            assertTrue("Indexes should be counted", rs.next());
+            assertEquals("Covering indexes should be recreated", 2, rs.getInt(1));
+        }
+        assertEquals("Compacted partition should take new logs", cold, partitions.writeTable(conn, "2025-01-20"));
+        assertEquals("Unpartitioned logs are never compacted", 0,
+            new FoodLogPartitions(false, 3).compact(conn, YearMonth.of(2025, 6)));
+    }
+
+    private void execute(String sql) throws SQLException {
+        try (Statement stmt = conn.createStatement()) {
+            stmt.execute(sql);
+        }
+    }
+
+    private int count(String table) throws SQLException {
+        try (Statement stmt = conn.createStatement(); ResultSet rs = stmt.executeQuery("SELECT COUNT(*) FROM " + table)) {
+            assertTrue("Rows should be counted", rs.next());
+            return rs.getInt(1);
+        }
+    }
+
+    private List<Integer> foodIds(String table) throws SQLException {
+        List<Integer> ids = new ArrayList<>();
+        try (Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT food_id FROM " + table + " ORDER BY id")) {
+            while (rs.next()) {
+                ids.add(rs.getInt(1));
+            }
+        }
+        return ids;
+    }
+}
@@ -0,0 +1,77 @@
+package com.berkant.kagan.haluk.irem.dietapp;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Compares the throughput of logging foods one by one with logging them as a batch.
+ * @details Not part of the unit test suite. Run it with
+ *          mvn test-compile exec:java -Dexec.mainClass=com.berkant.kagan.haluk.irem.dietapp.FoodLoggingBenchmark
+ *          -Dexec.classpathScope=test [-Dexec.args="days foodsPerDay"]. It registers a temporary
+ *          user in the application database, syncs the given number of days (200 by default)
+ *          with logFood() and then with logFoods(), and removes the user and its food logs again.
+ *          Add -Ddietapp.db.engine=h2 to compare the throughput of the H2 engine and
+ *          -Ddietapp.db.food_log_partitions=monthly to log into monthly partitions;
+ *          with -Ddietapp.db.shards=4 the user is logged into its shard file.
+ * @author berkant
+ */
+public class FoodLoggingBenchmark {
+    private static final String[] FOOD_NAMES = {
+        "Oatmeal", "Banana", "Greek Yogurt", "Chicken Breast", "Brown Rice",
+        "Broccoli", "Apple", "Almonds", "Salmon", "Sweet Potato"
+    };
+
+    public static void main(String[] args) throws Exception {
+        int days = args.length > 0 ? Integer.parseInt(args[0]) : 200;
+        int foodsPerDay = args.length > 1 ? Integer.parseInt(args[1]) : 15;
+
+        DatabaseHelper.initializeDatabase();
+        StorageBackend storage = StorageBackend.create(DatabaseHelper.getConfig().getStorage());
+        AuthenticationService authService = new AuthenticationService(storage);
+        MealPlanningService service = new MealPlanningService(storage, WriteBehindQueue.DurabilityMode.SYNC);
+        String username = "benchmark_" + System.currentTimeMillis();
+        if (!authService.register(username, "benchmark", "benchmark@example.com", "Benchmark User")) {
+            System.out.println("Could not register the benchmark user");
+            return;
+        }
+
+        try {
+            List<Food> foods = new ArrayList<>();
+            for (int i = 0; i < foodsPerDay; i++) {
+                String name = FOOD_NAMES[i % FOOD_NAMES.length];
+                foods.add(new Food("Benchmark " + name, 100 + i, 50 + 10 * i));
+            }
+            // Warm up the caches and the catalog rows
+            service.logFoods(username, "2000-01-01", foods);
+
+            System.out.println("Syncing " + days + " days of " + foodsPerDay + " foods");
+
+            long start = System.nanoTime();
+            for (int day = 0; day < days; day++) {
+                for (Food food : foods) {
+                    service.logFood(username, date(day), food);
+                }
+            }
+            double single = (System.nanoTime() - start) / 1e6;
+
+            start = System.nanoTime();
+            for (int day = 0; day < days; day++) {
+                service.logFoods(username, date(days + day), foods);
+            }
+            double batch = (System.nanoTime() - start) / 1e6;
+
+            int items = days * foodsPerDay;
+            System.out.printf("%-10s %10.1f ms  %10.0f items/s%n", "logFood", single, items / single * 1000);
+            System.out.printf("%-10s %10.1f ms  %10.0f items/s%n", "logFoods", batch, items / batch * 1000);
+            System.out.printf("Speedup: %.1fx%n", single / Math.max(batch, 0.001));
+        } finally {
+            authService.deleteUser(username);
+            DatabaseHelper.closeAllConnections();
+        }
+    }
+
+    private static String date(int day) {
+        return LocalDate.of(2001, 1, 1).plusDays(day).toString();
+    }
+}
@@ -0,0 +1,180 @@
+package com.berkant.kagan.haluk.irem.dietapp;
+
+import java.io.File;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Measures how many food log rows per second are read into foods by label and by index.
+ * @details Not part of the unit test suite. Run it with
+ *          mvn test-compile exec:java -Dexec.mainClass=com.berkant.kagan.haluk.irem.dietapp.FoodRowMapperBenchmark
+ *          -Dexec.classpathScope=test [-Dexec.args="rows"]. It fills a temporary database with
+ *          the given number of food log rows of one user (100,000 by default), half of them
+ *          with nutrients, and reads them all ITERATIONS times after WARMUP untimed reads: once
+ *          with SELECT f.*, fn.* and column labels as before, once with FoodRowMapper.
+ * @author berkant
+ */
+public class FoodRowMapperBenchmark {
+    private static final int FOODS = 5000;
+    private static final int DAYS = 365;
+    private static final int WARMUP = 5;
+    private static final int ITERATIONS = 20;
+
+    private static final String FROM_SQL =
+        " FROM food_logs fl " +
+        "JOIN foods f ON fl.food_id = f.id " +
+        "LEFT JOIN food_nutrients fn ON f.id = fn.food_id " +
+        "WHERE fl.user_id = ?";
+    private static final String BY_LABEL_SQL = "SELECT f.*, fn.*" + FROM_SQL;
+    private static final String BY_INDEX_SQL = "SELECT " + FoodRowMapper.COLUMNS + FROM_SQL;
+
+    public static void main(String[] args) throws Exception {
+        int rows = args.length > 0 ? Integer.parseInt(args[0]) : 100000;
+        File dbFile = File.createTempFile("dietapp-benchmark", ".db");
+        dbFile.deleteOnExit();
+
+        Class.forName("org.sqlite.JDBC");
+        try (Connection conn = DriverManager.getConnection("jdbc:sqlite:" + dbFile.getAbsolutePath())) {
+            System.out.println("Loading " + rows + " food log rows...");
+            createSchema(conn);
+            populate(conn, rows);
+
+            double byLabel = 0;
+            double byIndex = 0;
+            // Alternate the two readers so neither profits from a warmer cache
+            for (int round = 0; round < 2; round++) {
+                byLabel += rowsPerSecond(conn, false);
+                byIndex += rowsPerSecond(conn, true);
+            }
+            byLabel /= 2;
+            byIndex /= 2;
+
+            System.out.println();
+            System.out.printf("f.*, fn.* by label      %,12.0f rows/s%n", byLabel);
+            System.out.printf("FoodRowMapper by index  %,12.0f rows/s  (%.2fx)%n", byIndex, byIndex / byLabel);
+        } finally {
+            dbFile.delete();
+        }
+    }
+
+    private static void createSchema(Connection conn) throws SQLException {
+        try (Statement stmt = conn.createStatement()) {
+            stmt.execute("PRAGMA journal_mode=WAL");
+            stmt.execute("CREATE TABLE foods (id INTEGER PRIMARY KEY AUTOINCREMENT, name TEXT NOT NULL, " +
+                "grams REAL NOT NULL, calories INTEGER NOT NULL, meal_type TEXT)");
+            stmt.execute("CREATE TABLE food_nutrients (id INTEGER PRIMARY KEY AUTOINCREMENT, food_id INTEGER NOT NULL, " +
+                "protein REAL NOT NULL, carbs REAL NOT NULL, fat REAL NOT NULL, fiber REAL NOT NULL, " +
+                "sugar REAL NOT NULL, sodium REAL NOT NULL)");
+            stmt.execute("CREATE TABLE food_logs (id INTEGER PRIMARY KEY AUTOINCREMENT, user_id INTEGER NOT NULL, " +
+                "date TEXT NOT NULL, food_id INTEGER NOT NULL)");
+            stmt.execute("CREATE INDEX idx_food_nutrients_food ON food_nutrients (food_id)");
+            stmt.execute("CREATE INDEX idx_food_logs_user_date ON food_logs (user_id, date)");
+        }
+    }
+
+    private static void populate(Connection conn, int rows) throws SQLException {
+        Random random = new Random(42);
+        conn.setAutoCommit(false);
+
+        try (PreparedStatement food = conn.prepareStatement(
+                "INSERT INTO foods (name, grams, calories, meal_type) VALUES (?, ?, ?, ?)");
+             PreparedStatement nutrients = conn.prepareStatement(
+                "INSERT INTO food_nutrients (food_id, protein, carbs, fat, fiber, sugar, sodium) " +
+                "VALUES (?, ?, ?, ?, ?, ?, ?)")) {
+            for (int i = 1; i <= FOODS; i++) {
+                food.setString(1, "Food " + i);
+                food.setDouble(2, 100);
+                food.setInt(3, 50 + random.nextInt(500));
+                food.setString(4, "lunch");
+                food.addBatch();
+                if (i % 2 == 0) {
+                    nutrients.setInt(1, i);
+                    for (int n = 2; n <= 7; n++) {
+                        nutrients.setDouble(n, random.nextDouble() * 20);
+                    }
+                    nutrients.addBatch();
+                }
+            }
+            food.executeBatch();
+            nutrients.executeBatch();
+        }
+
+        try (PreparedStatement log = conn.prepareStatement(
+                "INSERT INTO food_logs (user_id, date, food_id) VALUES (1, ?, ?)")) {
+            for (int i = 0; i < rows; i++) {
+                log.setString(1, LocalDate.of(2025, 1, 1).plusDays(random.nextInt(DAYS)).toString());
+                log.setInt(2, 1 + random.nextInt(FOODS));
+                log.addBatch();
+                if (i % 10000 == 9999) {
+                    log.executeBatch();
+                }
+            }
+            log.executeBatch();
+        }
+
+        conn.commit();
+        conn.setAutoCommit(true);
+    }
+
+    /**
+     * Reads all food log rows ITERATIONS times.
+     *
+     * @param byIndex Whether to read with FoodRowMapper rather than by column label
+     * @return The rows read per second
+     */
+    private static double rowsPerSecond(Connection conn, boolean byIndex) throws SQLException {
+        try (PreparedStatement pstmt = conn.prepareStatement(byIndex ? BY_INDEX_SQL : BY_LABEL_SQL)) {
+            pstmt.setInt(1, 1);
+            long total = 0;
+            long rowsRead = 0;
+            for (int i = 0; i < WARMUP + ITERATIONS; i++) {
+                long start = System.nanoTime();
+                List<Food> foods = new ArrayList<>();
+                try (ResultSet rs = pstmt.executeQuery()) {
+                    while (rs.next()) {
+                        foods.add(byIndex ? FoodRowMapper.map(rs, 1) : mapByLabel(rs));
+                    }
+                }
+                if (i >= WARMUP) {
+                    total += System.nanoTime() - start;
+                    rowsRead += foods.size();
+                }
+            }
+            double perSecond = rowsRead / (total / 1e9);
+            System.out.printf("  %s: %,.0f rows/s%n", byIndex ? "by index" : "by label", perSecond);
+            return perSecond;
+        }
+    }
+
+    /**
+     * Creates a food the way the repositories did before FoodRowMapper.
+     */
+    private static Food mapByLabel(ResultSet rs) throws SQLException {
+        if (rs.getObject("protein") != null) {
+            return new FoodNutrient(
+                rs.getString("name"),
+                rs.getDouble("grams"),
+                rs.getInt("calories"),
+                rs.getDouble("protein"),
+                rs.getDouble("carbs"),
+                rs.getDouble("fat"),
+                rs.getDouble("fiber"),
+                rs.getDouble("sugar"),
+                rs.getDouble("sodium")
+            );
+        }
+        return new Food(
+            rs.getString("name"),
+            rs.getDouble("grams"),
+            rs.getInt("calories")
+        );
+    }
+}
@@ -0,0 +1,65 @@
+package com.berkant.kagan.haluk.irem.dietapp;
+
+import static org.junit.Assert.*;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.Statement;
+
+/**
+ * Test class for FoodRowMapper
+ */
+public class FoodRowMapperTest {
+
+    private Connection conn;
+
+    @Before
+    public void setUp() throws Exception {
+        Class.forName("org.sqlite.JDBC");
+        conn = DriverManager.getConnection("jdbc:sqlite::memory:");
+        try (Statement stmt = conn.createStatement()) {
+            stmt.execute("CREATE TABLE foods (id INTEGER PRIMARY KEY, name TEXT, grams REAL, calories INTEGER, meal_type TEXT)");
+            stmt.execute("CREATE TABLE food_nutrients (id INTEGER PRIMARY KEY, food_id INTEGER, protein REAL, " +
+                "carbs REAL, fat REAL, fiber REAL, sugar REAL, sodium REAL)");
+            stmt.execute("INSERT INTO foods VALUES (1, 'Apple', 100, 52, 'snack'), (2, 'Salmon', 100, 206, 'dinner')");
+            stmt.execute("INSERT INTO food_nutrients VALUES (7, 2, 22.0, 0.0, 13.0, 0.5, 0.1, 59.0)");
+        }
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        conn.close();
+    }
+
+    /**
+     * Test that foods with and without nutrients are mapped by index after other columns
+     */
+    @Test
+    public void testMapAfterOtherColumns() throws Exception {
+        try (Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT f.id, " + FoodRowMapper.COLUMNS + " FROM foods f " +
+                 "LEFT JOIN food_nutrients fn ON f.id = fn.food_id ORDER BY f.id")) {
+            assertEquals("COLUMN_COUNT should match COLUMNS", FoodRowMapper.COLUMN_COUNT + 1,
+                rs.getMetaData().getColumnCount());
+
+            assertTrue("First row should be read", rs.next());
+            Food apple = FoodRowMapper.map(rs, 2);
+            assertFalse("Food without nutrients should be a plain food", apple instanceof FoodNutrient);
+            assertEquals("Name should be mapped", "Apple", apple.getName());
+            assertEquals("Calories should be mapped", 52, apple.getCalories());
+
+            assertTrue("Second row should be read", rs.next());
+            Food salmon = FoodRowMapper.map(rs, 2);
+            assertTrue("Food with nutrients should be a FoodNutrient", salmon instanceof FoodNutrient);
+            assertEquals("Grams should be mapped", 100.0, salmon.getGrams(), 0.001);
+            assertEquals("Protein should be mapped", 22.0, ((FoodNutrient) salmon).getProtein(), 0.001);
+            assertEquals("Fiber should be mapped", 0.5, ((FoodNutrient) salmon).getFiber(), 0.001);
+            assertEquals("Sodium should be mapped", 59.0, ((FoodNutrient) salmon).getSodium(), 0.001);
+        }
+    }
+}
@@ -0,0 +1,114 @@
+package com.berkant.kagan.haluk.irem.dietapp;
+
+import static org.junit.Assert.*;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Test class for IdCache
+ */
+public class IdCacheTest {
+
+    private IdCache<String> cache;
+
+    @Before
+    public void setUp() {
+        cache = new IdCache<>(2);
+    }
+
+    /**
+     * Test that cached ids are returned and counted as hits
+     */
+    @Test
+    public void testPutAndGet() {
+        cache.put("alice", 1);
+
+        assertEquals("Cached id should be returned", Integer.valueOf(1), cache.get("alice"));
+        assertNull("Unknown user should not be cached", cache.get("bob"));
+        assertEquals("One hit should be counted", 1, cache.getHits());
+        assertEquals("One miss should be counted", 1, cache.getMisses());
+    }
+
+    /**
+     * Test that invalid entries are not cached
+     */
+    @Test
+    public void testInvalidEntriesAreIgnored() {
+        cache.put(null, 1);
+        cache.put("alice", -1);
+        cache.put("bob", 0);
+
+        assertEquals("No entry should be cached", 0, cache.size());
+        assertNull("Null key should not be found", cache.get(null));
+    }
+
+    /**
+     * Test that the least recently used user is evicted when the cache is full
+     */
+    @Test
+    public void testLeastRecentlyUsedIsEvicted() {
+        cache.put("alice", 1);
+        cache.put("bob", 2);
+        cache.get("alice");
+        cache.put("carol", 3);
+
+        assertEquals("Cache should stay within its capacity", 2, cache.size());
+        assertNull("Least recently used user should be evicted", cache.get("bob"));
+        assertNotNull("Recently used user should stay cached", cache.get("alice"));
+        assertEquals("Eviction should be counted", 1, cache.getEvictions());
+    }
+
+    /**
+     * Test invalidating one user and clearing the cache
+     */
+    @Test
+    public void testInvalidateAndClear() {
+        cache.put("alice", 1);
+        cache.put("bob", 2);
+
+        cache.invalidate("alice");
+        assertNull("Invalidated user should be removed", cache.get("alice"));
+        assertNotNull("Other users should stay cached", cache.get("bob"));
+
+        cache.clear();
+        assertEquals("Cleared cache should be empty", 0, cache.size());
+    }
+
+    /**
+     * Test concurrent access from several threads
+     */
+    @Test
+    public void testConcurrentAccess() throws InterruptedException {
+        IdCache<String> shared = new IdCache<>(100);
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            final int offset = t * 1000;
+            Thread thread = new Thread(() -> {
+                for (int i = 1; i <= 1000; i++) {
+                    shared.put("user" + (offset + i), offset + i);
+                    shared.get("user" + (offset + i / 2));
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertEquals("Cache should stay within its capacity", 100, shared.size());
+        assertEquals("Every lookup should be counted", 4000, shared.getHits() + shared.getMisses());
+    }
+
+    /**
+     * Test constructor argument validation
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidCapacity() {
+        new IdCache<>(0);
+    }
+}
@@ -0,0 +1,235 @@
+package com.berkant.kagan.haluk.irem.dietapp;
+
+import static org.junit.Assert.*;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Test class for InMemoryStorageBackend
+ */
+public class InMemoryStorageBackendTest {
+
+    private StorageBackend storage;
+    private AuthenticationService authService;
+    private MealPlanningService mealPlanningService;
+
+    @Before
+    public void setUp() {
+        storage = StorageBackend.create("memory");
+        authService = new AuthenticationService(storage);
+        mealPlanningService = new MealPlanningService(storage, WriteBehindQueue.DurabilityMode.SYNC);
+        assertTrue("User should be registered", authService.register("alice", "secret", "alice@example.com", "Alice"));
+    }
+
+    /**
+     * Test that the backend is chosen by name
+     */
+    @Test
+    public void testCreateByName() {
+        assertEquals("Memory backend should be created", "memory", storage.getName());
+        assertEquals("Unknown names should use SQLite", "sqlite", StorageBackend.create("other").getName());
+    }
+
+    /**
+     * Test registration, login, logout and deletion
+     */
+    @Test
+    public void testUserLifecycle() {
+        assertFalse("Taken username should be rejected", authService.register("alice", "x", "x@example.com", "X"));
+        assertFalse("Wrong password should fail", authService.login("alice", "wrong"));
+        assertTrue("Login should succeed", authService.login("alice", "secret"));
+        assertTrue("Stored user should be logged in", authService.getAllUsers().get(0).isLoggedIn());
+
+        authService.logout();
+        assertFalse("Stored user should be logged out", authService.getAllUsers().get(0).isLoggedIn());
+
+        assertTrue("User should be deleted", authService.deleteUser("alice"));
+        assertTrue("No users should be left", authService.getAllUsers().isEmpty());
+        assertFalse("Deleted user should not log food", mealPlanningService.logFood("alice", "2025-05-01", new Food("Apple", 100, 52)));
+    }
+
+    /**
+     * Test food logs and meal plans, including foods with nutrients
+     */
+    @Test
+    public void testFoodLogsAndMealPlans() {
+        FoodNutrient salmon = new FoodNutrient("Salmon", 100, 206, 22.0, 0.0, 13.0, 0.0, 0.0, 59.0);
+        assertTrue("Food should be logged", mealPlanningService.logFood("alice", "2025-05-01", new Food("Apple", 100, 52)));
+        boolean[] logged = mealPlanningService.logFoods("alice", "2025-05-01", Arrays.asList(salmon, null));
+        assertTrue("Food with nutrients should be logged", logged[0]);
+        assertFalse("Null food should be skipped", logged[1]);
+
+        List<Food> log = mealPlanningService.getFoodLog("alice", "2025-05-01");
+        assertEquals("Log should hold both foods", 2, log.size());
+        assertTrue("Nutrients should be kept", log.get(1) instanceof FoodNutrient);
+        assertEquals("Protein should be kept", 22.0, ((FoodNutrient) log.get(1)).getProtein(), 0.001);
+        assertEquals("Calories should be summed", 258, mealPlanningService.getTotalCalories("alice", "2025-05-01"));
+        assertTrue("Other dates should be empty", mealPlanningService.getFoodLog("alice", "2025-05-02").isEmpty());
+
+        assertTrue("Food should be logged on another date", mealPlanningService.logFood("alice", "2025-04-30", new Food("Pear", 100, 57)));
+        Map<String, List<Food>> range = mealPlanningService.getFoodLogRange("alice", "2025-04-29", "2025-05-02");
+        assertEquals("Range should hold every date in order",
+            Arrays.asList("2025-04-29", "2025-04-30", "2025-05-01", "2025-05-02"), new ArrayList<>(range.keySet()));
+        assertEquals("Range should hold the foods of each date", 2, range.get("2025-05-01").size());
+        assertTrue("Dates without logs should be empty", range.get("2025-05-02").isEmpty());
+
+        List<String> streamed = new ArrayList<>();
+        assertEquals("Streamed foods should be counted", 3, mealPlanningService.forEachFoodLog("alice",
+            "2025-04-01", "2025-05-31", (date, food) -> streamed.add(date + " " + food.getName())));
+        assertEquals("Foods should be streamed in date order",
+            Arrays.asList("2025-04-30 Pear", "2025-05-01 Apple", "2025-05-01 Salmon"), streamed);
+        assertEquals("Unknown users should stream nothing", 0,
+            mealPlanningService.forEachFoodLog("bob", "2025-04-01", "2025-05-31", (date, food) -> fail("No food expected")));
+
+        assertTrue("Meal should be planned", mealPlanningService.addMealPlan("alice", "2025-05-01", "dinner", salmon));
+        assertEquals("Dinner should hold the plan", 1, mealPlanningService.getMealPlan("alice", "2025-05-01", "dinner").size());
+        assertTrue("Lunch should be empty", mealPlanningService.getMealPlan("alice", "2025-05-01", "lunch").isEmpty());
+
+        log.get(0).setCalories(1000);
+        assertEquals("Returned foods should be copies", 258, mealPlanningService.getTotalCalories("alice", "2025-05-01"));
+    }
+
+    /**
+     * Test that the food catalog stores each food once
+     */
+    @Test
+    public void testFoodCatalog() throws Exception {
+        FoodRepository foods = storage.getFoods();
+        int appleId = foods.save(new Food("Apple", 100, 52));
+        assertEquals("Same food should keep its id", appleId, foods.save(new Food("Apple", 100, 52)));
+        assertEquals("Nutrients should be added to the catalog food", appleId,
+            foods.save(new FoodNutrient("Apple", 100, 52, 0.3, 14.0, 0.2, 2.4, 10.3, 1.0)));
+        assertEquals("Food with nutrients should be found", 1, foods.findWithNutrients(15).size());
+
+        assertEquals("Default options should be returned", 8, mealPlanningService.getBreakfastOptions().length);
+        assertEquals("Default options should be saved", 8, foods.findByMealType("breakfast", 8).size());
+        assertEquals("Limit should be applied", 3, foods.findByMealType("breakfast", 3).size());
+    }
+
+    /**
+     * Test nutrition goals and common foods
+     */
+    @Test
+    public void testNutritionGoals() {
+        CalorieNutrientTrackingService calorieService = new CalorieNutrientTrackingService(mealPlanningService, storage);
+        assertEquals("Default goals should be used", 2000, calorieService.getNutritionGoals("alice").getCalorieGoal());
+        assertTrue("Goals should be saved", calorieService.setNutritionGoals("alice", 1800, 90, 200, 60));
+        assertTrue("Goals should be replaced", calorieService.setNutritionGoals("alice", 1700, 90, 200, 60));
+        assertEquals("Saved goals should be read", 1700, calorieService.getNutritionGoals("alice").getCalorieGoal());
+        assertFalse("Unknown user should be rejected", calorieService.setNutritionGoals("bob", 1800, 90, 200, 60));
+
+        assertEquals("Common foods should be returned", 15, calorieService.getCommonFoodsWithNutrients().length);
+        assertEquals("Common foods should be read back", 15, calorieService.getCommonFoodsWithNutrients().length);
+    }
+
+    /**
+     * Test that a range of consecutive days is read with one query and reported per day
+     */
+    @Test
+    public void testFoodLogRangeAndWeeklyReport() {
+        assertTrue("Food should be logged", mealPlanningService.logFood("alice", "2025-05-01", new Food("Apple", 100, 52)));
+        assertTrue("Food should be logged", mealPlanningService.logFood("alice", "2025-05-03",
+            new FoodNutrient("Salmon", 100, 206, 22.0, 0.0, 13.0, 0.0, 0.0, 59.0)));
+
+        Map<String, List<Food>> range = mealPlanningService.getFoodLogRange("alice", "2025-04-30", "2025-05-03");
+        assertEquals("Every date of the range should be included in order",
+            Arrays.asList("2025-04-30", "2025-05-01", "2025-05-02", "2025-05-03"), new ArrayList<>(range.keySet()));
+        assertTrue("Dates without logs should be empty", range.get("2025-05-02").isEmpty());
+        assertEquals("Logged foods should be grouped by date", "Salmon", range.get("2025-05-03").get(0).getName());
+        assertTrue("Reversed range should be empty",
+            mealPlanningService.getFoodLogRange("alice", "2025-05-03", "2025-05-01").isEmpty());
+        assertTrue("Invalid dates should be rejected",
+            mealPlanningService.getFoodLogRange("alice", "2025-05-01", "May 3rd").isEmpty());
+
+        long hits = mealPlanningService.getFoodLogCache().getHits();
+        assertEquals("Days of the range should be cached", 1, mealPlanningService.getFoodLog("alice", "2025-05-01").size());
+        assertEquals("Cached day should be a hit", hits + 1, mealPlanningService.getFoodLogCache().getHits());
+
+        CalorieNutrientTrackingService calorieService = new CalorieNutrientTrackingService(mealPlanningService, storage);
+        List<CalorieNutrientTrackingService.NutritionReport> reports = calorieService.getWeeklyReport("alice",
+            new String[] { "2025-05-01", "2025-05-02", "2025-05-03" });
+        assertEquals("Every date should be reported", 3, reports.size());
+        assertEquals("Calories of each date should be summed", 52, reports.get(0).getTotalCalories());
+        assertEquals("Empty dates should be reported", 0, reports.get(1).getTotalCalories());
+        assertEquals("Nutrients should be summed", 22.0, reports.get(2).getTotalProtein(), 0.001);
+        assertEquals("Food log should be summed", 206, mealPlanningService.sumFoodLog("alice", "2025-05-03").getCalories());
+
+        reports = calorieService.getWeeklyReport("alice", new String[] { "2025-05-03", "2025-05-01" });
+        assertEquals("Dates out of order should be reported one by one", 206, reports.get(0).getTotalCalories());
+        assertEquals("Dates out of order should keep their order", "2025-05-01", reports.get(1).getDate());
+
+        reports = calorieService.getMonthlyReport("alice", 2025, 5);
+        assertEquals("Every day of the month should be reported", 31, reports.size());
+        assertEquals("Days should be reported in order", "2025-05-03", reports.get(2).getDate());
+        assertEquals("Logged day of the month should be summed", 206, reports.get(2).getTotalCalories());
+        assertTrue("Invalid month should be rejected", calorieService.getMonthlyReport("alice", 2025, 13).isEmpty());
+
+        NutritionTrends trends = calorieService.getTrends("alice", "2025-05-01", "2025-05-07");
+        assertEquals("Every day of the range should be analyzed", 7, trends.getDays().size());
+        assertEquals("Rolling average should cover the logged days", 129.0,
+            trends.getDays().get(6).getAverageCalories(7), 0.001);
+        assertEquals("Days far below the goal should be a deficit", 1, trends.getLongestDeficitStreak());
+        assertTrue("Reversed range should have no days",
+            calorieService.getTrends("alice", "2025-05-07", "2025-05-01").getDays().isEmpty());
+    }
+
+    /**
+     * Test ingredient prices and recipes
+     */
+    @Test
+    public void testRecipes() throws Exception {
+        ShoppingListService shoppingListService = new ShoppingListService(mealPlanningService, storage);
+        RecipeRepository recipes = storage.getRecipes();
+        assertTrue("Sample ingredients should be saved", recipes.countIngredients() > 0);
+
+        int recipeId = recipes.saveRecipe("lunch", "Salad");
+        assertTrue("Priced ingredient should be added", recipes.saveRecipeIngredient(recipeId, "Tomato", 2, "unit"));
+        assertFalse("Unpriced ingredient should be rejected", recipes.saveRecipeIngredient(recipeId, "Gold", 1, "g"));
+
+        List<ShoppingListService.Ingredient> ingredients = shoppingListService.getIngredientsForFood("Lunch", "Salad");
+        assertEquals("Recipe should have one ingredient", 1, ingredients.size());
+        assertEquals("Price should be joined", 2.40, shoppingListService.calculateTotalCost(ingredients), 0.001);
+        assertTrue("Unknown recipe should be empty", shoppingListService.getIngredientsForFood("lunch", "Soup").isEmpty());
+    }
+
+    /**
+     * Test write-behind batches and concurrent writers on the in-memory backend
+     */
+    @Test
+    public void testConcurrentQueuedWrites() throws Exception {
+        MealPlanningService queued = new MealPlanningService(storage, WriteBehindQueue.DurabilityMode.ASYNC);
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < 4; t++) {
+                final int thread = t;
+                futures.add(executor.submit(() -> {
+                    for (int i = 0; i < 50; i++) {
+                        queued.logFood("alice", "2025-05-03", new Food("Food " + thread + "-" + i, 100, 10));
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+        queued.close();
+
+        assertEquals("All writes should be stored", 200, mealPlanningService.getFoodLog("alice", "2025-05-03").size());
+        assertEquals("Calories should be summed", 2000, mealPlanningService.getTotalCalories("alice", "2025-05-03"));
+        assertEquals("Empty batch should store nothing", 0,
+            mealPlanningService.logFoods("alice", "2025-05-03", Collections.<Food>emptyList()).length);
+    }
+}
@@ -89,6 +89,27 @@ public class MealPlanningServiceTest {
         }
     }
 
+    @BeforeClass
+    public static void setUpBeforeClass() throws Exception {
+        // Create and migrate the schema, then make sure the test user exists
+        DatabaseHelper.initializeDatabase();
+        new AuthenticationService().register(TEST_USERNAME, TEST_PASSWORD, TEST_EMAIL, TEST_NAME);
+
+        Connection conn = DatabaseHelper.getConnection();
+        try {
+            ensureTablesExist(conn);
+            try (PreparedStatement pstmt = conn.prepareStatement("SELECT id FROM users WHERE username = ?")) {
+                pstmt.setString(1, TEST_USERNAME);
+                try (ResultSet rs = pstmt.executeQuery()) {
+                    assertTrue("Test user should exist", rs.next());
+                    testUserId = rs.getInt(1);
+                }
+            }
+        } finally {
+            DatabaseHelper.releaseConnection(conn);
+        }
+    }
+
     @AfterClass
     public static void tearDownAfterClass() throws Exception {
         // Clean up test data from the database
@@ -107,6 +128,13 @@ public class MealPlanningServiceTest {
                 deleteFoodLogs.executeUpdate();
             }
             
+            // Delete the daily totals of the deleted food logs
+            try (PreparedStatement deleteTotals = conn.prepareStatement(
+                    "DELETE FROM " + NutritionRollup.TABLE + " WHERE user_id = ?")) {
+                deleteTotals.setInt(1, testUserId);
+                deleteTotals.executeUpdate();
+            }
+            
             // Note: We don't delete the test user to maintain referential integrity
             // across multiple test runs
         } catch (SQLException e) {
@@ -153,6 +181,14 @@ public class MealPlanningServiceTest {
                 deleteFoodLogs.executeUpdate();
             }
             
+            // Delete the daily totals of the deleted food logs
+            try (PreparedStatement deleteTotals = conn.prepareStatement(
+                    "DELETE FROM " + NutritionRollup.TABLE + " WHERE user_id = ? AND date = ?")) {
+                deleteTotals.setInt(1, testUserId);
+                deleteTotals.setString(2, TEST_DATE);
+                deleteTotals.executeUpdate();
+            }
+            
             // Delete test foods that might have been created
             try (PreparedStatement stmt = conn.prepareStatement(
                     "DELETE FROM foods WHERE name LIKE 'Test%'")) {
@@ -1082,9 +1118,214 @@ public class MealPlanningServiceTest {
         assertTrue("Should find the added food item", foundFood);
     }
     
+    /**
+     * Test that logging the same food repeatedly reuses one catalog row,
+     * also after the cached food was deleted.
+     */
+    @Test
+    public void testLogFoodReusesCatalogFood() throws SQLException {
+        String username = "testcatalog_" + System.currentTimeMillis();
+        assertTrue("Test user should be registered",
+            new AuthenticationService().register(username, "pass123", "catalog@example.com", "Catalog User"));
+        Food food = new Food("Test Catalog Apple " + System.currentTimeMillis(), 150.0, 78);
+        
+        try {
+            assertTrue("First log should succeed", mealPlanningService.logFood(username, TEST_DATE, food));
+            assertTrue("Second log should succeed", mealPlanningService.logFood(username, TEST_DATE, food));
+            assertEquals("Food should be stored once", 1, countFoodRows(food.getName()));
+            
+            // Delete the food behind the cache's back
+            try (Connection conn = DatabaseHelper.getConnection();
+                 PreparedStatement pstmt = conn.prepareStatement("DELETE FROM foods WHERE name = ?")) {
+                pstmt.setString(1, food.getName());
+                pstmt.executeUpdate();
+            }
+            
+            assertTrue("Log after deletion should succeed", mealPlanningService.logFood(username, TEST_DATE, food));
+            assertEquals("Food should be saved again", 1, countFoodRows(food.getName()));
+            assertEquals("Summed food log should only count the existing food", 78,
+                mealPlanningService.sumFoodLog(username, TEST_DATE).getCalories());
+        } finally {
+            new AuthenticationService().deleteUser(username);
+        }
+    }
     
+    /**
+     * Test that a cached food log of another day shows the new nutrients
+     * after the same food was logged with changed nutrients
+     */
+    @Test
+    public void testNutrientChangeRefreshesCachedFoodLog() {
+        String username = "testnutrients_" + System.currentTimeMillis();
+        assertTrue("Test user should be registered",
+            new AuthenticationService().register(username, "pass123", "nutrients@example.com", "Nutrient User"));
+        String name = "Test Nutrient Yogurt " + System.currentTimeMillis();
+        String otherDate = "2025-05-02";
+        
+        try {
+            assertTrue("First log should succeed", mealPlanningService.logFood(username, TEST_DATE,
+                new FoodNutrient(name, 150.0, 90, 10.0, 6.0, 2.0, 0.0, 6.0, 50.0)));
+            List<Food> cached = mealPlanningService.getFoodLog(username, TEST_DATE);
+            assertEquals("Food log should contain the food", 1, cached.size());
+            assertEquals("Food log should show the first protein", 10.0,
+                ((FoodNutrient) cached.get(0)).getProtein(), 0.001);
+            
+            assertTrue("Log with new nutrients should succeed", mealPlanningService.logFood(username, otherDate,
+                new FoodNutrient(name, 150.0, 90, 12.0, 6.0, 2.0, 0.0, 6.0, 50.0)));
+            
+            List<Food> refreshed = mealPlanningService.getFoodLog(username, TEST_DATE);
+            assertEquals("Food log should still contain the food", 1, refreshed.size());
+            assertEquals("Cached food log should show the new protein", 12.0,
+                ((FoodNutrient) refreshed.get(0)).getProtein(), 0.001);
+        } finally {
+            new AuthenticationService().deleteUser(username);
+        }
+    }
     
+    /**
+     * Test that logFoods logs every food of the list in one call
+     */
+    @Test
+    public void testLogFoodsLogsAllFoods() {
+        String username = "testbatch_" + System.currentTimeMillis();
+        assertTrue("Test user should be registered",
+            new AuthenticationService().register(username, "pass123", "batch@example.com", "Batch User"));
+        List<Food> foods = new ArrayList<>();
+        foods.add(new Food("Test Batch Oats", 50.0, 190));
+        foods.add(null);
+        foods.add(new FoodNutrient("Test Batch Yogurt", 150.0, 90, 10.0, 6.0, 2.0, 0.0, 6.0, 50.0));
+        foods.add(new Food("Test Batch Oats", 50.0, 190));
+        
+        try {
+            boolean[] logged = mealPlanningService.logFoods(username, TEST_DATE, foods);
+            
+            assertEquals("There should be a result per food", 4, logged.length);
+            assertTrue("First food should be logged", logged[0]);
+            assertFalse("Null food should not be logged", logged[1]);
+            assertTrue("Food with nutrients should be logged", logged[2]);
+            assertTrue("Repeated food should be logged", logged[3]);
+            assertEquals("Food log should contain the logged foods", 3,
+                mealPlanningService.getFoodLog(username, TEST_DATE).size());
+            assertEquals("Total calories should add up", 470,
+                mealPlanningService.getTotalCalories(username, TEST_DATE));
+        } finally {
+            new AuthenticationService().deleteUser(username);
+        }
+    }
+    
+    /**
+     * Test that addMealPlans adds every food of the list to the meal
+     */
+    @Test
+    public void testAddMealPlansAddsAllFoods() {
+        String username = "testbatchplan_" + System.currentTimeMillis();
+        assertTrue("Test user should be registered",
+            new AuthenticationService().register(username, "pass123", "batchplan@example.com", "Batch User"));
+        List<Food> foods = new ArrayList<>();
+        foods.add(new Food("Test Batch Rice", 100.0, 130));
+        foods.add(new Food("Test Batch Chicken", 100.0, 165));
+        
+        try {
+            boolean[] added = mealPlanningService.addMealPlans(username, TEST_DATE, "lunch", foods);
+            
+            assertTrue("Rice should be added", added[0]);
+            assertTrue("Chicken should be added", added[1]);
+            assertEquals("Meal plan should contain both foods", 2,
+                mealPlanningService.getMealPlan(username, TEST_DATE, "lunch").size());
+        } finally {
+            new AuthenticationService().deleteUser(username);
+        }
+    }
+    
+    /**
+     * Test the batch methods with invalid input
+     */
+    @Test
+    public void testBatchMethodsWithInvalidInput() {
+        List<Food> foods = new ArrayList<>();
+        foods.add(new Food("Test Batch Pear", 100.0, 57));
+        
+        assertEquals("Null list should give no results", 0,
+            mealPlanningService.logFoods(TEST_USERNAME, TEST_DATE, null).length);
+        assertFalse("Null date should fail", mealPlanningService.logFoods(TEST_USERNAME, null, foods)[0]);
+        assertFalse("Unknown user should fail",
+            mealPlanningService.addMealPlans("nonexistentuser", TEST_DATE, "lunch", foods)[0]);
+        assertEquals("Empty list should give no results", 0,
+            mealPlanningService.addMealPlans(TEST_USERNAME, TEST_DATE, "lunch", new ArrayList<Food>()).length);
+    }
     
+    /**
+     * Test that writes in the queued durability modes are visible to the reads
+     */
+    @Test
+    public void testQueuedDurabilityModes() {
+        String username = "testqueued_" + System.currentTimeMillis();
+        assertTrue("Test user should be registered",
+            new AuthenticationService().register(username, "pass123", "queued@example.com", "Queued User"));
+        Food food = new Food("Test Queued Banana", 120.0, 105);
+        
+        MealPlanningService groupCommit = new MealPlanningService(WriteBehindQueue.DurabilityMode.GROUP_COMMIT);
+        MealPlanningService async = new MealPlanningService(WriteBehindQueue.DurabilityMode.ASYNC);
+        try {
+            assertEquals("Mode should be reported", WriteBehindQueue.DurabilityMode.GROUP_COMMIT,
+                groupCommit.getDurabilityMode());
+            assertTrue("Group commit log should be stored", groupCommit.logFood(username, TEST_DATE, food));
+            assertFalse("Group commit log for unknown user should fail",
+                groupCommit.logFood("nonexistentuser", TEST_DATE, food));
+            
+            assertTrue("Async log should be queued", async.logFood(username, TEST_DATE, food));
+            assertTrue("Async meal plan should be queued", async.addMealPlan(username, TEST_DATE, "snack", food));
+            assertEquals("Reads should see queued logs", 2, async.getFoodLog(username, TEST_DATE).size());
+            assertEquals("Reads should see queued meal plans", 1,
+                async.getMealPlan(username, TEST_DATE, "snack").size());
+        } finally {
+            groupCommit.close();
+            async.close();
+            new AuthenticationService().deleteUser(username);
+        }
+        
+        assertFalse("Closed service should reject writes", async.logFood(username, TEST_DATE, food));
+        assertEquals("Default mode should be SYNC", WriteBehindQueue.DurabilityMode.SYNC,
+            mealPlanningService.getDurabilityMode());
+    }
     
+    /**
+     * Test that the batch methods are written after the writes queued before them
+     */
+    @Test
+    public void testBatchWritesKeepQueueOrder() {
+        String username = "testqueuedbatch_" + System.currentTimeMillis();
+        assertTrue("Test user should be registered",
+            new AuthenticationService().register(username, "pass123", "queuedbatch@example.com", "Queued User"));
+        List<Food> foods = new ArrayList<>();
+        foods.add(new Food("Test Queued Oats", 50.0, 190));
+        foods.add(new Food("Test Queued Milk", 200.0, 120));
+        
+        MealPlanningService async = new MealPlanningService(WriteBehindQueue.DurabilityMode.ASYNC);
+        try {
+            assertTrue("Async log should be queued", async.logFood(username, TEST_DATE, new Food("Test Queued Kiwi", 75.0, 46)));
+            assertTrue("Batch log should succeed", async.logFoods(username, TEST_DATE, foods)[1]);
+            
+            List<Food> log = async.getFoodLog(username, TEST_DATE);
+            assertEquals("Food log should contain all foods", 3, log.size());
+            assertEquals("Queued food should be logged first", "Test Queued Kiwi", log.get(0).getName());
+            assertEquals("Batch foods should follow in order", "Test Queued Milk", log.get(2).getName());
+        } finally {
+            async.close();
+            new AuthenticationService().deleteUser(username);
+        }
+    }
     
-}
\ No newline at end of file
+    /**
+     * Count the foods with a name
+     */
+    private int countFoodRows(String name) throws SQLException {
+        try (Connection conn = DatabaseHelper.getConnection();
+             PreparedStatement pstmt = conn.prepareStatement("SELECT COUNT(*) FROM foods WHERE name = ?")) {
+            pstmt.setString(1, name);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                return rs.next() ? rs.getInt(1) : 0;
+            }
+        }
+    }
+}
@@ -0,0 +1,137 @@
+package com.berkant.kagan.haluk.irem.dietapp;
+
+import java.io.File;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Properties;
+import java.util.Random;
+
+/**
+ * Compares the ways a daily nutrition report can be computed for a day with many entries.
+ * @details Not part of the unit test suite. Run it with
+ *          mvn test-compile exec:java -Dexec.mainClass=com.berkant.kagan.haluk.irem.dietapp.NutritionAggregationBenchmark
+ *          -Dexec.classpathScope=test [-Dexec.args="entries"]. It fills a temporary shard with
+ *          the given number of food log entries on one day (10,000 by default), half of them
+ *          with nutrients, and computes the totals of the day ITERATIONS times after WARMUP
+ *          untimed runs: by reading the foods and summing them in Java as reports did before,
+ *          with FoodLogRepository.aggregate(), and from the daily totals with findTotals().
+ * @author berkant
+ */
+public class NutritionAggregationBenchmark {
+    private static final String DATE = "2025-05-01";
+    private static final int FOODS = 500;
+    private static final int WARMUP = 5;
+    private static final int ITERATIONS = 50;
+
+    /** Computes the totals of a day */
+    private interface Totals {
+        DailyNutritionTotals compute(FoodLogRepository foodLogs, int userId) throws SQLException;
+    }
+
+    public static void main(String[] args) throws Exception {
+        int entries = args.length > 0 ? Integer.parseInt(args[0]) : 10000;
+        File file = File.createTempFile("dietapp-benchmark", ".db");
+        Properties properties = new Properties();
+        properties.setProperty(DatabaseConfig.PATH, file.getAbsolutePath());
+        properties.setProperty(DatabaseConfig.CHECKPOINT_INTERVAL, "0");
+        DatabaseShard shard = DatabaseShard.open("benchmark", new DatabaseConfig(properties), file.getAbsolutePath());
+
+        try {
+            shard.initialize();
+            SqliteStorageBackend storage = new SqliteStorageBackend(shard);
+            if (!new AuthenticationService(storage).register("benchmark", "benchmark", "benchmark@example.com", "Benchmark User")) {
+                System.out.println("Could not register the benchmark user");
+                return;
+            }
+            System.out.println("Loading " + entries + " food log entries for one day...");
+            int userId = populate(shard, entries);
+            FoodLogRepository foodLogs = storage.getFoodLogs();
+
+            double materialized = millisPerReport(foodLogs, userId, "foods summed in Java",
+                (logs, id) -> DailyNutritionTotals.of(DATE, logs.find(id, DATE)));
+            double aggregated = millisPerReport(foodLogs, userId, "grouped SQL aggregate",
+                (logs, id) -> logs.aggregate(id, DATE, DATE).get(DATE));
+            double rollup = millisPerReport(foodLogs, userId, "daily totals",
+                (logs, id) -> logs.findTotals(id, DATE, DATE).get(DATE));
+
+            System.out.println();
+            System.out.printf("Foods summed in Java   %10.3f ms/report%n", materialized);
+            System.out.printf("Grouped SQL aggregate  %10.3f ms/report  (%.1fx)%n", aggregated, materialized / aggregated);
+            System.out.printf("Daily totals           %10.3f ms/report  (%.1fx)%n", rollup, materialized / rollup);
+        } finally {
+            shard.close();
+            new File(file.getAbsolutePath() + "-wal").delete();
+            new File(file.getAbsolutePath() + "-shm").delete();
+            file.delete();
+        }
+    }
+
+    /**
+     * Adds the catalog foods and the entries of the day, then rebuilds the daily totals.
+     *
+     * @return The id of the benchmark user
+     */
+    private static int populate(DatabaseShard shard, int entries) throws SQLException {
+        Random random = new Random(42);
+        Connection conn = shard.getWriteConnection();
+        try {
+            int userId;
+            try (PreparedStatement pstmt = conn.prepareStatement("SELECT id FROM users WHERE username = ?")) {
+                pstmt.setString(1, "benchmark");
+                ResultSet rs = pstmt.executeQuery();
+                rs.next();
+                userId = rs.getInt(1);
+            }
+
+            conn.setAutoCommit(false);
+            int[] foodIds = new int[FOODS];
+            for (int i = 0; i < FOODS; i++) {
+                Food food = i % 2 == 0
+                    ? new FoodNutrient("Benchmark " + i, 100, 50 + random.nextInt(500), random.nextDouble() * 20,
+                        random.nextDouble() * 20, random.nextDouble() * 20, random.nextDouble() * 5,
+                        random.nextDouble() * 10, random.nextDouble() * 300)
+                    : new Food("Benchmark " + i, 100, 50 + random.nextInt(500));
+                foodIds[i] = DatabaseHelper.saveFoodAndGetId(conn, food, shard.getFoodIdCache());
+            }
+            try (PreparedStatement log = conn.prepareStatement(
+                    "INSERT INTO food_logs (user_id, date, food_id) VALUES (?, ?, ?)")) {
+                for (int i = 0; i < entries; i++) {
+                    log.setInt(1, userId);
+                    log.setString(2, DATE);
+                    log.setInt(3, foodIds[random.nextInt(FOODS)]);
+                    log.addBatch();
+                }
+                log.executeBatch();
+            }
+            NutritionRollup.rebuild(conn);
+            conn.commit();
+            conn.setAutoCommit(true);
+            return userId;
+        } finally {
+            shard.release(conn);
+        }
+    }
+
+    /**
+     * Computes the totals of the day ITERATIONS times.
+     *
+     * @return The average time per report in milliseconds
+     */
+    private static double millisPerReport(FoodLogRepository foodLogs, int userId, String label, Totals totals)
+            throws SQLException {
+        long total = 0;
+        int calories = 0;
+        for (int i = 0; i < WARMUP + ITERATIONS; i++) {
+            long start = System.nanoTime();
+            calories = totals.compute(foodLogs, userId).getCalories();
+            if (i >= WARMUP) {
+                total += System.nanoTime() - start;
+            }
+        }
+        double millis = total / 1e6 / ITERATIONS;
+        System.out.printf("  %s: %.3f ms/report, %d calories%n", label, millis, calories);
+        return millis;
+    }
+}
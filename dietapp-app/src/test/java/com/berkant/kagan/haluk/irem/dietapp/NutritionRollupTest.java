@@ -0,0 +1,248 @@
+package com.berkant.kagan.haluk.irem.dietapp;
+
+import static org.junit.Assert.*;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * Test class for NutritionRollup and DailyNutritionTotals
+ */
+public class NutritionRollupTest {
+
+    private File file;
+    private DatabaseShard shard;
+    private MealPlanningService service;
+    /** Username that stays apart from those in the cache of the main database */
+    private String username;
+
+    @Before
+    public void setUp() throws Exception {
+        Class.forName("org.sqlite.JDBC");
+        file = File.createTempFile("dietapp-rollup", ".db");
+        Properties properties = new Properties();
+        properties.setProperty(DatabaseConfig.PATH, file.getAbsolutePath());
+        properties.setProperty(DatabaseConfig.FOOD_LOG_PARTITIONS, "MONTHLY");
+        properties.setProperty(DatabaseConfig.CHECKPOINT_INTERVAL, "0");
+        DatabaseConfig config = new DatabaseConfig(properties);
+        shard = DatabaseShard.open("rollup", config, file.getAbsolutePath());
+        shard.initialize();
+
+        StorageBackend storage = new SqliteStorageBackend(shard);
+        username = "rollup" + System.nanoTime();
+        assertTrue("User should be registered",
+            new AuthenticationService(storage).register(username, "secret", username + "@example.com", "Rollup"));
+        service = new MealPlanningService(storage, WriteBehindQueue.DurabilityMode.SYNC, new FoodLogCache(0));
+    }
+
+    @After
+    public void tearDown() {
+        service.close();
+        shard.close();
+        new File(file.getAbsolutePath() + "-wal").delete();
+        new File(file.getAbsolutePath() + "-shm").delete();
+        file.delete();
+    }
+
+    /**
+     * Test that the totals of foods are summed, counting nutrients of FoodNutrients only
+     */
+    @Test
+    public void testTotalsOfFoods() {
+        DailyNutritionTotals totals = DailyNutritionTotals.of("2025-05-01", Arrays.asList(
+            new Food("Bread", 50, 130),
+            new FoodNutrient("Salmon", 100, 206, 22.0, 0.0, 13.0, 0.0, 0.0, 59.0)));
+
+        assertEquals("Date should be kept", "2025-05-01", totals.getDate());
+        assertEquals("Calories of all foods should be summed", 336, totals.getCalories());
+        assertEquals("Protein should be summed", 22.0, totals.getProtein(), 0.001);
+        assertEquals("Sodium should be summed", 59.0, totals.getSodium(), 0.001);
+        assertEquals("Every food should be counted", 2, totals.getEntryCount());
+    }
+
+    /**
+     * Test that logging food keeps the totals of its date in step
+     */
+    @Test
+    public void testLoggingUpdatesTotals() {
+        assertTrue("Food should be logged", service.logFood(username, "2025-05-01", new Food("Bread", 50, 130)));
+        assertTrue("Food should be logged", service.logFood(username, "2025-05-01",
+            new FoodNutrient("Salmon", 100, 206, 22.0, 0.0, 13.0, 0.0, 0.0, 59.0)));
+        assertTrue("Food should be logged", service.logFood(username, "2025-06-02",
+            new FoodNutrient("Apple", 100, 52, 0.3, 14.0, 0.2, 2.4, 10.3, 1.0)));
+
+        DailyNutritionTotals may = service.getDailyTotals(username, "2025-05-01");
+        assertEquals("Calories should be summed", 336, may.getCalories());
+        assertEquals("Protein should be summed", 22.0, may.getProtein(), 0.001);
+        assertEquals("Both foods should be counted", 2, may.getEntryCount());
+        assertEquals("Total calories should be read from the totals", 336,
+            service.getTotalCalories(username, "2025-05-01"));
+        assertEquals("Empty day should have no calories", 0, service.getDailyTotals(username, "2025-05-02").getCalories());
+
+        Map<String, DailyNutritionTotals> range = service.getDailyTotalsRange(username, "2025-05-31", "2025-06-02");
+        assertEquals("Every date of the range should be reported", 3, range.size());
+        assertEquals("Totals of the next partition should be read", 52, range.get("2025-06-02").getCalories());
+        assertEquals("Empty day should have no entries", 0, range.get("2025-05-31").getEntryCount());
+        assertTrue("Reversed range should be empty",
+            service.getDailyTotalsRange(username, "2025-06-02", "2025-05-31").isEmpty());
+
+        DailyNutritionTotals summed = service.sumFoodLog(username, "2025-05-01");
+        assertEquals("Summed food log should match the totals", 336, summed.getCalories());
+        assertEquals("Summed nutrients should match the totals", 59.0, summed.getSodium(), 0.001);
+        assertEquals("Summed food log should count the foods", 2, summed.getEntryCount());
+        assertEquals("Empty day should sum to nothing", 0, service.sumFoodLog(username, "2025-05-02").getEntryCount());
+    }
+
+    /**
+     * Test that sparse dates are read together, also beyond the dates of one query
+     */
+    @Test
+    public void testTotalsOfSparseDates() {
+        assertTrue("Food should be logged", service.logFood(username, "2025-01-01", new Food("Bread", 50, 130)));
+        assertTrue("Food should be logged", service.logFood(username, "2027-08-21", new Food("Rice", 150, 195)));
+        assertTrue("Food should be logged", service.logFood(username, "someday", new Food("Apple", 100, 52)));
+
+        List<String> dates = new ArrayList<>();
+        LocalDate date = LocalDate.of(2025, 1, 1);
+        for (int i = 0; i < SqliteFoodLogRepository.MAX_DATES_PER_QUERY + 100; i++) {
+            dates.add(date.toString());
+            date = date.plusDays(2);
+        }
+        dates.add("someday");
+        dates.add("2025-01-01");
+
+        Map<String, DailyNutritionTotals> totals = service.getDailyTotalsForDates(username, dates);
+        assertEquals("Every distinct date should be reported", SqliteFoodLogRepository.MAX_DATES_PER_QUERY + 101, totals.size());
+        assertEquals("First date should be read", 130, totals.get("2025-01-01").getCalories());
+        assertEquals("Date of the second query should be read", 195, totals.get("2027-08-21").getCalories());
+        assertEquals("Dates that are not days should be read", 52, totals.get("someday").getCalories());
+        assertEquals("Dates without logs should be 0", 0, totals.get("2025-01-03").getEntryCount());
+        assertEquals("Unknown users should get empty totals", 0,
+            service.getDailyTotalsForDates("nobody" + System.nanoTime(), dates).get("2025-01-01").getCalories());
+
+        CalorieNutrientTrackingService calorieService =
+            new CalorieNutrientTrackingService(service, new SqliteStorageBackend(shard));
+        List<CalorieNutrientTrackingService.NutritionReport> reports = calorieService.getWeeklyReport(username,
+            new String[] { "2027-08-21", "someday", "2025-01-01" });
+        assertEquals("Every date should be reported", 3, reports.size());
+        assertEquals("Dates should keep their order", 195, reports.get(0).getTotalCalories());
+        assertEquals("Dates should keep their order", 130, reports.get(2).getTotalCalories());
+    }
+
+    /**
+     * Test that migration 6 fills the totals from all food log tables and rebuild recomputes them
+     */
+    @Test
+    public void testMigrationAndRebuild() throws SQLException {
+        assertTrue("Food should be logged", service.logFood(username, "2025-05-01", new Food("Bread", 50, 130)));
+        assertTrue("Food should be logged", service.logFood(username, "someday", new Food("Rice", 150, 195)));
+
+        execute("DROP TABLE " + NutritionRollup.TABLE);
+        execute("DELETE FROM schema_version WHERE version >= 6");
+        Connection conn = shard.getWriteConnection();
+        try {
+            assertTrue("Migration 6 should be applied again", SchemaMigrator.migrate(conn) > 0);
+        } finally {
+            shard.release(conn);
+        }
+        assertEquals("Totals should be filled from all food log tables", 2, count());
+        assertEquals("Filled totals should be read", 130, service.getTotalCalories(username, "2025-05-01"));
+        assertEquals("Dates without partition should be filled", 195, service.getTotalCalories(username, "someday"));
+
+        execute("UPDATE foods SET calories = 100 WHERE name = 'Bread'");
+        assertEquals("Changed catalog foods should not change the totals", 130,
+            service.getTotalCalories(username, "2025-05-01"));
+        assertEquals("Summed food log should follow the catalog", 100,
+            service.sumFoodLog(username, "2025-05-01").getCalories());
+        conn = shard.getWriteConnection();
+        try {
+            assertEquals("All totals should be rebuilt", 2, NutritionRollup.rebuild(conn));
+        } finally {
+            shard.release(conn);
+        }
+        assertEquals("Rebuilt totals should use the catalog", 100, service.getTotalCalories(username, "2025-05-01"));
+    }
+
+    /**
+     * Test that changing the nutrients of a food updates the reports of days that logged it earlier
+     */
+    @Test
+    public void testNutrientChangeRefreshesPastDays() {
+        assertTrue("Food should be logged", service.logFood(username, "2025-05-01",
+            new FoodNutrient("Salmon", 100, 206, 22.0, 0.0, 13.0, 0.0, 0.0, 59.0)));
+        assertTrue("Food should be logged", service.logFood(username, "2025-05-01", new Food("Bread", 50, 130)));
+        assertTrue("Food should be logged", service.logFood(username, "someday", new Food("Salmon", 100, 206)));
+
+        assertTrue("Food with new nutrients should be logged", service.logFood(username, "2025-06-02",
+            new FoodNutrient("Salmon", 100, 206, 25.0, 0.0, 12.0, 0.0, 0.0, 61.0)));
+
+        CalorieNutrientTrackingService.NutritionReport report =
+            new CalorieNutrientTrackingService(service, new SqliteStorageBackend(shard))
+                .getNutritionReport(username, "2025-05-01");
+        assertEquals("Past day should report the new protein", 25.0, report.getTotalProtein(), 0.001);
+        assertEquals("Past day should report the new sodium", 61.0, report.getTotalSodium(), 0.001);
+        assertEquals("Past day should keep its calories", 336, report.getTotalCalories());
+        assertEquals("Past day should keep its entries", 2, service.getDailyTotals(username, "2025-05-01").getEntryCount());
+        assertEquals("Days of other tables should be refreshed", 12.0,
+            service.getDailyTotals(username, "someday").getFat(), 0.001);
+        assertEquals("Day of the change should be added to", 25.0,
+            service.getDailyTotals(username, "2025-06-02").getProtein(), 0.001);
+    }
+
+    /**
+     * Test that a date whose foods left the catalog loses its totals on the next refresh
+     */
+    @Test
+    public void testRefreshRemovesDatesWithoutFoods() throws SQLException {
+        assertTrue("Food should be logged", service.logFood(username, "2025-05-01", new Food("Bread", 50, 130)));
+        execute("DELETE FROM foods WHERE name = 'Bread'");
+        assertEquals("Totals should stay until refreshed", 1, count());
+
+        Connection conn = shard.getWriteConnection();
+        try {
+            int userId;
+            try (Statement stmt = conn.createStatement();
+                 ResultSet rs = stmt.executeQuery("SELECT user_id FROM " + NutritionRollup.TABLE)) {
+                assertTrue("Totals should have a row", rs.next());
+                userId = rs.getInt(1);
+            }
+            NutritionRollup.refresh(conn, "food_logs_202505", userId, "2025-05-01");
+        } finally {
+            shard.release(conn);
+        }
+        assertEquals("Date without foods should have no totals", 0, count());
+    }
+
+    private void execute(String sql) throws SQLException {
+        Connection conn = shard.getWriteConnection();
+        try (Statement stmt = conn.createStatement()) {
+            stmt.execute(sql);
+        } finally {
+            shard.release(conn);
+        }
+    }
+
+    private int count() throws SQLException {
+        Connection conn = shard.getWriteConnection();
+        try (Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT COUNT(*) FROM " + NutritionRollup.TABLE)) {
+            rs.next();
+            return rs.getInt(1);
+        } finally {
+            shard.release(conn);
+        }
+    }
+}
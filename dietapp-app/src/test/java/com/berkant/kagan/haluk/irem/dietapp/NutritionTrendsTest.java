@@ -0,0 +1,89 @@
+package com.berkant.kagan.haluk.irem.dietapp;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Test class for NutritionTrends
+ */
+public class NutritionTrendsTest {
+
+    private static final LocalDate FIRST_DAY = LocalDate.of(2025, 1, 1);
+
+    /**
+     * Test that rolling averages slide over the logged days of each window
+     */
+    @Test
+    public void testRollingAverages() {
+        List<DailyNutritionTotals> totals = new ArrayList<>();
+        for (int day = 0; day < 100; day++) {
+            totals.add(logged(day, 1000 + 10 * day, 50, 100, 20));
+        }
+        totals.set(95, empty(95));
+
+        NutritionTrends trends = NutritionTrends.analyze(totals, 89, 2000);
+
+        assertEquals("Only the days from the first reported day should be included", 11, trends.getDays().size());
+        NutritionTrends.DayTrend first = trends.getDays().get(0);
+        assertEquals("First reported day should be kept", FIRST_DAY.plusDays(89).toString(), first.getDate());
+        assertEquals("7-day average should cover days 83 to 89", 1860.0, first.getAverageCalories(7), 0.001);
+        assertEquals("90-day average should cover days 0 to 89", 1445.0, first.getAverageCalories(90), 0.001);
+
+        NutritionTrends.DayTrend last = trends.getDays().get(10);
+        // Days 93 to 99 without the unlogged day 95: (1930 + 1940 + 1960 + 1970 + 1980 + 1990) / 6
+        assertEquals("Unlogged days should not lower the average", 1961.667, last.getAverageCalories(7), 0.001);
+        // Days 70 to 99 without day 95: (30 * 1000 + 10 * 2535 - 1950) / 29
+        assertEquals("30-day average should slide", 53400.0 / 29, last.getAverageCalories(30), 0.001);
+        assertEquals("Macro shares should split the macronutrient calories",
+            200.0 / 780, last.getProteinShare(30), 0.001);
+        assertEquals("Macro shares should add up to 1", 1.0,
+            last.getProteinShare(90) + last.getCarbShare(90) + last.getFatShare(90), 0.001);
+    }
+
+    /**
+     * Test goal adherence and deficit and surplus streaks
+     */
+    @Test
+    public void testAdherenceAndStreaks() {
+        int[] calories = { 2000, 1500, 1500, 1500, 2100, 2500, 2500, 0, 2500, 1000 };
+        List<DailyNutritionTotals> totals = new ArrayList<>();
+        for (int day = 0; day < calories.length; day++) {
+            totals.add(calories[day] == 0 ? empty(day) : logged(day, calories[day], 0, 0, 0));
+        }
+
+        NutritionTrends trends = NutritionTrends.analyze(totals, 0, 2000);
+
+        assertEquals("Days within 10% of the goal should count as adherent", 2.0 / 9, trends.getAdherence(), 0.001);
+        assertEquals("Longest deficit streak should be found", 3, trends.getLongestDeficitStreak());
+        assertEquals("Unlogged days should break streaks", 2, trends.getLongestSurplusStreak());
+        assertEquals("Current deficit streak should end on the last day", 1, trends.getCurrentDeficitStreak());
+        assertEquals("Current surplus streak should be broken", 0, trends.getCurrentSurplusStreak());
+        assertTrue("Deficit day should be marked", trends.getDays().get(1).isDeficit());
+        assertTrue("Surplus day should be marked", trends.getDays().get(5).isSurplus());
+        assertEquals("7-day adherence should count the logged days of the window", 1.0 / 6,
+            trends.getDays().get(7).getAdherence(7), 0.001);
+    }
+
+    /**
+     * Test that only the rolling windows of WINDOWS can be read
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void testUnknownWindow() {
+        List<DailyNutritionTotals> totals = new ArrayList<>();
+        totals.add(logged(0, 2000, 0, 0, 0));
+        NutritionTrends.analyze(totals, 0, 2000).getDays().get(0).getAverageCalories(14);
+    }
+
+    private static DailyNutritionTotals logged(int day, int calories, double protein, double carbs, double fat) {
+        return new DailyNutritionTotals(FIRST_DAY.plusDays(day).toString(), calories, protein, carbs, fat, 0, 0, 0, 1);
+    }
+
+    private static DailyNutritionTotals empty(int day) {
+        return new DailyNutritionTotals(FIRST_DAY.plusDays(day).toString(), 0, 0, 0, 0, 0, 0, 0, 0);
+    }
+}
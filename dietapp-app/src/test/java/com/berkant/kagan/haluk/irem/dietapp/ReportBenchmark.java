@@ -0,0 +1,119 @@
+package com.berkant.kagan.haluk.irem.dietapp;
+
+import java.io.File;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+/**
+ * Measures the latency of multi-day nutrition reports.
+ * @details Not part of the unit test suite. Run it with
+ *          mvn test-compile exec:java -Dexec.mainClass=com.berkant.kagan.haluk.irem.dietapp.ReportBenchmark
+ *          -Dexec.classpathScope=test [-Dexec.args="foodsPerDay"]. It logs a year of foods (20 a
+ *          day by default) into a temporary database and reports 7, 30 and 365 days
+ *          ITERATIONS times after WARMUP untimed runs: one getNutritionReport() per date as
+ *          getWeeklyReport() did before, getWeeklyReport() for consecutive days, and
+ *          getWeeklyReport() for every other day, which lists the dates in one query. It then
+ *          times getTrends() over the whole year.
+ * @author berkant
+ */
+public class ReportBenchmark {
+    private static final LocalDate FIRST_DAY = LocalDate.of(2025, 1, 1);
+    private static final int[] REPORT_DAYS = { 7, 30, 365 };
+    private static final int WARMUP = 5;
+    private static final int ITERATIONS = 20;
+
+    public static void main(String[] args) throws Exception {
+        int foodsPerDay = args.length > 0 ? Integer.parseInt(args[0]) : 20;
+        File file = File.createTempFile("dietapp-benchmark", ".db");
+        Properties properties = new Properties();
+        properties.setProperty(DatabaseConfig.PATH, file.getAbsolutePath());
+        properties.setProperty(DatabaseConfig.CHECKPOINT_INTERVAL, "0");
+        DatabaseShard shard = DatabaseShard.open("benchmark", new DatabaseConfig(properties), file.getAbsolutePath());
+        MealPlanningService service = null;
+
+        try {
+            shard.initialize();
+            StorageBackend storage = new SqliteStorageBackend(shard);
+            String username = "benchmark_" + System.currentTimeMillis();
+            if (!new AuthenticationService(storage).register(username, "benchmark", "benchmark@example.com", "Benchmark User")) {
+                System.out.println("Could not register the benchmark user");
+                return;
+            }
+            service = new MealPlanningService(storage, WriteBehindQueue.DurabilityMode.SYNC, new FoodLogCache(0));
+            CalorieNutrientTrackingService calorieService = new CalorieNutrientTrackingService(service, storage);
+            calorieService.setNutritionGoals(username, 2000, 50, 250, 70);
+
+            System.out.println("Logging 365 days of " + foodsPerDay + " foods...");
+            for (int day = 0; day < 365; day++) {
+                List<Food> foods = new ArrayList<>();
+                for (int i = 0; i < foodsPerDay; i++) {
+                    foods.add(new FoodNutrient("Benchmark " + (i % 50), 100, 50 + 10 * (i % 50),
+                        i % 7, i % 11, i % 5, 1, 2, 30));
+                }
+                service.logFoods(username, FIRST_DAY.plusDays(day).toString(), foods);
+            }
+
+            System.out.println();
+            System.out.println("  days   per date (ms)   consecutive (ms)   every other day (ms)");
+            for (int days : REPORT_DAYS) {
+                String[] consecutive = dates(days, 1);
+                String[] sparse = dates(days, 2);
+                double perDate = millisPerReport(() -> {
+                    for (String date : consecutive) {
+                        calorieService.getNutritionReport(username, date);
+                    }
+                });
+                double single = millisPerReport(() -> calorieService.getWeeklyReport(username, consecutive));
+                double listed = millisPerReport(() -> calorieService.getWeeklyReport(username, sparse));
+                System.out.printf("  %4d   %13.3f   %16.3f   %20.3f%n", days, perDate, single, listed);
+            }
+
+            String lastDay = FIRST_DAY.plusDays(364).toString();
+            double trends = millisPerReport(() -> calorieService.getTrends(username, FIRST_DAY.toString(), lastDay));
+            System.out.println();
+            System.out.printf("  365-day trends: %.3f ms%n", trends);
+        } finally {
+            if (service != null) {
+                service.close();
+            }
+            shard.close();
+            new File(file.getAbsolutePath() + "-wal").delete();
+            new File(file.getAbsolutePath() + "-shm").delete();
+            file.delete();
+        }
+    }
+
+    /**
+     * Builds the dates of a report.
+     *
+     * @param days The number of dates
+     * @param step The number of days from one date to the next
+     * @return The dates from FIRST_DAY on
+     */
+    private static String[] dates(int days, int step) {
+        String[] dates = new String[days];
+        for (int i = 0; i < days; i++) {
+            dates[i] = FIRST_DAY.plusDays((long) i * step).toString();
+        }
+        return dates;
+    }
+
+    /**
+     * Runs a report ITERATIONS times.
+     *
+     * @return The average time per report in milliseconds
+     */
+    private static double millisPerReport(Runnable report) {
+        long total = 0;
+        for (int i = 0; i < WARMUP + ITERATIONS; i++) {
+            long start = System.nanoTime();
+            report.run();
+            if (i >= WARMUP) {
+                total += System.nanoTime() - start;
+            }
+        }
+        return total / 1e6 / ITERATIONS;
+    }
+}
@@ -0,0 +1,235 @@
+package com.berkant.kagan.haluk.irem.dietapp;
+
+import java.io.File;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDate;
+import java.util.Random;
+
+/**
+ * Measures the latency of the main lookup queries before and after the schema migrations.
+ * @details Not part of the unit test suite. Run it with
+ *          mvn test-compile exec:java -Dexec.mainClass=com.berkant.kagan.haluk.irem.dietapp.SchemaIndexBenchmark
+ *          -Dexec.classpathScope=test [-Dexec.args="rows"]. It fills a temporary database with
+ *          the given number of food log and meal plan rows (1,000,000 by default), times the
+ *          queries of getFoodLog, getMealPlan, getTotalCalories and getIngredientsForFood, applies
+ *          SchemaMigrator.migrate() and times them again.
+ * @author berkant
+ */
+public class SchemaIndexBenchmark {
+    private static final int USERS = 10000;
+    private static final int DAYS = 365;
+    private static final int FOODS = 5000;
+    private static final int RECIPES = 50000;
+    private static final int ITERATIONS = 50;
+    private static final String[] MEAL_TYPES = { "breakfast", "lunch", "snack", "dinner" };
+
+    private static final String FOOD_LOG_SQL =
+        "SELECT f.*, fn.* FROM food_logs fl " +
+        "JOIN foods f ON fl.food_id = f.id " +
+        "LEFT JOIN food_nutrients fn ON f.id = fn.food_id " +
+        "WHERE fl.user_id = ? AND fl.date = ?";
+    private static final String MEAL_PLAN_SQL =
+        "SELECT f.*, fn.* FROM meal_plans mp " +
+        "JOIN foods f ON mp.food_id = f.id " +
+        "LEFT JOIN food_nutrients fn ON f.id = fn.food_id " +
+        "WHERE mp.user_id = ? AND mp.date = ? AND mp.meal_type = ?";
+    private static final String TOTAL_CALORIES_SQL =
+        "SELECT SUM(f.calories) as total_calories FROM food_logs fl " +
+        "JOIN foods f ON fl.food_id = f.id " +
+        "WHERE fl.user_id = ? AND fl.date = ?";
+    private static final String INGREDIENTS_SQL =
+        "SELECT i.name, ri.amount, ri.unit, i.price " +
+        "FROM recipe_ingredients ri " +
+        "JOIN ingredients i ON ri.ingredient_id = i.id " +
+        "JOIN recipes r ON ri.recipe_id = r.id " +
+        "WHERE r.meal_type = ? AND r.name = ?";
+
+    public static void main(String[] args) throws Exception {
+        int rows = args.length > 0 ? Integer.parseInt(args[0]) : 1000000;
+        File dbFile = File.createTempFile("dietapp-benchmark", ".db");
+        dbFile.deleteOnExit();
+
+        Class.forName("org.sqlite.JDBC");
+        try (Connection conn = DriverManager.getConnection("jdbc:sqlite:" + dbFile.getAbsolutePath())) {
+            System.out.println("Loading " + rows + " food log and meal plan rows...");
+            createSchema(conn);
+            populate(conn, rows);
+
+            System.out.println();
+            System.out.println("Before migrations (schema version " + SchemaMigrator.getCurrentVersion(conn) + ")");
+            double[] before = runQueries(conn);
+
+            long start = System.nanoTime();
+            SchemaMigrator.migrate(conn);
+            System.out.printf("Migrations applied in %.1f ms%n", (System.nanoTime() - start) / 1e6);
+            try (Statement stmt = conn.createStatement()) {
+                stmt.execute("ANALYZE");
+            }
+
+            System.out.println();
+            System.out.println("After migrations (schema version " + SchemaMigrator.getCurrentVersion(conn) + ")");
+            double[] after = runQueries(conn);
+
+            System.out.println();
+            String[] names = { "getFoodLog", "getMealPlan", "getTotalCalories", "getIngredientsForFood" };
+            for (int i = 0; i < names.length; i++) {
+                System.out.printf("%-22s %10.3f ms -> %8.3f ms  (%.0fx)%n",
+                    names[i], before[i], after[i], before[i] / Math.max(after[i], 0.001));
+            }
+        } finally {
+            dbFile.delete();
+        }
+    }
+
+    private static void createSchema(Connection conn) throws SQLException {
+        try (Statement stmt = conn.createStatement()) {
+            stmt.execute("PRAGMA journal_mode=WAL");
+            stmt.execute("CREATE TABLE foods (id INTEGER PRIMARY KEY AUTOINCREMENT, name TEXT NOT NULL, " +
+                "grams REAL NOT NULL, calories INTEGER NOT NULL, meal_type TEXT)");
+            stmt.execute("CREATE TABLE food_nutrients (id INTEGER PRIMARY KEY AUTOINCREMENT, food_id INTEGER NOT NULL, " +
+                "protein REAL NOT NULL, carbs REAL NOT NULL, fat REAL NOT NULL, fiber REAL NOT NULL, " +
+                "sugar REAL NOT NULL, sodium REAL NOT NULL)");
+            stmt.execute("CREATE TABLE meal_plans (id INTEGER PRIMARY KEY AUTOINCREMENT, user_id INTEGER NOT NULL, " +
+                "date TEXT NOT NULL, meal_type TEXT NOT NULL, food_id INTEGER NOT NULL)");
+            stmt.execute("CREATE TABLE food_logs (id INTEGER PRIMARY KEY AUTOINCREMENT, user_id INTEGER NOT NULL, " +
+                "date TEXT NOT NULL, food_id INTEGER NOT NULL)");
+            stmt.execute("CREATE TABLE ingredients (id INTEGER PRIMARY KEY AUTOINCREMENT, name TEXT UNIQUE NOT NULL, " +
+                "price REAL NOT NULL)");
+            stmt.execute("CREATE TABLE recipes (id INTEGER PRIMARY KEY AUTOINCREMENT, meal_type TEXT NOT NULL, " +
+                "food_id INTEGER, name TEXT NOT NULL)");
+            stmt.execute("CREATE TABLE recipe_ingredients (id INTEGER PRIMARY KEY AUTOINCREMENT, recipe_id INTEGER NOT NULL, " +
+                "ingredient_id INTEGER NOT NULL, amount REAL NOT NULL, unit TEXT NOT NULL)");
+        }
+    }
+
+    private static void populate(Connection conn, int rows) throws SQLException {
+        Random random = new Random(42);
+        conn.setAutoCommit(false);
+
+        try (PreparedStatement food = conn.prepareStatement(
+                "INSERT INTO foods (name, grams, calories, meal_type) VALUES (?, ?, ?, ?)");
+             PreparedStatement nutrients = conn.prepareStatement(
+                "INSERT INTO food_nutrients (food_id, protein, carbs, fat, fiber, sugar, sodium) " +
+                "VALUES (?, ?, ?, ?, ?, ?, ?)")) {
+            for (int i = 1; i <= FOODS; i++) {
+                food.setString(1, "Food " + i);
+                food.setDouble(2, 100);
+                food.setInt(3, 50 + random.nextInt(500));
+                food.setString(4, MEAL_TYPES[i % MEAL_TYPES.length]);
+                food.addBatch();
+                nutrients.setInt(1, i);
+                for (int n = 2; n <= 7; n++) {
+                    nutrients.setDouble(n, random.nextDouble() * 20);
+                }
+                nutrients.addBatch();
+            }
+            food.executeBatch();
+            nutrients.executeBatch();
+        }
+
+        try (PreparedStatement log = conn.prepareStatement(
+                "INSERT INTO food_logs (user_id, date, food_id) VALUES (?, ?, ?)");
+             PreparedStatement plan = conn.prepareStatement(
+                "INSERT INTO meal_plans (user_id, date, meal_type, food_id) VALUES (?, ?, ?, ?)")) {
+            for (int i = 0; i < rows; i++) {
+                log.setInt(1, 1 + random.nextInt(USERS));
+                log.setString(2, date(random.nextInt(DAYS)));
+                log.setInt(3, 1 + random.nextInt(FOODS));
+                log.addBatch();
+                plan.setInt(1, 1 + random.nextInt(USERS));
+                plan.setString(2, date(random.nextInt(DAYS)));
+                plan.setString(3, MEAL_TYPES[random.nextInt(MEAL_TYPES.length)]);
+                plan.setInt(4, 1 + random.nextInt(FOODS));
+                plan.addBatch();
+                if (i % 10000 == 9999) {
+                    log.executeBatch();
+                    plan.executeBatch();
+                }
+            }
+            log.executeBatch();
+            plan.executeBatch();
+        }
+
+        try (PreparedStatement ingredient = conn.prepareStatement(
+                "INSERT INTO ingredients (name, price) VALUES (?, ?)");
+             PreparedStatement recipe = conn.prepareStatement(
+                "INSERT INTO recipes (meal_type, food_id, name) VALUES (?, ?, ?)");
+             PreparedStatement recipeIngredient = conn.prepareStatement(
+                "INSERT INTO recipe_ingredients (recipe_id, ingredient_id, amount, unit) VALUES (?, ?, ?, ?)")) {
+            for (int i = 1; i <= 500; i++) {
+                ingredient.setString(1, "Ingredient " + i);
+                ingredient.setDouble(2, random.nextDouble() * 10);
+                ingredient.addBatch();
+            }
+            ingredient.executeBatch();
+            for (int i = 1; i <= RECIPES; i++) {
+                recipe.setString(1, MEAL_TYPES[i % MEAL_TYPES.length]);
+                recipe.setInt(2, 1 + (i % FOODS));
+                recipe.setString(3, "Recipe " + i);
+                recipe.addBatch();
+                for (int j = 0; j < 4; j++) {
+                    recipeIngredient.setInt(1, i);
+                    recipeIngredient.setInt(2, 1 + random.nextInt(500));
+                    recipeIngredient.setDouble(3, 1 + random.nextInt(200));
+                    recipeIngredient.setString(4, "g");
+                    recipeIngredient.addBatch();
+                }
+            }
+            recipe.executeBatch();
+            recipeIngredient.executeBatch();
+        }
+
+        conn.commit();
+        conn.setAutoCommit(true);
+    }
+
+    /**
+     * Runs every query ITERATIONS times with random parameters.
+     *
+     * @return The average latency of each query in milliseconds
+     */
+    private static double[] runQueries(Connection conn) throws SQLException {
+        Random random = new Random(7);
+        String[] sql = { FOOD_LOG_SQL, MEAL_PLAN_SQL, TOTAL_CALORIES_SQL, INGREDIENTS_SQL };
+        double[] averages = new double[sql.length];
+
+        for (int q = 0; q < sql.length; q++) {
+            try (PreparedStatement pstmt = conn.prepareStatement(sql[q])) {
+                long total = 0;
+                long rowsRead = 0;
+                for (int i = 0; i < ITERATIONS; i++) {
+                    if (q == 3) {
+                        int recipe = 1 + random.nextInt(RECIPES);
+                        pstmt.setString(1, MEAL_TYPES[recipe % MEAL_TYPES.length]);
+                        pstmt.setString(2, "Recipe " + recipe);
+                    } else {
+                        pstmt.setInt(1, 1 + random.nextInt(USERS));
+                        pstmt.setString(2, date(random.nextInt(DAYS)));
+                        if (q == 1) {
+                            pstmt.setString(3, MEAL_TYPES[random.nextInt(MEAL_TYPES.length)]);
+                        }
+                    }
+                    long start = System.nanoTime();
+                    try (ResultSet rs = pstmt.executeQuery()) {
+                        while (rs.next()) {
+                            rowsRead++;
+                        }
+                    }
+                    total += System.nanoTime() - start;
+                }
+                averages[q] = total / 1e6 / ITERATIONS;
+                System.out.printf("  query %d: %.3f ms average, %d rows%n", q + 1, averages[q], rowsRead);
+            }
+        }
+        return averages;
+    }
+
+    private static String date(int day) {
+        return LocalDate.of(2025, 1, 1).plusDays(day).toString();
+    }
+}
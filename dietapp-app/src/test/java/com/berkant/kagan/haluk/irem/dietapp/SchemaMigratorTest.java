@@ -0,0 +1,281 @@
+package com.berkant.kagan.haluk.irem.dietapp;
+
+import static org.junit.Assert.*;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+ * Test class for SchemaMigrator
+ */
+public class SchemaMigratorTest {
+
+    private Connection conn;
+
+    @Before
+    public void setUp() throws Exception {
+        Class.forName("org.sqlite.JDBC");
+        conn = DriverManager.getConnection("jdbc:sqlite::memory:");
+        try (Statement stmt = conn.createStatement()) {
+            stmt.execute("CREATE TABLE foods (id INTEGER PRIMARY KEY AUTOINCREMENT, name TEXT NOT NULL, " +
+                "grams REAL NOT NULL, calories INTEGER NOT NULL, meal_type TEXT)");
+            stmt.execute("CREATE TABLE food_nutrients (id INTEGER PRIMARY KEY AUTOINCREMENT, food_id INTEGER NOT NULL, " +
+                "protein REAL NOT NULL, carbs REAL NOT NULL, fat REAL NOT NULL, fiber REAL NOT NULL, " +
+                "sugar REAL NOT NULL, sodium REAL NOT NULL)");
+            stmt.execute("CREATE TABLE meal_plans (id INTEGER PRIMARY KEY AUTOINCREMENT, user_id INTEGER NOT NULL, " +
+                "date TEXT NOT NULL, meal_type TEXT NOT NULL, food_id INTEGER NOT NULL)");
+            stmt.execute("CREATE TABLE food_logs (id INTEGER PRIMARY KEY AUTOINCREMENT, user_id INTEGER NOT NULL, " +
+                "date TEXT NOT NULL, food_id INTEGER NOT NULL)");
+            stmt.execute("CREATE TABLE recipes (id INTEGER PRIMARY KEY AUTOINCREMENT, meal_type TEXT NOT NULL, " +
+                "food_id INTEGER, name TEXT NOT NULL)");
+            stmt.execute("CREATE TABLE recipe_ingredients (id INTEGER PRIMARY KEY AUTOINCREMENT, recipe_id INTEGER NOT NULL, " +
+                "ingredient_id INTEGER NOT NULL, amount REAL NOT NULL, unit TEXT NOT NULL)");
+        }
+    }
+
+    @After
+    public void tearDown() throws SQLException {
+        conn.close();
+    }
+
+    /**
+     * Test that all migrations are applied to a new database
+     */
+    @Test
+    public void testMigrateAppliesAllMigrations() throws SQLException {
+        assertEquals("New database should have no version", 0, SchemaMigrator.getCurrentVersion(conn));
+
+        int applied = SchemaMigrator.migrate(conn);
+
+        assertEquals("All migrations should be applied", SchemaMigrator.getMigrations().size(), applied);
+        assertEquals("Database should be at the latest version",
+            SchemaMigrator.getLatestVersion(), SchemaMigrator.getCurrentVersion(conn));
+        assertTrue("Food log index should exist", indexExists("idx_food_logs_user_date"));
+        assertTrue("Meal plan index should exist", indexExists("idx_meal_plans_user_date_type"));
+        assertTrue("Food nutrient index should exist", indexExists("idx_food_nutrients_food"));
+        assertTrue("Recipe index should exist", indexExists("idx_recipes_type_name"));
+        try (Statement stmt = conn.createStatement()) {
+            assertEquals("Partition catalog should exist", 0,
+                queryInt(stmt, "SELECT COUNT(*) FROM food_log_partitions"));
+            assertEquals("Shard layout table should exist", 0,
+                queryInt(stmt, "SELECT COUNT(*) FROM " + ShardRouter.LAYOUT_TABLE));
+            assertEquals("Shard assignment table should exist", 0,
+                queryInt(stmt, "SELECT COUNT(*) FROM " + ShardRouter.ASSIGNMENT_TABLE));
+        }
+    }
+
+    /**
+     * Test that running the migrations again does nothing
+     */
+    @Test
+    public void testMigrateIsIdempotent() throws SQLException {
+        SchemaMigrator.migrate(conn);
+        assertEquals("No migration should be applied twice", 0, SchemaMigrator.migrate(conn));
+    }
+
+    /**
+     * Test that the migrations are applied in ascending version order
+     */
+    @Test
+    public void testMigrationsAreOrdered() {
+        int previous = 0;
+        for (SchemaMigrator.Migration migration : SchemaMigrator.getMigrations()) {
+            assertTrue("Versions should be ascending", migration.getVersion() > previous);
+            previous = migration.getVersion();
+        }
+    }
+
+    /**
+     * Test that duplicate nutrient rows are removed before the unique index is created
+     */
+    @Test
+    public void testDuplicateNutrientsAreRemoved() throws SQLException {
+        insertNutrients(1, 5.0);
+        insertNutrients(1, 7.0);
+        insertNutrients(2, 3.0);
+
+        SchemaMigrator.migrate(conn);
+
+        try (Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT protein FROM food_nutrients WHERE food_id = 1")) {
+            assertTrue("Nutrients of food 1 should remain", rs.next());
+            assertEquals("Most recent row should be kept", 7.0, rs.getDouble(1), 0.001);
+            assertFalse("Only one row should remain", rs.next());
+        }
+
+        try {
+            insertNutrients(2, 4.0);
+            fail("Second nutrient row for a food should be rejected");
+        } catch (SQLException e) {
+            assertTrue("Error should come from the unique index", e.getMessage().contains("UNIQUE"));
+        }
+    }
+
+    /**
+     * Test that a failing migration is rolled back and not recorded
+     */
+    @Test
+    public void testFailedMigrationIsRolledBack() throws SQLException {
+        try (Statement stmt = conn.createStatement()) {
+            stmt.execute("DROP TABLE recipes");
+        }
+
+        try {
+            SchemaMigrator.migrate(conn);
+            fail("Migration on a missing table should fail");
+        } catch (SQLException e) {
+            assertTrue("Message should name the failed version", e.getMessage().contains("migration 3"));
+        }
+
+        assertEquals("Completed migrations should stay recorded", 2, SchemaMigrator.getCurrentVersion(conn));
+        assertTrue("Auto-commit should be restored", conn.getAutoCommit());
+        assertFalse("Partial migration should be rolled back", indexExists("idx_recipe_ingredients_recipe"));
+    }
+
+    /**
+     * Test that the food log query uses the new index
+     */
+    @Test
+    public void testFoodLogQueryUsesIndex() throws SQLException {
+        SchemaMigrator.migrate(conn);
+
+        StringBuilder plan = new StringBuilder();
+        try (Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("EXPLAIN QUERY PLAN SELECT f.* FROM food_logs fl " +
+                 "JOIN foods f ON fl.food_id = f.id WHERE fl.user_id = 1 AND fl.date = '2025-01-01'")) {
+            while (rs.next()) {
+                plan.append(rs.getString("detail")).append('\n');
+            }
+        }
+        assertTrue("Query should search the food log index: " + plan,
+            plan.toString().contains("idx_food_logs_user_date"));
+    }
+
+    /**
+     * Test that duplicate foods are merged and their references moved to the kept row
+     */
+    @Test
+    public void testDuplicateFoodsAreMerged() throws SQLException {
+        try (Statement stmt = conn.createStatement()) {
+            stmt.execute("INSERT INTO foods (id, name, grams, calories) VALUES (1, 'Apple', 100, 52)");
+            stmt.execute("INSERT INTO foods (id, name, grams, calories) VALUES (2, 'Apple', 100, 52)");
+            stmt.execute("INSERT INTO foods (id, name, grams, calories) VALUES (3, 'Pear', 100, 57)");
+            stmt.execute("INSERT INTO food_logs (user_id, date, food_id) VALUES (1, '2025-01-01', 2)");
+            stmt.execute("INSERT INTO meal_plans (user_id, date, meal_type, food_id) VALUES (1, '2025-01-01', 'lunch', 2)");
+        }
+        insertNutrients(1, 1.0);
+        insertNutrients(2, 2.0);
+
+        SchemaMigrator.migrate(conn);
+
+        try (Statement stmt = conn.createStatement()) {
+            assertEquals("Duplicate food should be removed", 2, queryInt(stmt, "SELECT COUNT(*) FROM foods"));
+            assertEquals("Food log should point to the kept food", 1,
+                queryInt(stmt, "SELECT food_id FROM food_logs"));
+            assertEquals("Meal plan should point to the kept food", 1,
+                queryInt(stmt, "SELECT food_id FROM meal_plans"));
+            assertEquals("Most recent nutrients should be kept", 2,
+                queryInt(stmt, "SELECT protein FROM food_nutrients WHERE food_id = 1"));
+            assertEquals("Only one nutrient row should remain", 1,
+                queryInt(stmt, "SELECT COUNT(*) FROM food_nutrients"));
+        }
+        assertTrue("Food identity index should exist", indexExists("idx_foods_identity"));
+    }
+
+    /**
+     * Test that the daily totals are filled from food_logs and the partitions in the catalog
+     */
+    @Test
+    public void testDailyTotalsAreFilled() throws SQLException {
+        try (Statement stmt = conn.createStatement()) {
+            stmt.execute("INSERT INTO foods (id, name, grams, calories) VALUES (1, 'Apple', 100, 52)");
+            stmt.execute("INSERT INTO foods (id, name, grams, calories) VALUES (2, 'Bread', 50, 130)");
+            stmt.execute("INSERT INTO food_logs (user_id, date, food_id) VALUES (1, 'someday', 1)");
+            stmt.execute("CREATE TABLE food_log_partitions (name TEXT PRIMARY KEY, period TEXT NOT NULL, " +
+                "compacted INTEGER NOT NULL DEFAULT 0)");
+            stmt.execute("INSERT INTO food_log_partitions (name, period) VALUES ('food_logs_202505', '202505')");
+            stmt.execute("CREATE TABLE food_logs_202505 (id INTEGER PRIMARY KEY AUTOINCREMENT, " +
+                "user_id INTEGER NOT NULL, date TEXT NOT NULL, food_id INTEGER NOT NULL)");
+            stmt.execute("INSERT INTO food_logs_202505 (user_id, date, food_id) " +
+                "VALUES (1, '2025-05-01', 1), (1, '2025-05-01', 2)");
+        }
+        insertNutrients(1, 0.3);
+
+        SchemaMigrator.migrate(conn);
+
+        try (Statement stmt = conn.createStatement()) {
+            assertEquals("Logs of a partition should be summed", 182, queryInt(stmt,
+                "SELECT calories FROM daily_nutrition_totals WHERE user_id = 1 AND date = '2025-05-01'"));
+            assertEquals("Logs of a partition should be counted", 2, queryInt(stmt,
+                "SELECT entry_count FROM daily_nutrition_totals WHERE user_id = 1 AND date = '2025-05-01'"));
+            assertEquals("Logs of food_logs should be summed", 52, queryInt(stmt,
+                "SELECT calories FROM daily_nutrition_totals WHERE user_id = 1 AND date = 'someday'"));
+            assertEquals("Only logged days should have totals", 2,
+                queryInt(stmt, "SELECT COUNT(*) FROM daily_nutrition_totals"));
+        }
+    }
+
+    /**
+     * Test that food_logs and the partitions in the catalog are indexed by food
+     */
+    @Test
+    public void testFoodIndexCoversPartitions() throws SQLException {
+        try (Statement stmt = conn.createStatement()) {
+            stmt.execute("CREATE TABLE food_log_partitions (name TEXT PRIMARY KEY, period TEXT NOT NULL, " +
+                "compacted INTEGER NOT NULL DEFAULT 0)");
+            stmt.execute("INSERT INTO food_log_partitions (name, period) VALUES ('food_logs_202505', '202505')");
+            stmt.execute("CREATE TABLE food_logs_202505 (id INTEGER PRIMARY KEY AUTOINCREMENT, " +
+                "user_id INTEGER NOT NULL, date TEXT NOT NULL, food_id INTEGER NOT NULL)");
+        }
+
+        SchemaMigrator.migrate(conn);
+
+        assertTrue("Food logs should be indexed by food", indexExists("idx_food_logs_food"));
+        assertTrue("Partitions should be indexed by food", indexExists("idx_food_logs_202505_food"));
+        StringBuilder plan = new StringBuilder();
+        try (Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery(
+                 "EXPLAIN QUERY PLAN SELECT DISTINCT user_id, date FROM food_logs_202505 WHERE food_id = 1")) {
+            while (rs.next()) {
+                plan.append(rs.getString("detail")).append('\n');
+            }
+        }
+        assertTrue("Days of a food should be searched in the food index: " + plan,
+            plan.toString().contains("SEARCH") && plan.toString().contains("idx_food_logs_202505_food"));
+    }
+
+    private boolean indexExists(String name) throws SQLException {
+        try (PreparedStatement pstmt = conn.prepareStatement(
+                "SELECT 1 FROM sqlite_master WHERE type = 'index' AND name = ?")) {
+            pstmt.setString(1, name);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                return rs.next();
+            }
+        }
+    }
+
+    private void insertNutrients(int foodId, double protein) throws SQLException {
+        try (PreparedStatement pstmt = conn.prepareStatement(
+                "INSERT INTO food_nutrients (food_id, protein, carbs, fat, fiber, sugar, sodium) " +
+                "VALUES (?, ?, 0, 0, 0, 0, 0)")) {
+            pstmt.setInt(1, foodId);
+            pstmt.setDouble(2, protein);
+            pstmt.executeUpdate();
+        }
+    }
+
+    private int queryInt(Statement stmt, String sql) throws SQLException {
+        try (ResultSet rs = stmt.executeQuery(sql)) {
+            assertTrue("Query should return a row: " + sql, rs.next());
+            return rs.getInt(1);
+        }
+    }
+}
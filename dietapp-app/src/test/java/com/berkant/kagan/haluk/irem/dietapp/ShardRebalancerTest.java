@@ -0,0 +1,184 @@
+package com.berkant.kagan.haluk.irem.dietapp;
+
+import static org.junit.Assert.*;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Test class for ShardRebalancer
+ */
+public class ShardRebalancerTest {
+
+    private static final int SHARDS = 3;
+
+    private final List<File> files = new ArrayList<>();
+    private final List<DatabaseShard> shards = new ArrayList<>();
+    private ShardRouter router;
+    private ShardedStorageBackend storage;
+    private String prefix;
+
+    @Before
+    public void setUp() throws Exception {
+        Class.forName("org.sqlite.JDBC");
+        File main = File.createTempFile("dietapp-rebalance", ".db");
+        files.add(main);
+        Properties properties = new Properties();
+        properties.setProperty(DatabaseConfig.PATH, main.getAbsolutePath());
+        properties.setProperty(DatabaseConfig.CHECKPOINT_INTERVAL, "0");
+        properties.setProperty(DatabaseConfig.FOOD_LOG_PARTITIONS, "monthly");
+        DatabaseConfig config = new DatabaseConfig(properties);
+
+        for (int i = 0; i < SHARDS; i++) {
+            if (i > 0) {
+                files.add(new File(config.getShardPath(i)));
+            }
+            DatabaseShard shard = DatabaseShard.open("rebalance" + i, config, config.getShardPath(i));
+            shard.initialize();
+            shards.add(shard);
+        }
+        // The data starts out on two shards
+        router = new ShardRouter(2);
+        router.initialize(shards.get(0), 2);
+        storage = new ShardedStorageBackend(shards, router);
+        prefix = "rebalance" + System.nanoTime() + "_";
+    }
+
+    @After
+    public void tearDown() {
+        for (DatabaseShard shard : shards) {
+            shard.close();
+        }
+        for (File file : files) {
+            new File(file.getAbsolutePath() + "-wal").delete();
+            new File(file.getAbsolutePath() + "-shm").delete();
+            file.delete();
+        }
+    }
+
+    /**
+     * Test that growing to three shards moves the users with all their data
+     */
+    @Test
+    public void testRebalanceMovesUsers() throws SQLException {
+        List<Integer> userIds = registerUsers(30);
+        for (int userId : userIds) {
+            storage.getFoodLogs().add(userId, "2025-01-31", Arrays.asList(new Food("Apple", 100, userId), new Food("Pear", 90, 57)));
+            storage.getFoodLogs().add(userId, "2025-02-01", Arrays.asList(new FoodNutrient("Oats", 50, 190, 6.5, 33, 3.5, 5, 0.5, 1)));
+            storage.getMealPlans().add(userId, "2025-02-02", "lunch", Arrays.asList(new Food("Rice", 150, 195)));
+            storage.getUsers().saveNutritionGoals(userId, 2000 + userId, 80, 250, 65);
+        }
+
+        ShardRebalancer rebalancer = new ShardRebalancer(shards, router, 2);
+        assertTrue("Rebalancing should be needed", rebalancer.isNeeded());
+        ShardRebalancer.RebalanceMetrics metrics = rebalancer.rebalance();
+
+        ShardRing ring = new ShardRing(SHARDS);
+        int moving = 0;
+        for (int userId : userIds) {
+            if (ring.shardOf(userId) != new ShardRing(2).shardOf(userId)) {
+                moving++;
+            }
+        }
+        assertTrue("Some users should move", moving > 0);
+        assertEquals("Moving users should be counted", moving, metrics.getUsersToMove());
+        assertEquals("Every user should be moved", moving, metrics.getUsersMoved());
+        assertEquals("No move should fail", 0, metrics.getUsersFailed());
+        assertEquals("Four rows of each user should be copied", 4L * moving, metrics.getRowsCopied());
+        assertEquals("Progress should be complete", 1.0, metrics.getProgress(), 0.0001);
+        assertTrue("Metrics should be reported", metrics.toString().contains(moving + "/" + moving + " users moved"));
+        assertFalse("Nothing should be left to do", rebalancer.isNeeded());
+
+        for (int userId : userIds) {
+            int home = ring.shardOf(userId);
+            assertEquals("User " + userId + " should be in its new shard", home, router.shardOf(userId));
+            Map<String, List<Food>> logs = storage.getFoodLogs().findRange(userId, "2025-01-01", "2025-02-28");
+            assertEquals("Both days should be kept", Arrays.asList("2025-01-31", "2025-02-01"), new ArrayList<>(logs.keySet()));
+            assertEquals("Foods should be kept in order", userId, logs.get("2025-01-31").get(0).getCalories());
+            assertTrue("Nutrients should be kept", logs.get("2025-02-01").get(0) instanceof FoodNutrient);
+            assertEquals("Meal plan should be kept", "Rice", storage.getMealPlans().find(userId, "2025-02-02", "lunch").get(0).getName());
+            assertEquals("Goals should be kept", Integer.valueOf(2000 + userId),
+                storage.getUsers().findNutritionGoals(userId, (calories, protein, carbs, fat) -> calories));
+            for (int shard = 0; shard < SHARDS; shard++) {
+                assertEquals("Meal plan of user " + userId + " should only be in shard " + home, shard == home ? 1 : 0,
+                    count(shard, "SELECT COUNT(*) FROM meal_plans WHERE user_id = ?", userId));
+            }
+        }
+
+        ShardRouter reopened = new ShardRouter(1);
+        reopened.initialize(shards.get(0), SHARDS);
+        assertEquals("New layout should be stored", SHARDS, reopened.getShardCount());
+        assertTrue("No assignment should be left", reopened.getAssignments().isEmpty());
+    }
+
+    /**
+     * Test that the writes of a user during its move end up in the target shard
+     */
+    @Test
+    public void testWritesDuringMoveAreKept() throws Exception {
+        int userId = registerUsers(1).get(0);
+        int source = router.shardOf(userId);
+        int target = (source + 1) % SHARDS;
+        for (int day = 1; day <= 20; day++) {
+            storage.getFoodLogs().add(userId, String.format("2025-03-%02d", day), Arrays.asList(new Food("Apple", 100, 52)));
+        }
+
+        ShardRebalancer rebalancer = new ShardRebalancer(shards, router, 1);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<?> writes = executor.submit(() -> {
+                for (int day = 1; day <= 20; day++) {
+                    storage.getFoodLogs().add(userId, String.format("2025-04-%02d", day), Arrays.asList(new Food("Pear", 90, 57)));
+                }
+                return null;
+            });
+            assertTrue("User should be moved", rebalancer.moveUser(userId, target));
+            writes.get();
+        } finally {
+            executor.shutdown();
+        }
+
+        assertEquals("User should be in the target shard", target, router.shardOf(userId));
+        assertEquals("All logs should be in the target shard", 40,
+            storage.getFoodLogs().findRange(userId, "2025-03-01", "2025-04-30").size());
+        assertEquals("Source shard should be empty", 0, count(source, "SELECT COUNT(*) FROM food_logs_202503 WHERE user_id = ?", userId));
+        assertFalse("Moving to the same shard should do nothing", rebalancer.moveUser(userId, target));
+    }
+
+    private List<Integer> registerUsers(int count) throws SQLException {
+        List<Integer> userIds = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            String username = prefix + i;
+            assertTrue("User should be registered", storage.getUsers().register(username, "secret", username + "@example.com", "User"));
+            userIds.add(storage.getUsers().findId(username));
+        }
+        return userIds;
+    }
+
+    private int count(int shard, String sql, int userId) throws SQLException {
+        Connection conn = shards.get(shard).getReadConnection();
+        try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            pstmt.setInt(1, userId);
+            ResultSet rs = pstmt.executeQuery();
+            assertTrue("Rows should be counted", rs.next());
+            return rs.getInt(1);
+        } finally {
+            shards.get(shard).release(conn);
+        }
+    }
+}
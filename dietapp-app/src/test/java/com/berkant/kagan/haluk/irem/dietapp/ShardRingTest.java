@@ -0,0 +1,74 @@
+package com.berkant.kagan.haluk.irem.dietapp;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+/**
+ * Test class for ShardRing
+ */
+public class ShardRingTest {
+
+    /**
+     * Test that a single shard takes every user and invalid rings are rejected
+     */
+    @Test
+    public void testSingleShardAndValidation() {
+        ShardRing ring = new ShardRing(1);
+        assertEquals("Shard count should be kept", 1, ring.getShardCount());
+        assertEquals("Every user should be on shard 0", 0, ring.shardOf(42));
+        assertEquals("Negative ids should be on shard 0", 0, ring.shardOf(-1));
+
+        try {
+            new ShardRing(0);
+            fail("A ring without shards should be rejected");
+        } catch (IllegalArgumentException e) {
+            assertTrue("Message should mention the shard", e.getMessage().contains("shard"));
+        }
+        try {
+            new ShardRing(2, 0);
+            fail("A ring without points should be rejected");
+        } catch (IllegalArgumentException e) {
+            assertTrue("Message should mention the points", e.getMessage().contains("point"));
+        }
+    }
+
+    /**
+     * Test that users are spread evenly and always land on the same shard
+     */
+    @Test
+    public void testSpreadAndStability() {
+        ShardRing ring = new ShardRing(4);
+        ShardRing again = new ShardRing(4);
+        int[] users = new int[4];
+        for (int userId = 1; userId <= 10000; userId++) {
+            int shard = ring.shardOf(userId);
+            assertTrue("Shard should be in range", shard >= 0 && shard < 4);
+            assertEquals("Mapping should not change between rings", shard, again.shardOf(userId));
+            users[shard]++;
+        }
+        for (int shard = 0; shard < 4; shard++) {
+            assertTrue("Shard " + shard + " should get about a quarter of the users, got " + users[shard],
+                users[shard] > 1500 && users[shard] < 3500);
+        }
+    }
+
+    /**
+     * Test that adding a shard only moves users to the new shard
+     */
+    @Test
+    public void testAddingShardMovesFewUsers() {
+        ShardRing four = new ShardRing(4);
+        ShardRing five = new ShardRing(5);
+        int moved = 0;
+        for (int userId = 1; userId <= 10000; userId++) {
+            int before = four.shardOf(userId);
+            int after = five.shardOf(userId);
+            if (before != after) {
+                assertEquals("Users should only move to the new shard", 4, after);
+                moved++;
+            }
+        }
+        assertTrue("About a fifth of the users should move, got " + moved, moved > 1000 && moved < 3500);
+    }
+}
@@ -0,0 +1,135 @@
+package com.berkant.kagan.haluk.irem.dietapp;
+
+import static org.junit.Assert.*;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+/**
+ * Test class for ShardRouter
+ */
+public class ShardRouterTest {
+
+    private File dbFile;
+    private DatabaseShard directory;
+    private SqliteStorageBackend storage;
+
+    @Before
+    public void setUp() throws Exception {
+        Class.forName("org.sqlite.JDBC");
+        dbFile = File.createTempFile("dietapp-router", ".db");
+        Properties properties = new Properties();
+        properties.setProperty(DatabaseConfig.CHECKPOINT_INTERVAL, "0");
+        directory = DatabaseShard.open("router", new DatabaseConfig(properties), dbFile.getAbsolutePath());
+        directory.initialize();
+        storage = new SqliteStorageBackend(directory);
+    }
+
+    @After
+    public void tearDown() {
+        directory.close();
+        new File(dbFile.getAbsolutePath() + "-wal").delete();
+        new File(dbFile.getAbsolutePath() + "-shm").delete();
+        dbFile.delete();
+    }
+
+    /**
+     * Test that the first layout is recorded and kept when more shards are opened
+     */
+    @Test
+    public void testLayoutIsRecorded() throws SQLException {
+        ShardRouter router = new ShardRouter(2);
+        router.initialize(directory, 2);
+        assertEquals("Layout should be recorded", 2, router.getShardCount());
+
+        ShardRouter reopened = new ShardRouter(4);
+        reopened.initialize(directory, 4);
+        assertEquals("More open shards should not change the layout", 2, reopened.getShardCount());
+        ShardRing ring = new ShardRing(2);
+        for (int userId = 1; userId <= 100; userId++) {
+            assertEquals("Users should be placed by the recorded layout", ring.shardOf(userId), reopened.shardOf(userId));
+        }
+
+        try {
+            new ShardRouter(1).initialize(directory, 1);
+            fail("Fewer shards than the layout should be rejected");
+        } catch (SQLException e) {
+            assertTrue("Message should name the shards", e.getMessage().contains("2 shards"));
+        }
+    }
+
+    /**
+     * Test that expanding keeps every user in the shard its data is in
+     */
+    @Test
+    public void testExpandAssignsMovingUsers() throws SQLException {
+        List<Integer> userIds = registerUsers(40);
+        ShardRouter router = new ShardRouter(2);
+        router.initialize(directory, 2);
+        List<Integer> before = new ArrayList<>();
+        for (int userId : userIds) {
+            before.add(router.shardOf(userId));
+        }
+
+        int moving = router.expand(directory, 4);
+        assertEquals("Layout should grow", 4, router.getShardCount());
+        assertEquals("Every misplaced user should be counted", moving, router.getMisplacedUsers().size());
+        assertTrue("Some users should have to move", moving > 0);
+        for (int i = 0; i < userIds.size(); i++) {
+            int userId = userIds.get(i);
+            assertEquals("User " + userId + " should stay in its shard", (int) before.get(i), router.shardOf(userId));
+            if (router.getMisplacedUsers().contains(userId)) {
+                assertNotEquals("Misplaced user should belong to another shard", router.homeOf(userId), router.shardOf(userId));
+            }
+        }
+        assertEquals("New users should be placed by the new layout", new ShardRing(4).shardOf(100000), router.shardOf(100000));
+
+        try {
+            router.expand(directory, 3);
+            fail("Shards cannot be removed");
+        } catch (SQLException e) {
+            assertTrue("Message should explain the layout", e.getMessage().contains("cannot be removed"));
+        }
+    }
+
+    /**
+     * Test that assignments are stored in the directory
+     */
+    @Test
+    public void testAssignmentsAreStored() throws SQLException {
+        ShardRouter router = new ShardRouter(3);
+        router.initialize(directory, 3);
+        int userId = 7;
+        int other = (router.homeOf(userId) + 1) % 3;
+
+        router.assign(directory, userId, other);
+        assertEquals("Assigned user should be routed to its shard", other, router.shardOf(userId));
+        ShardRouter reopened = new ShardRouter(3);
+        reopened.initialize(directory, 3);
+        assertEquals("Assignment should survive a restart", other, reopened.shardOf(userId));
+        assertEquals("Assignment should be listed", Integer.valueOf(other), reopened.getAssignments().get(userId));
+
+        reopened.assign(directory, userId, reopened.homeOf(userId));
+        assertTrue("Assignment to the home shard should be dropped", reopened.getAssignments().isEmpty());
+        ShardRouter again = new ShardRouter(3);
+        again.initialize(directory, 3);
+        assertTrue("Dropped assignment should be deleted", again.getAssignments().isEmpty());
+    }
+
+    private List<Integer> registerUsers(int count) throws SQLException {
+        String prefix = "router" + System.nanoTime() + "_";
+        List<Integer> userIds = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            assertTrue("User should be registered", storage.getUsers().register(prefix + i, "secret", "r@example.com", "R"));
+            userIds.add(storage.getUsers().findId(prefix + i));
+        }
+        return userIds;
+    }
+}
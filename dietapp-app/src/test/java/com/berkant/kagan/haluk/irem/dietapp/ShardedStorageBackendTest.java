@@ -0,0 +1,247 @@
+package com.berkant.kagan.haluk.irem.dietapp;
+
+import static org.junit.Assert.*;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+
+/**
+ * Test class for ShardedStorageBackend
+ */
+public class ShardedStorageBackendTest {
+
+    private static final int SHARDS = 3;
+
+    private final List<File> files = new ArrayList<>();
+    private final List<DatabaseShard> shards = new ArrayList<>();
+    private ShardedStorageBackend storage;
+    private ShardRing ring;
+    /** Prefix that keeps the usernames apart from those in the cache of the main database */
+    private String prefix;
+
+    @Before
+    public void setUp() throws Exception {
+        Class.forName("org.sqlite.JDBC");
+        File main = File.createTempFile("dietapp-shards", ".db");
+        files.add(main);
+        Properties properties = new Properties();
+        properties.setProperty(DatabaseConfig.PATH, main.getAbsolutePath());
+        properties.setProperty(DatabaseConfig.SHARDS, String.valueOf(SHARDS));
+        properties.setProperty(DatabaseConfig.CHECKPOINT_INTERVAL, "0");
+        DatabaseConfig config = new DatabaseConfig(properties);
+
+        for (int i = 0; i < SHARDS; i++) {
+            if (i > 0) {
+                files.add(new File(config.getShardPath(i)));
+            }
+            DatabaseShard shard = DatabaseShard.open("test" + i, config, config.getShardPath(i));
+            shard.initialize();
+            shards.add(shard);
+        }
+        storage = new ShardedStorageBackend(shards);
+        ring = new ShardRing(SHARDS);
+        prefix = "shard" + System.nanoTime() + "_";
+    }
+
+    @After
+    public void tearDown() {
+        for (DatabaseShard shard : shards) {
+            shard.close();
+        }
+        for (File file : files) {
+            new File(file.getAbsolutePath() + "-wal").delete();
+            new File(file.getAbsolutePath() + "-shm").delete();
+            file.delete();
+        }
+    }
+
+    /**
+     * Test that users stay in the directory and their food logs go to their shard
+     */
+    @Test
+    public void testFoodLogsAreRoutedByUser() throws SQLException {
+        assertEquals("Backend should be named", "sharded", storage.getName());
+        int sampleUsers = storage.getUsers().findAll().size();
+        List<Integer> userIds = registerUsers(12);
+        assertEquals("Users should be in the directory", sampleUsers + 12, storage.getUsers().findAll().size());
+
+        for (int userId : userIds) {
+            storage.getFoodLogs().add(userId, "2025-05-01", Arrays.asList(new Food("Apple", 100, 52 + userId)));
+        }
+        boolean[] used = new boolean[SHARDS];
+        for (int userId : userIds) {
+            int home = ring.shardOf(userId);
+            used[home] = true;
+            assertEquals("Log should be read from the shard of user " + userId, 52 + userId,
+                storage.getFoodLogs().totalCalories(userId, "2025-05-01"));
+            for (int shard = 0; shard < SHARDS; shard++) {
+                assertEquals("Log of user " + userId + " should only be in shard " + home, shard == home ? 1 : 0,
+                    count(shard, "SELECT COUNT(*) FROM food_logs WHERE user_id = ?", userId));
+            }
+            assertEquals("User should have a row in its shard", 1,
+                count(home, "SELECT COUNT(*) FROM users WHERE id = ?", userId));
+        }
+        for (int shard = 0; shard < SHARDS; shard++) {
+            assertTrue("Shard " + shard + " should hold some users", used[shard]);
+        }
+    }
+
+    /**
+     * Test that meal plans and nutrition goals are stored in the shard of the user
+     */
+    @Test
+    public void testMealPlansAndGoals() throws SQLException {
+        int userId = registerUsers(SHARDS * 4).stream().filter(id -> ring.shardOf(id) != 0).findFirst().get();
+        int home = ring.shardOf(userId);
+
+        assertTrue("Goals should be saved", storage.getUsers().saveNutritionGoals(userId, 2100, 90, 250, 70));
+        assertEquals("Goals should be read from the shard", Integer.valueOf(2100),
+            storage.getUsers().findNutritionGoals(userId, (calories, protein, carbs, fat) -> calories));
+        assertEquals("Goals should not be in the directory", 0,
+            count(0, "SELECT COUNT(*) FROM nutrition_goals WHERE user_id = ?", userId));
+
+        storage.getMealPlans().add(userId, "2025-05-01", "breakfast", Arrays.asList(new Food("Oats", 50, 190)));
+        assertEquals("Plan should be read from the shard", "Oats",
+            storage.getMealPlans().find(userId, "2025-05-01", "breakfast").get(0).getName());
+        assertEquals("Plan should be in the shard", 1,
+            count(home, "SELECT COUNT(*) FROM meal_plans WHERE user_id = ?", userId));
+    }
+
+    /**
+     * Test that deleting a user deletes its data and placeholder from its shard
+     */
+    @Test
+    public void testDeleteUserDeletesItsData() throws SQLException {
+        List<Integer> userIds = registerUsers(SHARDS * 4);
+        int index = 0;
+        while (ring.shardOf(userIds.get(index)) == 0) {
+            index++;
+        }
+        int userId = userIds.get(index);
+        int home = ring.shardOf(userId);
+        storage.getFoodLogs().add(userId, "2025-05-01", Arrays.asList(new Food("Apple", 100, 52)));
+        storage.getMealPlans().add(userId, "2025-05-01", "breakfast", Arrays.asList(new Food("Oats", 50, 190)));
+        storage.getUsers().saveNutritionGoals(userId, 2100, 90, 250, 70);
+
+        assertTrue("User should be deleted", storage.getUsers().delete(prefix + index));
+
+        for (String table : Arrays.asList("food_logs", NutritionRollup.TABLE, "meal_plans", "nutrition_goals")) {
+            assertEquals("Rows of " + table + " should be deleted", 0,
+                count(home, "SELECT COUNT(*) FROM " + table + " WHERE user_id = ?", userId));
+        }
+        assertEquals("Placeholder should be deleted", 0, count(home, "SELECT COUNT(*) FROM users WHERE id = ?", userId));
+        assertEquals("User should be deleted from the directory", 0,
+            count(0, "SELECT COUNT(*) FROM users WHERE id = ?", userId));
+        assertFalse("Deleted user should not be deleted again", storage.getUsers().delete(prefix + index));
+    }
+
+    /**
+     * Test that a failed unit of work rolls back the writes of every shard
+     */
+    @Test
+    public void testRollbackAcrossShards() throws SQLException {
+        List<Integer> userIds = registerUsers(SHARDS * 4);
+        List<Integer> picked = new ArrayList<>();
+        boolean[] taken = new boolean[SHARDS];
+        for (int userId : userIds) {
+            if (!taken[ring.shardOf(userId)]) {
+                taken[ring.shardOf(userId)] = true;
+                picked.add(userId);
+            }
+        }
+        assertTrue("Users of two shards should be picked", picked.size() >= 2);
+
+        try {
+            storage.inTransaction(() -> {
+                for (int userId : picked) {
+                    storage.getFoodLogs().add(userId, "2025-05-02", Collections.singletonList(new Food("Pear", 100, 57)));
+                }
+                throw new SQLException("Stop");
+            });
+            fail("Failure should be passed on");
+        } catch (SQLException e) {
+            assertEquals("Failure should be kept", "Stop", e.getMessage());
+        }
+        for (int userId : picked) {
+            assertTrue("Log of user " + userId + " should be rolled back",
+                storage.getFoodLogs().find(userId, "2025-05-02").isEmpty());
+        }
+
+        int written = storage.inTransaction(() -> {
+            for (int userId : picked) {
+                storage.getFoodLogs().add(userId, "2025-05-02", Collections.singletonList(new Food("Pear", 100, 57)));
+            }
+            return picked.size();
+        });
+        for (int userId : picked) {
+            assertEquals("Log of user " + userId + " should be committed", 57,
+                storage.getFoodLogs().totalCalories(userId, "2025-05-02"));
+        }
+        assertEquals("Result should be returned", picked.size(), written);
+    }
+
+    /**
+     * Test that the food log of a user is streamed from its shard in date order
+     */
+    @Test
+    public void testStreamFoodLogs() throws SQLException {
+        int userId = registerUsers(SHARDS * 4).stream().filter(id -> ring.shardOf(id) != 0).findFirst().get();
+        DatabaseShard home = shards.get(ring.shardOf(userId));
+        storage.getFoodLogs().add(userId, "2025-05-02", Arrays.asList(new Food("Pear", 100, 57), new Food("Rice", 150, 195)));
+        storage.getFoodLogs().add(userId, "2025-04-30", Collections.singletonList(
+            new FoodNutrient("Salmon", 100, 206, 22.0, 0.0, 13.0, 0.0, 0.0, 59.0)));
+        storage.getFoodLogs().add(userId, "2025-06-01", Collections.singletonList(new Food("Oats", 50, 190)));
+
+        List<String> visited = new ArrayList<>();
+        long count = storage.getFoodLogs().forEach(userId, "2025-04-01", "2025-05-31",
+            (date, food) -> visited.add(date + " " + food.getName()));
+        assertEquals("Foods of the range should be counted", 3, count);
+        assertEquals("Foods should be streamed in date order",
+            Arrays.asList("2025-04-30 Salmon", "2025-05-02 Pear", "2025-05-02 Rice"), visited);
+
+        try {
+            storage.getFoodLogs().forEach(userId, "2025-01-01", "2025-12-31", (date, food) -> {
+                throw new SQLException("Stop");
+            });
+            fail("Failure of the visitor should be passed on");
+        } catch (SQLException e) {
+            assertEquals("Failure should be kept", "Stop", e.getMessage());
+        }
+        assertEquals("Stream should release its connection", 0,
+            home.getReaderPoolMetrics().getActiveConnections());
+    }
+
+    private List<Integer> registerUsers(int count) throws SQLException {
+        List<Integer> userIds = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            String username = prefix + i;
+            assertTrue("User should be registered", storage.getUsers().register(username, "secret", username + "@example.com", "User"));
+            userIds.add(storage.getUsers().findId(username));
+        }
+        return userIds;
+    }
+
+    private int count(int shard, String sql, int userId) throws SQLException {
+        Connection conn = shards.get(shard).getReadConnection();
+        try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            pstmt.setInt(1, userId);
+            ResultSet rs = pstmt.executeQuery();
+            assertTrue("Rows should be counted", rs.next());
+            return rs.getInt(1);
+        } finally {
+            shards.get(shard).release(conn);
+        }
+    }
+}
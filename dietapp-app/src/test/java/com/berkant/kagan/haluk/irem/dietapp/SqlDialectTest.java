@@ -0,0 +1,180 @@
+package com.berkant.kagan.haluk.irem.dietapp;
+
+import static org.junit.Assert.*;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.lang.reflect.Method;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+ * Test class for SqlDialect
+ */
+public class SqlDialectTest {
+
+    private Connection h2;
+    private Connection sqlite;
+
+    @Before
+    public void setUp() throws Exception {
+        Class.forName(SqlDialect.H2.getDriverClass());
+        Class.forName(SqlDialect.SQLITE.getDriverClass());
+        h2 = DriverManager.getConnection("jdbc:h2:mem:dialect" + System.nanoTime());
+        sqlite = DriverManager.getConnection("jdbc:sqlite::memory:");
+    }
+
+    @After
+    public void tearDown() throws SQLException {
+        h2.close();
+        sqlite.close();
+    }
+
+    /**
+     * Test the JDBC URLs and the dialect detection
+     */
+    @Test
+    public void testUrlsAndDetection() throws SQLException {
+        assertEquals("SQLite URL should use the path", "jdbc:sqlite:diet.db", SqlDialect.SQLITE.jdbcUrl("diet.db"));
+        assertEquals("Relative H2 path should start with ./", "jdbc:h2:file:./diet.db", SqlDialect.H2.jdbcUrl("diet.db"));
+        assertEquals("Absolute H2 path should be kept", "jdbc:h2:file:/tmp/diet.db", SqlDialect.H2.jdbcUrl("/tmp/diet.db"));
+        assertEquals("H2 connection should be detected", SqlDialect.H2, SqlDialect.of(h2));
+        assertEquals("SQLite connection should be detected", SqlDialect.SQLITE, SqlDialect.of(sqlite));
+    }
+
+    /**
+     * Test that the SQLite DDL is translated for H2 only
+     */
+    @Test
+    public void testTranslate() {
+        String ddl = "CREATE TABLE t (id INTEGER PRIMARY KEY AUTOINCREMENT, name TEXT NOT NULL, grams REAL);";
+        assertEquals("SQLite should run the DDL unchanged", ddl, SqlDialect.SQLITE.translate(ddl));
+        assertEquals("H2 should get identity, VARCHAR and DOUBLE PRECISION columns",
+            "CREATE TABLE t (id INTEGER GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY, name VARCHAR NOT NULL, grams DOUBLE PRECISION)",
+            SqlDialect.H2.translate(ddl));
+        assertEquals("Temporary tables should be translated", "CREATE LOCAL TEMPORARY TABLE d AS SELECT 1",
+            SqlDialect.H2.translate("CREATE TEMP TABLE d AS SELECT 1"));
+    }
+
+    /**
+     * Test that the application schema and all migrations can be created on H2
+     */
+    @Test
+    public void testCreateTablesOnH2() throws Exception {
+        Method createTables = DatabaseHelper.class.getDeclaredMethod("createTables", Connection.class);
+        createTables.setAccessible(true);
+        createTables.invoke(null, h2);
+        createTables.invoke(null, h2);
+
+        assertEquals("All migrations should be applied", SchemaMigrator.getLatestVersion(), SchemaMigrator.getCurrentVersion(h2));
+        try (Statement stmt = h2.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT COUNT(*) FROM users WHERE username = 'admin'")) {
+            assertTrue("Count should be returned", rs.next());
+            assertEquals("Sample user should be inserted once", 1, rs.getInt(1));
+        }
+    }
+
+    /**
+     * Test inserting with returned ids, skipping duplicates and upserting on both engines
+     */
+    @Test
+    public void testInsertAndUpsert() throws SQLException {
+        checkInsertAndUpsert(sqlite);
+        checkInsertAndUpsert(h2);
+    }
+
+    private void checkInsertAndUpsert(Connection conn) throws SQLException {
+        SqlDialect dialect = SqlDialect.of(conn);
+        try (Statement stmt = conn.createStatement()) {
+            stmt.execute(dialect.translate("CREATE TABLE foods (id INTEGER PRIMARY KEY AUTOINCREMENT, name TEXT NOT NULL)"));
+            stmt.execute("CREATE UNIQUE INDEX idx_foods_name ON foods (name)");
+            stmt.execute(dialect.translate("CREATE TABLE notes (food_id INTEGER NOT NULL, note TEXT NOT NULL)"));
+            stmt.execute("CREATE UNIQUE INDEX idx_notes_food ON notes (food_id)");
+        }
+
+        String insert = dialect.returningId(dialect.insertIgnoringDuplicates("INSERT INTO foods (name) VALUES (?)", "name"));
+        assertEquals(dialect + " should return the new id", 1, insertFood(conn, insert, "Apple"));
+        assertEquals(dialect + " should return the next id", 2, insertFood(conn, insert, "Pear"));
+        assertEquals(dialect + " should skip the duplicate", -1, insertFood(conn, insert, "Apple"));
+
+        String upsert = dialect.upsert("notes", "food_id, note", "food_id", "SELECT id, ? FROM foods WHERE name = ?");
+        assertEquals(dialect + " should insert the note", 1, upsertNote(conn, upsert, "fresh", "Apple"));
+        assertEquals(dialect + " should update the note", 1, upsertNote(conn, upsert, "ripe", "Apple"));
+        assertEquals(dialect + " should skip unknown foods", 0, upsertNote(conn, upsert, "none", "Plum"));
+        try (Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT COUNT(*), MAX(note) FROM notes")) {
+            assertTrue("Notes should be counted", rs.next());
+            assertEquals(dialect + " should keep one note per food", 1, rs.getInt(1));
+            assertEquals(dialect + " should keep the updated note", "ripe", rs.getString(2));
+        }
+    }
+
+    /**
+     * Test that an adding upsert inserts new keys and adds to existing ones on both engines
+     */
+    @Test
+    public void testUpsertAdding() throws SQLException {
+        checkUpsertAdding(sqlite);
+        checkUpsertAdding(h2);
+    }
+
+    private void checkUpsertAdding(Connection conn) throws SQLException {
+        SqlDialect dialect = SqlDialect.of(conn);
+        try (Statement stmt = conn.createStatement()) {
+            stmt.execute(dialect.translate("CREATE TABLE sums (owner INTEGER NOT NULL, date TEXT NOT NULL, " +
+                "amount REAL NOT NULL, entries INTEGER NOT NULL, PRIMARY KEY (owner, date))"));
+            stmt.execute(dialect.translate("CREATE TABLE amounts (id INTEGER PRIMARY KEY, amount REAL NOT NULL)"));
+            stmt.execute("INSERT INTO amounts (id, amount) VALUES (1, 2.5), (2, 4.0)");
+        }
+
+        String upsert = dialect.translate(dialect.upsertAdding("sums", "owner, date, amount, entries", "owner, date",
+            "SELECT CAST(? AS INTEGER), CAST(? AS TEXT), amount, 1 FROM amounts WHERE id = ?"));
+        assertEquals(dialect + " should insert the sum", 1, addAmount(conn, upsert, "2025-01-01", 1));
+        assertEquals(dialect + " should add to the sum", 1, addAmount(conn, upsert, "2025-01-01", 2));
+        assertEquals(dialect + " should insert a sum per key", 1, addAmount(conn, upsert, "2025-01-02", 2));
+        assertEquals(dialect + " should skip unknown amounts", 0, addAmount(conn, upsert, "2025-01-01", 3));
+        try (Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT amount, entries FROM sums WHERE date = '2025-01-01'")) {
+            assertTrue("Sum should be stored", rs.next());
+            assertEquals(dialect + " should add the values", 6.5, rs.getDouble(1), 0.001);
+            assertEquals(dialect + " should add the entries", 2, rs.getInt(2));
+        }
+    }
+
+    private static int addAmount(Connection conn, String sql, String date, int amountId) throws SQLException {
+        try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            pstmt.setInt(1, 7);
+            pstmt.setString(2, date);
+            pstmt.setInt(3, amountId);
+            return pstmt.executeUpdate();
+        }
+    }
+
+    private static int insertFood(Connection conn, String sql, String name) throws SQLException {
+        try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            pstmt.setString(1, name);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                return rs.next() ? rs.getInt(1) : -1;
+            }
+        } catch (SQLException e) {
+            if (SqlDialect.of(conn).isDuplicateKey(e)) {
+                return -1;
+            }
+            throw e;
+        }
+    }
+
+    private static int upsertNote(Connection conn, String sql, String note, String name) throws SQLException {
+        try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            pstmt.setString(1, note);
+            pstmt.setString(2, name);
+            return pstmt.executeUpdate();
+        }
+    }
+}
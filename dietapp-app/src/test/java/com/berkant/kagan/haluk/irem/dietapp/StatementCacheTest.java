@@ -0,0 +1,204 @@
+package com.berkant.kagan.haluk.irem.dietapp;
+
+import static org.junit.Assert.*;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+ * Test class for StatementCache
+ */
+public class StatementCacheTest {
+
+    private ConnectionPool pool;
+
+    /**
+     * Opens an in-memory SQLite connection for the pool under test.
+     */
+    private static Connection openConnection() throws SQLException {
+        return DriverManager.getConnection("jdbc:sqlite::memory:");
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        Class.forName("org.sqlite.JDBC");
+        pool = new ConnectionPool("statements", 1, StatementCacheTest::openConnection, 200, 60000, 60000, 2);
+        try (Connection conn = pool.borrow(); Statement stmt = conn.createStatement()) {
+            stmt.execute("CREATE TABLE items (id INTEGER PRIMARY KEY, name TEXT)");
+        }
+    }
+
+    @After
+    public void tearDown() {
+        pool.shutdown();
+    }
+
+    /**
+     * Test that preparing the same SQL on a reused connection hits the cache
+     */
+    @Test
+    public void testSameSqlIsServedFromCache() throws SQLException {
+        for (int i = 0; i < 3; i++) {
+            try (Connection conn = pool.borrow();
+                 PreparedStatement pstmt = conn.prepareStatement("INSERT INTO items (name) VALUES (?)")) {
+                pstmt.setString(1, "item" + i);
+                assertEquals("Insert should affect one row", 1, pstmt.executeUpdate());
+            }
+        }
+
+        ConnectionPool.PoolMetrics metrics = pool.getMetrics();
+        assertEquals("First prepare should miss", 1, metrics.getStatementCacheMisses());
+        assertEquals("Later prepares should hit", 2, metrics.getStatementCacheHits());
+        assertTrue("Hit rate should be reported", metrics.getStatementCacheHitRate() > 0.5);
+    }
+
+    /**
+     * Test that a cached statement starts without the previous caller's parameters
+     */
+    @Test
+    public void testReturnedStatementIsReset() throws SQLException {
+        try (Connection conn = pool.borrow()) {
+            try (PreparedStatement pstmt = conn.prepareStatement("SELECT ? AS value")) {
+                pstmt.setString(1, "first");
+                try (ResultSet rs = pstmt.executeQuery()) {
+                    assertTrue("Query should return a row", rs.next());
+                }
+            }
+            try (PreparedStatement pstmt = conn.prepareStatement("SELECT ? AS value");
+                 ResultSet rs = pstmt.executeQuery()) {
+                assertTrue("Query should return a row", rs.next());
+                assertNull("Parameters should be cleared on return", rs.getString(1));
+            }
+        }
+    }
+
+    /**
+     * Test that a cached statement starts with the settings it was prepared with
+     */
+    @Test
+    public void testReturnedStatementSettingsAreRestored() throws SQLException {
+        try (Connection conn = pool.borrow()) {
+            int fetchSize;
+            int queryTimeout;
+            try (PreparedStatement pstmt = conn.prepareStatement("SELECT 1 UNION ALL SELECT 2")) {
+                fetchSize = pstmt.getFetchSize();
+                queryTimeout = pstmt.getQueryTimeout();
+                pstmt.setFetchSize(fetchSize + 50);
+                pstmt.setMaxRows(1);
+                pstmt.setQueryTimeout(queryTimeout + 30);
+            }
+            try (PreparedStatement pstmt = conn.prepareStatement("SELECT 1 UNION ALL SELECT 2")) {
+                assertEquals("Fetch size should be restored", fetchSize, pstmt.getFetchSize());
+                assertEquals("Row limit should be restored", 0, pstmt.getMaxRows());
+                assertEquals("Query timeout should be restored", queryTimeout, pstmt.getQueryTimeout());
+                try (ResultSet rs = pstmt.executeQuery()) {
+                    assertTrue("First row should be returned", rs.next());
+                    assertTrue("Second row should not be cut off", rs.next());
+                }
+            }
+            assertEquals("Second prepare should be a cache hit", 1, pool.getMetrics().getStatementCacheHits());
+        }
+    }
+
+    /**
+     * Test that nested use of the same SQL gets its own statement
+     */
+    @Test
+    public void testNestedSameSqlGetsSeparateStatement() throws SQLException {
+        try (Connection conn = pool.borrow();
+             PreparedStatement outer = conn.prepareStatement("SELECT ? AS value");
+             PreparedStatement inner = conn.prepareStatement("SELECT ? AS value")) {
+            outer.setInt(1, 1);
+            inner.setInt(1, 2);
+            try (ResultSet outerRs = outer.executeQuery(); ResultSet innerRs = inner.executeQuery()) {
+                assertTrue("Outer query should return a row", outerRs.next());
+                assertTrue("Inner query should return a row", innerRs.next());
+                assertEquals("Outer statement should keep its parameter", 1, outerRs.getInt(1));
+                assertEquals("Inner statement should keep its parameter", 2, innerRs.getInt(1));
+            }
+        }
+    }
+
+    /**
+     * Test that the least recently used statement is evicted once the cache is full
+     */
+    @Test
+    public void testLeastRecentlyUsedStatementIsEvicted() throws SQLException {
+        try (Connection conn = pool.borrow()) {
+            conn.prepareStatement("SELECT 1").close();
+            conn.prepareStatement("SELECT 2").close();
+            conn.prepareStatement("SELECT 1").close();
+            conn.prepareStatement("SELECT 3").close();
+            conn.prepareStatement("SELECT 1").close();
+        }
+
+        ConnectionPool.PoolMetrics metrics = pool.getMetrics();
+        assertEquals("One statement should be evicted", 1, metrics.getStatementCacheEvictions());
+        assertEquals("Recently used statement should stay cached", 2, metrics.getStatementCacheHits());
+    }
+
+    /**
+     * Test that statements left open are returned to the cache with the connection
+     */
+    @Test
+    public void testStatementsLeftOpenAreClosedOnReturn() throws SQLException {
+        PreparedStatement leftOpen;
+        try (Connection conn = pool.borrow()) {
+            leftOpen = conn.prepareStatement("SELECT name FROM items");
+            leftOpen.executeQuery();
+        }
+        assertTrue("Statement should be closed when the connection is returned", leftOpen.isClosed());
+
+        try (Connection conn = pool.borrow();
+             PreparedStatement pstmt = conn.prepareStatement("SELECT name FROM items")) {
+            assertNotSame("Caller should get a fresh handle", leftOpen, pstmt);
+            assertSame("Statement should report its pooled connection", conn, pstmt.getConnection());
+        }
+        assertEquals("Returned statement should be reused", 1, pool.getMetrics().getStatementCacheHits());
+    }
+
+    /**
+     * Test that a closed statement handle rejects further use
+     */
+    @Test
+    public void testClosedHandleRejectsUse() throws SQLException {
+        try (Connection conn = pool.borrow()) {
+            PreparedStatement pstmt = conn.prepareStatement("SELECT 1");
+            pstmt.close();
+            try {
+                pstmt.executeQuery();
+                fail("Closed statement should reject queries");
+            } catch (SQLException e) {
+                assertTrue("Message should mention the closed statement", e.getMessage().contains("closed"));
+            }
+        }
+    }
+
+    /**
+     * Test that a cache size of zero disables caching
+     */
+    @Test
+    public void testZeroCapacityDisablesCaching() throws SQLException {
+        ConnectionPool uncached = new ConnectionPool("uncached", 1, StatementCacheTest::openConnection,
+            200, 60000, 60000, 0);
+        try {
+            for (int i = 0; i < 2; i++) {
+                try (Connection conn = uncached.borrow(); PreparedStatement pstmt = conn.prepareStatement("SELECT 1")) {
+                    pstmt.executeQuery().close();
+                }
+            }
+            assertEquals("No statement should be served from the cache", 0,
+                uncached.getMetrics().getStatementCacheHits());
+        } finally {
+            uncached.shutdown();
+        }
+    }
+}
@@ -0,0 +1,199 @@
+package com.berkant.kagan.haluk.irem.dietapp;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Test class for WriteBehindQueue
+ */
+public class WriteBehindQueueTest {
+
+    /** Writes recorded by the test writer */
+    private final List<Integer> written = Collections.synchronizedList(new ArrayList<Integer>());
+    /** Sizes of the batches recorded by the test writer */
+    private final List<Integer> batchSizes = Collections.synchronizedList(new ArrayList<Integer>());
+
+    /**
+     * Writer that records the writes and stores every non-negative number.
+     */
+    private boolean[] record(List<Integer> items) {
+        batchSizes.add(items.size());
+        boolean[] results = new boolean[items.size()];
+        for (int i = 0; i < items.size(); i++) {
+            written.add(items.get(i));
+            results[i] = items.get(i) >= 0;
+        }
+        return results;
+    }
+
+    /**
+     * Test that concurrent writes in GROUP_COMMIT mode share batches and report their result
+     */
+    @Test
+    public void testGroupCommitBatchesConcurrentWrites() throws Exception {
+        WriteBehindQueue<Integer> queue = new WriteBehindQueue<>("test", this::record,
+            WriteBehindQueue.DurabilityMode.GROUP_COMMIT, 100, 50, 20);
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<Boolean>> results = new ArrayList<>();
+            for (int i = 0; i < 40; i++) {
+                final int value = i % 10 == 0 ? -i : i;
+                results.add(executor.submit(() -> queue.submit(value)));
+            }
+            for (int i = 0; i < results.size(); i++) {
+                assertEquals("Result should match the writer's answer for write " + i,
+                    i % 10 != 0 || i == 0, results.get(i).get(5, TimeUnit.SECONDS));
+            }
+        } finally {
+            executor.shutdown();
+            queue.close();
+        }
+
+        assertEquals("Every write should reach the writer", 40, written.size());
+        assertTrue("Concurrent writes should share batches", batchSizes.size() < 40);
+        assertEquals("Rejected writes should be counted", 3, queue.getFailed());
+    }
+
+    /**
+     * Test that ASYNC writes return before they are written and flush() waits for them
+     */
+    @Test
+    public void testAsyncFlushWaitsForQueuedWrites() {
+        CountDownLatch release = new CountDownLatch(1);
+        WriteBehindQueue<Integer> queue = new WriteBehindQueue<>("test", items -> {
+            awaitQuietly(release);
+            return record(items);
+        }, WriteBehindQueue.DurabilityMode.ASYNC, 100, 10, 0);
+        try {
+            for (int i = 0; i < 25; i++) {
+                assertTrue("Write should be queued", queue.submit(i));
+            }
+            assertTrue("Writes should still be pending", written.size() < 25);
+
+            release.countDown();
+            queue.flush();
+            assertEquals("All writes should be written after flush", 25, written.size());
+            assertEquals("Writes should keep their order", Integer.valueOf(24), written.get(24));
+            assertTrue("Batches should respect the maximum size", Collections.max(batchSizes) <= 10);
+        } finally {
+            queue.close();
+        }
+    }
+
+    /**
+     * Test that submit() blocks while the queue is full
+     */
+    @Test
+    public void testFullQueueBlocksSubmit() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        WriteBehindQueue<Integer> queue = new WriteBehindQueue<>("test", items -> {
+            awaitQuietly(release);
+            return record(items);
+        }, WriteBehindQueue.DurabilityMode.ASYNC, 1, 1, 0);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            queue.submit(1);
+            waitUntilEmpty(queue);
+            queue.submit(2);
+
+            Future<Boolean> blocked = executor.submit(() -> queue.submit(3));
+            try {
+                blocked.get(200, TimeUnit.MILLISECONDS);
+                fail("Submit should block while the queue is full");
+            } catch (TimeoutException e) {
+                // Expected
+            }
+
+            release.countDown();
+            assertTrue("Submit should continue once the writer catches up", blocked.get(5, TimeUnit.SECONDS));
+        } finally {
+            release.countDown();
+            executor.shutdown();
+            queue.close();
+        }
+        assertEquals("All writes should be written", 3, written.size());
+    }
+
+    /**
+     * Test that a failing batch reports every write as not stored
+     */
+    @Test
+    public void testFailedBatchReportsFalse() {
+        WriteBehindQueue<Integer> queue = new WriteBehindQueue<>("test", items -> {
+            throw new SQLException("disk full");
+        }, WriteBehindQueue.DurabilityMode.GROUP_COMMIT);
+        try {
+            assertFalse("Write of a failed batch should not be stored", queue.submit(1));
+            assertEquals("Failure should be counted", 1, queue.getFailed());
+        } finally {
+            queue.close();
+        }
+    }
+
+    /**
+     * Test that close() writes the queued writes and rejects new ones
+     */
+    @Test
+    public void testCloseWritesPendingAndRejectsNewWrites() {
+        WriteBehindQueue<Integer> queue = new WriteBehindQueue<>("test", this::record,
+            WriteBehindQueue.DurabilityMode.ASYNC, 100, 10, 50);
+        for (int i = 0; i < 5; i++) {
+            queue.submit(i);
+        }
+
+        queue.close();
+
+        assertEquals("Queued writes should be written on close", 5, written.size());
+        assertFalse("Closed queue should reject writes", queue.submit(6));
+        assertFalse("Null writes should be rejected", queue.submit(null));
+    }
+
+    /**
+     * Test the durability mode parsing and the rejected SYNC mode
+     */
+    @Test
+    public void testDurabilityModes() {
+        assertEquals("Hyphenated name should be parsed", WriteBehindQueue.DurabilityMode.GROUP_COMMIT,
+            WriteBehindQueue.DurabilityMode.parse("group-commit"));
+        assertEquals("Case should be ignored", WriteBehindQueue.DurabilityMode.ASYNC,
+            WriteBehindQueue.DurabilityMode.parse("Async"));
+        assertEquals("Missing mode should default to SYNC", WriteBehindQueue.DurabilityMode.SYNC,
+            WriteBehindQueue.DurabilityMode.parse(null));
+        assertEquals("Unknown mode should default to SYNC", WriteBehindQueue.DurabilityMode.SYNC,
+            WriteBehindQueue.DurabilityMode.parse("eventually"));
+
+        try {
+            new WriteBehindQueue<Integer>("test", this::record, WriteBehindQueue.DurabilityMode.SYNC);
+            fail("SYNC mode should not create a queue");
+        } catch (IllegalArgumentException e) {
+            assertTrue("Message should name the valid modes", e.getMessage().contains("GROUP_COMMIT"));
+        }
+    }
+
+    private static void awaitQuietly(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void waitUntilEmpty(WriteBehindQueue<?> queue) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (queue.getPending() > 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+    }
+}